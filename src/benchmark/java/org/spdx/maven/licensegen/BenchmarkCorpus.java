@@ -0,0 +1,200 @@
+/**
+ * Copyright (c) 2017 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.spdx.maven.licensegen;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generates test data for the benchmarks.
+ * 
+ * The license corpus is created by copying the license XML files and test texts of a fixture
+ * project (by default the valid license unit test project) any number of times, giving each copy
+ * a unique license ID.  It can also be run standalone to create a corpus for profiling:
+ * <code>BenchmarkCorpus targetDir copies [fixtureDir]</code>
+ * @author Gary O'Neall
+ *
+ */
+final class BenchmarkCorpus {
+	
+	/**
+	 * System property to override the fixture project directory
+	 */
+	static final String FIXTURE_PROPERTY = "licensegen.benchmark.fixture";
+	static final String DEFAULT_FIXTURE = "src/test/resources/unit/valid-licenses-project";
+	
+	static final String SOURCE_DIR = "src";
+	static final String SCHEMA_FILE = "schema/ListedLicense.xsd";
+	static final String TEXT_DIR = "test/license-text";
+	
+	private static final String[] PARAGRAPHS = new String[] {
+		"Permission is hereby granted, free of charge, to any person obtaining a copy of this software " +
+		"and associated documentation files (the \"Software\"), to deal in the Software without restriction, " +
+		"including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, " +
+		"and/or sell copies of the Software.",
+		"THE SOFTWARE IS PROVIDED \"AS IS\", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT " +
+		"NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.",
+		"You may convey verbatim copies of the Program's source code as you receive it, in any medium, provided " +
+		"that you conspicuously and appropriately publish on each copy an appropriate copyright notice; keep " +
+		"intact all notices stating that this License and any non-permissive terms apply to the code.",
+		"Licensor hereby grants You a worldwide, royalty-free, non-sublicensable, non-exclusive, irrevocable " +
+		"license to exercise the Licensed Rights in the Licensed Material \u2014 to reproduce and Share the " +
+		"Licensed Material, in whole or in part."
+	};
+	
+	private BenchmarkCorpus() {
+		// Static helper only
+	}
+	
+	/**
+	 * @return the fixture project used as the basis for the license corpus
+	 */
+	static File fixtureDirectory() {
+		return new File(System.getProperty(FIXTURE_PROPERTY, DEFAULT_FIXTURE));
+	}
+	
+	/**
+	 * @return the schema file of the fixture project
+	 */
+	static File schemaFile() {
+		return new File(fixtureDirectory(), SCHEMA_FILE);
+	}
+	
+	/**
+	 * Create a license corpus in targetDir with the license XML files under targetDir/src and
+	 * the test texts under targetDir/test/license-text
+	 * @param fixtureDir fixture project to copy
+	 * @param targetDir directory to create the corpus in
+	 * @param copies number of copies of each fixture license
+	 * @return the license XML files created
+	 * @throws IOException
+	 */
+	static List<File> createLicenseCorpus(File fixtureDir, File targetDir, int copies) throws IOException {
+		List<File> fixtureXmls = new ArrayList<File>();
+		File fixtureSrc = new File(fixtureDir, SOURCE_DIR);
+		LicenseSource.collectXmlFiles(fixtureSrc, fixtureXmls);
+		List<File> retval = new ArrayList<File>(fixtureXmls.size() * copies);
+		for (File fixtureXml:fixtureXmls) {
+			LicenseSource source = LicenseSource.read(fixtureSrc, fixtureXml);
+			String xml = new String(Files.readAllBytes(fixtureXml.toPath()), StandardCharsets.UTF_8);
+			Path relativeDir = fixtureSrc.toPath().relativize(fixtureXml.getParentFile().toPath());
+			Path targetSrcDir = targetDir.toPath().resolve(SOURCE_DIR).resolve(relativeDir);
+			Files.createDirectories(targetSrcDir);
+			for (int i = 0; i < copies; i++) {
+				String copyXml = xml;
+				String fileName = fixtureXml.getName();
+				for (String licenseId:source.getLicenseIds()) {
+					copyXml = copyXml.replace("licenseId=\"" + licenseId + "\"", "licenseId=\"" + copyId(licenseId, i) + "\"");
+					fileName = fileName.replace(licenseId, copyId(licenseId, i));
+				}
+				Path target = targetSrcDir.resolve(fileName);
+				Files.write(target, copyXml.getBytes(StandardCharsets.UTF_8));
+				retval.add(target.toFile());
+			}
+		}
+		File[] texts = new File(fixtureDir, TEXT_DIR).listFiles();
+		if (texts != null) {
+			Path targetTextDir = targetDir.toPath().resolve(TEXT_DIR);
+			Files.createDirectories(targetTextDir);
+			for (File text:texts) {
+				if (!text.isFile() || !text.getName().endsWith(".txt")) {
+					continue;
+				}
+				String licenseId = text.getName().substring(0, text.getName().length() - ".txt".length());
+				for (int i = 0; i < copies; i++) {
+					Files.copy(text.toPath(), targetTextDir.resolve(copyId(licenseId, i) + ".txt"));
+				}
+			}
+		}
+		return retval;
+	}
+	
+	/**
+	 * @param licenseId
+	 * @param copy
+	 * @return the license ID for the copy of the fixture license
+	 */
+	static String copyId(String licenseId, int copy) {
+		return String.format("%s-bench-%05d", licenseId, copy);
+	}
+	
+	/**
+	 * Delete a directory and all of its content
+	 * @param dir
+	 * @throws IOException
+	 */
+	static void deleteRecursively(File dir) throws IOException {
+		if (!dir.exists()) {
+			return;
+		}
+		Files.walkFileTree(dir.toPath(), new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				Files.delete(file);
+				return FileVisitResult.CONTINUE;
+			}
+			@Override
+			public FileVisitResult postVisitDirectory(Path d, IOException exc) throws IOException {
+				Files.delete(d);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+	
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: BenchmarkCorpus targetDir copies [fixtureDir]");
+			System.exit(1);
+		}
+		File fixtureDir = args.length > 2 ? new File(args[2]) : fixtureDirectory();
+		List<File> created = createLicenseCorpus(fixtureDir, new File(args[0]), Integer.parseInt(args[1]));
+		System.out.println("Created "+created.size()+" license XML files in "+args[0]);
+	}
+	
+	/**
+	 * @param size approximate size of the text in characters
+	 * @return license-like text wrapped at 80 columns with "\r\n" line endings
+	 */
+	static String syntheticLicenseText(int size) {
+		StringBuilder sb = new StringBuilder(size + 200);
+		int paragraph = 0;
+		while (sb.length() < size) {
+			String text = PARAGRAPHS[paragraph++ % PARAGRAPHS.length];
+			int column = 0;
+			for (String word:text.split(" ")) {
+				if (column + word.length() > 80) {
+					sb.append("\r\n");
+					column = 0;
+				} else if (column > 0) {
+					sb.append(' ');
+					column++;
+				}
+				sb.append(word);
+				column += word.length();
+			}
+			sb.append("\r\n\r\n");
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright (c) 2017 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.spdx.maven.licensegen;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.spdx.tools.LicenseGeneratorException;
+import org.spdx.tools.LicenseRDFAGenerator;
+
+/**
+ * Full license data generation for corpora of increasing size.  Each invocation generates
+ * into an empty output directory.
+ * @author Gary O'Neall
+ *
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GenerateLicenseDataBenchmark {
+	
+	/**
+	 * Number of copies of each fixture license in the corpus
+	 */
+	@Param({"1", "20", "200"})
+	public int copies;
+	
+	private File corpusDir;
+	private File outputDir;
+	
+	@Setup(Level.Trial)
+	public void setUpCorpus() throws IOException {
+		corpusDir = Files.createTempDirectory("licensegen-bench-generate").toFile();
+		BenchmarkCorpus.createLicenseCorpus(BenchmarkCorpus.fixtureDirectory(), corpusDir, copies);
+	}
+	
+	@Setup(Level.Invocation)
+	public void setUpOutput() throws IOException {
+		outputDir = Files.createTempDirectory("licensegen-bench-output").toFile();
+	}
+	
+	@TearDown(Level.Invocation)
+	public void tearDownOutput() throws IOException {
+		BenchmarkCorpus.deleteRecursively(outputDir);
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDownCorpus() throws IOException {
+		BenchmarkCorpus.deleteRecursively(corpusDir);
+	}
+	
+	@Benchmark
+	public List<String> generateLicenseData() throws LicenseGeneratorException {
+		return LicenseRDFAGenerator.generateLicenseData(new File(corpusDir, BenchmarkCorpus.SOURCE_DIR), 
+				outputDir, "BENCHMARK", "01-01-2017");
+	}
+}
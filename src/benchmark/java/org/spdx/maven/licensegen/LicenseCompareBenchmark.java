@@ -0,0 +1,113 @@
+/**
+ * Copyright (c) 2017 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.spdx.maven.licensegen;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.spdx.compare.CompareTemplateOutputHandler;
+import org.spdx.compare.LicenseCompareHelper;
+import org.spdx.licenseTemplate.LicenseTemplateRuleException;
+import org.spdx.licenseTemplate.SpdxLicenseTemplateHelper;
+import org.spdx.tools.LicenseGeneratorException;
+import org.spdx.tools.LicenseRDFAGenerator;
+
+/**
+ * Template parsing and matching and text equivalence as performed by the test goal.  The templates
+ * and generated texts are produced once per trial by generating the fixture license data.
+ * @author Gary O'Neall
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LicenseCompareBenchmark {
+	
+	/**
+	 * License ID from the fixture project test texts
+	 */
+	@Param({"0BSD", "Abstyles"})
+	public String licenseId;
+	
+	private File outputDir;
+	private String template;
+	private ParsedTemplate parsedTemplate;
+	private String generatedText;
+	private String testText;
+	
+	@Setup(Level.Trial)
+	public void setUp() throws IOException, LicenseGeneratorException, LicenseTemplateRuleException {
+		outputDir = Files.createTempDirectory("licensegen-bench-compare").toFile();
+		File fixtureDir = BenchmarkCorpus.fixtureDirectory();
+		LicenseRDFAGenerator.generateLicenseData(new File(fixtureDir, BenchmarkCorpus.SOURCE_DIR), 
+				outputDir, "BENCHMARK", "01-01-2017");
+		template = LicenseTextReader.read(outputDir.toPath().resolve("template").resolve(licenseId + ".template.txt"));
+		parsedTemplate = ParsedTemplate.parse(template);
+		generatedText = LicenseTextReader.read(outputDir.toPath().resolve("text").resolve(licenseId + ".txt"));
+		testText = LicenseTextReader.read(fixtureDir.toPath().resolve(BenchmarkCorpus.TEXT_DIR).resolve(licenseId + ".txt"));
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		BenchmarkCorpus.deleteRecursively(outputDir);
+	}
+	
+	@Benchmark
+	public ParsedTemplate parseTemplate() throws LicenseTemplateRuleException {
+		return ParsedTemplate.parse(template);
+	}
+	
+	/**
+	 * Match against a template parsed once
+	 */
+	@Benchmark
+	public boolean matchParsedTemplate() {
+		return parsedTemplate.matches(testText);
+	}
+	
+	/**
+	 * Parse the template while matching
+	 */
+	@Benchmark
+	public boolean parseAndMatchTemplate() throws LicenseTemplateRuleException {
+		CompareTemplateOutputHandler compareTemplateOutputHandler = new CompareTemplateOutputHandler(testText);
+		SpdxLicenseTemplateHelper.parseTemplate(template, compareTemplateOutputHandler);
+		return compareTemplateOutputHandler.matches();
+	}
+	
+	@Benchmark
+	public boolean textEquivalence() {
+		return LicenseCompareHelper.isLicenseTextEquivalent(testText, generatedText);
+	}
+}
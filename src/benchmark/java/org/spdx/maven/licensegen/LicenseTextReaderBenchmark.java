@@ -0,0 +1,111 @@
+/**
+ * Copyright (c) 2017 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.spdx.maven.licensegen;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares reading license text files with <code>LicenseTextReader</code> against the
+ * previous <code>Files.readAllLines</code> implementation.
+ * 
+ * By default the benchmark reads synthetic license texts of the size of the largest licenses
+ * in the license list (GPL-3.0 and EUPL are about 35KB, CC-BY-SA-4.0 about 20KB) and larger.
+ * Set the <code>textFile</code> parameter to a path to benchmark a real license text:
+ * <code>-p textFile=/path/to/GPL-3.0.txt</code>
+ * @author Gary O'Neall
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LicenseTextReaderBenchmark {
+	
+	/**
+	 * Size in bytes of the synthetic license text
+	 */
+	@Param({"20000", "35000", "2000000"})
+	public int textSize;
+	
+	/**
+	 * Optional path to a license text file - overrides the synthetic text
+	 */
+	@Param({""})
+	public String textFile;
+	
+	private Path path;
+	private boolean deleteOnTearDown;
+	
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		if (textFile != null && !textFile.isEmpty()) {
+			path = Paths.get(textFile);
+			deleteOnTearDown = false;
+		} else {
+			path = Files.createTempFile("licensegen-bench", ".txt");
+			Files.write(path, BenchmarkCorpus.syntheticLicenseText(textSize).getBytes(StandardCharsets.UTF_8));
+			deleteOnTearDown = true;
+		}
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		if (deleteOnTearDown) {
+			Files.deleteIfExists(path);
+		}
+	}
+	
+	@Benchmark
+	public String licenseTextReader() throws IOException {
+		return LicenseTextReader.read(path);
+	}
+	
+	@Benchmark
+	public String readAllLines() throws IOException {
+		List<String> lines = Files.readAllLines(path);
+		if (lines.size() == 0) {
+			return "";
+		}
+		StringBuilder sb = new StringBuilder(lines.get(0));
+		for (int i = 1; i < lines.size(); i++) {
+			sb.append("\n");
+			sb.append(lines.get(i));
+		}
+		return sb.toString();
+	}
+}
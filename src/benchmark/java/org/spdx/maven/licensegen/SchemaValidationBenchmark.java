@@ -0,0 +1,98 @@
+/**
+ * Copyright (c) 2017 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.spdx.maven.licensegen;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.XMLConstants;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import javax.xml.validation.Validator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.SAXException;
+
+/**
+ * Schema compilation and per-file schema validation of the license XML files
+ * @author Gary O'Neall
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SchemaValidationBenchmark {
+	
+	/**
+	 * Number of copies of each fixture license in the corpus
+	 */
+	@Param({"200"})
+	public int copies;
+	
+	private File corpusDir;
+	private List<File> xmlFiles;
+	private Schema schema;
+	private Validator validator;
+	private int next = 0;
+	
+	@Setup(Level.Trial)
+	public void setUp() throws IOException, SAXException {
+		corpusDir = Files.createTempDirectory("licensegen-bench-validate").toFile();
+		xmlFiles = BenchmarkCorpus.createLicenseCorpus(BenchmarkCorpus.fixtureDirectory(), corpusDir, copies);
+		schema = compileSchema();
+		validator = schema.newValidator();
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		BenchmarkCorpus.deleteRecursively(corpusDir);
+	}
+	
+	@Benchmark
+	public Schema compileSchema() throws SAXException {
+		SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+		return schemaFactory.newSchema(new StreamSource(BenchmarkCorpus.schemaFile()));
+	}
+	
+	/**
+	 * Validate the next file in the corpus with a reused validator
+	 */
+	@Benchmark
+	public void validateFile() throws SAXException, IOException {
+		File xmlFile = xmlFiles.get(next);
+		next = (next + 1) % xmlFiles.size();
+		validator.validate(new StreamSource(xmlFile));
+	}
+}
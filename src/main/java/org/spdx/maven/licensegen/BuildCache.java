@@ -0,0 +1,559 @@
+/**
+ * Copyright (c) 2017 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.spdx.maven.licensegen;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.spdx.tools.LicenseRDFAGenerator;
+
+/**
+ * Content addressed cache of generated license data and of validation and test verdicts which
+ * may be shared by any number of builds, for example by builds of different branches on a shared
+ * or network file system.
+ * 
+ * Each entry is stored under the hex encoded hash of all of its inputs together with a
+ * fingerprint of the plugin and the license generator, so an entry never changes once written.
+ * Entries are written to a temporary file or directory in the cache and published by an atomic
+ * rename.  Readers therefore only ever see complete entries and concurrent builds need no locks:
+ * if two builds publish the same entry, the first rename wins and the other build discards its
+ * identical copy.  Failures reading or writing the cache are logged as warnings and the results
+ * are computed instead.
+ * 
+ * Generated license data is cached per license XML file, keyed by the file content and version, and
+ * for the aggregate index files, keyed by the inputs of the aggregate files and the release date - 
+ * only the aggregate table of contents files contain the release date.  The output of each license
+ * is restored on its own, so only licenses without a cached entry are generated.  Missing aggregate
+ * index files are merged from index files cached for each license.
+ * @author Gary O'Neall
+ *
+ */
+class BuildCache {
+	
+	/**
+	 * Version of the cache layout - part of every key
+	 */
+	static final String LAYOUT_VERSION = "2";
+	
+	static final String OUTPUTS = "outputs";
+	static final String VERDICTS = "verdicts";
+	private static final String TEMP = "tmp";
+	
+	private static String fingerprint = null;
+	
+	private final File directory;
+	private final LicenseGenLog log;
+	private final AtomicInteger numHits = new AtomicInteger();
+	private final AtomicInteger numMisses = new AtomicInteger();
+	private final AtomicInteger numPublished = new AtomicInteger();
+	
+	/**
+	 * @param directory cache directory - created if it does not exist
+	 * @param log
+	 */
+	BuildCache(File directory, LicenseGenLog log) {
+		this.directory = directory;
+		this.log = log;
+	}
+	
+	/**
+	 * @param directory cache directory - may be null
+	 * @param log
+	 * @return the cache or null if no cache directory is configured
+	 */
+	static BuildCache open(File directory, LicenseGenLog log) {
+		return directory == null ? null : new BuildCache(directory, log);
+	}
+	
+	/**
+	 * @param parts inputs identifying an entry
+	 * @return key of the entry - a hash of the inputs and of the plugin and generator fingerprint
+	 */
+	static String key(String... parts) {
+		MessageDigest digest = ContentHash.newDigest();
+		digest.update(LAYOUT_VERSION.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte)0);
+		digest.update(fingerprint().getBytes(StandardCharsets.UTF_8));
+		for (String part:parts) {
+			digest.update((byte)0);
+			digest.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+		}
+		return ContentHash.toHex(digest.digest());
+	}
+	
+	/**
+	 * The plugin and license generator versions - a content hash of the jar or class directory of
+	 * each snapshot or unpackaged build is used since the code may change without a change of version
+	 * @return fingerprint of the code producing the cached results
+	 */
+	static synchronized String fingerprint() {
+		if (fingerprint == null) {
+			fingerprint = codeVersion(BuildCache.class, pluginVersion()) + "/" + codeVersion(LicenseRDFAGenerator.class, null);
+		}
+		return fingerprint;
+	}
+	
+	/**
+	 * @return version of this plugin from the packaged Maven properties or null if not packaged
+	 */
+	private static String pluginVersion() {
+		InputStream is = BuildCache.class.getResourceAsStream("/META-INF/maven/org.spdx.maven/licensegen/pom.properties");
+		if (is == null) {
+			return null;
+		}
+		try {
+			Properties properties = new Properties();
+			properties.load(is);
+			return properties.getProperty("version");
+		} catch (IOException e) {
+			return null;
+		} finally {
+			try {
+				is.close();
+			} catch (IOException e) {
+				// Ignore - the version has been read
+			}
+		}
+	}
+	
+	/**
+	 * @param clazz class loaded from the code
+	 * @param version version of the code if known
+	 * @return the version for released code, otherwise the name and a content hash of the jar or of 
+	 * the class directory the class is loaded from.  If the code can not be hashed, a value unique to
+	 * this JVM is returned so that no results of other builds are used.
+	 */
+	private static String codeVersion(Class<?> clazz, String version) {
+		CodeSource codeSource = clazz.getProtectionDomain().getCodeSource();
+		File location = null;
+		if (codeSource != null && codeSource.getLocation() != null) {
+			try {
+				location = new File(codeSource.getLocation().toURI());
+			} catch (URISyntaxException e) {
+				location = null;
+			} catch (IllegalArgumentException e) {
+				location = null;
+			}
+		}
+		if (version != null && !version.endsWith("-SNAPSHOT")) {
+			return version;
+		}
+		try {
+			if (location != null && location.isFile()) {
+				return location.getName() + "@" + ContentHash.of(location);
+			}
+			if (location != null && location.isDirectory()) {
+				return location.getName() + "@" + directoryHash(location.toPath());
+			}
+		} catch (IOException e) {
+			// Fall through - the code can not be identified
+		}
+		return "unidentified@" + UUID.randomUUID().toString();
+	}
+	
+	/**
+	 * @param dir
+	 * @return hash of the relative paths and content of all files in the directory tree
+	 * @throws IOException
+	 */
+	private static String directoryHash(final Path dir) throws IOException {
+		final List<String> relativePaths = new ArrayList<String>();
+		Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+				if (attrs.isRegularFile()) {
+					relativePaths.add(dir.relativize(file).toString().replace(File.separatorChar, '/'));
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		Collections.sort(relativePaths);
+		MessageDigest digest = ContentHash.newDigest();
+		for (String relativePath:relativePaths) {
+			digest.update(relativePath.getBytes(StandardCharsets.UTF_8));
+			digest.update((byte)0);
+			digest.update(ContentHash.of(dir.resolve(relativePath).toFile()).getBytes(StandardCharsets.UTF_8));
+			digest.update((byte)0);
+		}
+		return ContentHash.toHex(digest.digest());
+	}
+	
+	/**
+	 * @param key verdict key
+	 * @return true if a passing verdict has been published for the key
+	 */
+	boolean hasVerdict(String key) {
+		if (entry(VERDICTS, key).isFile()) {
+			numHits.incrementAndGet();
+			return true;
+		}
+		numMisses.incrementAndGet();
+		return false;
+	}
+	
+	/**
+	 * Publish a passing verdict
+	 * @param key verdict key
+	 */
+	void putVerdict(String key) {
+		File target = entry(VERDICTS, key);
+		if (target.isFile()) {
+			return;
+		}
+		Path temp = null;
+		try {
+			temp = Files.createTempFile(tempDirectory(), "verdict", ".tmp");
+			Files.write(temp, "pass\n".getBytes(StandardCharsets.UTF_8));
+			if (publish(temp, target)) {
+				temp = null;
+			}
+		} catch (IOException e) {
+			log.warn("Unable to write build cache entry "+target.getPath()+": "+e.getMessage());
+		} finally {
+			deleteTemp(temp);
+		}
+	}
+	
+	/**
+	 * Copy the files of an output entry to a directory
+	 * @param key output key
+	 * @param target directory the files are copied to
+	 * @return true if the entry exists and was restored
+	 */
+	boolean restore(String key, final Path target) {
+		final Path entry = entry(OUTPUTS, key).toPath();
+		if (!Files.isDirectory(entry)) {
+			numMisses.incrementAndGet();
+			return false;
+		}
+		try {
+			Files.walkFileTree(entry, new SimpleFileVisitor<Path>() {
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+					Path dest = target.resolve(entry.relativize(file).toString());
+					Files.createDirectories(dest.getParent());
+					Files.copy(file, dest, StandardCopyOption.REPLACE_EXISTING);
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		} catch (IOException e) {
+			log.warn("Unable to read build cache entry "+entry.toString()+": "+e.getMessage());
+			numMisses.incrementAndGet();
+			return false;
+		}
+		numHits.incrementAndGet();
+		return true;
+	}
+	
+	/**
+	 * Publish files as an output entry
+	 * @param key output key
+	 * @param source directory containing the files
+	 * @param relativePaths paths of the files relative to the source directory
+	 */
+	void publish(String key, Path source, List<String> relativePaths) {
+		File target = entry(OUTPUTS, key);
+		if (target.isDirectory()) {
+			return;
+		}
+		Path temp = null;
+		try {
+			temp = Files.createTempDirectory(tempDirectory(), "outputs");
+			for (String relativePath:relativePaths) {
+				Path dest = temp.resolve(relativePath);
+				Files.createDirectories(dest.getParent());
+				Files.copy(source.resolve(relativePath), dest);
+			}
+			if (publish(temp, target)) {
+				temp = null;
+			}
+		} catch (IOException e) {
+			log.warn("Unable to write build cache entry "+target.getPath()+": "+e.getMessage());
+		} finally {
+			deleteTemp(temp);
+		}
+	}
+	
+	/**
+	 * Atomically rename a complete temporary file or directory to its entry
+	 * @param temp
+	 * @param target
+	 * @return true if the entry was published by this call
+	 * @throws IOException
+	 */
+	private boolean publish(Path temp, File target) throws IOException {
+		Files.createDirectories(target.getParentFile().toPath());
+		try {
+			Files.move(temp, target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			log.warn("The build cache file system does not support atomic renames - results are not cached: "+e.getMessage());
+			return false;
+		} catch (IOException e) {
+			if (target.exists()) {
+				// Published concurrently by another build - the entries are identical
+				return false;
+			}
+			throw e;
+		}
+		numPublished.incrementAndGet();
+		return true;
+	}
+	
+	/**
+	 * Generate the license data for license XML files, restoring the output of unchanged licenses
+	 * from the cache and publishing the output of the generated licenses.
+	 * 
+	 * Each license missing from the cache is generated on its own so that the aggregate index files
+	 * for just that license can be published with it.  If the aggregate index files for the
+	 * complete license list and release date are not cached, they are merged from the cached index
+	 * files of every license.  The non-table content of the aggregate files including the release
+	 * date is taken from the first index files merged, which are always generated by this call - 
+	 * if no license is missing from the cache, the first license is generated again.
+	 * @param sources all license XML files of the license list
+	 * @param output output directory
+	 * @param version license list version
+	 * @param releaseDate license list release date
+	 * @param log log for the generator warnings
+	 * @throws LicenseGenException if the license data can not be generated
+	 */
+	void generate(List<LicenseSource> sources, File output, String version, String releaseDate, LicenseGenLog log) throws LicenseGenException {
+		List<LicenseSource> missing = new ArrayList<LicenseSource>();
+		for (LicenseSource source:sources) {
+			if (!restore(licenseKey(source, version), output.toPath())) {
+				missing.add(source);
+			}
+		}
+		log.info("Restored the license data for "+(sources.size() - missing.size())+" of "+sources.size()+" license XML files from the build cache");
+		String aggregateKey = aggregateKey(sources, version, releaseDate);
+		boolean aggregateRestored = restore(aggregateKey, output.toPath());
+		if (aggregateRestored && missing.isEmpty()) {
+			return;
+		}
+		if (!aggregateRestored && missing.isEmpty() && !sources.isEmpty()) {
+			missing.add(sources.get(0));
+		}
+		Path stagingDir = null;
+		try {
+			stagingDir = Files.createTempDirectory(tempDirectory(), "generate");
+			List<File> indexDirectories = new ArrayList<File>();
+			Set<LicenseSource> generated = new HashSet<LicenseSource>();
+			for (LicenseSource source:missing) {
+				indexDirectories.add(generateLicense(source, stagingDir.resolve("license-" + indexDirectories.size()), output, version, releaseDate, log));
+				generated.add(source);
+			}
+			if (aggregateRestored) {
+				return;
+			}
+			for (LicenseSource source:sources) {
+				if (generated.contains(source)) {
+					continue;
+				}
+				Path indexDir = Files.createDirectories(stagingDir.resolve("index-" + indexDirectories.size()));
+				if (restore(indexKey(source, version), indexDir)) {
+					indexDirectories.add(indexDir.toFile());
+				} else {
+					indexDirectories.add(generateLicense(source, stagingDir.resolve("license-" + indexDirectories.size()), output, version, releaseDate, log));
+				}
+			}
+			Path aggregateDir = stagingDir.resolve("aggregate");
+			Files.createDirectories(aggregateDir);
+			new ShardMerger(sources, log).merge(indexDirectories, aggregateDir);
+			List<String> aggregateOutputs = listFiles(aggregateDir);
+			copy(aggregateDir, aggregateOutputs, output.toPath());
+			publish(aggregateKey, aggregateDir, aggregateOutputs);
+		} catch (IOException e) {
+			throw new LicenseGenException("IO error generating license data with the build cache: "+e.getMessage(), e);
+		} finally {
+			if (stagingDir != null) {
+				try {
+					IncrementalLicenseGenerator.deleteRecursively(stagingDir);
+				} catch (IOException e) {
+					log.warn("Unable to delete staging directory "+stagingDir.toString()+": "+e.getMessage());
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Generate the license data for a single license XML file in a staging directory, copy the
+	 * license output files to the output directory and publish the license output files and the
+	 * aggregate index files for the license
+	 * @param source license XML file to generate
+	 * @param stagingDir staging directory - must not exist
+	 * @param output output directory
+	 * @param version
+	 * @param releaseDate
+	 * @param log
+	 * @return directory containing only the aggregate index files for the license
+	 * @throws LicenseGenException
+	 * @throws IOException
+	 */
+	private File generateLicense(LicenseSource source, Path stagingDir, File output, 
+			String version, String releaseDate, LicenseGenLog log) throws LicenseGenException, IOException {
+		Path stagingSrc = stagingDir.resolve("src");
+		Path stagingOutput = stagingDir.resolve("output");
+		Files.createDirectories(stagingOutput);
+		Path target = stagingSrc.resolve(source.getRelativePath());
+		Files.createDirectories(target.getParent());
+		Files.copy(source.getFile().toPath(), target);
+		IncrementalLicenseGenerator.generateLicenseData(stagingSrc.toFile(), stagingOutput.toFile(), version, releaseDate, log);
+		List<String> licenseOutputs = IncrementalLicenseGenerator.mapOutputsToSources(stagingOutput.toFile(), 
+				Collections.singletonList(source)).get(source.getRelativePath());
+		copy(stagingOutput, licenseOutputs, output.toPath());
+		publish(licenseKey(source, version), stagingOutput, licenseOutputs);
+		for (String licenseOutput:licenseOutputs) {
+			Files.delete(stagingOutput.resolve(licenseOutput));
+		}
+		publish(indexKey(source, version), stagingOutput, listFiles(stagingOutput));
+		return stagingOutput.toFile();
+	}
+	
+	/**
+	 * @param dir
+	 * @return paths relative to the directory of all files in the directory tree
+	 * @throws IOException
+	 */
+	private static List<String> listFiles(final Path dir) throws IOException {
+		final List<String> relativePaths = new ArrayList<String>();
+		Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+				relativePaths.add(dir.relativize(file).toString().replace(File.separatorChar, '/'));
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		return relativePaths;
+	}
+	
+	private static void copy(Path source, List<String> relativePaths, Path target) throws IOException {
+		for (String relativePath:relativePaths) {
+			Path dest = target.resolve(relativePath);
+			Files.createDirectories(dest.getParent());
+			Files.copy(source.resolve(relativePath), dest, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+	
+	/**
+	 * @param sources all license XML files of the license list
+	 * @param version
+	 * @param releaseDate
+	 * @return key of the aggregate index files for the license list
+	 */
+	static String aggregateKey(List<LicenseSource> sources, String version, String releaseDate) {
+		return key("aggregate", version, releaseDate, IncrementalLicenseGenerator.aggregateHash(version, sources));
+	}
+	
+	/**
+	 * @param source
+	 * @param version
+	 * @return key of the generated license data for a license XML file
+	 */
+	static String licenseKey(LicenseSource source, String version) {
+		return key("license", version, source.getRelativePath(), source.getContentHash());
+	}
+	
+	/**
+	 * @param source
+	 * @param version
+	 * @return key of the aggregate index files generated for a license XML file on its own
+	 */
+	static String indexKey(LicenseSource source, String version) {
+		return key("index", version, source.getRelativePath(), source.getContentHash());
+	}
+	
+	/**
+	 * @param kind OUTPUTS or VERDICTS
+	 * @param key
+	 * @return file or directory of the entry - entries are spread over subdirectories named for the first two characters of the key
+	 */
+	File entry(String kind, String key) {
+		return new File(new File(new File(directory, kind), key.substring(0, 2)), key);
+	}
+	
+	/**
+	 * @return directory for entries being written - in the cache so entries can be renamed into place
+	 * @throws IOException
+	 */
+	private Path tempDirectory() throws IOException {
+		return Files.createDirectories(new File(directory, TEMP).toPath());
+	}
+	
+	private void deleteTemp(Path temp) {
+		if (temp == null) {
+			return;
+		}
+		try {
+			if (Files.isDirectory(temp)) {
+				IncrementalLicenseGenerator.deleteRecursively(temp);
+			} else {
+				Files.deleteIfExists(temp);
+			}
+		} catch (IOException e) {
+			log.warn("Unable to delete temporary build cache file "+temp.toString()+": "+e.getMessage());
+		}
+	}
+	
+	/**
+	 * @return number of entries found in the cache
+	 */
+	int getNumHits() {
+		return numHits.get();
+	}
+	
+	/**
+	 * @return number of entries looked up and not found
+	 */
+	int getNumMisses() {
+		return numMisses.get();
+	}
+	
+	/**
+	 * @return number of entries published by this build
+	 */
+	int getNumPublished() {
+		return numPublished.get();
+	}
+	
+	/**
+	 * Log the number of cache hits, misses and published entries
+	 */
+	void logSummary() {
+		if (numHits.get() > 0 || numMisses.get() > 0 || numPublished.get() > 0) {
+			log.info("Build cache "+directory.getPath()+": "+numHits.get()+" hits, "+numMisses.get()+" misses, "+
+					numPublished.get()+" entries published");
+		}
+	}
+}
@@ -0,0 +1,394 @@
+/**
+ * Copyright (c) 2017 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.spdx.maven.licensegen;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Goal which validates the license XML files, generates the license data and tests the generated
+ * data in a single pass.
+ * 
+ * Each license XML file is read once: the same content is validated, hashed for the validation
+ * cache and summarized for incremental generation.  License data is only generated if all license
+ * XML files are valid.
+ * @author Gary O'Neall
+ *
+ */
+@Mojo( name = "build", defaultPhase = LifecyclePhase.COMPILE )
+public class BuildLicensesMojo extends AbstractMojo {
+	
+    /**
+     * License XML schema file
+     */	
+    @Parameter( defaultValue = "${project.build.sourceDirectory}"+"schema/ListedLicense.xsd", required = true )
+    private File schemaFile;
+    
+    /**
+     * Directory containing the license list XML files
+     */
+    @Parameter( defaultValue = "${project.build.sourceDirectory}", required = true )
+    private File sourceDirectory;
+    
+    /**
+     * Output directory
+     */
+    @Parameter( defaultValue = "${project.build.outputDirectory}", required = true )
+    private File outputDirectory;
+    
+    @Parameter(defaultValue = "${project.version}", required = false)
+    private String licenseListVersion;
+    
+    /**
+     * Directory containing the expected license texts.  If not set, the generated data is not tested.
+     */
+    @Parameter(required = false)
+    private File textCompare;
+    
+    /**
+     * Number of threads used to validate and test the licenses.  If less than 1, the number of available processors is used
+     */
+    @Parameter(defaultValue = "0", required = false)
+    private int threads;
+    
+    /**
+     * File used to cache the content hashes of previously validated license XML files
+     */
+    @Parameter(defaultValue = "${project.build.directory}/licensegen/validation-cache.properties", required = false)
+    private File validationCache;
+    
+    /**
+     * If true, only the license data for license XML files which changed since the last generation
+     * is regenerated
+     */
+    @Parameter(defaultValue = "false", required = false)
+    private boolean incremental;
+    
+    /**
+     * File recording the inputs and outputs of the last generation - used by incremental generation
+     */
+    @Parameter(defaultValue = "${project.build.directory}/licensegen/generate-manifest.properties", required = false)
+    private File generationManifest;
+    
+    /**
+     * If true, stop the build at the first error
+     */
+    @Parameter(defaultValue = "false", required = false)
+    private boolean failFast;
+    
+    /**
+     * Maximum number of errors reported before validation or testing is stopped.  If less than 1, all files are validated and all license texts are tested
+     */
+    @Parameter(defaultValue = "0", required = false)
+    private int maxErrors;
+    
+    /**
+     * File recording the content hashes of the generated output files.  Output files are only
+     * written if their content changed and previously generated files which are no longer generated
+     * are deleted.  A report of the changed files is written to the same directory,
+     * named after the manifest (output-manifest-changes.json by default).
+     */
+    @Parameter(defaultValue = "${project.build.directory}/licensegen/output-manifest.properties", required = false)
+    private File outputManifest;
+    
+    /**
+     * If set, all generated files are also written to this zip archive together with an offset
+     * index (the archive name followed by .index) so the license data can be deployed as one file
+     */
+    @Parameter(property = "licensegen.outputArchive", required = false)
+    private File outputArchive;
+    
+    /**
+     * If true, a gzip compressed sibling (.gz) is written next to each generated text, JSON and HTML
+     * file so web servers can serve precompressed content
+     */
+    @Parameter(defaultValue = "false", property = "licensegen.precompress", required = false)
+    private boolean precompress;
+    
+    /**
+     * Directory of a content addressed cache of generated license data and validation and test
+     * results shared between builds, for example on a shared or network file system.  Results whose
+     * inputs are unchanged are restored from the cache.  If not set, no build cache is used.
+     */
+    @Parameter(property = "licensegen.buildCache", required = false)
+    private File buildCache;
+    
+    /**
+     * Directory for the timing and I/O metrics reports.  Defaults to target/licensegen-metrics - set
+     * skipMetrics to turn the reports off.
+     */
+    @Parameter(defaultValue = "${project.build.directory}/licensegen-metrics", required = false)
+    private File metricsDirectory;
+    
+    /**
+     * If true, no metrics reports are written and metrics are only collected to check a configured metricsBaseline
+     */
+    @Parameter(defaultValue = "false", property = "licensegen.skipMetrics", required = false)
+    private boolean skipMetrics;
+    
+    /**
+     * Number of slowest licenses listed in the metrics summary
+     */
+    @Parameter(defaultValue = "10", required = false)
+    private int metricsTopN;
+    
+    /**
+     * Directory for the SARIF and JUnit XML reports of the errors and warnings found.  Defaults to target/licensegen-diagnostics.
+     */
+    @Parameter(defaultValue = "${project.build.directory}/licensegen-diagnostics", property = "licensegen.diagnosticsDirectory", required = false)
+    private File diagnosticsDirectory;
+    
+    /**
+     * Maximum number of errors and warnings logged - the remaining findings are only counted in
+     * the summary.  If less than 1, all findings are logged.
+     */
+    @Parameter(defaultValue = "20", property = "licensegen.maxConsoleFindings", required = false)
+    private int maxConsoleFindings;
+    
+    /**
+     * Directory for the token level differences between the test texts and the templates or
+     * generated texts they fail to match.  If not set, the differences are not computed.
+     */
+    @Parameter(property = "licensegen.diffDirectory", required = false)
+    private File diffDirectory;
+    
+    /**
+     * Maximum number of differing tokens aligned when computing a difference - larger differences
+     * are reported as a single replacement.  If less than 1, the number of tokens is not limited.
+     */
+    @Parameter(defaultValue = "20000", property = "licensegen.maxDiffTokens", required = false)
+    private int maxDiffTokens;
+    
+    /**
+     * Maximum time in milliseconds spent computing the difference for one test text.  If less than 1, the time is not limited.
+     */
+    @Parameter(defaultValue = "1000", property = "licensegen.maxDiffMillis", required = false)
+    private long maxDiffMillis;
+    
+    /**
+     * File recording the timing of previous runs.  If set, the time of the goal, each phase and each
+     * license is compared to the median of the recorded runs and the run is added to the baseline.
+     */
+    @Parameter(property = "licensegen.metricsBaseline", required = false)
+    private File metricsBaseline;
+    
+    /**
+     * Ratio of a time to its baseline median above which the time is reported as a slowdown
+     */
+    @Parameter(defaultValue = "1.5", property = "licensegen.maxSlowdown", required = false)
+    private double maxSlowdown;
+    
+    /**
+     * If true, the build fails if the goal or any phase is slower than maxSlowdown times its baseline
+     */
+    @Parameter(defaultValue = "false", property = "licensegen.failOnSlowdown", required = false)
+    private boolean failOnSlowdown;
+    
+	/* (non-Javadoc)
+	 * @see org.apache.maven.plugin.Mojo#execute()
+	 */
+	public void execute() throws MojoExecutionException, MojoFailureException {
+		File sf = schemaFile;
+		if (sf == null) {
+			throw new MojoExecutionException("No Schema file was provided in the configuration.  Add a configuration paramater 'schema' to the plugin configuration with a value of the license XML schema file path.");
+		}
+		if (!sf.exists()) {
+			throw new MojoExecutionException("Schema file "+sf.getName()+" does not exist.");
+		}
+		if (!sf.canRead()) {
+			throw new MojoExecutionException("Can not read schema file "+sf.getName());
+		}
+		final File src = sourceDirectory;
+		if (src == null) {
+			throw new MojoExecutionException("No source directory was provided in the configuration.  Add a configuration paramater 'sourceDir' to the plugin configuration with a value of the directory path for the license XML files.");
+		}
+		if (!src.exists() || !src.isDirectory()) {
+			throw new MojoExecutionException("Source directory "+src.getName()+" does not exist.");
+		}
+		File output = outputDirectory;
+		if (outputDirectory == null) {
+			throw new MojoExecutionException("No output directory was provided in the configuration.  Add a configuration paramater 'outputDir' to the plugin configuration with a value of the directory path for the license XML files.");
+		}
+		if (!output.exists() || !output.isDirectory()) {
+			throw new MojoExecutionException("Output directory "+output.getName()+" does not exist.");
+		}
+		if (textCompare != null && textCompare.exists() && !textCompare.isDirectory()) {
+			throw new MojoExecutionException("Test directory "+textCompare.getName()+" is not a directory.");
+		}
+		String version;
+		if (licenseListVersion == null || licenseListVersion.trim().isEmpty()) {
+			version = "UNKNOWN";
+		} else {
+			version = licenseListVersion;
+		}
+		String releaseDate = new SimpleDateFormat("dd-MM-yyyy").format(new Date());
+		int numThreads = WorkerPool.resolveThreads(threads);
+		LicenseGenLog log = MojoAdapter.log(getLog());
+		File metricsDir = skipMetrics ? null : metricsDirectory;
+		BuildMetrics metrics = new BuildMetrics("build", metricsDir != null || metricsBaseline != null);
+		
+		// Validate
+		LicenseGenEngine engine;
+		try {
+			engine = new LicenseGenEngine(sf, metrics);
+		} catch (LicenseGenException e) {
+			this.getLog().error(e.getMessage(),e.getCause());
+			throw(new MojoExecutionException(e.getMessage(),e.getCause()));
+		}
+		BuildCache sharedCache = BuildCache.open(buildCache, log);
+		engine.setBuildCache(sharedCache);
+		try {
+			Diagnostics diagnostics = new Diagnostics("build", log, maxConsoleFindings, diagnosticsDirectory);
+			try {
+				ValidationCache cache = loadValidationCache(sf);
+				List<LicenseSource> sources = validateSources(src, engine.newValidator(cache, metrics), numThreads, 
+						ErrorLimit.of(failFast, maxErrors), diagnostics);
+				if (cache != null) {
+					try {
+						cache.store();
+					} catch (IOException e) {
+						this.getLog().warn("Unable to write validation cache "+validationCache.getName()+": "+e.getMessage());
+					}
+				}
+				if (sources == null) {
+					metrics.report(metricsDir, metricsTopN, log);
+					throw new MojoFailureException("Source directory contains one or more invalid license XML files");
+				}
+		
+				// Generate
+				engine.generate(src, sources, Collections.singletonList(new VersionTarget(version, output, generationManifest, outputManifest)), 
+						Shard.ALL, incremental, OutputFormats.ALL, releaseDate, metrics, diagnostics.asLog("generate"));
+		
+				// Package
+				engine.bundle(output, precompress, outputArchive, metrics, log);
+		
+				// Test - the license generator only writes files, so the generated templates and texts
+				// are read back from the output directory just written
+				int numErrors = 0;
+				if (textCompare != null && textCompare.exists()) {
+					numErrors = engine.newTester(output, numThreads, metrics, ErrorLimit.of(failFast, maxErrors), 
+							DiffReporter.of(diffDirectory, maxDiffTokens, maxDiffMillis)).testAll(textCompare, diagnostics);
+				} else {
+					this.getLog().info("No textCompare directory specified in configuration - generated license data was not tested");
+				}
+				metrics.report(metricsDir, metricsTopN, log);
+				MetricsBaseline.check(metricsBaseline, metrics, maxSlowdown, failOnSlowdown, getLog());
+				if (numErrors > 0) {
+					throw new MojoFailureException("Errors found testing generated licenses files against expected license text");
+				}
+			} finally {
+				diagnostics.close();
+				if (sharedCache != null) {
+					sharedCache.logSummary();
+				}
+			}
+		} catch (LicenseGenException e) {
+			MojoAdapter.rethrow(e);
+		}
+	}
+	
+	/**
+	 * Read, validate and summarize all license XML files in the source directory.  Each file is
+	 * read once and the content is shared by the validation and the summary.  Validation stops
+	 * once the error limit is reached.
+	 * @param src source directory
+	 * @param validator
+	 * @param numThreads
+	 * @param limit error limit
+	 * @param diagnostics sink for the validation errors
+	 * @return the license sources in path order or null if any file is invalid
+	 * @throws LicenseGenException
+	 */
+	private List<LicenseSource> validateSources(final File src, final LicenseValidator validator, 
+			int numThreads, final ErrorLimit limit, Diagnostics diagnostics) throws LicenseGenException {
+		List<File> xmlFiles = new ArrayList<File>();
+		LicenseSource.collectXmlFiles(src, xmlFiles);
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(xmlFiles.size());
+		for (final File xmlFile:xmlFiles) {
+			tasks.add(new Callable<Object>() {
+				@Override
+				public Object call() {
+					byte[] content;
+					try {
+						content = Files.readAllBytes(xmlFile.toPath());
+					} catch (IOException e) {
+						limit.recordErrors(1);
+						return LicenseValidator.finding(src, xmlFile, 0, 0, "IO Error reading "+xmlFile.getName()+": "+e.getMessage());
+					}
+					Diagnostics.Finding error = validator.check(src, xmlFile, content);
+					if (error != null) {
+						limit.recordErrors(1);
+						return error;
+					}
+					try {
+						return LicenseSource.read(src, xmlFile, content);
+					} catch (IOException e) {
+						return LicenseValidator.finding(src, xmlFile, 0, 0, e.getMessage());
+					}
+				}
+			});
+		}
+		List<Object> results = WorkerPool.invokeAll(tasks, numThreads, limit);
+		if (validator.getNumSkipped() > 0) {
+			this.getLog().info("Skipped validation of "+validator.getNumSkipped()+" unchanged license XML files which were previously validated");
+		}
+		List<LicenseSource> sources = new ArrayList<LicenseSource>(results.size());
+		boolean valid = true;
+		for (Object result:results) {
+			if (result instanceof LicenseSource) {
+				sources.add((LicenseSource)result);
+			} else {
+				diagnostics.report((Diagnostics.Finding)result);
+				valid = false;
+			}
+		}
+		if (limit.isReached() && results.size() < xmlFiles.size()) {
+			diagnostics.getLog().error("Stopped after reaching the limit of "+limit.getMaxErrors()+" errors: checked "+
+					results.size()+" of "+xmlFiles.size()+" license XML files");
+		}
+		return valid ? sources : null;
+	}
+	
+	/**
+	 * @param sf schema file
+	 * @return the validation cache or null if no cache is configured or it can not be read
+	 */
+	private ValidationCache loadValidationCache(File sf) {
+		if (validationCache == null) {
+			return null;
+		}
+		try {
+			return new ValidationCache(validationCache, ContentHash.of(sf));
+		} catch (IOException e) {
+			this.getLog().warn("Unable to read validation cache "+validationCache.getName()+" - all files will be validated: "+e.getMessage());
+			return null;
+		}
+	}
+}
@@ -0,0 +1,353 @@
+/**
+ * Copyright (c) 2017 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.spdx.maven.licensegen;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Collects timing and I/O measurements for the phases of a licensegen goal.
+ * 
+ * Each measurement records the phase (e.g. schema-compile, validate, template-parse), the item
+ * measured (usually a license file name) the elapsed time and the number of bytes read and written.
+ * Measurements may be recorded concurrently from worker threads.  The collected measurements are
+ * written as JSON and CSV reports and summarized in the log.
+ * @author Gary O'Neall
+ *
+ */
+class BuildMetrics {
+	
+	/**
+	 * Item name used for measurements covering all files of a phase
+	 */
+	static final String ALL_ITEMS = "*";
+	
+	/**
+	 * A single measurement
+	 */
+	static class Measurement {
+		final String phase;
+		final String item;
+		final long nanos;
+		final long bytesRead;
+		final long bytesWritten;
+		
+		Measurement(String phase, String item, long nanos, long bytesRead, long bytesWritten) {
+			this.phase = phase;
+			this.item = item;
+			this.nanos = nanos;
+			this.bytesRead = bytesRead;
+			this.bytesWritten = bytesWritten;
+		}
+	}
+	
+	/**
+	 * Totals for a phase or an item
+	 */
+	static class Total {
+		int count = 0;
+		long nanos = 0;
+		long bytesRead = 0;
+		long bytesWritten = 0;
+		
+		void add(Measurement measurement) {
+			count++;
+			nanos += measurement.nanos;
+			bytesRead += measurement.bytesRead;
+			bytesWritten += measurement.bytesWritten;
+		}
+	}
+	
+	private final String goal;
+	private final boolean enabled;
+	private final long startNanos;
+	private final ConcurrentLinkedQueue<Measurement> measurements = new ConcurrentLinkedQueue<Measurement>();
+	
+	/**
+	 * @param goal name of the goal being measured
+	 * @param enabled if false, no measurements are recorded
+	 */
+	BuildMetrics(String goal, boolean enabled) {
+		this.goal = goal;
+		this.enabled = enabled;
+		this.startNanos = System.nanoTime();
+	}
+	
+	/**
+	 * @return true if measurements are recorded
+	 */
+	boolean isEnabled() {
+		return enabled;
+	}
+	
+	/**
+	 * Record a measurement which started at startNanos and ends now
+	 * @param phase
+	 * @param item
+	 * @param startNanos value of <code>System.nanoTime()</code> at the start of the measurement
+	 * @param bytesRead
+	 * @param bytesWritten
+	 */
+	void record(String phase, String item, long startNanos, long bytesRead, long bytesWritten) {
+		if (enabled) {
+			measurements.add(new Measurement(phase, item, System.nanoTime() - startNanos, bytesRead, bytesWritten));
+		}
+	}
+	
+	/**
+	 * Record a measurement which started at startNanos and ends now
+	 * @param phase
+	 * @param item
+	 * @param startNanos value of <code>System.nanoTime()</code> at the start of the measurement
+	 */
+	void record(String phase, String item, long startNanos) {
+		record(phase, item, startNanos, 0, 0);
+	}
+	
+	/**
+	 * Record the number of files and bytes in each output format directory (the top level
+	 * directories of the output directory) as an "output-[format]" phase
+	 * @param outputDir directory containing generated license data
+	 */
+	void recordOutputSizes(File outputDir) {
+		if (!enabled) {
+			return;
+		}
+		File[] formatDirs = outputDir.listFiles();
+		if (formatDirs == null) {
+			return;
+		}
+		Arrays.sort(formatDirs);
+		for (File formatDir:formatDirs) {
+			if (formatDir.isDirectory()) {
+				final long[] bytes = new long[] {0};
+				try {
+					Files.walkFileTree(formatDir.toPath(), new SimpleFileVisitor<Path>() {
+						@Override
+						public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+							bytes[0] += attrs.size();
+							return FileVisitResult.CONTINUE;
+						}
+					});
+				} catch (IOException e) {
+					// Sizes are informational only
+				}
+				measurements.add(new Measurement("output-" + formatDir.getName(), ALL_ITEMS, 0, 0, bytes[0]));
+			}
+		}
+	}
+	
+	/**
+	 * @return name of the goal being measured
+	 */
+	String getGoal() {
+		return goal;
+	}
+	
+	/**
+	 * @return nanoseconds elapsed since the metrics were created
+	 */
+	long getElapsedNanos() {
+		return System.nanoTime() - startNanos;
+	}
+	
+	/**
+	 * @return all measurements recorded so far
+	 */
+	List<Measurement> getMeasurements() {
+		return new ArrayList<Measurement>(measurements);
+	}
+	
+	/**
+	 * @return totals by phase in phase name order
+	 */
+	Map<String, Total> phaseTotals() {
+		Map<String, Total> retval = new TreeMap<String, Total>();
+		for (Measurement measurement:measurements) {
+			Total total = retval.get(measurement.phase);
+			if (total == null) {
+				total = new Total();
+				retval.put(measurement.phase, total);
+			}
+			total.add(measurement);
+		}
+		return retval;
+	}
+	
+	/**
+	 * @param n maximum number of items to return
+	 * @return the n items with the largest total time over all phases, slowest first
+	 */
+	List<Entry<String, Total>> slowestItems(int n) {
+		Map<String, Total> totals = new TreeMap<String, Total>();
+		for (Measurement measurement:measurements) {
+			if (ALL_ITEMS.equals(measurement.item)) {
+				continue;
+			}
+			Total total = totals.get(measurement.item);
+			if (total == null) {
+				total = new Total();
+				totals.put(measurement.item, total);
+			}
+			total.add(measurement);
+		}
+		List<Entry<String, Total>> retval = new ArrayList<Entry<String, Total>>(totals.entrySet());
+		Collections.sort(retval, new Comparator<Entry<String, Total>>() {
+			@Override
+			public int compare(Entry<String, Total> o1, Entry<String, Total> o2) {
+				return Long.compare(o2.getValue().nanos, o1.getValue().nanos);
+			}
+		});
+		return retval.size() > n ? retval.subList(0, n) : retval;
+	}
+	
+	/**
+	 * Write the JSON and CSV reports to the directory and log a summary.  Errors writing the
+	 * reports are logged as warnings.
+	 * @param reportDir directory for the reports - if null, only the summary is logged
+	 * @param topN number of slowest items to include in the summary
+	 * @param log
+	 */
+	void report(File reportDir, int topN, LicenseGenLog log) {
+		if (!enabled) {
+			return;
+		}
+		if (reportDir != null) {
+			try {
+				if (!reportDir.exists() && !reportDir.mkdirs()) {
+					throw new IOException("Unable to create metrics directory "+reportDir.getPath());
+				}
+				writeJson(new File(reportDir, goal + "-metrics.json"));
+				writeCsv(new File(reportDir, goal + "-metrics.csv"));
+			} catch (IOException e) {
+				log.warn("Unable to write licensegen metrics report: "+e.getMessage());
+			}
+		}
+		log.info("Licensegen "+goal+" completed in "+millis(System.nanoTime() - startNanos)+"ms");
+		for (Entry<String, Total> phase:phaseTotals().entrySet()) {
+			Total total = phase.getValue();
+			log.info("  "+phase.getKey()+": "+total.count+" items, "+millis(total.nanos)+"ms, "+
+					total.bytesRead+" bytes read, "+total.bytesWritten+" bytes written");
+		}
+		List<Entry<String, Total>> slowest = slowestItems(topN);
+		if (!slowest.isEmpty()) {
+			log.info("Slowest "+slowest.size()+" items:");
+			for (Entry<String, Total> item:slowest) {
+				log.info("  "+item.getKey()+": "+millis(item.getValue().nanos)+"ms");
+			}
+		}
+	}
+	
+	private void writeJson(File file) throws IOException {
+		PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+		try {
+			writer.println("{");
+			writer.println("  \"goal\": "+jsonString(goal)+",");
+			writer.println("  \"totalMillis\": "+millis(System.nanoTime() - startNanos)+",");
+			writer.println("  \"phases\": [");
+			boolean first = true;
+			for (Entry<String, Total> phase:phaseTotals().entrySet()) {
+				if (!first) {
+					writer.println(",");
+				}
+				first = false;
+				Total total = phase.getValue();
+				writer.print("    {\"phase\": "+jsonString(phase.getKey())+", \"count\": "+total.count+
+						", \"millis\": "+millis(total.nanos)+", \"bytesRead\": "+total.bytesRead+
+						", \"bytesWritten\": "+total.bytesWritten+"}");
+			}
+			writer.println();
+			writer.println("  ],");
+			writer.println("  \"measurements\": [");
+			first = true;
+			for (Measurement measurement:measurements) {
+				if (!first) {
+					writer.println(",");
+				}
+				first = false;
+				writer.print("    {\"phase\": "+jsonString(measurement.phase)+", \"item\": "+jsonString(measurement.item)+
+						", \"millis\": "+millis(measurement.nanos)+", \"bytesRead\": "+measurement.bytesRead+
+						", \"bytesWritten\": "+measurement.bytesWritten+"}");
+			}
+			writer.println();
+			writer.println("  ]");
+			writer.println("}");
+		} finally {
+			writer.close();
+		}
+	}
+	
+	private void writeCsv(File file) throws IOException {
+		PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+		try {
+			writer.println("phase,item,millis,bytesRead,bytesWritten");
+			for (Measurement measurement:measurements) {
+				writer.println(csvString(measurement.phase)+","+csvString(measurement.item)+","+
+						millis(measurement.nanos)+","+measurement.bytesRead+","+measurement.bytesWritten);
+			}
+		} finally {
+			writer.close();
+		}
+	}
+	
+	static String millis(long nanos) {
+		return String.format(Locale.ROOT, "%.3f", nanos / 1000000.0);
+	}
+	
+	static String jsonString(String value) {
+		StringBuilder sb = new StringBuilder(value.length() + 2);
+		sb.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				sb.append('\\');
+				sb.append(c);
+			} else if (c < 0x20) {
+				sb.append(String.format("\\u%04x", (int)c));
+			} else {
+				sb.append(c);
+			}
+		}
+		sb.append('"');
+		return sb.toString();
+	}
+	
+	static String csvString(String value) {
+		if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+			return value;
+		}
+		return "\"" + value.replace("\"", "\"\"") + "\"";
+	}
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright (c) 2017 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.spdx.maven.licensegen;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256 content hashes used to detect changed files
+ * @author Gary O'Neall
+ *
+ */
+final class ContentHash {
+	
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+	
+	private ContentHash() {
+		// Static helper only
+	}
+	
+	/**
+	 * @return a new SHA-256 message digest
+	 */
+	static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not supported by this JVM", e);
+		}
+	}
+	
+	/**
+	 * @param file
+	 * @return hex encoded SHA-256 of the file content
+	 * @throws IOException
+	 */
+	static String of(File file) throws IOException {
+		MessageDigest digest = newDigest();
+		byte[] buffer = new byte[8192];
+		InputStream is = new FileInputStream(file);
+		try {
+			int len;
+			while ((len = is.read(buffer)) > 0) {
+				digest.update(buffer, 0, len);
+			}
+		} finally {
+			is.close();
+		}
+		return toHex(digest.digest());
+	}
+	
+	/**
+	 * @param bytes
+	 * @return hex encoded SHA-256 of the bytes
+	 */
+	static String of(byte[] bytes) {
+		return toHex(newDigest().digest(bytes));
+	}
+	
+	/**
+	 * @param bytes
+	 * @return lower case hex encoding of the bytes
+	 */
+	static String toHex(byte[] bytes) {
+		char[] retval = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			retval[i*2] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+			retval[i*2+1] = HEX_DIGITS[bytes[i] & 0xF];
+		}
+		return new String(retval);
+	}
+}
@@ -0,0 +1,471 @@
+/**
+ * Copyright (c) 2017 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.spdx.maven.licensegen;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Collects the errors and warnings found by a licensegen goal.
+ * 
+ * Each finding records the severity, the rule (the check which produced it), the file, line,
+ * column and license ID where known and the message.  Repeated findings are reported once.  Only
+ * the first findings are logged - the remaining findings are counted in a summary so a broken
+ * branch does not flood the console.  If a report directory is configured, all findings are
+ * written by a background thread as a SARIF log and a JUnit XML report which CI servers can
+ * read directly.
+ * @author Gary O'Neall
+ *
+ */
+class Diagnostics {
+	
+	enum Severity {
+		ERROR("error"), WARNING("warning");
+		
+		private final String level;
+		
+		private Severity(String level) {
+			this.level = level;
+		}
+		
+		/**
+		 * @return SARIF level of the severity
+		 */
+		String getLevel() {
+			return level;
+		}
+	}
+	
+	/**
+	 * A single error or warning
+	 */
+	static final class Finding {
+		final Severity severity;
+		final String rule;
+		final String file;
+		final int line;
+		final int column;
+		final String licenseId;
+		final String message;
+		
+		/**
+		 * @param severity
+		 * @param rule check which found the problem (e.g. validate, test, generate)
+		 * @param file path of the file the finding applies to - may be null
+		 * @param line line number starting at 1 - 0 if not known
+		 * @param column column number starting at 1 - 0 if not known
+		 * @param licenseId ID of the license the finding applies to - may be null
+		 * @param message
+		 */
+		Finding(Severity severity, String rule, String file, int line, int column, String licenseId, String message) {
+			this.severity = severity;
+			this.rule = rule;
+			this.file = file;
+			this.line = line;
+			this.column = column;
+			this.licenseId = licenseId;
+			this.message = message;
+		}
+		
+		String getMessage() {
+			return message;
+		}
+		
+		/**
+		 * @return key identifying repeated findings
+		 */
+		String key() {
+			return severity + "\u0000" + rule + "\u0000" + file + "\u0000" + line + "\u0000" + column + "\u0000" + licenseId + "\u0000" + message;
+		}
+	}
+	
+	/**
+	 * Marks the end of the findings for the report writer
+	 */
+	private static final Finding END_OF_FINDINGS = new Finding(Severity.ERROR, "", null, 0, 0, null, "");
+	
+	private final String goal;
+	private final LicenseGenLog log;
+	private final int maxConsoleFindings;
+	private final File reportDirectory;
+	private final Set<String> reported = Collections.synchronizedSet(new HashSet<String>());
+	private final AtomicInteger numErrors = new AtomicInteger();
+	private final AtomicInteger numWarnings = new AtomicInteger();
+	private final AtomicInteger numDuplicates = new AtomicInteger();
+	private final AtomicInteger numLogged = new AtomicInteger();
+	private final BlockingQueue<Finding> queue = new LinkedBlockingQueue<Finding>();
+	private Thread reportWriter = null;
+	private Path sarifResults = null;
+	private Path junitTestCases = null;
+	private volatile IOException reportError = null;
+	
+	/**
+	 * @param goal name of the goal
+	 * @param log log for the findings and the summary
+	 * @param maxConsoleFindings maximum number of findings logged - if less than 1, all findings are logged
+	 * @param reportDirectory directory for the SARIF and JUnit XML reports - if null, no reports are written
+	 * @throws LicenseGenException if the report directory can not be created
+	 */
+	Diagnostics(String goal, LicenseGenLog log, int maxConsoleFindings, File reportDirectory) throws LicenseGenException {
+		this.goal = goal;
+		this.log = log;
+		this.maxConsoleFindings = maxConsoleFindings;
+		this.reportDirectory = reportDirectory;
+		if (reportDirectory != null) {
+			try {
+				Files.createDirectories(reportDirectory.toPath());
+				sarifResults = Files.createTempFile(reportDirectory.toPath(), goal, ".sarif.tmp");
+				junitTestCases = Files.createTempFile(reportDirectory.toPath(), goal, ".xml.tmp");
+			} catch (IOException e) {
+				throw new LicenseGenException("Unable to create diagnostics directory "+reportDirectory.getName()+": "+e.getMessage(), e);
+			}
+			reportWriter = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					writeFindings();
+				}
+			}, "licensegen-diagnostics");
+			reportWriter.setDaemon(true);
+			reportWriter.start();
+		}
+	}
+	
+	/**
+	 * @return log the findings are logged to
+	 */
+	LicenseGenLog getLog() {
+		return log;
+	}
+	
+	/**
+	 * Report an error
+	 * @param rule check which found the problem
+	 * @param file path of the file - may be null
+	 * @param line line number - 0 if not known
+	 * @param column column number - 0 if not known
+	 * @param licenseId license ID - may be null
+	 * @param message
+	 */
+	void error(String rule, String file, int line, int column, String licenseId, String message) {
+		report(new Finding(Severity.ERROR, rule, file, line, column, licenseId, message));
+	}
+	
+	/**
+	 * Report a warning
+	 * @param rule check which found the problem
+	 * @param file path of the file - may be null
+	 * @param licenseId license ID - may be null
+	 * @param message
+	 */
+	void warning(String rule, String file, String licenseId, String message) {
+		report(new Finding(Severity.WARNING, rule, file, 0, 0, licenseId, message));
+	}
+	
+	/**
+	 * Record a finding.  Repeated findings are only counted.  May be called from any thread.
+	 * @param finding
+	 */
+	void report(Finding finding) {
+		if (!reported.add(finding.key())) {
+			numDuplicates.incrementAndGet();
+			return;
+		}
+		if (finding.severity == Severity.ERROR) {
+			numErrors.incrementAndGet();
+		} else {
+			numWarnings.incrementAndGet();
+		}
+		if (maxConsoleFindings < 1 || numLogged.incrementAndGet() <= maxConsoleFindings) {
+			synchronized (log) {
+				if (finding.severity == Severity.ERROR) {
+					log.error(finding.message);
+				} else {
+					log.warn(finding.message);
+				}
+			}
+		}
+		if (reportWriter != null) {
+			queue.add(finding);
+		}
+	}
+	
+	/**
+	 * @return number of distinct errors reported
+	 */
+	int getNumErrors() {
+		return numErrors.get();
+	}
+	
+	/**
+	 * @return number of distinct warnings reported
+	 */
+	int getNumWarnings() {
+		return numWarnings.get();
+	}
+	
+	/**
+	 * @return number of repeated findings which were not reported again
+	 */
+	int getNumDuplicates() {
+		return numDuplicates.get();
+	}
+	
+	/**
+	 * @param rule rule for the warnings logged to the returned log
+	 * @return log which reports warnings as findings and passes all other messages to the log
+	 */
+	LicenseGenLog asLog(String rule) {
+		return new DiagnosticsLog(rule);
+	}
+	
+	/**
+	 * Wait for the report writer, write the SARIF and JUnit XML reports and log a summary.  Errors
+	 * writing the reports are logged as warnings.
+	 */
+	void close() {
+		int numFindings = numErrors.get() + numWarnings.get();
+		if (reportWriter != null) {
+			queue.add(END_OF_FINDINGS);
+			try {
+				reportWriter.join();
+				if (reportError != null) {
+					throw reportError;
+				}
+				writeReports();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				log.warn("Interrupted writing the licensegen diagnostics reports");
+			} catch (IOException e) {
+				log.warn("Unable to write licensegen diagnostics reports: "+e.getMessage());
+			} finally {
+				try {
+					Files.deleteIfExists(sarifResults);
+					Files.deleteIfExists(junitTestCases);
+				} catch (IOException e) {
+					log.warn("Unable to delete temporary diagnostics files: "+e.getMessage());
+				}
+			}
+		}
+		if (numFindings == 0 && numDuplicates.get() == 0) {
+			return;
+		}
+		StringBuilder summary = new StringBuilder("Licensegen ");
+		summary.append(goal).append(": ").append(numErrors.get()).append(" errors, ");
+		summary.append(numWarnings.get()).append(" warnings");
+		if (numDuplicates.get() > 0) {
+			summary.append(", ").append(numDuplicates.get()).append(" repeated findings not reported");
+		}
+		if (maxConsoleFindings >= 1 && numFindings > maxConsoleFindings) {
+			summary.append(", ").append(numFindings - maxConsoleFindings).append(" findings not logged");
+		}
+		if (reportDirectory != null) {
+			summary.append(" - see ").append(sarifFile().getPath());
+		}
+		if (numErrors.get() > 0) {
+			log.error(summary.toString());
+		} else {
+			log.warn(summary.toString());
+		}
+	}
+	
+	/**
+	 * @return SARIF report file
+	 */
+	File sarifFile() {
+		return new File(reportDirectory, goal + "-diagnostics.sarif");
+	}
+	
+	/**
+	 * @return JUnit XML report file
+	 */
+	File junitFile() {
+		return new File(reportDirectory, "TEST-licensegen-" + goal + ".xml");
+	}
+	
+	/**
+	 * Write the findings from the queue as SARIF results and JUnit test cases until the end of
+	 * the findings.  Runs on the report writer thread.
+	 */
+	private void writeFindings() {
+		Writer sarif = null;
+		Writer junit = null;
+		try {
+			sarif = new OutputStreamWriter(Files.newOutputStream(sarifResults), StandardCharsets.UTF_8);
+			junit = new OutputStreamWriter(Files.newOutputStream(junitTestCases), StandardCharsets.UTF_8);
+			boolean first = true;
+			Finding finding = queue.take();
+			while (finding != END_OF_FINDINGS) {
+				if (!first) {
+					sarif.write(",\n");
+				}
+				first = false;
+				writeSarifResult(sarif, finding);
+				writeJunitTestCase(junit, finding);
+				finding = queue.take();
+			}
+		} catch (IOException e) {
+			reportError = e;
+		} catch (InterruptedException e) {
+			reportError = new IOException("Interrupted writing findings");
+		} finally {
+			try {
+				if (sarif != null) {
+					sarif.close();
+				}
+				if (junit != null) {
+					junit.close();
+				}
+			} catch (IOException e) {
+				reportError = e;
+			}
+		}
+	}
+	
+	private static void writeSarifResult(Writer writer, Finding finding) throws IOException {
+		writer.write("        {\"ruleId\": " + BuildMetrics.jsonString(finding.rule) + 
+				", \"level\": " + BuildMetrics.jsonString(finding.severity.getLevel()) + 
+				", \"message\": {\"text\": " + BuildMetrics.jsonString(finding.message) + "}");
+		if (finding.file != null) {
+			writer.write(", \"locations\": [{\"physicalLocation\": {\"artifactLocation\": {\"uri\": " + 
+					BuildMetrics.jsonString(finding.file) + "}");
+			if (finding.line > 0) {
+				writer.write(", \"region\": {\"startLine\": " + finding.line);
+				if (finding.column > 0) {
+					writer.write(", \"startColumn\": " + finding.column);
+				}
+				writer.write("}");
+			}
+			writer.write("}}]");
+		}
+		if (finding.licenseId != null) {
+			writer.write(", \"properties\": {\"licenseId\": " + BuildMetrics.jsonString(finding.licenseId) + "}");
+		}
+		writer.write("}");
+	}
+	
+	private void writeJunitTestCase(Writer writer, Finding finding) throws IOException {
+		StringBuilder name = new StringBuilder();
+		name.append(finding.licenseId != null ? finding.licenseId : finding.file != null ? finding.file : finding.rule);
+		if (finding.line > 0) {
+			name.append(':').append(finding.line);
+			if (finding.column > 0) {
+				name.append(':').append(finding.column);
+			}
+		}
+		writer.write("  <testcase classname=\"" + xmlString("licensegen." + goal + "." + finding.rule) + 
+				"\" name=\"" + xmlString(name.toString()) + "\">\n");
+		if (finding.severity == Severity.ERROR) {
+			writer.write("    <failure type=\"error\" message=\"" + xmlString(finding.message) + "\">" + 
+					xmlString(finding.file != null ? finding.file + ": " + finding.message : finding.message) + "</failure>\n");
+		} else {
+			writer.write("    <system-out>" + xmlString("warning: " + finding.message) + "</system-out>\n");
+		}
+		writer.write("  </testcase>\n");
+	}
+	
+	/**
+	 * Write the report files from the findings written by the report writer
+	 * @throws IOException
+	 */
+	private void writeReports() throws IOException {
+		OutputStream os = Files.newOutputStream(sarifFile().toPath());
+		try {
+			Writer writer = new OutputStreamWriter(os, StandardCharsets.UTF_8);
+			writer.write("{\n  \"$schema\": \"https://json.schemastore.org/sarif-2.1.0.json\",\n  \"version\": \"2.1.0\",\n");
+			writer.write("  \"runs\": [{\n    \"tool\": {\"driver\": {\"name\": \"licensegen\"}},\n");
+			writer.write("    \"properties\": {\"goal\": " + BuildMetrics.jsonString(goal) + "},\n");
+			writer.write("    \"results\": [\n");
+			writer.flush();
+			Files.copy(sarifResults, os);
+			writer.write("\n    ]\n  }]\n}\n");
+			writer.flush();
+		} finally {
+			os.close();
+		}
+		os = Files.newOutputStream(junitFile().toPath());
+		try {
+			Writer writer = new OutputStreamWriter(os, StandardCharsets.UTF_8);
+			writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+			writer.write("<testsuite name=\"" + xmlString("licensegen." + goal) + "\" tests=\"" + 
+					(numErrors.get() + numWarnings.get()) + "\" failures=\"" + numErrors.get() + "\" errors=\"0\" skipped=\"0\">\n");
+			writer.flush();
+			Files.copy(junitTestCases, os);
+			writer.write("</testsuite>\n");
+			writer.flush();
+		} finally {
+			os.close();
+		}
+	}
+	
+	static String xmlString(String value) {
+		StringBuilder sb = new StringBuilder(value.length());
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '<') {
+				sb.append("&lt;");
+			} else if (c == '>') {
+				sb.append("&gt;");
+			} else if (c == '&') {
+				sb.append("&amp;");
+			} else if (c == '"') {
+				sb.append("&quot;");
+			} else if (c < 0x20 && c != '\n' && c != '\t' && c != '\r') {
+				sb.append(' ');
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * Log which reports warnings as findings
+	 */
+	private class DiagnosticsLog implements LicenseGenLog {
+		private final String rule;
+		
+		DiagnosticsLog(String rule) {
+			this.rule = rule;
+		}
+
+		@Override
+		public void info(String message) {
+			log.info(message);
+		}
+
+		@Override
+		public void warn(String message) {
+			warning(rule, null, null, message);
+		}
+
+		@Override
+		public void error(String message) {
+			log.error(message);
+		}
+	}
+}
@@ -0,0 +1,182 @@
+/**
+ * Copyright (c) 2017 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.spdx.maven.licensegen;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * Explains failed license text comparisons by writing the token level difference between the
+ * template or generated text and the test text to a report file per license and test text.
+ * The difference is only computed for texts which failed to match.
+ * @author Gary O'Neall
+ *
+ */
+class DiffReporter {
+	
+	/**
+	 * Number of equal tokens shown before and after each difference
+	 */
+	static final int CONTEXT_TOKENS = 8;
+	
+	/**
+	 * Maximum number of tokens of each side of the first difference included in the error message
+	 */
+	private static final int MESSAGE_TOKENS = 6;
+	
+	private final File directory;
+	private final int maxTokens;
+	private final long maxMillis;
+	
+	/**
+	 * @param directory directory for the difference reports
+	 * @param maxTokens maximum number of differing tokens aligned - unlimited if less than 1
+	 * @param maxMillis maximum time in milliseconds spent aligning the tokens of one text - unlimited if less than 1
+	 */
+	DiffReporter(File directory, int maxTokens, long maxMillis) {
+		this.directory = directory;
+		this.maxTokens = maxTokens;
+		this.maxMillis = maxMillis;
+	}
+	
+	/**
+	 * @param directory directory for the difference reports - if null, no differences are reported
+	 * @param maxTokens maximum number of differing tokens aligned - unlimited if less than 1
+	 * @param maxMillis maximum time in milliseconds spent aligning the tokens of one text - unlimited if less than 1
+	 * @return the reporter for the plugin configuration or null if no differences are reported
+	 */
+	static DiffReporter of(File directory, int maxTokens, long maxMillis) {
+		return directory == null ? null : new DiffReporter(directory, maxTokens, maxMillis);
+	}
+	
+	/**
+	 * Compute and report the difference for a failed comparison
+	 * @param licenseName
+	 * @param textFile test text file
+	 * @param kind "template" or "text" - the kind of the expected tokens
+	 * @param expected canonical tokens of the template or generated text
+	 * @param text canonical tokens of the test text
+	 * @return description of the first difference including the report file
+	 * @throws LicenseGenException if the report can not be written
+	 */
+	String explain(String licenseName, File textFile, String kind, List<String> expected, List<String> text) throws LicenseGenException {
+		TextDiff diff = new TextDiff(expected, text, maxTokens, maxMillis);
+		List<TextDiff.Hunk> divergences = diff.getDivergences();
+		File reportFile = reportFile(licenseName, textFile, kind);
+		try {
+			writeReport(reportFile, licenseName, textFile, kind, diff, divergences);
+		} catch (IOException e) {
+			throw new LicenseGenException("IO Error writing difference report "+reportFile.getPath(),e);
+		}
+		StringBuilder sb = new StringBuilder();
+		if (divergences.isEmpty()) {
+			sb.append("no token difference found");
+		} else {
+			TextDiff.Hunk first = divergences.get(0);
+			String expectedTokens = join(expected, first.expectedStart, Math.min(first.expectedEnd, first.expectedStart + MESSAGE_TOKENS));
+			String textTokens = join(text, first.textStart, Math.min(first.textEnd, first.textStart + MESSAGE_TOKENS));
+			sb.append("first difference at token ").append(first.textStart + 1).append(": ");
+			if (expectedTokens.isEmpty()) {
+				sb.append("unexpected \"").append(textTokens).append('"');
+			} else if (textTokens.isEmpty()) {
+				sb.append("missing \"").append(expectedTokens).append('"');
+			} else {
+				sb.append("expected \"").append(expectedTokens).append("\" but found \"").append(textTokens).append('"');
+			}
+		}
+		sb.append(" - see ").append(reportFile.getPath());
+		return sb.toString();
+	}
+	
+	/**
+	 * Delete the report of a previous failed comparison which now matches
+	 * @param licenseName
+	 * @param textFile test text file
+	 * @param kind "template" or "text"
+	 */
+	void clear(String licenseName, File textFile, String kind) {
+		File reportFile = reportFile(licenseName, textFile, kind);
+		if (reportFile.exists()) {
+			reportFile.delete();
+		}
+	}
+	
+	/**
+	 * @param licenseName
+	 * @param textFile test text file
+	 * @param kind
+	 * @return report file for the comparison of the text file with the expected tokens of kind
+	 */
+	File reportFile(String licenseName, File textFile, String kind) {
+		return new File(new File(directory, licenseName), textFile.getName() + "." + kind + ".diff");
+	}
+	
+	private static void writeReport(File reportFile, String licenseName, File textFile, String kind, 
+			TextDiff diff, List<TextDiff.Hunk> divergences) throws IOException {
+		Files.createDirectories(reportFile.getParentFile().toPath());
+		List<String> expected = diff.getExpected();
+		List<String> text = diff.getText();
+		Writer writer = new OutputStreamWriter(Files.newOutputStream(reportFile.toPath()), StandardCharsets.UTF_8);
+		try {
+			writer.write("# License: " + licenseName + "\n");
+			writer.write("# Test text: " + textFile.getPath() + "\n");
+			writer.write("# Compared with the " + kind + " (" + expected.size() + " tokens) - test text has " + 
+					text.size() + " tokens\n");
+			writer.write("# Tokens are normalized the way the license comparison does - " + TextDiff.VARIABLE + 
+					" and " + TextDiff.OPTIONAL + " stand for variable and optional template text\n");
+			if (diff.isTruncated()) {
+				writer.write("# The difference exceeded the size or time budget - later differences may be reported as larger replacements\n");
+			}
+			writer.write("# " + divergences.size() + " differences\n");
+			for (TextDiff.Hunk hunk:divergences) {
+				writer.write("\n@@ " + kind + " tokens " + (hunk.expectedStart + 1) + "-" + hunk.expectedEnd + 
+						", test text tokens " + (hunk.textStart + 1) + "-" + hunk.textEnd + " @@\n");
+				int contextStart = Math.max(0, hunk.expectedStart - CONTEXT_TOKENS);
+				if (contextStart < hunk.expectedStart) {
+					writer.write("  " + join(expected, contextStart, hunk.expectedStart) + "\n");
+				}
+				if (hunk.expectedEnd > hunk.expectedStart) {
+					writer.write("- " + join(expected, hunk.expectedStart, hunk.expectedEnd) + "\n");
+				}
+				if (hunk.textEnd > hunk.textStart) {
+					writer.write("+ " + join(text, hunk.textStart, hunk.textEnd) + "\n");
+				}
+				int contextEnd = Math.min(expected.size(), hunk.expectedEnd + CONTEXT_TOKENS);
+				if (contextEnd > hunk.expectedEnd) {
+					writer.write("  " + join(expected, hunk.expectedEnd, contextEnd) + "\n");
+				}
+			}
+		} finally {
+			writer.close();
+		}
+	}
+	
+	private static String join(List<String> tokens, int start, int end) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = start; i < end; i++) {
+			if (i > start) {
+				sb.append(' ');
+			}
+			sb.append(tokens.get(i));
+		}
+		return sb.toString();
+	}
+}
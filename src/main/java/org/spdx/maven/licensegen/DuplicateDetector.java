@@ -0,0 +1,417 @@
+/**
+ * Copyright (c) 2017 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.spdx.maven.licensegen;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.spdx.compare.LicenseCompareHelper;
+
+/**
+ * Finds duplicate and near duplicate license texts without comparing every pair of licenses.
+ * 
+ * Each text is reduced to the canonical tokens used by the license compare helper.  Texts with
+ * identical canonical tokens are exact duplicates and are found by hashing the tokens.  Near
+ * duplicates are found by estimating the Jaccard similarity of the token shingles of the texts
+ * from MinHash signatures.  Only the pairs of texts which share a band of their signatures are
+ * compared, so the work grows roughly linearly with the number of licenses.
+ * @author Gary O'Neall
+ *
+ */
+class DuplicateDetector {
+	
+	/**
+	 * Number of consecutive tokens in a shingle
+	 */
+	static final int SHINGLE_SIZE = 5;
+	/**
+	 * Number of hash functions in a MinHash signature
+	 */
+	static final int SIGNATURE_SIZE = 128;
+	/**
+	 * Number of signature values in each band used to find candidate pairs
+	 */
+	static final int ROWS_PER_BAND = 4;
+	
+	private static final long[] SEEDS = new long[SIGNATURE_SIZE];
+	static {
+		Random random = new Random(0x5bd1e995L);
+		for (int i = 0; i < SEEDS.length; i++) {
+			SEEDS[i] = random.nextLong();
+		}
+	}
+	
+	private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+	
+	/**
+	 * Elements of a license XML file which are not part of the license text
+	 */
+	private static final Set<String> NON_TEXT_ELEMENTS = new HashSet<String>(Arrays.asList("crossRefs", "notes", "standardLicenseHeader"));
+	
+	/**
+	 * Licenses whose texts are very similar or equivalent
+	 */
+	static class Cluster {
+		private final List<String> licenseIds;
+		private final boolean exact;
+		private final double similarity;
+		
+		Cluster(List<String> licenseIds, boolean exact, double similarity) {
+			this.licenseIds = Collections.unmodifiableList(licenseIds);
+			this.exact = exact;
+			this.similarity = similarity;
+		}
+		
+		/**
+		 * @return IDs of the licenses in the cluster in license ID order
+		 */
+		List<String> getLicenseIds() {
+			return licenseIds;
+		}
+		
+		/**
+		 * @return true if all license texts in the cluster are equivalent
+		 */
+		boolean isExact() {
+			return exact;
+		}
+		
+		/**
+		 * @return the lowest estimated similarity between two licenses linked in the cluster
+		 */
+		double getSimilarity() {
+			return similarity;
+		}
+	}
+	
+	private static class Fingerprint {
+		final String licenseId;
+		final String text;
+		final String tokenHash;
+		final int[] signature;
+		
+		Fingerprint(String licenseId, String text, String tokenHash, int[] signature) {
+			this.licenseId = licenseId;
+			this.text = text;
+			this.tokenHash = tokenHash;
+			this.signature = signature;
+		}
+	}
+	
+	private final double threshold;
+	private final Map<String, Fingerprint> fingerprints = new TreeMap<String, Fingerprint>();
+	
+	/**
+	 * @param threshold minimum estimated similarity between 0 and 1 of near duplicate texts
+	 */
+	DuplicateDetector(double threshold) {
+		this.threshold = threshold;
+	}
+	
+	/**
+	 * Add a license text
+	 * @param licenseId
+	 * @param text
+	 */
+	void add(String licenseId, String text) {
+		List<String> tokens = TokenNormalizer.canonicalTokens(text);
+		MessageDigest digest = ContentHash.newDigest();
+		long[] tokenHashes = new long[tokens.size()];
+		for (int i = 0; i < tokenHashes.length; i++) {
+			byte[] bytes = tokens.get(i).getBytes(StandardCharsets.UTF_8);
+			digest.update(bytes);
+			digest.update((byte)0);
+			tokenHashes[i] = hash64(bytes);
+		}
+		int[] signature = new int[SIGNATURE_SIZE];
+		Arrays.fill(signature, Integer.MAX_VALUE);
+		int numShingles = Math.max(1, tokenHashes.length - SHINGLE_SIZE + 1);
+		for (int start = 0; start < numShingles; start++) {
+			long shingle = 0;
+			for (int i = start; i < Math.min(start + SHINGLE_SIZE, tokenHashes.length); i++) {
+				shingle = mix64(shingle * 31 + tokenHashes[i]);
+			}
+			for (int i = 0; i < SIGNATURE_SIZE; i++) {
+				int value = (int)(mix64(shingle ^ SEEDS[i]) >>> 33);
+				if (value < signature[i]) {
+					signature[i] = value;
+				}
+			}
+		}
+		fingerprints.put(licenseId, new Fingerprint(licenseId, text, ContentHash.toHex(digest.digest()), signature));
+	}
+	
+	/**
+	 * @param licenseId
+	 * @return true if a text was added for the license
+	 */
+	boolean contains(String licenseId) {
+		return fingerprints.containsKey(licenseId);
+	}
+	
+	/**
+	 * @return the number of license texts added
+	 */
+	int size() {
+		return fingerprints.size();
+	}
+	
+	/**
+	 * @return clusters of licenses with equivalent texts in order of the first license ID
+	 */
+	List<Cluster> findExactDuplicates() {
+		Map<String, List<Fingerprint>> byHash = new LinkedHashMap<String, List<Fingerprint>>();
+		for (Fingerprint fingerprint:fingerprints.values()) {
+			List<Fingerprint> sameHash = byHash.get(fingerprint.tokenHash);
+			if (sameHash == null) {
+				sameHash = new ArrayList<Fingerprint>();
+				byHash.put(fingerprint.tokenHash, sameHash);
+			}
+			sameHash.add(fingerprint);
+		}
+		List<Cluster> retval = new ArrayList<Cluster>();
+		for (List<Fingerprint> sameHash:byHash.values()) {
+			// Confirm with the compare helper - the canonical tokens may differ from the helper for unusual equivalences
+			while (sameHash.size() > 1) {
+				Fingerprint first = sameHash.remove(0);
+				List<String> licenseIds = new ArrayList<String>();
+				licenseIds.add(first.licenseId);
+				for (int i = 0; i < sameHash.size(); i++) {
+					if (LicenseCompareHelper.isLicenseTextEquivalent(first.text, sameHash.get(i).text)) {
+						licenseIds.add(sameHash.remove(i--).licenseId);
+					}
+				}
+				if (licenseIds.size() > 1) {
+					retval.add(new Cluster(licenseIds, true, 1.0));
+				}
+			}
+		}
+		return retval;
+	}
+	
+	/**
+	 * Find the clusters of licenses linked by pairs of texts whose estimated similarity is at least
+	 * the threshold.  Pairs of texts with identical canonical tokens are not considered.
+	 * @return clusters of near duplicate licenses in order of the first license ID
+	 */
+	List<Cluster> findNearDuplicates() {
+		List<Fingerprint> all = new ArrayList<Fingerprint>(fingerprints.values());
+		Map<String, List<Integer>> buckets = new HashMap<String, List<Integer>>();
+		for (int i = 0; i < all.size(); i++) {
+			int[] signature = all.get(i).signature;
+			for (int band = 0; band < SIGNATURE_SIZE / ROWS_PER_BAND; band++) {
+				StringBuilder key = new StringBuilder();
+				key.append(band);
+				for (int row = band * ROWS_PER_BAND; row < (band + 1) * ROWS_PER_BAND; row++) {
+					key.append(':');
+					key.append(signature[row]);
+				}
+				String bucketKey = key.toString();
+				List<Integer> bucket = buckets.get(bucketKey);
+				if (bucket == null) {
+					bucket = new ArrayList<Integer>(2);
+					buckets.put(bucketKey, bucket);
+				}
+				bucket.add(i);
+			}
+		}
+		int[] parents = new int[all.size()];
+		double[] similarities = new double[all.size()];
+		for (int i = 0; i < parents.length; i++) {
+			parents[i] = i;
+			similarities[i] = 1.0;
+		}
+		Set<Long> compared = new HashSet<Long>();
+		for (List<Integer> bucket:buckets.values()) {
+			for (int i = 0; i < bucket.size(); i++) {
+				for (int j = i + 1; j < bucket.size(); j++) {
+					int a = bucket.get(i);
+					int b = bucket.get(j);
+					if (!compared.add(((long)a << 32) | b)) {
+						continue;
+					}
+					Fingerprint fa = all.get(a);
+					Fingerprint fb = all.get(b);
+					if (fa.tokenHash.equals(fb.tokenHash)) {
+						continue;
+					}
+					double similarity = similarity(fa.signature, fb.signature);
+					if (similarity >= threshold) {
+						int rootA = find(parents, a);
+						int rootB = find(parents, b);
+						int root = Math.min(rootA, rootB);
+						double lowest = Math.min(similarity, Math.min(similarities[rootA], similarities[rootB]));
+						parents[rootA] = root;
+						parents[rootB] = root;
+						similarities[root] = lowest;
+					}
+				}
+			}
+		}
+		Map<Integer, List<String>> clusters = new TreeMap<Integer, List<String>>();
+		for (int i = 0; i < parents.length; i++) {
+			int root = find(parents, i);
+			List<String> licenseIds = clusters.get(root);
+			if (licenseIds == null) {
+				licenseIds = new ArrayList<String>();
+				clusters.put(root, licenseIds);
+			}
+			licenseIds.add(all.get(i).licenseId);
+		}
+		List<Cluster> retval = new ArrayList<Cluster>();
+		for (Map.Entry<Integer, List<String>> cluster:clusters.entrySet()) {
+			if (cluster.getValue().size() > 1) {
+				retval.add(new Cluster(cluster.getValue(), false, similarities[cluster.getKey()]));
+			}
+		}
+		return retval;
+	}
+	
+	private static int find(int[] parents, int i) {
+		while (parents[i] != i) {
+			parents[i] = parents[parents[i]];
+			i = parents[i];
+		}
+		return i;
+	}
+	
+	/**
+	 * @param signature1
+	 * @param signature2
+	 * @return the fraction of equal signature values - an estimate of the Jaccard similarity of the shingles
+	 */
+	static double similarity(int[] signature1, int[] signature2) {
+		int equal = 0;
+		for (int i = 0; i < signature1.length; i++) {
+			if (signature1[i] == signature2[i]) {
+				equal++;
+			}
+		}
+		return (double)equal / signature1.length;
+	}
+	
+	private static long hash64(byte[] bytes) {
+		long hash = 0xcbf29ce484222325L;
+		for (byte b:bytes) {
+			hash ^= (b & 0xff);
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+	
+	/**
+	 * @param value
+	 * @return value with its bits mixed (the MurmurHash3 finalizer)
+	 */
+	private static long mix64(long value) {
+		value ^= value >>> 33;
+		value *= 0xff51afd7ed558ccdL;
+		value ^= value >>> 33;
+		value *= 0xc4ceb9fe1a85ec53L;
+		value ^= value >>> 33;
+		return value;
+	}
+	
+	/**
+	 * Read the license texts from a license XML file.  The character content of the license or
+	 * exception element is used, including optional and alternative text but excluding the
+	 * cross references, notes and standard license header.
+	 * @param xmlFile license XML file
+	 * @param deprecatedIds the IDs of licenses marked as deprecated are added to this set
+	 * @return map of license or exception ID to its text
+	 * @throws IOException if the file can not be read or is not well formed XML
+	 */
+	static Map<String, String> readSourceTexts(File xmlFile, Set<String> deprecatedIds) throws IOException {
+		byte[] content = Files.readAllBytes(xmlFile.toPath());
+		Map<String, String> retval = new LinkedHashMap<String, String>();
+		XMLStreamReader reader = null;
+		try {
+			synchronized (XML_INPUT_FACTORY) {
+				reader = XML_INPUT_FACTORY.createXMLStreamReader(new ByteArrayInputStream(content));
+			}
+			String licenseId = null;
+			StringBuilder text = new StringBuilder();
+			int licenseDepth = 0;
+			int excludedDepth = 0;
+			while (reader.hasNext()) {
+				int event = reader.next();
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					String name = reader.getLocalName();
+					if (licenseDepth > 0) {
+						licenseDepth++;
+						if (excludedDepth > 0 || NON_TEXT_ELEMENTS.contains(name)) {
+							excludedDepth++;
+						}
+						text.append(' ');
+					} else if ("license".equals(name) || "exception".equals(name)) {
+						licenseDepth = 1;
+						licenseId = reader.getAttributeValue(null, "licenseId");
+						if (licenseId != null && "true".equals(reader.getAttributeValue(null, "isDeprecated"))) {
+							deprecatedIds.add(licenseId);
+						}
+						text.setLength(0);
+					}
+				} else if (event == XMLStreamConstants.END_ELEMENT && licenseDepth > 0) {
+					licenseDepth--;
+					if (excludedDepth > 0) {
+						excludedDepth--;
+					}
+					if (licenseDepth == 0) {
+						if (licenseId != null) {
+							retval.put(licenseId, text.toString());
+						}
+					} else {
+						text.append(' ');
+					}
+				} else if (licenseDepth > 0 && excludedDepth == 0 && 
+						(event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA)) {
+					text.append(reader.getText());
+				}
+			}
+		} catch (XMLStreamException e) {
+			throw new IOException("Error parsing license XML file "+xmlFile.getName()+": "+e.getMessage(), e);
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (XMLStreamException e) {
+					// Ignore - the content is in memory
+				}
+			}
+		}
+		return retval;
+	}
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) 2017 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.spdx.maven.licensegen;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread safe count of the errors found by a goal which signals when the configured maximum
+ * number of errors has been reached so that the remaining work can be cancelled
+ * @author Gary O'Neall
+ *
+ */
+final class ErrorLimit {
+	
+	/**
+	 * Limit which is never reached
+	 */
+	static final ErrorLimit NONE = new ErrorLimit(0);
+	
+	private final int maxErrors;
+	private final AtomicInteger numErrors = new AtomicInteger();
+	
+	/**
+	 * @param maxErrors maximum number of errors before the work is stopped - unlimited if less than 1
+	 */
+	ErrorLimit(int maxErrors) {
+		this.maxErrors = maxErrors;
+	}
+	
+	/**
+	 * @param failFast if true, stop at the first error
+	 * @param maxErrors maximum number of errors - unlimited if less than 1
+	 * @return the error limit for the plugin configuration
+	 */
+	static ErrorLimit of(boolean failFast, int maxErrors) {
+		if (failFast) {
+			return new ErrorLimit(1);
+		}
+		if (maxErrors < 1) {
+			return NONE;
+		}
+		return new ErrorLimit(maxErrors);
+	}
+	
+	/**
+	 * @param count number of errors found
+	 * @return true if the limit has been reached
+	 */
+	boolean recordErrors(int count) {
+		if (maxErrors < 1) {
+			return false;
+		}
+		if (count <= 0) {
+			return isReached();
+		}
+		return numErrors.addAndGet(count) >= maxErrors;
+	}
+	
+	/**
+	 * @return true if the limit has been reached and no further work should be started
+	 */
+	boolean isReached() {
+		return maxErrors > 0 && numErrors.get() >= maxErrors;
+	}
+	
+	/**
+	 * @return the maximum number of errors or 0 if unlimited
+	 */
+	int getMaxErrors() {
+		return maxErrors < 1 ? 0 : maxErrors;
+	}
+}
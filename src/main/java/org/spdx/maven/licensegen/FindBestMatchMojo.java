@@ -0,0 +1,233 @@
+/**
+ * Copyright (c) 2017 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.spdx.maven.licensegen;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Goal which identifies the listed licenses matching a batch of license texts using the
+ * templates in the generated license data
+ * @author Gary O'Neall
+ *
+ */
+@Mojo( name = "find-best-match" )
+public class FindBestMatchMojo extends AbstractMojo {
+	
+    /**
+     * Directory containing the license list XML files
+     */	
+    @Parameter( defaultValue = "${project.build.sourceDirectory}"+"schema/ListedLicense.xsd", required = true )
+    private File schemaFile;
+    
+    /**
+     * Directory containing the license list XML files
+     */
+    @Parameter( defaultValue = "${project.build.sourceDirectory}", required = true )
+    private File sourceDirectory;
+    
+    /**
+     * Directory containing the generated license data
+     */
+    @Parameter( defaultValue = "${project.build.outputDirectory}", required = true )
+    private File outputDirectory;
+    
+    @Parameter(required = false)
+    private File textCompare;
+    
+    /**
+     * Directory containing the license texts to identify.  All files in the directory and its
+     * subdirectories are matched.
+     */
+    @Parameter( property = "licensegen.matchDirectory", required = true )
+    private File matchDirectory;
+    
+    /**
+     * File the index of the license templates is persisted in.  Only templates which changed since
+     * the index was stored are reindexed.  If not set, all templates are indexed on every execution.
+     */
+    @Parameter(defaultValue = "${project.build.directory}/licensegen/template-index.properties", required = false)
+    private File templateIndex;
+    
+    /**
+     * JSON report of the matching license IDs for each license text.  If not set, the matches are only logged.
+     */
+    @Parameter(defaultValue = "${project.build.directory}/licensegen/matches.json", required = false)
+    private File matchReport;
+    
+    /**
+     * Number of threads used to match the license texts.  If less than 1, the number of available processors is used
+     */
+    @Parameter(defaultValue = "0", required = false)
+    private int threads;
+    
+    /**
+     * Directory for the timing and I/O metrics reports.  Defaults to target/licensegen-metrics - set
+     * skipMetrics to turn the reports off.
+     */
+    @Parameter(defaultValue = "${project.build.directory}/licensegen-metrics", required = false)
+    private File metricsDirectory;
+    
+    /**
+     * If true, no timing and I/O metrics are collected or reported
+     */
+    @Parameter(defaultValue = "false", property = "licensegen.skipMetrics", required = false)
+    private boolean skipMetrics;
+    
+    /**
+     * Number of slowest licenses listed in the metrics summary
+     */
+    @Parameter(defaultValue = "10", required = false)
+    private int metricsTopN;
+
+	/* (non-Javadoc)
+	 * @see org.apache.maven.plugin.Mojo#execute()
+	 */
+	public void execute() throws MojoExecutionException, MojoFailureException {
+		File output = outputDirectory;
+		if (outputDirectory == null) {
+			throw new MojoExecutionException("No output directory was provided in the configuration.  Add a configuration paramater 'outputDir' to the plugin configuration with a value of the directory path for the license XML files.");
+		}
+		File templateDir = new File(output, "template");
+		if (!templateDir.exists() || !templateDir.isDirectory()) {
+			throw new MojoExecutionException("Template directory "+templateDir.getPath()+" does not exist.  Generate the license data before matching license texts.");
+		}
+		if (matchDirectory == null || !matchDirectory.isDirectory()) {
+			throw new MojoExecutionException("No directory of license texts to match was provided in the configuration.  Add a configuration parameter 'matchDirectory' with the directory containing the license texts.");
+		}
+		File metricsDir = skipMetrics ? null : metricsDirectory;
+		BuildMetrics metrics = new BuildMetrics("find-best-match", metricsDir != null);
+		long startNanos = System.nanoTime();
+		TemplateIndex index;
+		List<File> textFiles = new ArrayList<File>();
+		Map<File, List<String>> matches;
+		try {
+			index = TemplateIndex.build(templateDir, templateIndex);
+			metrics.record("index", BuildMetrics.ALL_ITEMS, startNanos);
+			collectFiles(matchDirectory, textFiles);
+			startNanos = System.nanoTime();
+			matches = index.findMatches(textFiles, threads);
+			metrics.record("match", BuildMetrics.ALL_ITEMS, startNanos);
+		} catch (LicenseGenException e) {
+			this.getLog().error(e.getMessage(),e.getCause());
+			throw(new MojoExecutionException(e.getMessage(),e.getCause()));
+		}
+		int numMatched = 0;
+		for (Entry<File, List<String>> entry:matches.entrySet()) {
+			String name = relativeName(entry.getKey());
+			if (entry.getValue().isEmpty()) {
+				this.getLog().warn("No listed license matches "+name);
+			} else {
+				numMatched++;
+				this.getLog().info(name+": "+join(entry.getValue()));
+			}
+		}
+		this.getLog().info("Matched "+numMatched+" of "+textFiles.size()+" license texts against "+index.getLicenseIds().size()+
+				" license templates using "+index.getNumTemplatesMatched()+" full template matches");
+		if (matchReport != null) {
+			try {
+				writeReport(matches);
+			} catch (IOException e) {
+				throw new MojoExecutionException("Unable to write match report "+matchReport.getPath()+": "+e.getMessage(), e);
+			}
+		}
+		metrics.report(metricsDir, metricsTopN, MojoAdapter.log(getLog()));
+	}
+	
+	/**
+	 * Collect all files in a directory and its subdirectories in path order
+	 * @param dir
+	 * @param files
+	 */
+	private static void collectFiles(File dir, List<File> files) {
+		File[] children = dir.listFiles();
+		if (children == null) {
+			return;
+		}
+		Arrays.sort(children);
+		for (File child:children) {
+			if (child.isDirectory()) {
+				collectFiles(child, files);
+			} else if (child.isFile()) {
+				files.add(child);
+			}
+		}
+	}
+	
+	/**
+	 * @param textFile
+	 * @return path of the text file relative to the match directory using '/' as the separator
+	 */
+	private String relativeName(File textFile) {
+		return matchDirectory.toPath().relativize(textFile.toPath()).toString().replace(File.separatorChar, '/');
+	}
+	
+	private static String join(List<String> licenseIds) {
+		StringBuilder sb = new StringBuilder();
+		for (String licenseId:licenseIds) {
+			if (sb.length() > 0) {
+				sb.append(", ");
+			}
+			sb.append(licenseId);
+		}
+		return sb.toString();
+	}
+	
+	private void writeReport(Map<File, List<String>> matches) throws IOException {
+		File parent = matchReport.getParentFile();
+		if (parent != null && !parent.exists() && !parent.mkdirs()) {
+			throw new IOException("Unable to create directory "+parent.getPath());
+		}
+		PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(matchReport), StandardCharsets.UTF_8));
+		try {
+			writer.println("{");
+			boolean first = true;
+			for (Entry<File, List<String>> entry:matches.entrySet()) {
+				if (!first) {
+					writer.println(",");
+				}
+				first = false;
+				writer.print("  "+BuildMetrics.jsonString(relativeName(entry.getKey()))+": [");
+				for (int i = 0; i < entry.getValue().size(); i++) {
+					if (i > 0) {
+						writer.print(", ");
+					}
+					writer.print(BuildMetrics.jsonString(entry.getValue().get(i)));
+				}
+				writer.print("]");
+			}
+			writer.println();
+			writer.println("}");
+		} finally {
+			writer.close();
+		}
+	}
+}
@@ -0,0 +1,248 @@
+/**
+ * Copyright (c) 2017 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.spdx.maven.licensegen;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Goal which reports licenses with duplicate and near duplicate license texts.  The build fails
+ * if the texts of two licenses are equivalent unless the duplicate is intended.
+ * @author Gary O'Neall
+ *
+ */
+@Mojo( name = "duplicates", defaultPhase = LifecyclePhase.TEST )
+public class FindDuplicatesMojo extends AbstractMojo {
+	
+    /**
+     * Directory containing the license list XML files
+     */	
+    @Parameter( defaultValue = "${project.build.sourceDirectory}"+"schema/ListedLicense.xsd", required = true )
+    private File schemaFile;
+    
+    /**
+     * Directory containing the license list XML files
+     */
+    @Parameter( defaultValue = "${project.build.sourceDirectory}", required = true )
+    private File sourceDirectory;
+    
+    /**
+     * Output directory - the generated license texts are used in place of the texts in the license XML files where available
+     */
+    @Parameter( defaultValue = "${project.build.outputDirectory}", required = true )
+    private File outputDirectory;
+    
+    @Parameter(required = false)
+    private File textCompare;
+    
+    /**
+     * Minimum estimated similarity between 0 and 1 of license texts reported as near duplicates
+     */
+    @Parameter(defaultValue = "0.9", required = false)
+    private double similarityThreshold;
+    
+    /**
+     * IDs of licenses which are intended to duplicate another license.  Duplicates of deprecated
+     * licenses are also allowed.
+     */
+    @Parameter(required = false)
+    private String[] allowedDuplicates;
+    
+    /**
+     * JSON report of the duplicate and near duplicate licenses.  If not set, the duplicates are only logged.
+     */
+    @Parameter(defaultValue = "${project.build.directory}/licensegen/duplicates.json", required = false)
+    private File duplicatesReport;
+    
+    /**
+     * Directory for the timing and I/O metrics reports.  Defaults to target/licensegen-metrics - set
+     * skipMetrics to turn the reports off.
+     */
+    @Parameter(defaultValue = "${project.build.directory}/licensegen-metrics", required = false)
+    private File metricsDirectory;
+    
+    /**
+     * If true, no timing and I/O metrics are collected or reported
+     */
+    @Parameter(defaultValue = "false", property = "licensegen.skipMetrics", required = false)
+    private boolean skipMetrics;
+    
+    /**
+     * Number of slowest licenses listed in the metrics summary
+     */
+    @Parameter(defaultValue = "10", required = false)
+    private int metricsTopN;
+
+	/* (non-Javadoc)
+	 * @see org.apache.maven.plugin.Mojo#execute()
+	 */
+	public void execute() throws MojoExecutionException, MojoFailureException {
+		File src = sourceDirectory;
+		if (src == null) {
+			throw new MojoExecutionException("No source directory was provided in the configuration.  Add a configuration paramater 'sourceDir' to the plugin configuration with a value of the directory path for the license XML files.");
+		}
+		if (!src.exists() || !src.isDirectory()) {
+			throw new MojoExecutionException("Source directory "+src.getName()+" does not exist.");
+		}
+		if (similarityThreshold <= 0 || similarityThreshold > 1) {
+			throw new MojoExecutionException("Invalid similarityThreshold "+similarityThreshold+" - the threshold must be greater than 0 and at most 1");
+		}
+		File metricsDir = skipMetrics ? null : metricsDirectory;
+		BuildMetrics metrics = new BuildMetrics("duplicates", metricsDir != null);
+		DuplicateDetector detector = new DuplicateDetector(similarityThreshold);
+		Set<String> intended = new HashSet<String>();
+		if (allowedDuplicates != null) {
+			intended.addAll(Arrays.asList(allowedDuplicates));
+		}
+		File textDir = outputDirectory == null ? null : new File(outputDirectory, "text");
+		List<File> xmlFiles = new ArrayList<File>();
+		LicenseSource.collectXmlFiles(src, xmlFiles);
+		for (File xmlFile:xmlFiles) {
+			long startNanos = System.nanoTime();
+			try {
+				for (Entry<String, String> entry:DuplicateDetector.readSourceTexts(xmlFile, intended).entrySet()) {
+					File textFile = textDir == null ? null : new File(textDir, entry.getKey() + ".txt");
+					if (textFile != null && textFile.isFile()) {
+						detector.add(entry.getKey(), LicenseTextReader.read(textFile.toPath()));
+					} else {
+						detector.add(entry.getKey(), entry.getValue());
+					}
+				}
+			} catch (IOException e) {
+				throw new MojoExecutionException("Error reading license text for "+xmlFile.getName()+": "+e.getMessage(), e);
+			}
+			metrics.record("fingerprint", xmlFile.getName(), startNanos, xmlFile.length(), 0);
+		}
+		File[] textFiles = textDir == null ? null : textDir.listFiles();
+		if (textFiles != null) {
+			Arrays.sort(textFiles);
+			for (File textFile:textFiles) {
+				String name = textFile.getName();
+				if (textFile.isFile() && name.endsWith(".txt") && !detector.contains(name.substring(0, name.length() - ".txt".length()))) {
+					long startNanos = System.nanoTime();
+					try {
+						detector.add(name.substring(0, name.length() - ".txt".length()), LicenseTextReader.read(textFile.toPath()));
+					} catch (IOException e) {
+						throw new MojoExecutionException("Error reading license text "+name+": "+e.getMessage(), e);
+					}
+					metrics.record("fingerprint", name, startNanos, textFile.length(), 0);
+				}
+			}
+		}
+		long startNanos = System.nanoTime();
+		List<DuplicateDetector.Cluster> exact = detector.findExactDuplicates();
+		List<DuplicateDetector.Cluster> near = detector.findNearDuplicates();
+		metrics.record("cluster", BuildMetrics.ALL_ITEMS, startNanos);
+		int numUnintended = 0;
+		for (DuplicateDetector.Cluster cluster:exact) {
+			int numNotIntended = 0;
+			for (String licenseId:cluster.getLicenseIds()) {
+				if (!intended.contains(licenseId)) {
+					numNotIntended++;
+				}
+			}
+			if (numNotIntended > 1) {
+				numUnintended++;
+				this.getLog().error("Licenses have equivalent texts: "+join(cluster.getLicenseIds()));
+			} else {
+				this.getLog().info("Intended duplicate license texts: "+join(cluster.getLicenseIds()));
+			}
+		}
+		for (DuplicateDetector.Cluster cluster:near) {
+			this.getLog().warn("Licenses have similar texts (similarity "+similarity(cluster)+"): "+join(cluster.getLicenseIds()));
+		}
+		this.getLog().info("Checked "+detector.size()+" license texts: "+exact.size()+" duplicate and "+near.size()+" near duplicate clusters");
+		if (duplicatesReport != null) {
+			try {
+				writeReport(exact, near);
+			} catch (IOException e) {
+				throw new MojoExecutionException("Unable to write duplicates report "+duplicatesReport.getPath()+": "+e.getMessage(), e);
+			}
+		}
+		metrics.report(metricsDir, metricsTopN, MojoAdapter.log(getLog()));
+		if (numUnintended > 0) {
+			throw new MojoFailureException(numUnintended+" groups of licenses have equivalent license texts.  Add the IDs of intended duplicates to allowedDuplicates.");
+		}
+	}
+	
+	private static String similarity(DuplicateDetector.Cluster cluster) {
+		return String.format(Locale.ROOT, "%.2f", cluster.getSimilarity());
+	}
+	
+	private static String join(List<String> licenseIds) {
+		StringBuilder sb = new StringBuilder();
+		for (String licenseId:licenseIds) {
+			if (sb.length() > 0) {
+				sb.append(", ");
+			}
+			sb.append(licenseId);
+		}
+		return sb.toString();
+	}
+	
+	private void writeReport(List<DuplicateDetector.Cluster> exact, List<DuplicateDetector.Cluster> near) throws IOException {
+		File parent = duplicatesReport.getParentFile();
+		if (parent != null && !parent.exists() && !parent.mkdirs()) {
+			throw new IOException("Unable to create directory "+parent.getPath());
+		}
+		PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(duplicatesReport), StandardCharsets.UTF_8));
+		try {
+			writer.println("{");
+			writer.println("  \"duplicates\": [");
+			writeClusters(writer, exact);
+			writer.println("  ],");
+			writer.println("  \"nearDuplicates\": [");
+			writeClusters(writer, near);
+			writer.println("  ]");
+			writer.println("}");
+		} finally {
+			writer.close();
+		}
+	}
+	
+	private static void writeClusters(PrintWriter writer, List<DuplicateDetector.Cluster> clusters) {
+		for (int i = 0; i < clusters.size(); i++) {
+			DuplicateDetector.Cluster cluster = clusters.get(i);
+			writer.print("    {\"similarity\": "+similarity(cluster)+", \"licenseIds\": [");
+			List<String> licenseIds = cluster.getLicenseIds();
+			for (int j = 0; j < licenseIds.size(); j++) {
+				if (j > 0) {
+					writer.print(", ");
+				}
+				writer.print(BuildMetrics.jsonString(licenseIds.get(j)));
+			}
+			writer.println(i < clusters.size() - 1 ? "]}," : "]}");
+		}
+	}
+}
@@ -17,6 +17,7 @@ package org.spdx.maven.licensegen;
 
 import java.io.File;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
@@ -26,8 +27,6 @@ import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
-import org.spdx.tools.LicenseGeneratorException;
-import org.spdx.tools.LicenseRDFAGenerator;
 
 /**
  * Mojo to generate license data
@@ -60,6 +59,139 @@ public class GenerateLicenseDataMojo extends AbstractMojo {
     
     @Parameter(required = false)
     private File textCompare;
+    
+    /**
+     * Comma separated list of the output formats written (e.g. json,text).  The formats are named
+     * after their output directories: html, json, rdfa, rdfnt, rdfturtle, rdfxml, template, text and
+     * website.  If not set, all formats are written.  Requires the outputManifest.
+     */
+    @Parameter(property = "licensegen.formats", required = false)
+    private String formats;
+    
+    /**
+     * Additional license list versions generated by the same execution.  Each version is generated
+     * into the output directory at the same position in additionalOutputDirectories.
+     */
+    @Parameter(required = false)
+    private String[] additionalVersions;
+    
+    /**
+     * Output directories for the additionalVersions.  The manifests and archive of each additional
+     * version are named after those of the primary version with the version appended.
+     */
+    @Parameter(required = false)
+    private File[] additionalOutputDirectories;
+    
+    /**
+     * If true, only the license data for license XML files which changed since the last generation
+     * is regenerated.  The complete license list is regenerated if the license list version, the set
+     * of licenses or any metadata used in the aggregate index files changes.
+     */
+    @Parameter(defaultValue = "false", required = false)
+    private boolean incremental;
+    
+    /**
+     * File recording the inputs and outputs of the last generation - used by incremental generation
+     */
+    @Parameter(defaultValue = "${project.build.directory}/licensegen/generate-manifest.properties", required = false)
+    private File generationManifest;
+    
+    /**
+     * File recording the content hashes of the generated output files.  Output files are only
+     * written if their content changed and previously generated files which are no longer generated
+     * are deleted.  A report of the changed files is written to the same directory,
+     * named after the manifest (output-manifest-changes.json by default).
+     */
+    @Parameter(defaultValue = "${project.build.directory}/licensegen/output-manifest.properties", required = false)
+    private File outputManifest;
+    
+    /**
+     * Zero based index of the shard processed by this execution - see shardCount
+     */
+    @Parameter(defaultValue = "0", property = "licensegen.shardIndex", required = false)
+    private int shardIndex;
+    
+    /**
+     * Number of shards the licenses are split into.  If greater than 1, only the licenses belonging
+     * to the shard shardIndex are generated and the outputs of all shards are combined by the merge
+     * goal.  Every execution assigns the same licenses to the same shard.  The shard index is added
+     * to the names of the manifests, metrics baseline and report directories so shards do not share them.
+     */
+    @Parameter(defaultValue = "1", property = "licensegen.shardCount", required = false)
+    private int shardCount;
+    
+    /**
+     * If set, all generated files are also written to this zip archive together with an offset
+     * index (the archive name followed by .index) so the license data can be deployed as one file
+     */
+    @Parameter(property = "licensegen.outputArchive", required = false)
+    private File outputArchive;
+    
+    /**
+     * If true, a gzip compressed sibling (.gz) is written next to each generated text, JSON and HTML
+     * file so web servers can serve precompressed content
+     */
+    @Parameter(defaultValue = "false", property = "licensegen.precompress", required = false)
+    private boolean precompress;
+    
+    /**
+     * Directory of a content addressed cache of generated license data and validation and test
+     * results shared between builds, for example on a shared or network file system.  Results whose
+     * inputs are unchanged are restored from the cache.  If not set, no build cache is used.
+     */
+    @Parameter(property = "licensegen.buildCache", required = false)
+    private File buildCache;
+    
+    /**
+     * Directory for the timing and I/O metrics reports.  Defaults to target/licensegen-metrics - set
+     * skipMetrics to turn the reports off.
+     */
+    @Parameter(defaultValue = "${project.build.directory}/licensegen-metrics", required = false)
+    private File metricsDirectory;
+    
+    /**
+     * If true, no metrics reports are written and metrics are only collected to check a configured metricsBaseline
+     */
+    @Parameter(defaultValue = "false", property = "licensegen.skipMetrics", required = false)
+    private boolean skipMetrics;
+    
+    /**
+     * Number of slowest licenses listed in the metrics summary
+     */
+    @Parameter(defaultValue = "10", required = false)
+    private int metricsTopN;
+    
+    /**
+     * Directory for the SARIF and JUnit XML reports of the errors and warnings found.  Defaults to target/licensegen-diagnostics.
+     */
+    @Parameter(defaultValue = "${project.build.directory}/licensegen-diagnostics", property = "licensegen.diagnosticsDirectory", required = false)
+    private File diagnosticsDirectory;
+    
+    /**
+     * Maximum number of errors and warnings logged - the remaining findings are only counted in
+     * the summary.  If less than 1, all findings are logged.
+     */
+    @Parameter(defaultValue = "20", property = "licensegen.maxConsoleFindings", required = false)
+    private int maxConsoleFindings;
+    
+    /**
+     * File recording the timing of previous runs.  If set, the time of the goal, each phase and each
+     * license is compared to the median of the recorded runs and the run is added to the baseline.
+     */
+    @Parameter(property = "licensegen.metricsBaseline", required = false)
+    private File metricsBaseline;
+    
+    /**
+     * Ratio of a time to its baseline median above which the time is reported as a slowdown
+     */
+    @Parameter(defaultValue = "1.5", property = "licensegen.maxSlowdown", required = false)
+    private double maxSlowdown;
+    
+    /**
+     * If true, the build fails if the goal or any phase is slower than maxSlowdown times its baseline
+     */
+    @Parameter(defaultValue = "false", property = "licensegen.failOnSlowdown", required = false)
+    private boolean failOnSlowdown;
 
 	/* (non-Javadoc)
 	 * @see org.apache.maven.plugin.Mojo#execute()
@@ -86,16 +218,62 @@ public class GenerateLicenseDataMojo extends AbstractMojo {
 			throw new MojoExecutionException("Output directory "+output.getName()+" does not exist.");
 		}
 		String releaseDate = new SimpleDateFormat("dd-MM-yyyy").format(new Date());
+		LicenseGenLog log = MojoAdapter.log(getLog());
+		File metricsDir = skipMetrics ? null : metricsDirectory;
+		BuildMetrics metrics = new BuildMetrics("generate", metricsDir != null || metricsBaseline != null);
 		try {
-			List<String> warnings = LicenseRDFAGenerator.generateLicenseData(src, output, version, releaseDate);
-			if (warnings.size() > 0) {
-				for (String warning:warnings) {
-					this.getLog().warn(warning);
+			Shard shard = Shard.of(shardIndex, shardCount);
+			List<VersionTarget> targets = new ArrayList<VersionTarget>();
+			targets.add(new VersionTarget(version, output, shard.file(generationManifest), shard.file(outputManifest)));
+			targets.addAll(additionalTargets(shard));
+			LicenseGenEngine engine = new LicenseGenEngine();
+			BuildCache sharedCache = BuildCache.open(buildCache, log);
+			engine.setBuildCache(sharedCache);
+			Diagnostics diagnostics = new Diagnostics("generate", log, maxConsoleFindings, shard.directory(diagnosticsDirectory));
+			try {
+				engine.generate(src, targets, shard, incremental, OutputFormats.of(formats), releaseDate, metrics, diagnostics.asLog("generate"));
+			} finally {
+				diagnostics.close();
+				if (sharedCache != null) {
+					sharedCache.logSummary();
+				}
+			}
+			if (!shard.isAll() && (precompress || outputArchive != null)) {
+				this.getLog().info("The output of "+shard+" is not packaged - package the merged output with the merge goal");
+			} else {
+				engine.bundle(output, precompress, outputArchive, metrics, log);
+				for (VersionTarget target:targets.subList(1, targets.size())) {
+					engine.bundle(target.getOutputDirectory(), precompress, 
+							VersionTarget.versionFile(outputArchive, target.getVersion()), metrics, log);
 				}
 			}
-		} catch (LicenseGeneratorException e) {
-			throw new MojoFailureException("Failure generating license data: "+e.getMessage(),e);
+			metrics.report(shard.directory(metricsDir), metricsTopN, log);
+			MetricsBaseline.check(shard.file(metricsBaseline), metrics, maxSlowdown, failOnSlowdown, getLog());
+		} catch (LicenseGenException e) {
+			MojoAdapter.rethrow(e);
 		}
 	}
-
+	
+	/**
+	 * @param shard shard generated by this execution
+	 * @return targets for the additionalVersions
+	 * @throws MojoExecutionException if the versions and output directories do not correspond
+	 */
+	private List<VersionTarget> additionalTargets(Shard shard) throws MojoExecutionException {
+		List<VersionTarget> retval = new ArrayList<VersionTarget>();
+		if (additionalVersions == null || additionalVersions.length == 0) {
+			return retval;
+		}
+		if (additionalOutputDirectories == null || additionalOutputDirectories.length != additionalVersions.length) {
+			throw new MojoExecutionException("The number of additionalOutputDirectories must match the number of additionalVersions.  Add an output directory for each additional version.");
+		}
+		for (int i = 0; i < additionalVersions.length; i++) {
+			File output = additionalOutputDirectories[i];
+			if (!output.exists() || !output.isDirectory()) {
+				throw new MojoExecutionException("Output directory "+output.getName()+" for version "+additionalVersions[i]+" does not exist.");
+			}
+			retval.add(VersionTarget.additional(additionalVersions[i], output, shard.file(generationManifest), shard.file(outputManifest)));
+		}
+		return retval;
+	}
 }
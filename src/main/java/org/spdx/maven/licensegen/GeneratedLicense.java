@@ -0,0 +1,59 @@
+/**
+ * Copyright (c) 2017 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.spdx.maven.licensegen;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * License data generated for a single license
+ * @author Gary O'Neall
+ *
+ */
+public class GeneratedLicense {
+	
+	private final Map<String, byte[]> files;
+	private final List<String> warnings;
+	
+	GeneratedLicense(Map<String, byte[]> files, List<String> warnings) {
+		this.files = Collections.unmodifiableMap(files);
+		this.warnings = Collections.unmodifiableList(warnings);
+	}
+	
+	/**
+	 * @return map of the path of each generated file relative to the output directory using '/' as
+	 * the separator to the content of the file in path order
+	 */
+	public Map<String, byte[]> getFiles() {
+		return files;
+	}
+	
+	/**
+	 * @param relativePath path relative to the output directory using '/' as the separator
+	 * @return the content of the generated file or null if the file was not generated
+	 */
+	public byte[] getFile(String relativePath) {
+		return files.get(relativePath);
+	}
+	
+	/**
+	 * @return warnings reported by the license generator
+	 */
+	public List<String> getWarnings() {
+		return warnings;
+	}
+}
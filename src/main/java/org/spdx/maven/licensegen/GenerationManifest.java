@@ -0,0 +1,163 @@
+/**
+ * Copyright (c) 2017 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.spdx.maven.licensegen;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Record of the inputs and outputs of the last license data generation.
+ * 
+ * For each license XML source file, the manifest stores the content hash of the file
+ * and the paths (relative to the output directory) of the files generated from it.  The
+ * manifest also stores a hash of all inputs to the aggregate index files so that a change
+ * to the license list as a whole can be detected.
+ * @author Gary O'Neall
+ *
+ */
+class GenerationManifest {
+	
+	static final String AGGREGATE_HASH_KEY = "#aggregate";
+	private static final String INPUT_PREFIX = "input.";
+	private static final String OUTPUT_PREFIX = "output.";
+	private static final String OUTPUT_SEPARATOR = ",";
+	
+	private final File manifestFile;
+	private final Properties properties = new Properties();
+	
+	/**
+	 * Load the manifest
+	 * @param manifestFile file the manifest is stored in - need not exist
+	 * @throws IOException
+	 */
+	GenerationManifest(File manifestFile) throws IOException {
+		this.manifestFile = manifestFile;
+		if (manifestFile.isFile()) {
+			InputStream is = new FileInputStream(manifestFile);
+			try {
+				properties.load(is);
+			} finally {
+				is.close();
+			}
+		}
+	}
+	
+	/**
+	 * @return true if no generation has been recorded
+	 */
+	boolean isEmpty() {
+		return properties.getProperty(AGGREGATE_HASH_KEY) == null;
+	}
+	
+	/**
+	 * Remove all recorded inputs and outputs
+	 */
+	void clear() {
+		properties.clear();
+	}
+
+	/**
+	 * @return hash of the inputs to the aggregate index files or null if not recorded
+	 */
+	String getAggregateHash() {
+		return properties.getProperty(AGGREGATE_HASH_KEY);
+	}
+	
+	/**
+	 * @param aggregateHash hash of the inputs to the aggregate index files
+	 */
+	void setAggregateHash(String aggregateHash) {
+		properties.setProperty(AGGREGATE_HASH_KEY, aggregateHash);
+	}
+	
+	/**
+	 * @param relativePath path of the license XML file relative to the source directory
+	 * @return content hash of the source file when its output was generated or null if not recorded
+	 */
+	String getInputHash(String relativePath) {
+		return properties.getProperty(INPUT_PREFIX + relativePath);
+	}
+	
+	/**
+	 * @param relativePath path of the license XML file relative to the source directory
+	 * @return paths of the files generated from the source file relative to the output directory
+	 */
+	List<String> getOutputs(String relativePath) {
+		String outputs = properties.getProperty(OUTPUT_PREFIX + relativePath);
+		if (outputs == null || outputs.isEmpty()) {
+			return Collections.emptyList();
+		}
+		return Arrays.asList(outputs.split(OUTPUT_SEPARATOR));
+	}
+	
+	/**
+	 * @return paths of all recorded license XML source files
+	 */
+	List<String> getInputs() {
+		List<String> retval = new ArrayList<String>();
+		for (String key:properties.stringPropertyNames()) {
+			if (key.startsWith(INPUT_PREFIX)) {
+				retval.add(key.substring(INPUT_PREFIX.length()));
+			}
+		}
+		Collections.sort(retval);
+		return retval;
+	}
+	
+	/**
+	 * Record the generation of a license XML source file
+	 * @param relativePath path of the license XML file relative to the source directory
+	 * @param contentHash content hash of the source file
+	 * @param outputs paths of the generated files relative to the output directory
+	 */
+	void put(String relativePath, String contentHash, List<String> outputs) {
+		properties.setProperty(INPUT_PREFIX + relativePath, contentHash);
+		StringBuilder sb = new StringBuilder();
+		for (String output:outputs) {
+			if (sb.length() > 0) {
+				sb.append(OUTPUT_SEPARATOR);
+			}
+			sb.append(output);
+		}
+		properties.setProperty(OUTPUT_PREFIX + relativePath, sb.toString());
+	}
+	
+	/**
+	 * Write the manifest
+	 * @throws IOException
+	 */
+	void store() throws IOException {
+		File parent = manifestFile.getParentFile();
+		if (parent != null && !parent.exists() && !parent.mkdirs()) {
+			throw new IOException("Unable to create directory "+parent.getPath());
+		}
+		OutputStream os = new FileOutputStream(manifestFile);
+		try {
+			properties.store(os, "Licensegen generation manifest");
+		} finally {
+			os.close();
+		}
+	}
+}
@@ -0,0 +1,449 @@
+/**
+ * Copyright (c) 2017 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.spdx.maven.licensegen;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.spdx.tools.LicenseGeneratorException;
+import org.spdx.tools.LicenseRDFAGenerator;
+
+/**
+ * Generates license data only for the license XML files which changed since the last generation.
+ * 
+ * The license generator only operates on a whole directory, so changed license XML files are copied
+ * to a staging directory, generated there and the per-license output files are copied to the output
+ * directory.  The aggregate index files (license and exception lists, table of contents) depend on
+ * every license in the list.  If any of their inputs change - the license list version, the set of
+ * licenses or the license metadata - the complete license list is regenerated.
+ * @author Gary O'Neall
+ *
+ */
+class IncrementalLicenseGenerator {
+	
+	/**
+	 * Lock held while the license generator runs - the generator is not known to be thread safe
+	 */
+	static final Object GENERATOR_LOCK = new Object();
+	
+	private final File sourceDirectory;
+	private final File outputDirectory;
+	private final File manifestFile;
+	private final String version;
+	private final String releaseDate;
+	private final LicenseGenLog log;
+	private final BuildMetrics metrics;
+	private final OutputWriter outputWriter;
+	private final BuildCache cache;
+	
+	/**
+	 * @param sourceDirectory directory containing the license XML files
+	 * @param outputDirectory directory for the generated license data
+	 * @param manifestFile file recording the inputs and outputs of the previous generation
+	 * @param version license list version
+	 * @param releaseDate release date for the license list
+	 * @param log
+	 * @param metrics
+	 */
+	IncrementalLicenseGenerator(File sourceDirectory, File outputDirectory, File manifestFile,
+			String version, String releaseDate, LicenseGenLog log, BuildMetrics metrics) {
+		this(sourceDirectory, outputDirectory, manifestFile, version, releaseDate, log, metrics, null);
+	}
+	
+	/**
+	 * @param sourceDirectory directory containing the license XML files
+	 * @param outputDirectory directory for the generated license data
+	 * @param manifestFile file recording the inputs and outputs of the previous generation
+	 * @param version license list version
+	 * @param releaseDate release date for the license list
+	 * @param log
+	 * @param metrics
+	 * @param outputWriter if not null, output files are only written if changed - otherwise the output files are always written
+	 */
+	IncrementalLicenseGenerator(File sourceDirectory, File outputDirectory, File manifestFile,
+			String version, String releaseDate, LicenseGenLog log, BuildMetrics metrics, OutputWriter outputWriter) {
+		this(sourceDirectory, outputDirectory, manifestFile, version, releaseDate, log, metrics, outputWriter, null);
+	}
+	
+	/**
+	 * @param sourceDirectory directory containing the license XML files
+	 * @param outputDirectory directory for the generated license data
+	 * @param manifestFile file recording the inputs and outputs of the previous generation
+	 * @param version license list version
+	 * @param releaseDate release date for the license list
+	 * @param log
+	 * @param metrics
+	 * @param outputWriter if not null, output files are only written if changed - otherwise the output files are always written
+	 * @param cache if not null, license data is restored from and published to the build cache
+	 */
+	IncrementalLicenseGenerator(File sourceDirectory, File outputDirectory, File manifestFile,
+			String version, String releaseDate, LicenseGenLog log, BuildMetrics metrics, OutputWriter outputWriter, BuildCache cache) {
+		this.sourceDirectory = sourceDirectory;
+		this.outputDirectory = outputDirectory;
+		this.manifestFile = manifestFile;
+		this.version = version;
+		this.releaseDate = releaseDate;
+		this.log = log;
+		this.metrics = metrics;
+		this.outputWriter = outputWriter;
+		this.cache = cache;
+	}
+	
+	/**
+	 * Generate the license data for any changed license XML files
+	 * @throws LicenseGenException
+	 */
+	void generate() throws LicenseGenException {
+		generate(readSources(sourceDirectory, metrics));
+	}
+	
+	/**
+	 * Read all license XML files in a source directory
+	 * @param src directory containing the license XML files
+	 * @param metrics
+	 * @return the license XML files in path order
+	 * @throws LicenseGenException if a license XML file can not be read
+	 */
+	static List<LicenseSource> readSources(File src, BuildMetrics metrics) throws LicenseGenException {
+		List<File> xmlFiles = new ArrayList<File>();
+		LicenseSource.collectXmlFiles(src, xmlFiles);
+		List<LicenseSource> sources = new ArrayList<LicenseSource>(xmlFiles.size());
+		try {
+			for (File xmlFile:xmlFiles) {
+				long startNanos = System.nanoTime();
+				sources.add(LicenseSource.read(src, xmlFile));
+				metrics.record("source-scan", xmlFile.getName(), startNanos, xmlFile.length(), 0);
+			}
+		} catch (IOException e) {
+			throw new LicenseGenException("Error reading license XML file: "+e.getMessage(), e);
+		}
+		return sources;
+	}
+	
+	/**
+	 * Generate the license data for any changed license XML files
+	 * @param sources all license XML files in the source directory in path order
+	 * @throws LicenseGenException
+	 */
+	void generate(List<LicenseSource> sources) throws LicenseGenException {
+		GenerationManifest manifest;
+		try {
+			manifest = new GenerationManifest(manifestFile);
+		} catch (IOException e) {
+			log.warn("Unable to read generation manifest "+manifestFile.getName()+" - regenerating all license data: "+e.getMessage());
+			manifest = null;
+		}
+		String aggregateHash = aggregateHash(version, sources);
+		if (manifest == null || manifest.isEmpty() || !aggregateHash.equals(manifest.getAggregateHash()) ||
+				!outputsExist(manifest)) {
+			generateAll(sources, aggregateHash);
+			return;
+		}
+		List<LicenseSource> changed = new ArrayList<LicenseSource>();
+		for (LicenseSource source:sources) {
+			if (!source.getContentHash().equals(manifest.getInputHash(source.getRelativePath()))) {
+				changed.add(source);
+			}
+		}
+		if (changed.isEmpty()) {
+			log.info("License data is up to date - no license XML files have changed");
+			return;
+		}
+		log.info("Regenerating license data for "+changed.size()+" changed license XML files");
+		generateChanged(changed, manifest);
+	}
+
+	/**
+	 * Regenerate the complete license list and record a new manifest
+	 * @param sources all license XML sources
+	 * @param aggregateHash
+	 * @throws LicenseGenException
+	 */
+	private void generateAll(List<LicenseSource> sources, String aggregateHash) throws LicenseGenException {
+		if (outputWriter != null) {
+			outputWriter.generate(sourceDirectory, sources, version, releaseDate, cache);
+		} else {
+			long startNanos = System.nanoTime();
+			runGenerator(sourceDirectory, sources, outputDirectory);
+			metrics.record("generate", BuildMetrics.ALL_ITEMS, startNanos);
+		}
+		metrics.recordOutputSizes(outputDirectory);
+		Map<String, List<String>> outputs = mapOutputsToSources(outputDirectory, sources);
+		try {
+			GenerationManifest manifest = new GenerationManifest(manifestFile);
+			manifest.clear();
+			for (LicenseSource source:sources) {
+				manifest.put(source.getRelativePath(), source.getContentHash(), outputs.get(source.getRelativePath()));
+			}
+			manifest.setAggregateHash(aggregateHash);
+			manifest.store();
+		} catch (IOException e) {
+			log.warn("Unable to write generation manifest "+manifestFile.getName()+": "+e.getMessage());
+		}
+	}
+	
+	/**
+	 * Generate the changed license XML files in a staging directory and copy the resulting
+	 * per-license output files to the output directory
+	 * @param changed license XML files changed since the last generation
+	 * @param manifest manifest from the last generation
+	 * @throws LicenseGenException
+	 */
+	private void generateChanged(List<LicenseSource> changed, GenerationManifest manifest) throws LicenseGenException {
+		Path stagingDir = null;
+		try {
+			File stagingParent = manifestFile.getAbsoluteFile().getParentFile();
+			if (!stagingParent.exists() && !stagingParent.mkdirs()) {
+				throw new LicenseGenException("Unable to create directory "+stagingParent.getPath());
+			}
+			stagingDir = Files.createTempDirectory(stagingParent.toPath(), "licensegen-stage");
+			Path stagingSrc = stagingDir.resolve("src");
+			Path stagingOutput = stagingDir.resolve("output");
+			Files.createDirectories(stagingOutput);
+			for (LicenseSource source:changed) {
+				Path target = stagingSrc.resolve(source.getRelativePath());
+				Files.createDirectories(target.getParent());
+				Files.copy(source.getFile().toPath(), target);
+			}
+			long startNanos = System.nanoTime();
+			runGenerator(stagingSrc.toFile(), changed, stagingOutput.toFile());
+			metrics.record("generate-changed", BuildMetrics.ALL_ITEMS, startNanos);
+			metrics.recordOutputSizes(stagingOutput.toFile());
+			Map<String, List<String>> outputs = mapOutputsToSources(stagingOutput.toFile(), changed);
+			Path outputPath = outputDirectory.toPath();
+			for (LicenseSource source:changed) {
+				startNanos = System.nanoTime();
+				long bytesWritten = 0;
+				List<String> newOutputs = outputs.get(source.getRelativePath());
+				for (String output:newOutputs) {
+					Path target = outputPath.resolve(output);
+					if (outputWriter != null) {
+						if (outputWriter.write(stagingOutput.resolve(output), output)) {
+							bytesWritten += Files.size(target);
+						}
+					} else {
+						Files.createDirectories(target.getParent());
+						Files.copy(stagingOutput.resolve(output), target, StandardCopyOption.REPLACE_EXISTING);
+						bytesWritten += Files.size(target);
+					}
+				}
+				metrics.record("copy-outputs", source.getFile().getName(), startNanos, 0, bytesWritten);
+				for (String oldOutput:manifest.getOutputs(source.getRelativePath())) {
+					if (!newOutputs.contains(oldOutput)) {
+						if (outputWriter != null) {
+							outputWriter.delete(oldOutput);
+						} else {
+							Files.deleteIfExists(outputPath.resolve(oldOutput));
+						}
+					}
+				}
+				manifest.put(source.getRelativePath(), source.getContentHash(), newOutputs);
+			}
+		} catch (IOException e) {
+			throw new LicenseGenException("IO error generating changed license data: "+e.getMessage(), e);
+		} finally {
+			if (stagingDir != null) {
+				try {
+					deleteRecursively(stagingDir);
+				} catch (IOException e) {
+					log.warn("Unable to delete staging directory "+stagingDir.toString()+": "+e.getMessage());
+				}
+			}
+		}
+		try {
+			manifest.store();
+		} catch (IOException e) {
+			log.warn("Unable to write generation manifest "+manifestFile.getName()+": "+e.getMessage());
+		}
+	}
+	
+	private void runGenerator(File src, List<LicenseSource> sources, File output) throws LicenseGenException {
+		generateLicenseData(src, sources, output, version, releaseDate, log, cache);
+	}
+	
+	/**
+	 * Generate the license data for all license XML files in a directory
+	 * @param src directory containing the license XML files
+	 * @param sources the license XML files in the directory - used by the build cache
+	 * @param output output directory
+	 * @param version license list version
+	 * @param releaseDate license list release date
+	 * @param log log for the generator warnings
+	 * @param cache if not null, license data is restored from and published to the build cache
+	 * @throws LicenseGenException
+	 */
+	static void generateLicenseData(File src, List<LicenseSource> sources, File output, String version, String releaseDate, 
+			LicenseGenLog log, BuildCache cache) throws LicenseGenException {
+		if (cache == null) {
+			generateLicenseData(src, output, version, releaseDate, log);
+		} else {
+			cache.generate(sources, output, version, releaseDate, log);
+		}
+	}
+	
+	/**
+	 * Generate the license data for all license XML files in a directory
+	 * @param src directory containing the license XML files
+	 * @param output output directory
+	 * @param version license list version
+	 * @param releaseDate license list release date
+	 * @param log log for the generator warnings
+	 * @throws LicenseGenException
+	 */
+	static void generateLicenseData(File src, File output, String version, String releaseDate, LicenseGenLog log) throws LicenseGenException {
+		try {
+			List<String> warnings;
+			synchronized (GENERATOR_LOCK) {
+				warnings = LicenseRDFAGenerator.generateLicenseData(src, output, version, releaseDate);
+			}
+			for (String warning:warnings) {
+				log.warn(warning);
+			}
+		} catch (LicenseGeneratorException e) {
+			throw new LicenseGenException("Failure generating license data: "+e.getMessage(),e);
+		}
+	}
+
+	/**
+	 * @param version license list version
+	 * @param sources
+	 * @return hash of all inputs to the aggregate index files
+	 */
+	static String aggregateHash(String version, List<LicenseSource> sources) {
+		MessageDigest digest = ContentHash.newDigest();
+		digest.update(version.getBytes(StandardCharsets.UTF_8));
+		for (LicenseSource source:sources) {
+			digest.update((byte)0);
+			digest.update(source.getRelativePath().getBytes(StandardCharsets.UTF_8));
+			digest.update((byte)0);
+			digest.update(source.getMetadataHash().getBytes(StandardCharsets.UTF_8));
+		}
+		return ContentHash.toHex(digest.digest());
+	}
+	
+	/**
+	 * @param manifest
+	 * @return true if all outputs recorded in the manifest exist
+	 */
+	private boolean outputsExist(GenerationManifest manifest) {
+		for (String input:manifest.getInputs()) {
+			for (String output:manifest.getOutputs(input)) {
+				if (!new File(outputDirectory, output).isFile()) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Map each generated file to the license XML source file it was generated from.  A generated
+	 * file belongs to a license if one of its path elements is named for the license ID, optionally
+	 * followed by a file extension.  Files which do not belong to any license are aggregate files and
+	 * are not included in the result.
+	 * @param outputDir directory containing the generated files
+	 * @param sources license XML sources which were generated
+	 * @return map of source relative path to the output paths relative to outputDir
+	 * @throws LicenseGenException
+	 */
+	static Map<String, List<String>> mapOutputsToSources(File outputDir, List<LicenseSource> sources) throws LicenseGenException {
+		final Map<String, String> sourceById = new HashMap<String, String>();
+		final Map<String, List<String>> retval = new HashMap<String, List<String>>();
+		for (LicenseSource source:sources) {
+			for (String licenseId:source.getLicenseIds()) {
+				sourceById.put(licenseId, source.getRelativePath());
+			}
+			retval.put(source.getRelativePath(), new ArrayList<String>());
+		}
+		final Path root = outputDir.toPath();
+		try {
+			Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+					Path relative = root.relativize(file);
+					String licenseId = null;
+					for (Path element:relative) {
+						String candidate = matchLicenseId(element.toString(), sourceById.keySet());
+						if (candidate != null && (licenseId == null || candidate.length() > licenseId.length())) {
+							licenseId = candidate;
+						}
+					}
+					if (licenseId != null) {
+						retval.get(sourceById.get(licenseId)).add(relative.toString().replace(File.separatorChar, '/'));
+					}
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		} catch (IOException e) {
+			throw new LicenseGenException("IO error reading generated license data: "+e.getMessage(), e);
+		}
+		for (List<String> outputs:retval.values()) {
+			Collections.sort(outputs);
+		}
+		return retval;
+	}
+	
+	/**
+	 * @param name file name
+	 * @param licenseIds
+	 * @return the longest license ID which the name is equal to or which the name starts with followed by a '.'
+	 */
+	private static String matchLicenseId(String name, Set<String> licenseIds) {
+		if (licenseIds.contains(name)) {
+			return name;
+		}
+		String retval = null;
+		int dot = name.indexOf('.');
+		while (dot > 0) {
+			String candidate = name.substring(0, dot);
+			if (licenseIds.contains(candidate)) {
+				retval = candidate;
+			}
+			dot = name.indexOf('.', dot + 1);
+		}
+		return retval;
+	}
+	
+	static void deleteRecursively(Path dir) throws IOException {
+		Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				Files.delete(file);
+				return FileVisitResult.CONTINUE;
+			}
+			@Override
+			public FileVisitResult postVisitDirectory(Path d, IOException exc) throws IOException {
+				Files.delete(d);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+}
@@ -0,0 +1,479 @@
+/**
+ * Copyright (c) 2017 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.spdx.maven.licensegen;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+
+import javax.xml.validation.Schema;
+
+import org.spdx.compare.LicenseCompareHelper;
+import org.spdx.licenseTemplate.LicenseTemplateRuleException;
+import org.spdx.tools.LicenseGeneratorException;
+import org.spdx.tools.LicenseRDFAGenerator;
+import org.xml.sax.SAXException;
+
+/**
+ * Engine which validates, generates and tests license data independent of Maven.
+ * 
+ * An engine is intended to be long lived: the compiled schema and the parsed license templates
+ * are kept for the life of the engine.  Validation and comparison may be called concurrently
+ * from any number of threads.  Generation is serialized since the license generator is not
+ * known to be thread safe.  The goals of this plugin are thin wrappers around an engine.
+ * @author Gary O'Neall
+ *
+ */
+public class LicenseGenEngine {
+	
+	/**
+	 * Maximum number of parsed templates kept
+	 */
+	static final int MAX_CACHED_TEMPLATES = 1024;
+	
+	private final Schema schema;
+	private final String schemaHash;
+	private final LicenseValidator validator;
+	private BuildCache buildCache = null;
+	private final Map<String, ParsedTemplate> templates = new LinkedHashMap<String, ParsedTemplate>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, ParsedTemplate> eldest) {
+			return size() > MAX_CACHED_TEMPLATES;
+		}
+	};
+	
+	/**
+	 * Create an engine which generates and compares license data but does not validate
+	 */
+	public LicenseGenEngine() {
+		this.schema = null;
+		this.schemaHash = null;
+		this.validator = null;
+	}
+	
+	/**
+	 * @param schemaFile license XML schema file
+	 * @throws LicenseGenException if the schema can not be read or compiled
+	 */
+	public LicenseGenEngine(File schemaFile) throws LicenseGenException {
+		this(schemaFile, new BuildMetrics("engine", false));
+	}
+	
+	/**
+	 * @param schemaFile license XML schema file
+	 * @param metrics metrics the schema compilation is recorded in
+	 * @throws LicenseGenException if the schema can not be read or compiled
+	 */
+	LicenseGenEngine(File schemaFile, BuildMetrics metrics) throws LicenseGenException {
+		try {
+			this.schema = LicenseValidator.compileSchema(schemaFile, metrics);
+			this.schemaHash = ContentHash.of(schemaFile);
+		} catch (SAXException e) {
+			throw new LicenseGenException("Error parsing schema file "+schemaFile.getName(), e);
+		} catch (IOException e) {
+			throw new LicenseGenException("IO Error reading schema file "+schemaFile.getName(), e);
+		}
+		this.validator = new LicenseValidator(schema, null, new BuildMetrics("engine", false));
+	}
+	
+	/**
+	 * @param buildCache cache of generated license data and verdicts shared between builds - may be null
+	 */
+	void setBuildCache(BuildCache buildCache) {
+		this.buildCache = buildCache;
+	}
+	
+	/**
+	 * @return cache of generated license data and verdicts shared between builds or null if none is used
+	 */
+	BuildCache getBuildCache() {
+		return buildCache;
+	}
+	
+	/**
+	 * Validate a license XML file against the schema
+	 * @param fileName name of the license XML file used in error messages
+	 * @param content content of the license XML file
+	 * @return validation errors - empty if the content is valid
+	 * @throws LicenseGenException if the engine was created without a schema
+	 */
+	public List<String> validate(String fileName, byte[] content) throws LicenseGenException {
+		if (validator == null) {
+			throw new LicenseGenException("No schema file was provided to the license generation engine");
+		}
+		List<String> retval = new ArrayList<String>();
+		String error = validator.validate(null, new File(fileName), content);
+		if (error != null) {
+			retval.add(error);
+		}
+		return retval;
+	}
+	
+	/**
+	 * Generate the license data for a single license XML file.  The content is not validated.
+	 * @param fileName name of the license XML file
+	 * @param content content of the license XML file
+	 * @param version license list version
+	 * @param releaseDate license list release date
+	 * @return the generated files and any generator warnings
+	 * @throws LicenseGenException if the license data can not be generated
+	 */
+	public GeneratedLicense render(String fileName, byte[] content, String version, String releaseDate) throws LicenseGenException {
+		Path workDir = null;
+		try {
+			workDir = Files.createTempDirectory("licensegen-engine");
+			Path srcDir = Files.createDirectory(workDir.resolve("src"));
+			Path outputDir = Files.createDirectory(workDir.resolve("output"));
+			Files.write(srcDir.resolve(new File(fileName).getName()), content);
+			List<String> warnings;
+			synchronized (IncrementalLicenseGenerator.GENERATOR_LOCK) {
+				warnings = LicenseRDFAGenerator.generateLicenseData(srcDir.toFile(), outputDir.toFile(), version, releaseDate);
+			}
+			return new GeneratedLicense(readFiles(outputDir), warnings);
+		} catch (IOException e) {
+			throw new LicenseGenException("IO error generating license data for "+fileName+": "+e.getMessage(), e);
+		} catch (LicenseGeneratorException e) {
+			throw new LicenseGenException("Failure generating license data: "+e.getMessage(), e);
+		} finally {
+			if (workDir != null) {
+				try {
+					IncrementalLicenseGenerator.deleteRecursively(workDir);
+				} catch (IOException e) {
+					// Ignore - the directory is in the temporary directory
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @param dir
+	 * @return map of the path relative to dir to the content of each file in dir
+	 * @throws IOException
+	 */
+	private static Map<String, byte[]> readFiles(final Path dir) throws IOException {
+		final Map<String, byte[]> retval = new TreeMap<String, byte[]>();
+		Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				retval.put(dir.relativize(file).toString().replace(File.separatorChar, '/'), Files.readAllBytes(file));
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		return retval;
+	}
+	
+	/**
+	 * Compare a license text against a license template and the generated text for the license
+	 * @param licenseName name used in error messages
+	 * @param template license template - if null, the template is not compared
+	 * @param generatedText generated license text - if null, the generated text is not compared
+	 * @param text license text to compare
+	 * @return errors found - empty if the text matches
+	 * @throws LicenseGenException if the template contains an invalid rule
+	 */
+	public List<String> compare(String licenseName, String template, String generatedText, String text) throws LicenseGenException {
+		List<String> retval = new ArrayList<String>();
+		if (template != null) {
+			ParsedTemplate parsed;
+			try {
+				parsed = parseTemplate(template);
+			} catch (LicenseTemplateRuleException e) {
+				throw new LicenseGenException("Invalid template rule found during compare: "+e.getMessage(), e);
+			}
+			if (!parsed.matches(text)) {
+				retval.add("License template does not allow for the match of the test license text "+licenseName);
+			}
+		}
+		if (generatedText != null && !LicenseCompareHelper.isLicenseTextEquivalent(text, generatedText)) {
+			retval.add("Generated license text does not match test license text for "+licenseName);
+		}
+		return retval;
+	}
+	
+	/**
+	 * @param template license template text
+	 * @return the parsed template - parsed templates are kept for identical template texts
+	 * @throws LicenseTemplateRuleException if the template contains an invalid rule
+	 */
+	ParsedTemplate parseTemplate(String template) throws LicenseTemplateRuleException {
+		String key = ContentHash.of(template.getBytes(StandardCharsets.UTF_8));
+		synchronized (templates) {
+			ParsedTemplate retval = templates.get(key);
+			if (retval != null) {
+				return retval;
+			}
+		}
+		ParsedTemplate retval = ParsedTemplate.parse(template);
+		synchronized (templates) {
+			templates.put(key, retval);
+		}
+		return retval;
+	}
+	
+	/**
+	 * @param cache cache of previously validated files - may be null
+	 * @param metrics
+	 * @return a validator for the engine's schema
+	 */
+	LicenseValidator newValidator(ValidationCache cache, BuildMetrics metrics) {
+		if (schema == null) {
+			throw new IllegalStateException("No schema file was provided to the license generation engine");
+		}
+		return new LicenseValidator(schema, schemaHash, cache, buildCache, metrics);
+	}
+	
+	/**
+	 * @param outputDirectory directory containing the generated license data
+	 * @param threads number of threads used to compare the license texts
+	 * @param metrics
+	 * @param limit testing stops once this error limit is reached
+	 * @return a tester using the engine's parsed templates
+	 */
+	LicenseTextTester newTester(File outputDirectory, int threads, BuildMetrics metrics, ErrorLimit limit) {
+		return new LicenseTextTester(outputDirectory, threads, metrics, limit, this);
+	}
+	
+	/**
+	 * @param outputDirectory directory containing the generated license data
+	 * @param threads number of threads used to compare the license texts
+	 * @param metrics
+	 * @param limit testing stops once this error limit is reached
+	 * @param diffReporter reporter for the differences of the texts which fail to match - may be null
+	 * @return a tester using the engine's parsed templates
+	 */
+	LicenseTextTester newTester(File outputDirectory, int threads, BuildMetrics metrics, ErrorLimit limit, DiffReporter diffReporter) {
+		return new LicenseTextTester(outputDirectory, threads, metrics, limit, this, diffReporter);
+	}
+	
+	/**
+	 * Generate the license data for a source directory
+	 * @param src directory containing the license XML files
+	 * @param output output directory
+	 * @param shard shard of the licenses to generate
+	 * @param incremental if true, only the license data for changed license XML files is regenerated
+	 * @param generationManifest manifest used for incremental generation - may be null
+	 * @param outputManifest manifest of the output file hashes - if null, all output files are written
+	 * @param version license list version
+	 * @param releaseDate license list release date
+	 * @param metrics
+	 * @param log
+	 * @throws LicenseGenException if the license data can not be generated
+	 */
+	void generate(File src, File output, Shard shard, boolean incremental, File generationManifest, File outputManifest, 
+			String version, String releaseDate, BuildMetrics metrics, LicenseGenLog log) throws LicenseGenException {
+		generate(src, Collections.singletonList(new VersionTarget(version, output, generationManifest, outputManifest)), 
+				shard, incremental, OutputFormats.ALL, releaseDate, metrics, log);
+	}
+	
+	/**
+	 * Generate the license data for one or more license list versions from the same source directory.
+	 * The source files are read and, for a shard, staged once for all versions.  The versions
+	 * are processed concurrently: the license generator runs for one version at a time while the
+	 * output of the other versions is compared and written.
+	 * @param src directory containing the license XML files
+	 * @param targets versions to generate
+	 * @param shard shard of the licenses to generate
+	 * @param incremental if true, only the license data for changed license XML files is regenerated
+	 * @param formats output formats written - selecting formats requires an output manifest for each target
+	 * @param releaseDate license list release date
+	 * @param metrics
+	 * @param log
+	 * @throws LicenseGenException if the license data can not be generated
+	 */
+	void generate(File src, List<VersionTarget> targets, Shard shard, boolean incremental, OutputFormats formats, 
+			String releaseDate, BuildMetrics metrics, LicenseGenLog log) throws LicenseGenException {
+		generate(src, IncrementalLicenseGenerator.readSources(src, metrics), targets, shard, incremental, formats, releaseDate, metrics, log);
+	}
+	
+	/**
+	 * Generate the license data for one or more license list versions from license XML files which
+	 * have already been read, for example while validating them
+	 * @param src directory containing the license XML files
+	 * @param sources all license XML files in the source directory in path order
+	 * @param targets versions to generate
+	 * @param shard shard of the licenses to generate
+	 * @param incremental if true, only the license data for changed license XML files is regenerated
+	 * @param formats output formats written - selecting formats requires an output manifest for each target
+	 * @param releaseDate license list release date
+	 * @param metrics
+	 * @param log
+	 * @throws LicenseGenException if the license data can not be generated
+	 */
+	void generate(File src, List<LicenseSource> sources, List<VersionTarget> targets, Shard shard, boolean incremental, 
+			final OutputFormats formats, final String releaseDate, final BuildMetrics metrics, final LicenseGenLog log) throws LicenseGenException {
+		if (!formats.isAll()) {
+			for (VersionTarget target:targets) {
+				if (target.getOutputManifest() == null) {
+					throw new LicenseGenException("Selecting the output formats requires an output manifest.  Add a configuration parameter 'outputManifest'.");
+				}
+			}
+			log.info("Writing the output "+formats);
+		}
+		Path shardSrc = null;
+		try {
+			final File generationSrc;
+			final List<LicenseSource> generationSources;
+			final boolean generateIncremental;
+			if (shard.isAll()) {
+				generationSrc = src;
+				generationSources = sources;
+				generateIncremental = incremental;
+			} else {
+				if (incremental) {
+					log.info("Incremental generation is not supported for shards - generating all licenses in "+shard);
+				}
+				generationSources = shard.selectSources(sources);
+				shardSrc = stageShard(generationSources, shard, log);
+				generationSrc = shardSrc.toFile();
+				generateIncremental = false;
+			}
+			if (targets.size() == 1) {
+				generateVersion(generationSrc, generationSources, targets.get(0), generateIncremental, formats, releaseDate, metrics, log);
+				return;
+			}
+			final List<LicenseGenException> failures = Collections.synchronizedList(new ArrayList<LicenseGenException>());
+			List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+			for (final VersionTarget target:targets) {
+				tasks.add(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						long startNanos = System.nanoTime();
+						try {
+							generateVersion(generationSrc, generationSources, target, generateIncremental, formats, releaseDate, metrics, log);
+						} catch (LicenseGenException e) {
+							failures.add(e);
+						}
+						metrics.record("generate-version", target.getVersion(), startNanos);
+						return null;
+					}
+				});
+			}
+			WorkerPool.invokeAll(tasks, targets.size());
+			if (!failures.isEmpty()) {
+				throw failures.get(0);
+			}
+		} finally {
+			if (shardSrc != null) {
+				try {
+					IncrementalLicenseGenerator.deleteRecursively(shardSrc);
+				} catch (IOException e) {
+					log.warn("Unable to delete staging directory "+shardSrc.toString()+": "+e.getMessage());
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Generate the license data for a single license list version
+	 * @param src directory containing the license XML files to generate
+	 * @param sources the license XML files to generate
+	 * @param target version and output directory
+	 * @param incremental if true, only the license data for changed license XML files is regenerated
+	 * @param formats output formats written
+	 * @param releaseDate license list release date
+	 * @param metrics
+	 * @param log
+	 * @throws LicenseGenException if the license data can not be generated
+	 */
+	private void generateVersion(File src, List<LicenseSource> sources, VersionTarget target, boolean incremental, OutputFormats formats, String releaseDate, 
+			BuildMetrics metrics, LicenseGenLog log) throws LicenseGenException {
+		File output = target.getOutputDirectory();
+		OutputWriter outputWriter = OutputWriter.open(output, target.getOutputManifest(), log, metrics, formats);
+		if (outputWriter == null && !formats.isAll()) {
+			throw new LicenseGenException("Unable to read the output manifest "+target.getOutputManifest().getName()+" required to select the output formats");
+		}
+		if (incremental && target.getGenerationManifest() != null) {
+			new IncrementalLicenseGenerator(src, output, target.getGenerationManifest(), target.getVersion(), 
+					releaseDate, log, metrics, outputWriter, buildCache).generate(sources);
+		} else if (outputWriter != null) {
+			outputWriter.generate(src, sources, target.getVersion(), releaseDate, buildCache);
+			metrics.recordOutputSizes(output);
+		} else {
+			long startNanos = System.nanoTime();
+			IncrementalLicenseGenerator.generateLicenseData(src, sources, output, target.getVersion(), releaseDate, log, buildCache);
+			metrics.record("generate", BuildMetrics.ALL_ITEMS, startNanos);
+			metrics.recordOutputSizes(output);
+		}
+		if (outputWriter != null) {
+			outputWriter.finish();
+		}
+	}
+	
+	/**
+	 * Package the generated license data for deployment
+	 * @param output directory containing the generated license data
+	 * @param precompress if true, a gzip compressed sibling is written for each text, JSON and HTML file
+	 * @param archive zip archive all generated files are written to - if null, no archive is written
+	 * @param metrics
+	 * @param log
+	 * @throws LicenseGenException
+	 */
+	void bundle(File output, boolean precompress, File archive, BuildMetrics metrics, LicenseGenLog log) throws LicenseGenException {
+		OutputBundler bundler = new OutputBundler(output, metrics, log);
+		if (precompress) {
+			bundler.precompress(WorkerPool.resolveThreads(0));
+		}
+		if (archive != null) {
+			bundler.writeArchive(archive);
+		}
+	}
+	
+	/**
+	 * Copy the license XML files belonging to a shard to a staging directory since the license
+	 * generator operates on a whole directory
+	 * @param sources license XML files belonging to the shard
+	 * @param shard
+	 * @param log
+	 * @return the staging directory - to be deleted by the caller
+	 * @throws LicenseGenException
+	 */
+	private Path stageShard(List<LicenseSource> sources, Shard shard, LicenseGenLog log) throws LicenseGenException {
+		log.info("Generating "+sources.size()+" license XML files in "+shard);
+		Path shardSrc = null;
+		try {
+			shardSrc = Files.createTempDirectory("licensegen-shard");
+			for (LicenseSource source:sources) {
+				Path target = shardSrc.resolve(source.getRelativePath());
+				Files.createDirectories(target.getParent());
+				Files.copy(source.getFile().toPath(), target);
+			}
+			return shardSrc;
+		} catch (IOException e) {
+			if (shardSrc != null) {
+				try {
+					IncrementalLicenseGenerator.deleteRecursively(shardSrc);
+				} catch (IOException e2) {
+					log.warn("Unable to delete staging directory "+shardSrc.toString()+": "+e2.getMessage());
+				}
+			}
+			throw new LicenseGenException("IO error staging the license XML files for "+shard+": "+e.getMessage(), e);
+		}
+	}
+}
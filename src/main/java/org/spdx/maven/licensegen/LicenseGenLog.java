@@ -0,0 +1,40 @@
+/**
+ * Copyright (c) 2017 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.spdx.maven.licensegen;
+
+/**
+ * Receives the progress messages, warnings and errors of the license generation engine so
+ * the engine does not depend on the logging of the Maven goals which run it
+ * @author Gary O'Neall
+ *
+ */
+interface LicenseGenLog {
+	
+	/**
+	 * @param message progress message
+	 */
+	void info(String message);
+	
+	/**
+	 * @param message warning
+	 */
+	void warn(String message);
+	
+	/**
+	 * @param message error
+	 */
+	void error(String message);
+}
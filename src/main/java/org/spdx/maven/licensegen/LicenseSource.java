@@ -0,0 +1,307 @@
+/**
+ * Copyright (c) 2017 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.spdx.maven.licensegen;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * A license XML source file together with the information needed to decide
+ * whether generated output for the file is up to date: the content hash of the
+ * file, the license and exception IDs it defines and a hash of the metadata
+ * which contributes to the aggregate index files (element attributes and cross
+ * references).
+ * @author Gary O'Neall
+ *
+ */
+class LicenseSource {
+	
+	private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+	
+	/**
+	 * Orders the entries of a directory by name
+	 */
+	private static final Comparator<Path> NAME_ORDER = new Comparator<Path>() {
+		@Override
+		public int compare(Path p1, Path p2) {
+			return p1.getFileName().toString().compareTo(p2.getFileName().toString());
+		}
+	};
+	
+	private final File file;
+	private final String relativePath;
+	private final String contentHash;
+	private final String metadataHash;
+	private final List<String> licenseIds;
+	
+	private LicenseSource(File file, String relativePath, String contentHash, 
+			String metadataHash, List<String> licenseIds) {
+		this.file = file;
+		this.relativePath = relativePath;
+		this.contentHash = contentHash;
+		this.metadataHash = metadataHash;
+		this.licenseIds = Collections.unmodifiableList(licenseIds);
+	}
+	
+	/**
+	 * Read and summarize a license XML file
+	 * @param sourceDirectory root directory of the license XML files
+	 * @param file license XML file
+	 * @return summary of the license XML file
+	 * @throws IOException if the file can not be read or is not well formed XML
+	 */
+	static LicenseSource read(File sourceDirectory, File file) throws IOException {
+		return read(sourceDirectory, file, Files.readAllBytes(file.toPath()));
+	}
+	
+	/**
+	 * Summarize a license XML file which has already been read
+	 * @param sourceDirectory root directory of the license XML files
+	 * @param file license XML file
+	 * @param content content of the file
+	 * @return summary of the license XML file
+	 * @throws IOException if the content is not well formed XML
+	 */
+	static LicenseSource read(File sourceDirectory, File file, byte[] content) throws IOException {
+		String relativePath = sourceDirectory.toPath().relativize(file.toPath()).toString().replace(File.separatorChar, '/');
+		MessageDigest metadataDigest = ContentHash.newDigest();
+		List<String> licenseIds = new ArrayList<String>();
+		XMLStreamReader reader = null;
+		try {
+			synchronized (XML_INPUT_FACTORY) {
+				reader = XML_INPUT_FACTORY.createXMLStreamReader(new ByteArrayInputStream(content));
+			}
+			boolean inCrossRef = false;
+			while (reader.hasNext()) {
+				int event = reader.next();
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					String name = reader.getLocalName();
+					if ("license".equals(name) || "exception".equals(name)) {
+						String[] attributes = new String[reader.getAttributeCount()];
+						for (int i = 0; i < attributes.length; i++) {
+							attributes[i] = reader.getAttributeLocalName(i) + "=" + reader.getAttributeValue(i);
+						}
+						Arrays.sort(attributes);
+						updateDigest(metadataDigest, name);
+						for (String attribute:attributes) {
+							updateDigest(metadataDigest, attribute);
+						}
+						String licenseId = reader.getAttributeValue(null, "licenseId");
+						if (licenseId != null) {
+							licenseIds.add(licenseId);
+						}
+					} else if ("crossRef".equals(name)) {
+						inCrossRef = true;
+					}
+				} else if (event == XMLStreamConstants.END_ELEMENT) {
+					inCrossRef = false;
+				} else if (inCrossRef && (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA)) {
+					updateDigest(metadataDigest, reader.getText().trim());
+				}
+			}
+		} catch (XMLStreamException e) {
+			throw new IOException("Error parsing license XML file "+file.getName()+": "+e.getMessage(), e);
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (XMLStreamException e) {
+					// Ignore - the content is in memory
+				}
+			}
+		}
+		return new LicenseSource(file, relativePath, ContentHash.of(content), 
+				ContentHash.toHex(metadataDigest.digest()), licenseIds);
+	}
+	
+	/**
+	 * Receives the license XML files found while walking a directory tree
+	 */
+	interface XmlFileConsumer {
+		/**
+		 * @param xmlFile license XML file
+		 * @return false to stop the walk
+		 * @throws IOException
+		 */
+		boolean accept(File xmlFile) throws IOException;
+		
+		/**
+		 * Called in walk order for a file or directory which could not be read
+		 * @param file file or directory which could not be read
+		 * @param error
+		 * @return false to stop the walk
+		 * @throws IOException
+		 */
+		boolean failed(File file, IOException error) throws IOException;
+	}
+	
+	/**
+	 * Collect all files in the directory and subdirectories that end in ".xml" sorted by path.
+	 * Files and directories which can not be read are skipped.
+	 * @param dir
+	 * @param xmlFiles list to add the XML files to
+	 */
+	static void collectXmlFiles(File dir, final List<File> xmlFiles) {
+		try {
+			walkXmlFiles(dir, new XmlFileConsumer() {
+				@Override
+				public boolean accept(File xmlFile) {
+					xmlFiles.add(xmlFile);
+					return true;
+				}
+
+				@Override
+				public boolean failed(File file, IOException error) {
+					return true;
+				}
+			});
+		} catch (IOException e) {
+			// The consumer does not throw
+			throw new IllegalStateException("Unexpected error listing "+dir.getPath(), e);
+		}
+	}
+	
+	/**
+	 * Pass each file in the directory and subdirectories that ends in ".xml" to the consumer as
+	 * it is found.  The tree is walked depth first visiting the entries of each directory in name
+	 * order, so the files are passed in path order.  Only the entries of the directories on the 
+	 * path to the current file are held in memory.  Symbolic links are followed while links
+	 * which lead back to a directory being walked are skipped.  Any other file or directory 
+	 * which can not be read is passed to the consumer as a failure.
+	 * @param dir
+	 * @param consumer
+	 * @throws IOException if thrown by the consumer
+	 */
+	static void walkXmlFiles(File dir, final XmlFileConsumer consumer) throws IOException {
+		walkDirectory(dir.toPath(), new HashSet<Path>(), consumer);
+	}
+	
+	/**
+	 * @param dir directory to walk
+	 * @param ancestors real paths of the directories being walked
+	 * @param consumer
+	 * @return false if the walk was stopped by the consumer
+	 * @throws IOException if thrown by the consumer
+	 */
+	private static boolean walkDirectory(Path dir, Set<Path> ancestors, XmlFileConsumer consumer) throws IOException {
+		Path realDir;
+		List<Path> entries = new ArrayList<Path>();
+		try {
+			realDir = dir.toRealPath();
+			if (!ancestors.add(realDir)) {
+				return true;	// Link back to a directory being walked
+			}
+			DirectoryStream<Path> stream = Files.newDirectoryStream(dir);
+			try {
+				for (Path entry:stream) {
+					entries.add(entry);
+				}
+			} catch (DirectoryIteratorException e) {
+				throw e.getCause();
+			} finally {
+				stream.close();
+			}
+		} catch (IOException e) {
+			return consumer.failed(dir.toFile(), e);
+		}
+		try {
+			Collections.sort(entries, NAME_ORDER);
+			for (Path entry:entries) {
+				BasicFileAttributes attrs;
+				try {
+					attrs = Files.readAttributes(entry, BasicFileAttributes.class);
+				} catch (IOException e) {
+					if (!consumer.failed(entry.toFile(), e)) {
+						return false;
+					}
+					continue;
+				}
+				if (attrs.isDirectory()) {
+					if (!walkDirectory(entry, ancestors, consumer)) {
+						return false;
+					}
+				} else if (attrs.isRegularFile() && entry.getFileName().toString().toLowerCase().endsWith(".xml")) {
+					if (!consumer.accept(entry.toFile())) {
+						return false;
+					}
+				}
+			}
+			return true;
+		} finally {
+			ancestors.remove(realDir);
+		}
+	}
+	
+	private static void updateDigest(MessageDigest digest, String value) {
+		digest.update(value.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte)0);
+	}
+
+	/**
+	 * @return the license XML file
+	 */
+	File getFile() {
+		return file;
+	}
+
+	/**
+	 * @return path of the file relative to the source directory using '/' as the separator
+	 */
+	String getRelativePath() {
+		return relativePath;
+	}
+
+	/**
+	 * @return hash of the file content
+	 */
+	String getContentHash() {
+		return contentHash;
+	}
+
+	/**
+	 * @return hash of the metadata which contributes to the aggregate index files
+	 */
+	String getMetadataHash() {
+		return metadataHash;
+	}
+
+	/**
+	 * @return IDs of the licenses and exceptions defined in the file
+	 */
+	List<String> getLicenseIds() {
+		return licenseIds;
+	}
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright (c) 2017 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.spdx.maven.licensegen;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads UTF-8 license text files into a string with the line endings normalized to "\n".
+ * 
+ * The result is identical to joining the lines returned by <code>Files.readAllLines</code>
+ * with "\n": "\r\n" and "\r" are converted to "\n" and a single trailing line terminator is
+ * dropped.  The file is decoded in one pass into a single buffer sized from the file length
+ * and normalized in place.  Files of at least <code>MAPPED_READ_THRESHOLD</code> bytes are
+ * memory mapped rather than copied onto the heap.
+ * @author Gary O'Neall
+ *
+ */
+final class LicenseTextReader {
+	
+	/**
+	 * Files of this size or larger are memory mapped
+	 */
+	static final long MAPPED_READ_THRESHOLD = 1024 * 1024;
+	
+	private LicenseTextReader() {
+		// Static helper only
+	}
+	
+	/**
+	 * @param path UTF-8 encoded text file
+	 * @return the content of the file with normalized line endings
+	 * @throws IOException if the file can not be read or is not valid UTF-8
+	 */
+	static String read(Path path) throws IOException {
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("File "+path.toString()+" is too large to read into a string");
+			}
+			ByteBuffer bytes;
+			if (size >= MAPPED_READ_THRESHOLD) {
+				bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			} else {
+				bytes = ByteBuffer.allocate((int)size);
+				while (bytes.hasRemaining() && channel.read(bytes) >= 0) {
+					// keep reading until the buffer is full or the end of file is reached
+				}
+				bytes.flip();
+			}
+			return decodeNormalized(bytes);
+		} finally {
+			channel.close();
+		}
+	}
+	
+	/**
+	 * @param bytes UTF-8 encoded text
+	 * @return the decoded text with normalized line endings
+	 * @throws CharacterCodingException if the bytes are not valid UTF-8
+	 */
+	static String decodeNormalized(ByteBuffer bytes) throws CharacterCodingException {
+		CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPORT)
+				.onUnmappableCharacter(CodingErrorAction.REPORT);
+		// UTF-8 never decodes to more chars than there are bytes
+		CharBuffer chars = CharBuffer.allocate(bytes.remaining());
+		CoderResult result = decoder.decode(bytes, chars, true);
+		if (result.isError()) {
+			result.throwException();
+		}
+		result = decoder.flush(chars);
+		if (result.isError()) {
+			result.throwException();
+		}
+		char[] buf = chars.array();
+		int len = chars.position();
+		int out = 0;
+		for (int i = 0; i < len; i++) {
+			char c = buf[i];
+			if (c == '\r') {
+				buf[out++] = '\n';
+				if (i + 1 < len && buf[i + 1] == '\n') {
+					i++;
+				}
+			} else {
+				buf[out++] = c;
+			}
+		}
+		if (out > 0 && buf[out - 1] == '\n') {
+			out--;
+		}
+		return new String(buf, 0, out);
+	}
+}
@@ -0,0 +1,348 @@
+/**
+ * Copyright (c) 2017 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.spdx.maven.licensegen;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.spdx.compare.LicenseCompareHelper;
+import org.spdx.licenseTemplate.LicenseTemplateRuleException;
+
+/**
+ * Tests the generated license templates and texts against the expected license texts
+ * @author Gary O'Neall
+ *
+ */
+class LicenseTextTester {
+	
+	private final Path templateDirPath;
+	private final Path genTextDirPath;
+	private final int threads;
+	private final BuildMetrics metrics;
+	private final ErrorLimit limit;
+	private final LicenseGenEngine engine;
+	private final DiffReporter diffReporter;
+	private final AtomicInteger numTextsTested = new AtomicInteger();
+	
+	/**
+	 * @param outputDirectory directory containing the generated license data
+	 * @param threads number of threads used to compare the license texts
+	 * @param metrics
+	 * @param limit testing stops once this error limit is reached
+	 * @param engine engine whose parsed templates are used
+	 */
+	LicenseTextTester(File outputDirectory, int threads, BuildMetrics metrics, ErrorLimit limit, LicenseGenEngine engine) {
+		this(outputDirectory, threads, metrics, limit, engine, null);
+	}
+	
+	/**
+	 * @param outputDirectory directory containing the generated license data
+	 * @param threads number of threads used to compare the license texts
+	 * @param metrics
+	 * @param limit testing stops once this error limit is reached
+	 * @param engine engine whose parsed templates are used
+	 * @param diffReporter reporter for the differences of the texts which fail to match - if null, differences are not reported
+	 */
+	LicenseTextTester(File outputDirectory, int threads, BuildMetrics metrics, ErrorLimit limit, LicenseGenEngine engine, 
+			DiffReporter diffReporter) {
+		this.templateDirPath = outputDirectory.toPath().resolve("template");
+		this.genTextDirPath = outputDirectory.toPath().resolve("text");
+		this.threads = threads;
+		this.metrics = metrics;
+		this.limit = limit;
+		this.engine = engine;
+		this.diffReporter = diffReporter;
+	}
+	
+	/**
+	 * Test all license texts in the test directory.  Errors are reported in license order followed
+	 * by a summary.  Testing stops once the error limit is reached.
+	 * @param textCompare directory containing the expected license texts
+	 * @param diagnostics diagnostics the errors are reported to
+	 * @return the number of errors found
+	 * @throws LicenseGenException
+	 */
+	int testAll(File textCompare, Diagnostics diagnostics) throws LicenseGenException {
+		return testAll(textCompare, Shard.ALL, diagnostics);
+	}
+	
+	/**
+	 * Test the license texts in the test directory for the licenses belonging to a shard.  Errors
+	 * are reported in license order followed by a summary.  Testing stops once the error limit is reached.
+	 * @param textCompare directory containing the expected license texts
+	 * @param shard shard of the licenses to test
+	 * @param diagnostics diagnostics the errors are reported to
+	 * @return the number of errors found
+	 * @throws LicenseGenException
+	 */
+	int testAll(File textCompare, Shard shard, Diagnostics diagnostics) throws LicenseGenException {
+		Map<String, List<File>> textFilesByLicense = collectTextFiles(textCompare);
+		if (!shard.isAll()) {
+			Iterator<String> iter = textFilesByLicense.keySet().iterator();
+			while (iter.hasNext()) {
+				if (!shard.includes(iter.next())) {
+					iter.remove();
+				}
+			}
+		}
+		List<Callable<List<Diagnostics.Finding>>> tasks = new ArrayList<Callable<List<Diagnostics.Finding>>>(textFilesByLicense.size());
+		int numTexts = 0;
+		for (final Entry<String, List<File>> entry:textFilesByLicense.entrySet()) {
+			numTexts += entry.getValue().size();
+			tasks.add(new Callable<List<Diagnostics.Finding>>() {
+				@Override
+				public List<Diagnostics.Finding> call() throws LicenseGenException {
+					List<Diagnostics.Finding> errors = check(entry.getKey(), entry.getValue());
+					limit.recordErrors(errors.size());
+					return errors;
+				}
+			});
+		}
+		numTextsTested.set(0);
+		List<List<Diagnostics.Finding>> results = WorkerPool.invokeAll(tasks, WorkerPool.resolveThreads(threads), limit);
+		int numErrors = 0;
+		for (List<Diagnostics.Finding> errors:results) {
+			for (Diagnostics.Finding error:errors) {
+				diagnostics.report(error);
+				numErrors++;
+			}
+		}
+		LicenseGenLog log = diagnostics.getLog();
+		if (limit.isReached() && numTextsTested.get() < numTexts) {
+			log.error("Stopped after reaching the limit of "+limit.getMaxErrors()+" errors: tested "+numTextsTested.get()+" of "+
+					numTexts+" license texts for "+results.size()+" of "+textFilesByLicense.size()+" licenses");
+		} else {
+			log.info("Tested "+numTexts+" license texts for "+textFilesByLicense.size()+" licenses: "+numErrors+" errors");
+		}
+		return numErrors;
+	}
+	
+	/**
+	 * Collect the test license text files by license.  A file in the test directory is the text
+	 * for the license with the same name less any ".txt" extension.  A subdirectory contains
+	 * variant texts for the license with the same name as the subdirectory.
+	 * @param testDir directory containing the test license texts
+	 * @return map of license name to the test texts for the license sorted by license name
+	 */
+	static Map<String, List<File>> collectTextFiles(File testDir) {
+		Map<String, List<File>> retval = new TreeMap<String, List<File>>();
+		File[] textFiles = testDir.listFiles();
+		if (textFiles == null) {
+			return retval;
+		}
+		Arrays.sort(textFiles);
+		for (File textFile:textFiles) {
+			String licenseName = textFile.getName();
+			if (licenseName.endsWith(".txt")) {
+				licenseName = licenseName.substring(0, licenseName.length()-".txt".length());
+			}
+			List<File> licenseTexts = retval.get(licenseName);
+			if (licenseTexts == null) {
+				licenseTexts = new ArrayList<File>();
+				retval.put(licenseName, licenseTexts);
+			}
+			if (textFile.isDirectory()) {
+				File[] variants = textFile.listFiles();
+				if (variants != null) {
+					Arrays.sort(variants);
+					for (File variant:variants) {
+						if (variant.isFile()) {
+							licenseTexts.add(variant);
+						}
+					}
+				}
+			} else {
+				licenseTexts.add(textFile);
+			}
+		}
+		return retval;
+	}
+	
+	/**
+	 * Test all of the test texts for a license against the license template and the generated license text.
+	 * The template and generated text are only read and parsed once for the license and the template
+	 * is not parsed if every text has a cached verdict.  Remaining texts are skipped once the error
+	 * limit has been reached.
+	 * @param licenseName
+	 * @param textFiles test texts for the license
+	 * @return errors found
+	 * @throws LicenseGenException
+	 */
+	List<String> testLicense(String licenseName, List<File> textFiles) throws LicenseGenException {
+		List<String> retval = new ArrayList<String>();
+		for (Diagnostics.Finding error:check(licenseName, textFiles)) {
+			retval.add(error.getMessage());
+		}
+		return retval;
+	}
+	
+	/**
+	 * Test all of the test texts for a license - see testLicense
+	 * @param licenseName
+	 * @param textFiles test texts for the license
+	 * @return errors found
+	 * @throws LicenseGenException
+	 */
+	private List<Diagnostics.Finding> check(String licenseName, List<File> textFiles) throws LicenseGenException {
+		List<Diagnostics.Finding> errors = new ArrayList<Diagnostics.Finding>();
+		Path templatePath = templateDirPath.resolve(licenseName + ".template.txt");
+		File templateFile = templatePath.toFile();
+		boolean hasTemplate = templateFile.exists() && templateFile.isFile();
+		ParsedTemplate template = null;
+		String templateHash = null;
+		if (hasTemplate && engine.getBuildCache() != null) {
+			try {
+				templateHash = ContentHash.of(templateFile);
+			} catch (IOException e) {
+				throw new LicenseGenException("IO Error reading template file "+templatePath.toString(),e);
+			}
+		}
+		Path genTextPath = genTextDirPath.resolve(licenseName + ".txt");
+		File genTextFile = genTextPath.toFile();
+		String genText = null;
+		if (genTextFile.exists() && genTextFile.isFile()) {
+			long startNanos = System.nanoTime();
+			try {
+				genText = LicenseTextReader.read(genTextPath);
+				metrics.record("read", licenseName, startNanos, genTextFile.length(), 0);
+			} catch (IOException e) {
+				throw new LicenseGenException("IO Error reading generated text file "+genTextPath.toString(),e);
+			}
+		}
+		for (File textFile:textFiles) {
+			if (limit.isReached()) {
+				break;
+			}
+			String text = null;
+			long startNanos = System.nanoTime();
+			try {
+				text = LicenseTextReader.read(textFile.toPath());
+				metrics.record("read", licenseName, startNanos, textFile.length(), 0);
+			} catch (IOException e) {
+				throw new LicenseGenException("IO Error reading test text file "+textFile.getName(),e);
+			}
+			String verdictKey = null;
+			if (engine.getBuildCache() != null && templateHash != null) {
+				verdictKey = BuildCache.key("test", templateHash, genText == null ? "" : ContentHash.of(genText.getBytes(StandardCharsets.UTF_8)), 
+						ContentHash.of(text.getBytes(StandardCharsets.UTF_8)));
+				if (engine.getBuildCache().hasVerdict(verdictKey)) {
+					if (diffReporter != null) {
+						diffReporter.clear(licenseName, textFile, "template");
+						diffReporter.clear(licenseName, textFile, "text");
+					}
+					numTextsTested.incrementAndGet();
+					continue;
+				}
+			}
+			int numErrors = errors.size();
+			if (hasTemplate && template == null) {
+				// Only parsed once a text is not covered by a cached verdict
+				startNanos = System.nanoTime();
+				template = parseTemplate(templatePath);
+				metrics.record("template-parse", licenseName, startNanos, templateFile.length(), 0);
+			}
+			if (template != null) {
+				startNanos = System.nanoTime();
+				boolean matches = template.matches(text);
+				metrics.record("template-match", licenseName, startNanos);
+				if (!matches) {
+					errors.add(finding(licenseName, textFile, "License template does not allow for the match of the test license text "+textFile.getName()+
+							explain(licenseName, textFile, "template", template.canonicalTokens(), text)));
+				} else if (diffReporter != null) {
+					diffReporter.clear(licenseName, textFile, "template");
+				}
+			} else {
+				errors.add(finding(licenseName, textFile, "No template file was found for test file "+textFile.getName()));
+			}
+			if (genText != null) {
+				startNanos = System.nanoTime();
+				boolean equivalent = LicenseCompareHelper.isLicenseTextEquivalent(text, genText);
+				metrics.record("compare", licenseName, startNanos);
+				if (!equivalent) {
+					errors.add(finding(licenseName, textFile, "Generated license text does not match test license text for "+textFile.getName()+
+							explain(licenseName, textFile, "text", TokenNormalizer.canonicalTokens(genText), text)));
+				} else if (diffReporter != null) {
+					diffReporter.clear(licenseName, textFile, "text");
+				}
+			}
+			if (verdictKey != null && errors.size() == numErrors) {
+				engine.getBuildCache().putVerdict(verdictKey);
+			}
+			numTextsTested.incrementAndGet();
+		}
+		return errors;
+	}
+	
+	/**
+	 * @param licenseName
+	 * @param textFile test text file
+	 * @param kind "template" or "text"
+	 * @param expected canonical tokens of the template or generated text
+	 * @param text test text
+	 * @return description of the first difference to append to the error message - empty if differences are not reported
+	 * @throws LicenseGenException
+	 */
+	private String explain(String licenseName, File textFile, String kind, List<String> expected, String text) throws LicenseGenException {
+		if (diffReporter == null) {
+			return "";
+		}
+		long startNanos = System.nanoTime();
+		String retval = ": " + diffReporter.explain(licenseName, textFile, kind, expected, TokenNormalizer.canonicalTokens(text));
+		metrics.record("diff", licenseName, startNanos);
+		return retval;
+	}
+	
+	/**
+	 * @param licenseName
+	 * @param textFile test text - either in the test directory or in a subdirectory named for the license
+	 * @param message
+	 * @return test error finding for the text
+	 */
+	private static Diagnostics.Finding finding(String licenseName, File textFile, String message) {
+		String path = licenseName.equals(textFile.getParentFile().getName()) ? licenseName + "/" + textFile.getName() : textFile.getName();
+		return new Diagnostics.Finding(Diagnostics.Severity.ERROR, "test", path, 0, 0, licenseName, message);
+	}
+
+	/**
+	 * @param templatePath
+	 * @return the parsed template stored in the file templatePath
+	 * @throws LicenseGenException
+	 */
+	private ParsedTemplate parseTemplate(Path templatePath) throws LicenseGenException {
+		String template = null;
+		try {
+			template = LicenseTextReader.read(templatePath);
+		} catch (IOException e) {
+			throw new LicenseGenException("IO Error reading template file "+templatePath.toString(),e);
+		}
+		try {
+			return engine.parseTemplate(template);
+		} catch (LicenseTemplateRuleException e) {
+			throw(new LicenseGenException("Invalid template rule found during compare: "+e.getMessage(),e));
+		}
+	}
+}
@@ -0,0 +1,481 @@
+/**
+ * Copyright (c) 2017 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.spdx.maven.licensegen;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.Validator;
+
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+/**
+ * Validates license XML files against the license XML schema.
+ * 
+ * The compiled schema is shared while each thread uses its own validator since validators are
+ * not thread safe.  Directory trees are validated as they are walked so that neither the file
+ * list nor the errors are held in memory.  Files recorded as valid in the optional validation cache
+ * or build cache are not revalidated.
+ * @author Gary O'Neall
+ *
+ */
+class LicenseValidator {
+	
+	/**
+	 * Capacity of the queue of files waiting for each validation thread
+	 */
+	static final int QUEUED_FILES_PER_THREAD = 16;
+	
+	/**
+	 * Interval at which a walk waiting for the validation threads checks that they are still running
+	 */
+	private static final long WORKER_POLL_MILLIS = 100;
+	
+	/**
+	 * Marks the end of the files in the validation queue
+	 */
+	private static final QueuedFile END_OF_FILES = new QueuedFile(-1, null);
+	
+	private final String schemaHash;
+	private final ValidationCache cache;
+	private final BuildCache buildCache;
+	private final BuildMetrics metrics;
+	private final ThreadLocal<Validator> validators;
+	private final AtomicInteger numSkipped = new AtomicInteger();
+	private final AtomicInteger numChecked = new AtomicInteger();
+	
+	/**
+	 * @param schema compiled license XML schema
+	 * @param cache cache of previously validated files - may be null
+	 * @param metrics
+	 */
+	LicenseValidator(final Schema schema, ValidationCache cache, BuildMetrics metrics) {
+		this(schema, null, cache, null, metrics);
+	}
+	
+	/**
+	 * @param schema compiled license XML schema
+	 * @param schemaHash content hash of the schema - required if a build cache is used
+	 * @param cache cache of previously validated files - may be null
+	 * @param buildCache cache of validation verdicts shared between builds - may be null
+	 * @param metrics
+	 */
+	LicenseValidator(final Schema schema, String schemaHash, ValidationCache cache, BuildCache buildCache, BuildMetrics metrics) {
+		this.schemaHash = schemaHash;
+		this.cache = cache;
+		this.buildCache = buildCache;
+		this.metrics = metrics;
+		this.validators = new ThreadLocal<Validator>() {
+			@Override
+			protected Validator initialValue() {
+				return schema.newValidator();
+			}
+		};
+	}
+	
+	/**
+	 * @param schemaFile license XML schema file
+	 * @param metrics
+	 * @return the compiled schema - reused from previous executions if the schema file is unchanged
+	 * @throws SAXException if the schema is not valid
+	 * @throws IOException if the schema file can not be read
+	 */
+	static Schema compileSchema(File schemaFile, BuildMetrics metrics) throws SAXException, IOException {
+		return SchemaCache.get(schemaFile, metrics);
+	}
+	
+	/**
+	 * Validate the license XML files in a directory tree as they are found using the given number
+	 * of threads.  The files are passed to the worker threads through a bounded queue and errors
+	 * are reported in path order through a bounded reorder buffer, so memory use does not depend
+	 * on the size of the tree and the errors reported do not depend on the number of threads.
+	 * Files and directories which can not be read are reported as errors.  Validation stops once
+	 * the error limit is reached.
+	 * @param src source directory containing the files
+	 * @param shard shard of the licenses to validate
+	 * @param threads
+	 * @param limit error limit
+	 * @param diagnostics diagnostics the validation errors are reported to
+	 * @return number of invalid files
+	 * @throws LicenseGenException
+	 */
+	int validateTree(final File src, final Shard shard, int threads, final ErrorLimit limit, 
+			final Diagnostics diagnostics) throws LicenseGenException {
+		numChecked.set(0);
+		final int window = Math.max(threads, 1) * QUEUED_FILES_PER_THREAD;
+		final FindingSequencer sequencer = new FindingSequencer(window, limit, diagnostics);
+		if (threads <= 1) {
+			walkShard(src, shard, new LicenseSource.XmlFileConsumer() {
+				long sequence = 0;
+				
+				@Override
+				public boolean accept(File xmlFile) {
+					sequencer.complete(sequence++, validateFile(src, xmlFile));
+					return !limit.isReached();
+				}
+
+				@Override
+				public boolean failed(File file, IOException error) {
+					sequencer.complete(sequence++, unreadable(src, file, error));
+					return !limit.isReached();
+				}
+			});
+			return sequencer.getNumErrors();
+		}
+		final BlockingQueue<QueuedFile> queue = new ArrayBlockingQueue<QueuedFile>(window + threads);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		final List<Future<Void>> workers = new ArrayList<Future<Void>>(threads);
+		try {
+			for (int i = 0; i < threads; i++) {
+				workers.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws InterruptedException {
+						QueuedFile queued = queue.take();
+						while (queued != END_OF_FILES) {
+							sequencer.complete(queued.sequence, 
+									limit.isReached() ? null : validateFile(src, queued.xmlFile));
+							queued = queue.take();
+						}
+						return null;
+					}
+				}));
+			}
+			walkShard(src, shard, new LicenseSource.XmlFileConsumer() {
+				long sequence = 0;
+				
+				@Override
+				public boolean accept(File xmlFile) throws IOException {
+					awaitWindow();
+					queue.add(new QueuedFile(sequence++, xmlFile));
+					return !limit.isReached();
+				}
+
+				@Override
+				public boolean failed(File file, IOException error) throws IOException {
+					awaitWindow();
+					sequencer.complete(sequence++, unreadable(src, file, error));
+					return !limit.isReached();
+				}
+				
+				/**
+				 * Wait for room in the reorder buffer, failing if a worker thread has died
+				 * since the buffer would then never drain
+				 */
+				private void awaitWindow() throws IOException {
+					try {
+						while (!sequencer.reserve(WORKER_POLL_MILLIS)) {
+							for (Future<Void> worker:workers) {
+								if (worker.isDone()) {
+									worker.get();
+									throw new IOException("Validation worker thread stopped unexpectedly");
+								}
+							}
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new InterruptedIOException("Interrupted queuing license XML files for validation");
+					} catch (ExecutionException e) {
+						throw new WorkerFailedException(e);
+					}
+				}
+			});
+			for (int i = 0; i < threads; i++) {
+				queue.add(END_OF_FILES);
+			}
+			for (Future<Void> worker:workers) {
+				worker.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new LicenseGenException("Interrupted waiting for worker threads",e);
+		} catch (ExecutionException e) {
+			throw new LicenseGenException("Unexpected error in worker thread: "+e.getCause().getMessage(),e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+		return sequencer.getNumErrors();
+	}
+	
+	/**
+	 * Pass the license XML files in the source directory belonging to a shard to the consumer
+	 * @param src
+	 * @param shard
+	 * @param consumer
+	 * @throws LicenseGenException
+	 */
+	private void walkShard(File src, final Shard shard, final LicenseSource.XmlFileConsumer consumer) throws LicenseGenException {
+		try {
+			LicenseSource.walkXmlFiles(src, new LicenseSource.XmlFileConsumer() {
+				@Override
+				public boolean accept(File xmlFile) throws IOException {
+					return !shard.includes(Shard.licenseName(xmlFile)) || consumer.accept(xmlFile);
+				}
+
+				@Override
+				public boolean failed(File file, IOException error) throws IOException {
+					return consumer.failed(file, error);
+				}
+			});
+		} catch (InterruptedIOException e) {
+			throw new LicenseGenException("Interrupted validating license XML files",e);
+		} catch (WorkerFailedException e) {
+			Throwable cause = e.getCause().getCause();
+			throw new LicenseGenException("Unexpected error in worker thread: "+cause.getMessage(),cause);
+		} catch (IOException e) {
+			throw new LicenseGenException("IO Error reading source directory "+src.getName()+": "+e.getMessage(),e);
+		}
+	}
+	
+	/**
+	 * Validate a license XML file
+	 * @param src source directory containing the file
+	 * @param xmlFile
+	 * @return null if valid, otherwise the validation error
+	 */
+	private Diagnostics.Finding validateFile(File src, File xmlFile) {
+		Diagnostics.Finding error;
+		try {
+			byte[] content = Files.readAllBytes(xmlFile.toPath());
+			error = check(src, xmlFile, content);
+		} catch (IOException e) {
+			error = finding(src, xmlFile, 0, 0, "IO Error reading "+xmlFile.getName()+": "+e.getMessage());
+		} catch (RuntimeException e) {
+			error = finding(src, xmlFile, 0, 0, "Unexpected error validating "+xmlFile.getName()+": "+e.getMessage());
+		}
+		numChecked.incrementAndGet();
+		return error;
+	}
+	
+	/**
+	 * @param src source directory
+	 * @param file file or directory which could not be read
+	 * @param error
+	 * @return an error finding for the file
+	 */
+	private static Diagnostics.Finding unreadable(File src, File file, IOException error) {
+		return finding(src, file, 0, 0, "IO Error reading "+file.getName()+": "+error.getMessage());
+	}
+	
+	/**
+	 * @param src source directory containing the file - may be null
+	 * @param xmlFile
+	 * @param line line of the error - 0 if not known
+	 * @param column column of the error - 0 if not known
+	 * @param message
+	 * @return a validation error finding for the file
+	 */
+	static Diagnostics.Finding finding(File src, File xmlFile, int line, int column, String message) {
+		String path = src == null ? xmlFile.getName() : src.toPath().relativize(xmlFile.toPath()).toString().replace(File.separatorChar, '/');
+		return new Diagnostics.Finding(Diagnostics.Severity.ERROR, "validate", path, line, column, Shard.licenseName(xmlFile), message);
+	}
+	
+	/**
+	 * Validate the content of a license XML file
+	 * @param src source directory containing the file
+	 * @param xmlFile
+	 * @param content content of the file
+	 * @return null if valid, otherwise a description of the validation error
+	 */
+	String validate(File src, File xmlFile, byte[] content) {
+		Diagnostics.Finding error = check(src, xmlFile, content);
+		return error == null ? null : error.getMessage();
+	}
+	
+	/**
+	 * Validate the content of a license XML file
+	 * @param src source directory containing the file - may be null if there is no validation cache
+	 * @param xmlFile
+	 * @param content content of the file
+	 * @return null if valid, otherwise the validation error
+	 */
+	Diagnostics.Finding check(File src, File xmlFile, byte[] content) {
+		long startNanos = System.nanoTime();
+		String relativePath = null;
+		String contentHash = null;
+		if (cache != null) {
+			relativePath = src.toPath().relativize(xmlFile.toPath()).toString().replace(File.separatorChar, '/');
+			contentHash = ContentHash.of(content);
+			if (cache.isKnownValid(relativePath, contentHash)) {
+				cache.markValid(relativePath, contentHash);
+				numSkipped.incrementAndGet();
+				metrics.record("validate-cached", xmlFile.getName(), startNanos, content.length, 0);
+				return null;
+			}
+		}
+		String verdictKey = null;
+		if (buildCache != null && schemaHash != null) {
+			if (contentHash == null) {
+				contentHash = ContentHash.of(content);
+			}
+			verdictKey = BuildCache.key("validate", schemaHash, contentHash);
+			if (buildCache.hasVerdict(verdictKey)) {
+				if (cache != null) {
+					cache.markValid(relativePath, contentHash);
+				}
+				numSkipped.incrementAndGet();
+				metrics.record("validate-cached", xmlFile.getName(), startNanos, content.length, 0);
+				return null;
+			}
+		}
+		Source xmlSource = new StreamSource(new ByteArrayInputStream(content), xmlFile.toURI().toString());
+		Diagnostics.Finding error = validate(src, xmlFile, xmlSource);
+		if (error == null && cache != null) {
+			cache.markValid(relativePath, contentHash);
+		}
+		if (error == null && verdictKey != null) {
+			buildCache.putVerdict(verdictKey);
+		}
+		metrics.record("validate", xmlFile.getName(), startNanos, content.length, 0);
+		return error;
+	}
+	
+	/**
+	 * @return number of files checked by the last call to validateTree including files found in the validation cache
+	 */
+	int getNumChecked() {
+		return numChecked.get();
+	}
+	
+	/**
+	 * @return number of files which were not validated since they were found in the validation cache
+	 */
+	int getNumSkipped() {
+		return numSkipped.get();
+	}
+	
+	/**
+	 * Validate a license XML file against the validator
+	 * @param src source directory containing the file - may be null
+	 * @param file
+	 * @param xmlSource source for the content of the file
+	 * @return null if valid, otherwise the validation error
+	 */
+	private Diagnostics.Finding validate(File src, File file, Source xmlSource) {
+		try {
+			validators.get().validate(xmlSource);
+		} catch (SAXParseException e) {
+			return finding(src, file, Math.max(e.getLineNumber(), 0), Math.max(e.getColumnNumber(), 0), 
+					"Parsing error in XML file "+file.getName()+ " at line "+e.getLineNumber()+", column "+e.getColumnNumber()+":"+e.getMessage());
+		} catch (SAXException e) {
+			return finding(src, file, 0, 0, "File "+file.getName()+" contains the following XML parsing error: "+e.getMessage());
+		} catch (IOException e) {
+			return finding(src, file, 0, 0, "IO Error validating "+file.getName()+": "+e.getMessage());
+		}
+		return null;
+	}
+	
+	/**
+	 * A license XML file waiting for validation together with its position in the walk
+	 */
+	private static class QueuedFile {
+		final long sequence;
+		final File xmlFile;
+		
+		QueuedFile(long sequence, File xmlFile) {
+			this.sequence = sequence;
+			this.xmlFile = xmlFile;
+		}
+	}
+	
+	/**
+	 * Reorder buffer which reports the results of the files in walk order as they complete.  
+	 * The number of files which have been handed out but not yet reported is bounded by the 
+	 * window, so the buffer stays small however far a slow file holds back the files behind it.
+	 */
+	private static class FindingSequencer {
+		private final Semaphore window;
+		private final ErrorLimit limit;
+		private final Diagnostics diagnostics;
+		/**
+		 * Results which are waiting for an earlier file - null for a valid file
+		 */
+		private final Map<Long, Diagnostics.Finding> pending = new HashMap<Long, Diagnostics.Finding>();
+		private long next = 0;
+		private int numErrors = 0;
+		
+		FindingSequencer(int window, ErrorLimit limit, Diagnostics diagnostics) {
+			this.window = new Semaphore(window);
+			this.limit = limit;
+			this.diagnostics = diagnostics;
+		}
+		
+		/**
+		 * Reserve room for the next file in the walk
+		 * @param timeoutMillis
+		 * @return false if there was no room within the timeout
+		 * @throws InterruptedException
+		 */
+		boolean reserve(long timeoutMillis) throws InterruptedException {
+			return window.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS);
+		}
+		
+		/**
+		 * Record the result of a file and report the results which are now in order.  Errors
+		 * after the error limit is reached are not reported.
+		 * @param sequence position of the file in the walk
+		 * @param error null if the file is valid
+		 */
+		synchronized void complete(long sequence, Diagnostics.Finding error) {
+			pending.put(sequence, error);
+			while (pending.containsKey(next)) {
+				Diagnostics.Finding ready = pending.remove(next);
+				if (ready != null && !limit.isReached()) {
+					numErrors++;
+					limit.recordErrors(1);
+					diagnostics.report(ready);
+				}
+				next++;
+				window.release();
+			}
+		}
+		
+		synchronized int getNumErrors() {
+			return numErrors;
+		}
+	}
+	
+	/**
+	 * Carries the failure of a worker thread out of the directory walk
+	 */
+	private static class WorkerFailedException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		WorkerFailedException(ExecutionException cause) {
+			super(cause);
+		}
+	}
+}
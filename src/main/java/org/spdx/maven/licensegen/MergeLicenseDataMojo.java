@@ -0,0 +1,212 @@
+/**
+ * Copyright (c) 2017 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.spdx.maven.licensegen;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Goal which combines the license data generated by the shards of a sharded generate into the
+ * complete license data, including the aggregate index files for the whole license list
+ * @author Gary O'Neall
+ *
+ */
+@Mojo( name = "merge", defaultPhase = LifecyclePhase.COMPILE )
+public class MergeLicenseDataMojo extends AbstractMojo {
+	
+    /**
+     * Directory containing the license list XML files
+     */
+    @Parameter( defaultValue = "${project.build.sourceDirectory}", required = true )
+    private File sourceDirectory;
+    
+    /**
+     * Output directory for the merged license data
+     */
+    @Parameter( defaultValue = "${project.build.outputDirectory}", required = true )
+    private File outputDirectory;
+    
+    /**
+     * Output directories of the generate goal executions for each shard
+     */
+    @Parameter( required = true )
+    private File[] shardDirectories;
+    
+    /**
+     * File recording the content hashes of the generated output files.  Output files are only
+     * written if their content changed and previously generated files which are no longer generated
+     * are deleted.
+     */
+    @Parameter(defaultValue = "${project.build.directory}/licensegen/output-manifest.properties", required = false)
+    private File outputManifest;
+    
+    /**
+     * If set, all generated files are also written to this zip archive together with an offset
+     * index (the archive name followed by .index) so the license data can be deployed as one file
+     */
+    @Parameter(property = "licensegen.outputArchive", required = false)
+    private File outputArchive;
+    
+    /**
+     * If true, a gzip compressed sibling (.gz) is written next to each generated text, JSON and HTML
+     * file so web servers can serve precompressed content
+     */
+    @Parameter(defaultValue = "false", property = "licensegen.precompress", required = false)
+    private boolean precompress;
+    
+    /**
+     * Directory for the timing and I/O metrics reports.  Defaults to target/licensegen-metrics - set
+     * skipMetrics to turn the reports off.
+     */
+    @Parameter(defaultValue = "${project.build.directory}/licensegen-metrics", required = false)
+    private File metricsDirectory;
+    
+    /**
+     * If true, no metrics reports are written and metrics are only collected to check a configured metricsBaseline
+     */
+    @Parameter(defaultValue = "false", property = "licensegen.skipMetrics", required = false)
+    private boolean skipMetrics;
+    
+    /**
+     * Number of slowest licenses listed in the metrics summary
+     */
+    @Parameter(defaultValue = "10", required = false)
+    private int metricsTopN;
+    
+    /**
+     * File recording the timing of previous runs.  If set, the time of the goal, each phase and each
+     * license is compared to the median of the recorded runs and the run is added to the baseline.
+     */
+    @Parameter(property = "licensegen.metricsBaseline", required = false)
+    private File metricsBaseline;
+    
+    /**
+     * Ratio of a time to its baseline median above which the time is reported as a slowdown
+     */
+    @Parameter(defaultValue = "1.5", property = "licensegen.maxSlowdown", required = false)
+    private double maxSlowdown;
+    
+    /**
+     * If true, the build fails if the goal or any phase is slower than maxSlowdown times its baseline
+     */
+    @Parameter(defaultValue = "false", property = "licensegen.failOnSlowdown", required = false)
+    private boolean failOnSlowdown;
+
+	/* (non-Javadoc)
+	 * @see org.apache.maven.plugin.Mojo#execute()
+	 */
+	public void execute() throws MojoExecutionException, MojoFailureException {
+		File src = sourceDirectory;
+		if (src == null) {
+			throw new MojoExecutionException("No source directory was provided in the configuration.  Add a configuration paramater 'sourceDir' to the plugin configuration with a value of the directory path for the license XML files.");
+		}
+		if (!src.exists() || !src.isDirectory()) {
+			throw new MojoExecutionException("Source directory "+src.getName()+" does not exist.");
+		}
+		File output = outputDirectory;
+		if (outputDirectory == null) {
+			throw new MojoExecutionException("No output directory was provided in the configuration.  Add a configuration paramater 'outputDir' to the plugin configuration with a value of the directory path for the license XML files.");
+		}
+		if (!output.exists() || !output.isDirectory()) {
+			throw new MojoExecutionException("Output directory "+output.getName()+" does not exist.");
+		}
+		if (shardDirectories == null || shardDirectories.length == 0) {
+			throw new MojoExecutionException("No shard directories were provided in the configuration.  Add a configuration parameter 'shardDirectories' with the output directories of the shards.");
+		}
+		LicenseGenLog log = MojoAdapter.log(getLog());
+		File metricsDir = skipMetrics ? null : metricsDirectory;
+		BuildMetrics metrics = new BuildMetrics("merge", metricsDir != null || metricsBaseline != null);
+		List<File> xmlFiles = new ArrayList<File>();
+		LicenseSource.collectXmlFiles(src, xmlFiles);
+		List<LicenseSource> sources = new ArrayList<LicenseSource>(xmlFiles.size());
+		try {
+			for (File xmlFile:xmlFiles) {
+				sources.add(LicenseSource.read(src, xmlFile));
+			}
+		} catch (IOException e) {
+			throw new MojoExecutionException("Error reading license XML file: "+e.getMessage(), e);
+		}
+		OutputWriter outputWriter = OutputWriter.open(output, outputManifest, log, metrics);
+		Path stagingDir = null;
+		try {
+			File stagingParent = output.getAbsoluteFile().getParentFile();
+			stagingDir = Files.createTempDirectory(stagingParent.toPath(), "licensegen-merge");
+			long startNanos = System.nanoTime();
+			new ShardMerger(sources, log).merge(Arrays.asList(shardDirectories), stagingDir);
+			metrics.record("merge", BuildMetrics.ALL_ITEMS, startNanos);
+			if (outputWriter != null) {
+				outputWriter.publish(stagingDir);
+				outputWriter.finish();
+			} else {
+				copyTree(stagingDir, output.toPath());
+			}
+			metrics.recordOutputSizes(output);
+		} catch (IOException e) {
+			throw new MojoExecutionException("IO error writing merged license data: "+e.getMessage(), e);
+		} catch (LicenseGenException e) {
+			MojoAdapter.rethrow(e);
+		} finally {
+			if (stagingDir != null) {
+				try {
+					IncrementalLicenseGenerator.deleteRecursively(stagingDir);
+				} catch (IOException e) {
+					this.getLog().warn("Unable to delete staging directory "+stagingDir.toString()+": "+e.getMessage());
+				}
+			}
+		}
+		try {
+			new LicenseGenEngine().bundle(output, precompress, outputArchive, metrics, log);
+		} catch (LicenseGenException e) {
+			MojoAdapter.rethrow(e);
+		}
+		metrics.report(metricsDir, metricsTopN, log);
+		MetricsBaseline.check(metricsBaseline, metrics, maxSlowdown, failOnSlowdown, getLog());
+	}
+	
+	/**
+	 * Copy all files from one directory to another replacing any existing files
+	 * @param from
+	 * @param to
+	 * @throws IOException
+	 */
+	private static void copyTree(final Path from, final Path to) throws IOException {
+		Files.walkFileTree(from, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				Path target = to.resolve(from.relativize(file));
+				Files.createDirectories(target.getParent());
+				Files.copy(file, target, StandardCopyOption.REPLACE_EXISTING);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+}
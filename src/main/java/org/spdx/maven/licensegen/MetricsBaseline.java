@@ -0,0 +1,311 @@
+/**
+ * Copyright (c) 2017 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.spdx.maven.licensegen;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Baseline of the build metrics of previous runs used to detect performance regressions.
+ * 
+ * For each goal the baseline keeps the elapsed time of the last runs for the goal as a whole, for
+ * each phase and for each item (license).  A run is compared to the median of the recorded runs so
+ * a single slow or fast run does not move the baseline.  Times below a minimum are not compared
+ * since they are dominated by noise, and nothing is compared until enough runs are recorded.
+ * @author Gary O'Neall
+ *
+ */
+class MetricsBaseline {
+	
+	/**
+	 * Number of runs kept for each measurement
+	 */
+	static final int MAX_RUNS = 5;
+	
+	/**
+	 * Number of runs recorded before runs are compared to the baseline
+	 */
+	static final int MIN_RUNS = 3;
+	
+	/**
+	 * Goal and phase times with a baseline median below this are not compared
+	 */
+	static final double MIN_PHASE_MILLIS = 100.0;
+	
+	/**
+	 * Item times with a baseline median below this are not compared
+	 */
+	static final double MIN_ITEM_MILLIS = 20.0;
+	
+	/**
+	 * Maximum number of slower items logged
+	 */
+	static final int MAX_ITEMS_LOGGED = 10;
+	
+	static final String TOTAL_KEY = "total";
+	static final String PHASE_KEY_PREFIX = "phase.";
+	static final String ITEM_KEY_PREFIX = "item.";
+	
+	private final File baselineFile;
+	private final Properties properties = new Properties();
+	
+	/**
+	 * @param baselineFile file the baseline is persisted in - need not exist
+	 * @throws IOException
+	 */
+	MetricsBaseline(File baselineFile) throws IOException {
+		this.baselineFile = baselineFile;
+		if (baselineFile.isFile()) {
+			InputStream is = new FileInputStream(baselineFile);
+			try {
+				properties.load(is);
+			} finally {
+				is.close();
+			}
+		}
+	}
+	
+	/**
+	 * @param key
+	 * @return times in milliseconds of the recorded runs, oldest first
+	 */
+	List<Double> getRuns(String key) {
+		List<Double> retval = new ArrayList<Double>();
+		String value = properties.getProperty(key);
+		if (value != null && !value.trim().isEmpty()) {
+			for (String run:value.trim().split(" ")) {
+				try {
+					retval.add(Double.parseDouble(run));
+				} catch (NumberFormatException e) {
+					// Ignore corrupt entries
+				}
+			}
+		}
+		return retval;
+	}
+	
+	/**
+	 * @param runs
+	 * @return median of the runs
+	 */
+	static double median(List<Double> runs) {
+		List<Double> sorted = new ArrayList<Double>(runs);
+		Collections.sort(sorted);
+		int middle = sorted.size() / 2;
+		if (sorted.size() % 2 == 1) {
+			return sorted.get(middle);
+		}
+		return (sorted.get(middle - 1) + sorted.get(middle)) / 2;
+	}
+	
+	/**
+	 * @param metrics metrics of the current run
+	 * @return times in milliseconds of the current run by baseline key
+	 */
+	private static Map<String, Double> currentTimes(BuildMetrics metrics) {
+		String prefix = metrics.getGoal() + ".";
+		Map<String, Double> retval = new TreeMap<String, Double>();
+		retval.put(prefix + TOTAL_KEY, metrics.getElapsedNanos() / 1000000.0);
+		for (Entry<String, BuildMetrics.Total> phase:metrics.phaseTotals().entrySet()) {
+			retval.put(prefix + PHASE_KEY_PREFIX + phase.getKey(), phase.getValue().nanos / 1000000.0);
+		}
+		for (Entry<String, BuildMetrics.Total> item:metrics.slowestItems(Integer.MAX_VALUE)) {
+			retval.put(prefix + ITEM_KEY_PREFIX + item.getKey(), item.getValue().nanos / 1000000.0);
+		}
+		return retval;
+	}
+	
+	/**
+	 * A measurement which is slower than its baseline
+	 */
+	static class Slowdown implements Comparable<Slowdown> {
+		final String key;
+		final double millis;
+		final double baselineMillis;
+		
+		Slowdown(String key, double millis, double baselineMillis) {
+			this.key = key;
+			this.millis = millis;
+			this.baselineMillis = baselineMillis;
+		}
+		
+		double getRatio() {
+			return millis / baselineMillis;
+		}
+		
+		boolean isItem() {
+			return key.substring(key.indexOf('.') + 1).startsWith(ITEM_KEY_PREFIX);
+		}
+
+		@Override
+		public int compareTo(Slowdown o) {
+			return Double.compare(o.getRatio(), getRatio());
+		}
+		
+		@Override
+		public String toString() {
+			return String.format(Locale.ROOT, "%s took %.1fms, %.2f times the baseline median of %.1fms", 
+					key, millis, getRatio(), baselineMillis);
+		}
+	}
+	
+	/**
+	 * @param metrics metrics of the current run
+	 * @param maxSlowdown ratio to the baseline median above which a measurement is reported
+	 * @return measurements slower than maxSlowdown times their baseline median, largest ratio first
+	 */
+	List<Slowdown> compare(BuildMetrics metrics, double maxSlowdown) {
+		List<Slowdown> retval = new ArrayList<Slowdown>();
+		for (Entry<String, Double> current:currentTimes(metrics).entrySet()) {
+			List<Double> runs = getRuns(current.getKey());
+			if (runs.size() < MIN_RUNS) {
+				continue;
+			}
+			double baselineMillis = median(runs);
+			Slowdown slowdown = new Slowdown(current.getKey(), current.getValue(), baselineMillis);
+			double minMillis = slowdown.isItem() ? MIN_ITEM_MILLIS : MIN_PHASE_MILLIS;
+			if (baselineMillis >= minMillis && slowdown.getRatio() > maxSlowdown) {
+				retval.add(slowdown);
+			}
+		}
+		Collections.sort(retval);
+		return retval;
+	}
+	
+	/**
+	 * @param metrics
+	 * @return number of runs recorded for the goal of the metrics
+	 */
+	int getNumRuns(BuildMetrics metrics) {
+		return getRuns(metrics.getGoal() + "." + TOTAL_KEY).size();
+	}
+	
+	/**
+	 * Add the times of the current run to the baseline, dropping the oldest run once MAX_RUNS are recorded
+	 * @param metrics metrics of the current run
+	 */
+	void record(BuildMetrics metrics) {
+		for (Entry<String, Double> current:currentTimes(metrics).entrySet()) {
+			List<Double> runs = getRuns(current.getKey());
+			runs.add(current.getValue());
+			if (runs.size() > MAX_RUNS) {
+				runs = runs.subList(runs.size() - MAX_RUNS, runs.size());
+			}
+			StringBuilder sb = new StringBuilder();
+			for (Double run:runs) {
+				if (sb.length() > 0) {
+					sb.append(' ');
+				}
+				sb.append(String.format(Locale.ROOT, "%.3f", run));
+			}
+			properties.setProperty(current.getKey(), sb.toString());
+		}
+	}
+	
+	/**
+	 * Write the baseline
+	 * @throws IOException
+	 */
+	void store() throws IOException {
+		File parent = baselineFile.getParentFile();
+		if (parent != null && !parent.exists() && !parent.mkdirs()) {
+			throw new IOException("Unable to create directory "+parent.getPath());
+		}
+		OutputStream os = new FileOutputStream(baselineFile);
+		try {
+			properties.store(os, "Licensegen metrics baseline");
+		} finally {
+			os.close();
+		}
+	}
+	
+	/**
+	 * Compare the metrics of a run to the baseline and record the run in the baseline.  Slower goal
+	 * and phase times are reported as warnings or failures, slower items are reported as warnings.
+	 * A run which fails is not recorded so the baseline is not skewed by the regression.
+	 * @param baselineFile file the baseline is persisted in - if null, nothing is compared
+	 * @param metrics metrics of the current run
+	 * @param maxSlowdown ratio to the baseline median above which a measurement is reported
+	 * @param failOnSlowdown if true, a goal or phase slower than maxSlowdown fails the build
+	 * @param log
+	 * @throws MojoExecutionException if the ratio is invalid
+	 * @throws MojoFailureException if failOnSlowdown and a goal or phase is slower than maxSlowdown
+	 */
+	static void check(File baselineFile, BuildMetrics metrics, double maxSlowdown, boolean failOnSlowdown, Log log) throws MojoExecutionException, MojoFailureException {
+		if (baselineFile == null) {
+			return;
+		}
+		if (maxSlowdown <= 1.0) {
+			throw new MojoExecutionException("The maximum slowdown must be greater than 1 - found "+maxSlowdown);
+		}
+		MetricsBaseline baseline;
+		try {
+			baseline = new MetricsBaseline(baselineFile);
+		} catch (IOException e) {
+			log.warn("Unable to read metrics baseline "+baselineFile.getName()+" - the run is not compared: "+e.getMessage());
+			return;
+		}
+		int numRuns = baseline.getNumRuns(metrics);
+		List<Slowdown> slowdowns = baseline.compare(metrics, maxSlowdown);
+		List<String> phaseSlowdowns = new ArrayList<String>();
+		List<String> itemSlowdowns = new ArrayList<String>();
+		for (Slowdown slowdown:slowdowns) {
+			if (slowdown.isItem()) {
+				itemSlowdowns.add(slowdown.toString());
+			} else {
+				phaseSlowdowns.add(slowdown.toString());
+			}
+		}
+		if (numRuns < MIN_RUNS) {
+			log.info("Recording metrics baseline: "+(numRuns + 1)+" of "+MIN_RUNS+" runs needed before runs are compared");
+		}
+		for (String slowdown:phaseSlowdowns) {
+			log.warn("Slower than baseline: "+slowdown);
+		}
+		for (String slowdown:itemSlowdowns.subList(0, Math.min(MAX_ITEMS_LOGGED, itemSlowdowns.size()))) {
+			log.warn("Slower than baseline: "+slowdown);
+		}
+		if (itemSlowdowns.size() > MAX_ITEMS_LOGGED) {
+			log.warn("... and "+(itemSlowdowns.size() - MAX_ITEMS_LOGGED)+" more items slower than the baseline");
+		}
+		if (failOnSlowdown && !phaseSlowdowns.isEmpty()) {
+			throw new MojoFailureException("Licensegen "+metrics.getGoal()+" is more than "+maxSlowdown+
+					" times slower than the metrics baseline: "+phaseSlowdowns.get(0));
+		}
+		baseline.record(metrics);
+		try {
+			baseline.store();
+		} catch (IOException e) {
+			log.warn("Unable to write metrics baseline "+baselineFile.getName()+": "+e.getMessage());
+		}
+	}
+}
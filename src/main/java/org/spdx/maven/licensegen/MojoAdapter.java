@@ -0,0 +1,70 @@
+/**
+ * Copyright (c) 2017 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.spdx.maven.licensegen;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+import org.spdx.tools.LicenseGeneratorException;
+
+/**
+ * Adapts the license generation engine to the Maven plugin API: the goals pass their Mojo log
+ * to the engine and translate the engine's exceptions into Mojo exceptions
+ * @author Gary O'Neall
+ *
+ */
+final class MojoAdapter {
+	
+	private MojoAdapter() {
+		// Static helper only
+	}
+	
+	/**
+	 * @param log Mojo log
+	 * @return engine log writing to the Mojo log
+	 */
+	static LicenseGenLog log(final Log log) {
+		return new LicenseGenLog() {
+			@Override
+			public void info(String message) {
+				log.info(message);
+			}
+
+			@Override
+			public void warn(String message) {
+				log.warn(message);
+			}
+
+			@Override
+			public void error(String message) {
+				log.error(message);
+			}
+		};
+	}
+	
+	/**
+	 * Throw the Mojo exception for an exception thrown by the engine
+	 * @param e exception thrown by the engine
+	 * @throws MojoFailureException if the license generator failed
+	 * @throws MojoExecutionException for all other errors
+	 */
+	static void rethrow(LicenseGenException e) throws MojoExecutionException, MojoFailureException {
+		if (e.getCause() instanceof LicenseGeneratorException) {
+			throw new MojoFailureException(e.getMessage(), e.getCause());
+		}
+		throw new MojoExecutionException(e.getMessage(), e.getCause());
+	}
+}
@@ -0,0 +1,329 @@
+/**
+ * Copyright (c) 2017 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.spdx.maven.licensegen;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Packages the generated license data for deployment.
+ * 
+ * The output directory can be bundled into a single zip archive with an offset index, and
+ * gzip compressed siblings (<code>file.html.gz</code>) can be written next to each text, JSON
+ * and HTML file so web servers can serve precompressed content.
+ * 
+ * The index is written next to the archive with the extension <code>.index</code>.  After a
+ * header line, each line holds the tab separated path, the offset of the entry data in the
+ * archive, the compressed and uncompressed sizes, the CRC-32 in hex and the zip compression
+ * method.  The data at the offset is a raw deflate stream for method 8 so a single entry can be
+ * read without parsing the zip central directory.
+ * @author Gary O'Neall
+ *
+ */
+class OutputBundler {
+	
+	static final String INDEX_EXTENSION = ".index";
+	static final String INDEX_HEADER = "#licensegen-archive-index version=1";
+	static final String GZIP_EXTENSION = ".gz";
+	
+	/**
+	 * Extensions of the files which are precompressed
+	 */
+	static final Set<String> COMPRESSIBLE_EXTENSIONS = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+			"txt", "json", "jsonld", "html", "htm", "css", "js", "xml", "rdf", "ttl", "nt")));
+	
+	/**
+	 * Fixed modification time for the archive entries so identical output produces an identical archive
+	 */
+	private static final long ENTRY_TIME = new GregorianCalendar(2000, 0, 1).getTimeInMillis();
+	
+	/**
+	 * Fixed size of a zip local file header excluding the file name and extra field
+	 */
+	private static final int LOCAL_HEADER_SIZE = 30;
+	
+	private final File outputDirectory;
+	private final BuildMetrics metrics;
+	private final LicenseGenLog log;
+	
+	/**
+	 * @param outputDirectory directory containing the generated license data
+	 * @param metrics
+	 * @param log
+	 */
+	OutputBundler(File outputDirectory, BuildMetrics metrics, LicenseGenLog log) {
+		this.outputDirectory = outputDirectory;
+		this.metrics = metrics;
+		this.log = log;
+	}
+	
+	/**
+	 * @param relativePath
+	 * @return true if the file is a text, JSON or HTML file which is precompressed
+	 */
+	static boolean isCompressible(String relativePath) {
+		int dot = relativePath.lastIndexOf('.');
+		return dot >= 0 && relativePath.lastIndexOf('/') < dot && 
+				COMPRESSIBLE_EXTENSIONS.contains(relativePath.substring(dot + 1).toLowerCase(Locale.ROOT));
+	}
+	
+	/**
+	 * @param relativePath
+	 * @return true if the file is the precompressed sibling of a compressible file
+	 */
+	static boolean isCompressedSibling(String relativePath) {
+		return relativePath.endsWith(GZIP_EXTENSION) && 
+				isCompressible(relativePath.substring(0, relativePath.length() - GZIP_EXTENSION.length()));
+	}
+	
+	/**
+	 * @param excluded files which are not included
+	 * @return paths relative to the output directory of all generated files other than the precompressed siblings in path order
+	 * @throws IOException
+	 */
+	private List<String> listGeneratedFiles(final Set<Path> excluded) throws IOException {
+		final List<String> retval = new ArrayList<String>();
+		final Path root = outputDirectory.toPath();
+		Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+				String relativePath = root.relativize(file).toString().replace(File.separatorChar, '/');
+				if (!isCompressedSibling(relativePath) && !excluded.contains(file.toAbsolutePath())) {
+					retval.add(relativePath);
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		Collections.sort(retval);
+		return retval;
+	}
+	
+	/**
+	 * Write a gzip compressed sibling for every text, JSON and HTML file whose sibling is missing or
+	 * older than the file and delete siblings whose file no longer exists
+	 * @param threads number of threads used to compress the files
+	 * @return number of files compressed
+	 * @throws LicenseGenException
+	 */
+	int precompress(int threads) throws LicenseGenException {
+		long startNanos = System.nanoTime();
+		final Path root = outputDirectory.toPath();
+		List<Callable<Long>> tasks = new ArrayList<Callable<Long>>();
+		final List<Path> orphans = new ArrayList<Path>();
+		try {
+			Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+					String relativePath = root.relativize(file).toString().replace(File.separatorChar, '/');
+					if (isCompressedSibling(relativePath)) {
+						String name = file.getFileName().toString();
+						if (!Files.isRegularFile(file.resolveSibling(name.substring(0, name.length() - GZIP_EXTENSION.length())))) {
+							orphans.add(file);
+						}
+					}
+					return FileVisitResult.CONTINUE;
+				}
+			});
+			for (final String relativePath:listGeneratedFiles(Collections.<Path>emptySet())) {
+				if (!isCompressible(relativePath)) {
+					continue;
+				}
+				final Path file = root.resolve(relativePath);
+				final Path compressed = file.resolveSibling(file.getFileName().toString() + GZIP_EXTENSION);
+				if (Files.isRegularFile(compressed) && 
+						Files.getLastModifiedTime(compressed).compareTo(Files.getLastModifiedTime(file)) >= 0) {
+					continue;
+				}
+				tasks.add(new Callable<Long>() {
+					@Override
+					public Long call() throws Exception {
+						long fileStartNanos = System.nanoTime();
+						byte[] content = Files.readAllBytes(file);
+						Path temp = Files.createTempFile(file.getParent(), "."+compressed.getFileName().toString(), ".tmp");
+						try {
+							OutputStream os = new GZIPOutputStream(Files.newOutputStream(temp));
+							try {
+								os.write(content);
+							} finally {
+								os.close();
+							}
+							moveAtomically(temp, compressed);
+						} finally {
+							Files.deleteIfExists(temp);
+						}
+						long compressedSize = Files.size(compressed);
+						metrics.record("precompress", relativePath, fileStartNanos, content.length, compressedSize);
+						return compressedSize;
+					}
+				});
+			}
+			for (Path orphan:orphans) {
+				Files.deleteIfExists(orphan);
+			}
+		} catch (IOException e) {
+			throw new LicenseGenException("IO error precompressing the generated license data: "+e.getMessage(), e);
+		}
+		WorkerPool.invokeAll(tasks, threads);
+		log.info("Precompressed "+tasks.size()+" generated files, removed "+orphans.size()+" obsolete compressed files");
+		metrics.record("precompress", BuildMetrics.ALL_ITEMS, startNanos);
+		return tasks.size();
+	}
+	
+	/**
+	 * Write all generated files other than the precompressed siblings to a zip archive and write
+	 * the offset index next to the archive.  Both files are written to temporary files and renamed
+	 * into place so readers never see a partial archive.
+	 * @param archive zip archive file
+	 * @return number of files in the archive
+	 * @throws LicenseGenException
+	 */
+	int writeArchive(File archive) throws LicenseGenException {
+		long startNanos = System.nanoTime();
+		File index = indexFile(archive);
+		Path archivePath = archive.toPath().toAbsolutePath();
+		Path indexPath = index.toPath().toAbsolutePath();
+		Path tempArchive = null;
+		Path tempIndex = null;
+		try {
+			List<String> files = listGeneratedFiles(new HashSet<Path>(Arrays.asList(archivePath, indexPath)));
+			Files.createDirectories(archivePath.getParent());
+			tempArchive = Files.createTempFile(archivePath.getParent(), "."+archive.getName(), ".tmp");
+			tempIndex = Files.createTempFile(archivePath.getParent(), "."+index.getName(), ".tmp");
+			long bytesRead = 0;
+			CountingOutputStream counter = new CountingOutputStream(new BufferedOutputStream(Files.newOutputStream(tempArchive)));
+			Writer indexWriter = new OutputStreamWriter(Files.newOutputStream(tempIndex), StandardCharsets.UTF_8);
+			try {
+				ZipOutputStream zip = new ZipOutputStream(counter, StandardCharsets.UTF_8);
+				try {
+					indexWriter.write(INDEX_HEADER);
+					indexWriter.write('\n');
+					for (String relativePath:files) {
+						byte[] content = Files.readAllBytes(outputDirectory.toPath().resolve(relativePath));
+						bytesRead += content.length;
+						ZipEntry entry = new ZipEntry(relativePath);
+						entry.setTime(ENTRY_TIME);
+						entry.setMethod(ZipEntry.DEFLATED);
+						long headerOffset = counter.getCount();
+						zip.putNextEntry(entry);
+						zip.write(content);
+						zip.closeEntry();
+						byte[] extra = entry.getExtra();
+						long dataOffset = headerOffset + LOCAL_HEADER_SIZE + relativePath.getBytes(StandardCharsets.UTF_8).length + 
+								(extra == null ? 0 : extra.length);
+						indexWriter.write(relativePath + "\t" + dataOffset + "\t" + entry.getCompressedSize() + "\t" + 
+								entry.getSize() + "\t" + String.format("%08x", entry.getCrc()) + "\t" + entry.getMethod() + "\n");
+					}
+				} finally {
+					zip.close();
+				}
+			} finally {
+				indexWriter.close();
+			}
+			moveAtomically(tempArchive, archivePath);
+			moveAtomically(tempIndex, indexPath);
+			log.info("Wrote "+files.size()+" generated files to archive "+archive.getName()+" ("+Files.size(archivePath)+" bytes)");
+			metrics.record("archive", BuildMetrics.ALL_ITEMS, startNanos, bytesRead, Files.size(archivePath) + Files.size(indexPath));
+			return files.size();
+		} catch (IOException e) {
+			throw new LicenseGenException("IO error writing license data archive "+archive.getName()+": "+e.getMessage(), e);
+		} finally {
+			try {
+				if (tempArchive != null) {
+					Files.deleteIfExists(tempArchive);
+				}
+				if (tempIndex != null) {
+					Files.deleteIfExists(tempIndex);
+				}
+			} catch (IOException e) {
+				log.warn("Unable to delete temporary archive files: "+e.getMessage());
+			}
+		}
+	}
+	
+	/**
+	 * @param archive
+	 * @return the offset index file for the archive
+	 */
+	static File indexFile(File archive) {
+		return new File(archive.getAbsoluteFile().getParentFile(), archive.getName() + INDEX_EXTENSION);
+	}
+	
+	/**
+	 * Rename source to target replacing target, atomically if the file system supports it
+	 * @param source
+	 * @param target
+	 * @throws IOException
+	 */
+	private static void moveAtomically(Path source, Path target) throws IOException {
+		try {
+			Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+	
+	/**
+	 * Output stream which counts the bytes written so the archive entry offsets are known
+	 */
+	private static class CountingOutputStream extends FilterOutputStream {
+		private long count = 0;
+		
+		CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+		
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+		
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+		
+		long getCount() {
+			return count;
+		}
+	}
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright (c) 2017 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.spdx.maven.licensegen;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Selection of the output formats written to the output directory.
+ * 
+ * A format is named after the top level directory the license generator writes it to (e.g. json,
+ * text, html).  The aggregate files at the top level of the output directory belong to the format
+ * they are rendered in.  Files not belonging to a known format are always written.
+ * @author Gary O'Neall
+ *
+ */
+final class OutputFormats {
+	
+	/**
+	 * All output formats
+	 */
+	static final OutputFormats ALL = new OutputFormats(null);
+	
+	/**
+	 * Formats written by the license generator
+	 */
+	static final List<String> KNOWN_FORMATS = Collections.unmodifiableList(Arrays.asList(
+			"html", "json", "rdfa", "rdfnt", "rdfturtle", "rdfxml", "template", "text", "website"));
+	
+	/**
+	 * Format of the aggregate files at the top level of the output directory
+	 */
+	private static final Map<String, String> TOP_LEVEL_FILE_FORMATS = new HashMap<String, String>();
+	static {
+		TOP_LEVEL_FILE_FORMATS.put("licenses.json", "json");
+		TOP_LEVEL_FILE_FORMATS.put("exceptions.json", "json");
+		TOP_LEVEL_FILE_FORMATS.put("index.html", "html");
+		TOP_LEVEL_FILE_FORMATS.put("exceptions-index.html", "html");
+		TOP_LEVEL_FILE_FORMATS.put("screen.css", "html");
+		TOP_LEVEL_FILE_FORMATS.put("sorttable.js", "html");
+	}
+	
+	private final Set<String> selected;
+	
+	private OutputFormats(Set<String> selected) {
+		this.selected = selected;
+	}
+	
+	/**
+	 * @param formats comma separated list of format names - if null or empty, all formats are selected
+	 * @return the selected formats
+	 * @throws LicenseGenException if a format is unknown
+	 */
+	static OutputFormats of(String formats) throws LicenseGenException {
+		if (formats == null || formats.trim().isEmpty()) {
+			return ALL;
+		}
+		Set<String> selected = new TreeSet<String>();
+		for (String format:formats.split(",")) {
+			String name = format.trim().toLowerCase(Locale.ROOT);
+			if (name.isEmpty()) {
+				continue;
+			}
+			if (!KNOWN_FORMATS.contains(name)) {
+				throw new LicenseGenException("Unknown output format "+format.trim()+".  The formats are "+KNOWN_FORMATS);
+			}
+			selected.add(name);
+		}
+		if (selected.isEmpty() || selected.containsAll(KNOWN_FORMATS)) {
+			return ALL;
+		}
+		return new OutputFormats(selected);
+	}
+	
+	/**
+	 * @return true if all formats are selected
+	 */
+	boolean isAll() {
+		return selected == null;
+	}
+	
+	/**
+	 * @param relativePath path of an output file relative to the output directory
+	 * @return the format of the file or null if the file does not belong to a known format
+	 */
+	static String formatOf(String relativePath) {
+		int slash = relativePath.indexOf('/');
+		if (slash < 0) {
+			return TOP_LEVEL_FILE_FORMATS.get(relativePath);
+		}
+		String format = relativePath.substring(0, slash);
+		return KNOWN_FORMATS.contains(format) ? format : null;
+	}
+	
+	/**
+	 * @param relativePath path of an output file relative to the output directory
+	 * @return true if the file is written
+	 */
+	boolean accepts(String relativePath) {
+		if (selected == null) {
+			return true;
+		}
+		String format = formatOf(relativePath);
+		return format == null || selected.contains(format);
+	}
+	
+	@Override
+	public String toString() {
+		return selected == null ? "all formats" : "formats " + selected;
+	}
+}
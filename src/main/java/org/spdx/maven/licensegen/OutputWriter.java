@@ -0,0 +1,386 @@
+/**
+ * Copyright (c) 2017 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.spdx.maven.licensegen;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes generated license data to the output directory only where the content changed.
+ * 
+ * The license data is generated into a staging directory.  Each staged file is compared by content
+ * hash with the file already in the output directory and only written if it differs, so unchanged
+ * files keep their modification times.  Changed files are written to a temporary file in the target
+ * directory and atomically renamed over the old file.  The hashes of all written files are recorded
+ * in an output manifest so that files generated by a previous run which are no longer generated can
+ * be deleted.  A JSON report of the added, updated and deleted files is written next to the manifest
+ * and named after it, so runs using different manifests do not overwrite each other's report.
+ * Only the files of the selected output formats are written and each format is written by its own task.
+ * @author Gary O'Neall
+ *
+ */
+class OutputWriter {
+	
+	private static final String CHANGES_FILE_SUFFIX = "-changes.json";
+	
+	private final File outputDirectory;
+	private final File manifestFile;
+	private final LicenseGenLog log;
+	private final BuildMetrics metrics;
+	private final Properties manifest = new Properties();
+	private final OutputFormats formats;
+	private final int threads;
+	private final Set<String> writtenThisRun = Collections.synchronizedSet(new HashSet<String>());
+	private final Set<String> added = Collections.synchronizedSet(new TreeSet<String>());
+	private final Set<String> updated = Collections.synchronizedSet(new TreeSet<String>());
+	private final Set<String> deleted = Collections.synchronizedSet(new TreeSet<String>());
+	private final AtomicInteger numUnchanged = new AtomicInteger();
+	
+	/**
+	 * @param outputDirectory directory for the generated license data
+	 * @param manifestFile file recording the hashes of the files written by previous runs - need not exist
+	 * @param log
+	 * @param metrics
+	 * @param formats output formats written - files of other formats are not written and previously written files are deleted
+	 * @param threads number of threads writing the output formats
+	 * @throws IOException if the manifest can not be read
+	 */
+	OutputWriter(File outputDirectory, File manifestFile, LicenseGenLog log, BuildMetrics metrics, OutputFormats formats, int threads) throws IOException {
+		this.formats = formats;
+		this.threads = threads;
+		this.outputDirectory = outputDirectory;
+		this.manifestFile = manifestFile;
+		this.log = log;
+		this.metrics = metrics;
+		if (manifestFile.isFile()) {
+			InputStream is = new FileInputStream(manifestFile);
+			try {
+				manifest.load(is);
+			} finally {
+				is.close();
+			}
+		}
+	}
+	
+	/**
+	 * @param outputDirectory directory for the generated license data
+	 * @param manifestFile output manifest file - may be null
+	 * @param log
+	 * @param metrics
+	 * @return an output writer or null if no manifest file is configured or the manifest can not be read
+	 */
+	static OutputWriter open(File outputDirectory, File manifestFile, LicenseGenLog log, BuildMetrics metrics) {
+		return open(outputDirectory, manifestFile, log, metrics, OutputFormats.ALL);
+	}
+	
+	/**
+	 * @param outputDirectory directory for the generated license data
+	 * @param manifestFile output manifest file - may be null
+	 * @param log
+	 * @param metrics
+	 * @param formats output formats written
+	 * @return an output writer or null if no manifest file is configured or the manifest can not be read
+	 */
+	static OutputWriter open(File outputDirectory, File manifestFile, LicenseGenLog log, BuildMetrics metrics, OutputFormats formats) {
+		if (manifestFile == null) {
+			return null;
+		}
+		try {
+			return new OutputWriter(outputDirectory, manifestFile, log, metrics, formats, WorkerPool.resolveThreads(0));
+		} catch (IOException e) {
+			log.warn("Unable to read output manifest "+manifestFile.getName()+" - all output files will be written: "+e.getMessage());
+			return null;
+		}
+	}
+	
+	/**
+	 * Generate the complete license data into a staging directory, write the changed files to the
+	 * output directory and delete any previously generated files which are no longer generated
+	 * @param src directory containing the license XML files
+	 * @param sources the license XML files in the directory - used by the build cache
+	 * @param version license list version
+	 * @param releaseDate license list release date
+	 * @param cache if not null, license data is restored from and published to the build cache
+	 * @throws LicenseGenException
+	 */
+	void generate(File src, List<LicenseSource> sources, String version, String releaseDate, BuildCache cache) throws LicenseGenException {
+		Path stagingDir = null;
+		try {
+			File stagingParent = manifestFile.getAbsoluteFile().getParentFile();
+			if (!stagingParent.exists() && !stagingParent.mkdirs()) {
+				throw new LicenseGenException("Unable to create directory "+stagingParent.getPath());
+			}
+			stagingDir = Files.createTempDirectory(stagingParent.toPath(), "licensegen-output");
+			long startNanos = System.nanoTime();
+			IncrementalLicenseGenerator.generateLicenseData(src, sources, stagingDir.toFile(), version, releaseDate, log, cache);
+			metrics.record("generate", BuildMetrics.ALL_ITEMS, startNanos);
+			publish(stagingDir);
+		} catch (IOException e) {
+			throw new LicenseGenException("IO error writing license data: "+e.getMessage(), e);
+		} finally {
+			if (stagingDir != null) {
+				try {
+					IncrementalLicenseGenerator.deleteRecursively(stagingDir);
+				} catch (IOException e) {
+					log.warn("Unable to delete staging directory "+stagingDir.toString()+": "+e.getMessage());
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Write the changed files from a staging directory containing the complete license data and
+	 * delete any previously generated files which are not in the staging directory
+	 * @param stagingDir
+	 * @throws IOException
+	 * @throws LicenseGenException if writing an output format fails
+	 */
+	void publish(Path stagingDir) throws IOException, LicenseGenException {
+		writeAll(stagingDir);
+		deleteOrphans();
+	}
+	
+	/**
+	 * Write all files of the selected formats in the staging directory to the same relative paths
+	 * in the output directory.  Each output format is written by its own task so the formats are
+	 * written concurrently while the files of a format are written in order.
+	 * @param stagingDir
+	 * @throws IOException
+	 * @throws LicenseGenException if writing an output format fails
+	 */
+	private void writeAll(final Path stagingDir) throws IOException, LicenseGenException {
+		final Map<String, List<String>> filesByFormat = new TreeMap<String, List<String>>();
+		Files.walkFileTree(stagingDir, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+				String relativePath = stagingDir.relativize(file).toString().replace(File.separatorChar, '/');
+				if (formats.accepts(relativePath)) {
+					String format = OutputFormats.formatOf(relativePath);
+					List<String> files = filesByFormat.get(format == null ? "" : format);
+					if (files == null) {
+						files = new ArrayList<String>();
+						filesByFormat.put(format == null ? "" : format, files);
+					}
+					files.add(relativePath);
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (final List<String> files:filesByFormat.values()) {
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					for (String relativePath:files) {
+						write(stagingDir.resolve(relativePath), relativePath);
+					}
+					return null;
+				}
+			});
+		}
+		WorkerPool.invokeAll(tasks, threads);
+	}
+	
+	/**
+	 * Write a file to the output directory unless the output file already has the same content
+	 * @param source file containing the new content
+	 * @param relativePath path of the output file relative to the output directory
+	 * @return true if the file was written
+	 * @throws IOException
+	 */
+	boolean write(Path source, String relativePath) throws IOException {
+		if (!formats.accepts(relativePath)) {
+			return false;
+		}
+		long startNanos = System.nanoTime();
+		Path target = outputDirectory.toPath().resolve(relativePath);
+		byte[] content = Files.readAllBytes(source);
+		String hash = ContentHash.of(content);
+		writtenThisRun.add(relativePath);
+		manifest.setProperty(relativePath, hash);
+		boolean exists = Files.isRegularFile(target);
+		if (exists && Files.size(target) == content.length && hash.equals(ContentHash.of(target.toFile()))) {
+			numUnchanged.incrementAndGet();
+			metrics.record("write-skipped", relativePath, startNanos, content.length + Files.size(target), 0);
+			return false;
+		}
+		replace(target, content);
+		if (exists) {
+			updated.add(relativePath);
+		} else {
+			added.add(relativePath);
+		}
+		metrics.record("write", relativePath, startNanos, content.length, content.length);
+		return true;
+	}
+	
+	/**
+	 * Write the content to a temporary file in the target directory and atomically rename it over the target
+	 * @param target file to replace
+	 * @param content new content of the file
+	 * @throws IOException
+	 */
+	private static void replace(Path target, byte[] content) throws IOException {
+		Files.createDirectories(target.getParent());
+		Path temp = Files.createTempFile(target.getParent(), "."+target.getFileName().toString(), ".tmp");
+		try {
+			Files.write(temp, content);
+			try {
+				Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+	
+	/**
+	 * Delete a previously generated output file
+	 * @param relativePath path of the output file relative to the output directory
+	 * @throws IOException
+	 */
+	void delete(String relativePath) throws IOException {
+		manifest.remove(relativePath);
+		if (Files.deleteIfExists(outputDirectory.toPath().resolve(relativePath))) {
+			deleted.add(relativePath);
+		}
+	}
+	
+	/**
+	 * Delete all files recorded in the manifest by a previous run which were not written by this run
+	 * @throws IOException
+	 */
+	private void deleteOrphans() throws IOException {
+		for (String relativePath:new ArrayList<String>(manifest.stringPropertyNames())) {
+			if (!writtenThisRun.contains(relativePath)) {
+				delete(relativePath);
+			}
+		}
+	}
+	
+	/**
+	 * Store the output manifest, write the change report and log a summary of the changes.  Failures
+	 * are logged as warnings since the output files themselves are complete.
+	 */
+	void finish() {
+		try {
+			store();
+		} catch (IOException e) {
+			log.warn("Unable to write output manifest "+manifestFile.getName()+": "+e.getMessage());
+		}
+		log.info("Output files: "+added.size()+" added, "+updated.size()+" updated, "+deleted.size()+" deleted, "+numUnchanged.get()+" unchanged");
+	}
+	
+	/**
+	 * Store the output manifest and write the change report.  Both files are replaced atomically so
+	 * an interrupted run leaves the previous manifest in place.
+	 * @throws IOException
+	 */
+	private void store() throws IOException {
+		ByteArrayOutputStream manifestContent = new ByteArrayOutputStream();
+		manifest.store(manifestContent, "Licensegen output manifest");
+		replace(manifestFile.getAbsoluteFile().toPath(), manifestContent.toByteArray());
+		ByteArrayOutputStream changesContent = new ByteArrayOutputStream();
+		Writer writer = new OutputStreamWriter(changesContent, StandardCharsets.UTF_8);
+		try {
+			writer.write("{\n");
+			writeJsonArray(writer, "added", added);
+			writer.write(",\n");
+			writeJsonArray(writer, "updated", updated);
+			writer.write(",\n");
+			writeJsonArray(writer, "deleted", deleted);
+			writer.write(",\n  \"unchanged\": " + numUnchanged.get() + "\n}\n");
+		} finally {
+			writer.close();
+		}
+		replace(changesFile(manifestFile).toPath(), changesContent.toByteArray());
+	}
+	
+	/**
+	 * @param manifestFile output manifest
+	 * @return change report written for the manifest - the manifest name with its extension replaced by "-changes.json"
+	 */
+	static File changesFile(File manifestFile) {
+		String name = manifestFile.getName();
+		int dot = name.lastIndexOf('.');
+		return new File(manifestFile.getAbsoluteFile().getParentFile(), 
+				(dot > 0 ? name.substring(0, dot) : name) + CHANGES_FILE_SUFFIX);
+	}
+	
+	private static void writeJsonArray(Writer writer, String name, Set<String> values) throws IOException {
+		writer.write("  " + BuildMetrics.jsonString(name) + ": [");
+		boolean first = true;
+		for (String value:values) {
+			writer.write(first ? "\n    " : ",\n    ");
+			writer.write(BuildMetrics.jsonString(value));
+			first = false;
+		}
+		writer.write(first ? "]" : "\n  ]");
+	}
+	
+	/**
+	 * @return paths of the files added by this run relative to the output directory
+	 */
+	Set<String> getAdded() {
+		return added;
+	}
+	
+	/**
+	 * @return paths of the files updated by this run relative to the output directory
+	 */
+	Set<String> getUpdated() {
+		return updated;
+	}
+	
+	/**
+	 * @return paths of the files deleted by this run relative to the output directory
+	 */
+	Set<String> getDeleted() {
+		return deleted;
+	}
+	
+	/**
+	 * @return number of files which were not written since the content was unchanged
+	 */
+	int getNumUnchanged() {
+		return numUnchanged.get();
+	}
+}
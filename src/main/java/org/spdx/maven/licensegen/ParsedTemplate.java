@@ -0,0 +1,254 @@
+/**
+ * Copyright (c) 2017 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.spdx.maven.licensegen;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.spdx.compare.CompareTemplateOutputHandler;
+import org.spdx.licenseTemplate.ILicenseTemplateOutputHandler;
+import org.spdx.licenseTemplate.LicenseTemplateRule;
+import org.spdx.licenseTemplate.LicenseTemplateRuleException;
+import org.spdx.licenseTemplate.SpdxLicenseTemplateHelper;
+
+/**
+ * A license template which has been parsed once and can be matched against any number of texts.
+ * 
+ * The parser output is recorded as a sequence of events which are replayed into a new
+ * <code>CompareTemplateOutputHandler</code> for each text to be matched.  Instances are
+ * immutable once parsed and may be shared between threads.
+ * 
+ * Before the events are replayed, the text is checked for the tokens of the template's
+ * literal text (text outside of variable rules and optional text).  Texts missing any of these
+ * tokens can never match and are rejected without running the full template matcher.
+ * @author Gary O'Neall
+ *
+ */
+class ParsedTemplate {
+	
+	private enum EventType {OPTIONAL_TEXT, NORMAL_TEXT, VARIABLE_RULE, BEGIN_OPTIONAL, END_OPTIONAL};
+	
+	private static class Event {
+		final EventType type;
+		final String text;
+		final LicenseTemplateRule rule;
+		
+		Event(EventType type, String text, LicenseTemplateRule rule) {
+			this.type = type;
+			this.text = text;
+			this.rule = rule;
+		}
+		
+		void replay(ILicenseTemplateOutputHandler handler) {
+			switch (type) {
+				case OPTIONAL_TEXT: handler.optionalText(text); break;
+				case NORMAL_TEXT: handler.normalText(text); break;
+				case VARIABLE_RULE: handler.variableRule(rule); break;
+				case BEGIN_OPTIONAL: handler.beginOptional(rule); break;
+				case END_OPTIONAL: handler.endOptional(rule); break;
+				default: throw new IllegalStateException("Unknown template event type "+type);
+			}
+		}
+	}
+	
+	/**
+	 * Output handler which records the parser events
+	 */
+	private static class RecordingOutputHandler implements ILicenseTemplateOutputHandler {
+		final List<Event> events = new ArrayList<Event>();
+
+		@Override
+		public void optionalText(String text) {
+			events.add(new Event(EventType.OPTIONAL_TEXT, text, null));
+		}
+
+		@Override
+		public void normalText(String text) {
+			events.add(new Event(EventType.NORMAL_TEXT, text, null));
+		}
+
+		@Override
+		public void variableRule(LicenseTemplateRule rule) {
+			events.add(new Event(EventType.VARIABLE_RULE, null, rule));
+		}
+
+		@Override
+		public void beginOptional(LicenseTemplateRule rule) {
+			events.add(new Event(EventType.BEGIN_OPTIONAL, null, rule));
+		}
+
+		@Override
+		public void endOptional(LicenseTemplateRule rule) {
+			events.add(new Event(EventType.END_OPTIONAL, null, rule));
+		}
+	}
+	
+	private final List<Event> events;
+	private final Set<String> requiredTokens;
+	
+	private ParsedTemplate(List<Event> events) {
+		this.events = Collections.unmodifiableList(events);
+		this.requiredTokens = Collections.unmodifiableSet(collectRequiredTokens(events));
+	}
+	
+	/**
+	 * Collect the tokens any matching text must contain.  Only normal text outside of optional
+	 * text is used.  The first token following a variable rule is not required since the variable
+	 * rule may end in the middle of a token of the text.
+	 * @param events parser events
+	 * @return normalized tokens which must be present in any matching text
+	 */
+	private static Set<String> collectRequiredTokens(List<Event> events) {
+		Set<String> retval = new HashSet<String>();
+		int optionalDepth = 0;
+		boolean afterVariable = false;
+		for (Event event:events) {
+			switch (event.type) {
+				case BEGIN_OPTIONAL: optionalDepth++; break;
+				case END_OPTIONAL: optionalDepth--; break;
+				case VARIABLE_RULE: afterVariable = true; break;
+				case NORMAL_TEXT:
+					if (optionalDepth > 0) {
+						break;
+					}
+					for (String token:event.text.split("\\s")) {
+						if (token.isEmpty()) {
+							continue;
+						}
+						if (afterVariable) {
+							afterVariable = false;
+							continue;
+						}
+						String required = TokenNormalizer.requiredToken(token);
+						if (required != null) {
+							retval.add(required);
+						}
+					}
+					break;
+				default: break;
+			}
+		}
+		return retval;
+	}
+	
+	/**
+	 * @param template license template text
+	 * @return the parsed template
+	 * @throws LicenseTemplateRuleException if the template contains an invalid rule
+	 */
+	static ParsedTemplate parse(String template) throws LicenseTemplateRuleException {
+		RecordingOutputHandler recorder = new RecordingOutputHandler();
+		SpdxLicenseTemplateHelper.parseTemplate(template, recorder);
+		return new ParsedTemplate(recorder.events);
+	}
+	
+	/**
+	 * @param text license text
+	 * @return true if the text is matched by the template
+	 */
+	boolean matches(String text) {
+		return matches(text, tokenize(text));
+	}
+	
+	/**
+	 * @param text license text
+	 * @param textTokens tokens of the text as returned by <code>tokenize</code>
+	 * @return true if the text is matched by the template
+	 */
+	boolean matches(String text, Set<String> textTokens) {
+		if (!mayMatch(textTokens)) {
+			return false;
+		}
+		CompareTemplateOutputHandler compareTemplateOutputHandler = new CompareTemplateOutputHandler(text);
+		for (Event event:events) {
+			event.replay(compareTemplateOutputHandler);
+		}
+		return compareTemplateOutputHandler.matches();
+	}
+	
+	/**
+	 * Quick check which rejects texts that can not match the template
+	 * @param text license text
+	 * @return false if the text is missing a token of the template's literal text
+	 */
+	boolean mayMatch(String text) {
+		return mayMatch(tokenize(text));
+	}
+	
+	/**
+	 * @param textTokens tokens of the text as returned by <code>tokenize</code>
+	 * @return false if the text is missing a token of the template's literal text
+	 */
+	boolean mayMatch(Set<String> textTokens) {
+		return textTokens.containsAll(requiredTokens);
+	}
+	
+	/**
+	 * @return normalized tokens which must be present in any text matching the template
+	 */
+	Set<String> getRequiredTokens() {
+		return requiredTokens;
+	}
+	
+	/**
+	 * @return the canonical tokens of the template's literal text with each variable rule replaced by
+	 * <code>TextDiff.VARIABLE</code> and each optional text replaced by <code>TextDiff.OPTIONAL</code>
+	 */
+	List<String> canonicalTokens() {
+		List<String> retval = new ArrayList<String>();
+		int optionalDepth = 0;
+		for (Event event:events) {
+			switch (event.type) {
+				case BEGIN_OPTIONAL: 
+					if (optionalDepth == 0) {
+						retval.add(TextDiff.OPTIONAL);
+					}
+					optionalDepth++; 
+					break;
+				case END_OPTIONAL: optionalDepth--; break;
+				case VARIABLE_RULE: 
+					if (optionalDepth == 0) {
+						retval.add(TextDiff.VARIABLE);
+					}
+					break;
+				case NORMAL_TEXT:
+					if (optionalDepth == 0) {
+						retval.addAll(TokenNormalizer.canonicalTokens(event.text));
+					}
+					break;
+				default: break;
+			}
+		}
+		return retval;
+	}
+	
+	/**
+	 * @param text license text
+	 * @return the normalized tokens of the text
+	 */
+	static Set<String> tokenize(String text) {
+		Set<String> retval = new HashSet<String>();
+		for (String token:text.split("\\s")) {
+			if (!token.isEmpty()) {
+				retval.add(TokenNormalizer.normalize(token));
+			}
+		}
+		return retval;
+	}
+}
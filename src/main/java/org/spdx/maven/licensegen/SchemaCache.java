@@ -0,0 +1,92 @@
+/**
+ * Copyright (c) 2017 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.spdx.maven.licensegen;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.xml.XMLConstants;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+
+import org.xml.sax.SAXException;
+
+/**
+ * JVM wide cache of compiled license XML schemas.
+ * 
+ * Compiled schemas are immutable and thread safe, so a schema compiled by one goal execution is
+ * reused by later executions in the same build or Maven daemon process.  Schemas are keyed by the
+ * canonical path of the schema file and recompiled when the content of the file changes.
+ * @author Gary O'Neall
+ *
+ */
+final class SchemaCache {
+	
+	private static class CachedSchema {
+		final String contentHash;
+		final Schema schema;
+		
+		CachedSchema(String contentHash, Schema schema) {
+			this.contentHash = contentHash;
+			this.schema = schema;
+		}
+	}
+	
+	private static final Map<String, CachedSchema> schemas = new HashMap<String, CachedSchema>();
+	
+	private SchemaCache() {
+		// Static helper only
+	}
+	
+	/**
+	 * Get the compiled schema for a schema file, compiling it only if it is not cached or the file content changed
+	 * @param schemaFile license XML schema file
+	 * @param metrics
+	 * @return the compiled schema
+	 * @throws SAXException if the schema is not valid
+	 * @throws IOException if the schema file can not be read
+	 */
+	static synchronized Schema get(File schemaFile, BuildMetrics metrics) throws SAXException, IOException {
+		long startNanos = System.nanoTime();
+		String key = schemaFile.getCanonicalPath();
+		byte[] content = Files.readAllBytes(schemaFile.toPath());
+		String contentHash = ContentHash.of(content);
+		CachedSchema cached = schemas.get(key);
+		if (cached != null && cached.contentHash.equals(contentHash)) {
+			metrics.record("schema-cached", schemaFile.getName(), startNanos, content.length, 0);
+			return cached.schema;
+		}
+		schemas.remove(key);
+		SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+		Schema schema = schemaFactory.newSchema(new StreamSource(new ByteArrayInputStream(content), 
+				schemaFile.toURI().toString()));
+		schemas.put(key, new CachedSchema(contentHash, schema));
+		metrics.record("schema-compile", schemaFile.getName(), startNanos, content.length, 0);
+		return schema;
+	}
+	
+	/**
+	 * Remove all cached schemas
+	 */
+	static synchronized void clear() {
+		schemas.clear();
+	}
+}
@@ -0,0 +1,163 @@
+/**
+ * Copyright (c) 2017 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.spdx.maven.licensegen;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stable subset of the licenses processed by one of several cooperating builds.
+ * 
+ * A license belongs to a shard based on a hash of its name - the license XML file name without
+ * the extension or the name of the expected license text - so that every build, JVM and machine
+ * assigns the same licenses to the same shard and the validate, generate and test goals for a
+ * shard all process the same licenses.
+ * @author Gary O'Neall
+ *
+ */
+final class Shard {
+	
+	/**
+	 * Shard containing all licenses
+	 */
+	static final Shard ALL = new Shard(0, 1);
+	
+	private final int index;
+	private final int count;
+	
+	private Shard(int index, int count) {
+		this.index = index;
+		this.count = count;
+	}
+	
+	/**
+	 * @param index zero based index of the shard
+	 * @param count total number of shards - if less than 2, all licenses are included
+	 * @return the shard
+	 * @throws LicenseGenException if the index is not between 0 and count - 1
+	 */
+	static Shard of(int index, int count) throws LicenseGenException {
+		if (count < 2) {
+			return ALL;
+		}
+		if (index < 0 || index >= count) {
+			throw new LicenseGenException("Invalid shardIndex "+index+" - must be between 0 and "+(count-1)+" for a shardCount of "+count);
+		}
+		return new Shard(index, count);
+	}
+	
+	/**
+	 * @return true if this shard includes all licenses
+	 */
+	boolean isAll() {
+		return count < 2;
+	}
+	
+	/**
+	 * @param licenseName license XML file name without the extension or the name of the expected license text
+	 * @return true if the license belongs to this shard
+	 */
+	boolean includes(String licenseName) {
+		if (count < 2) {
+			return true;
+		}
+		byte[] hash = ContentHash.newDigest().digest(licenseName.getBytes(StandardCharsets.UTF_8));
+		int value = ((hash[0] & 0xff) << 24) | ((hash[1] & 0xff) << 16) | ((hash[2] & 0xff) << 8) | (hash[3] & 0xff);
+		return Math.floorMod(value, count) == index;
+	}
+	
+	/**
+	 * @param xmlFiles license XML files
+	 * @return the license XML files belonging to this shard in the same order
+	 */
+	List<File> select(List<File> xmlFiles) {
+		if (count < 2) {
+			return xmlFiles;
+		}
+		List<File> retval = new ArrayList<File>();
+		for (File xmlFile:xmlFiles) {
+			if (includes(licenseName(xmlFile))) {
+				retval.add(xmlFile);
+			}
+		}
+		return retval;
+	}
+	
+	/**
+	 * @param sources license XML files
+	 * @return the license XML files belonging to this shard in the same order
+	 */
+	List<LicenseSource> selectSources(List<LicenseSource> sources) {
+		if (count < 2) {
+			return sources;
+		}
+		List<LicenseSource> retval = new ArrayList<LicenseSource>();
+		for (LicenseSource source:sources) {
+			if (includes(licenseName(source.getFile()))) {
+				retval.add(source);
+			}
+		}
+		return retval;
+	}
+	
+	/**
+	 * @param file file written by the builds of every shard - may be null
+	 * @return the file for this shard - the file name with the shard index added before the extension 
+	 * if there is more than one shard so that the builds of the shards do not overwrite each other's file
+	 */
+	File file(File file) {
+		if (file == null || count < 2) {
+			return file;
+		}
+		String name = file.getName();
+		int dot = name.lastIndexOf('.');
+		String shardName = dot > 0 ? name.substring(0, dot) + suffix() + name.substring(dot) : name + suffix();
+		return new File(file.getAbsoluteFile().getParentFile(), shardName);
+	}
+	
+	/**
+	 * @param dir directory written by the builds of every shard - may be null
+	 * @return the directory for this shard - the directory name with the shard index added if there is
+	 * more than one shard
+	 */
+	File directory(File dir) {
+		if (dir == null || count < 2) {
+			return dir;
+		}
+		return new File(dir.getAbsoluteFile().getParentFile(), dir.getName() + suffix());
+	}
+	
+	private String suffix() {
+		return "-shard" + index;
+	}
+	
+	/**
+	 * @param xmlFile
+	 * @return the license name for a license XML file - the file name without the extension
+	 */
+	static String licenseName(File xmlFile) {
+		String name = xmlFile.getName();
+		int dot = name.lastIndexOf('.');
+		return dot > 0 ? name.substring(0, dot) : name;
+	}
+	
+	@Override
+	public String toString() {
+		return "shard "+index+" of "+count;
+	}
+}
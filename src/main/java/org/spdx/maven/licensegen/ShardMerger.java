@@ -0,0 +1,385 @@
+/**
+ * Copyright (c) 2017 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.spdx.maven.licensegen;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.shared.JenaException;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Combines the license data generated by several shards into the complete license data.
+ * 
+ * Each license belongs to exactly one shard, so the per-license output files are copied from the
+ * shard which generated them.  Every shard also generates the aggregate index files for its own
+ * licenses.  Aggregate files which are the same in all shards (style sheets, scripts) are copied.
+ * The JSON license and exception lists are merged by combining their arrays and the HTML tables of
+ * contents by combining the rows of their tables.  Merged entries are sorted by license or
+ * exception ID and the reference numbers are renumbered.  The RDF files of the whole license list
+ * are merged by combining the statements of their models.
+ * @author Gary O'Neall
+ *
+ */
+class ShardMerger {
+	
+	private static final List<String> JSON_ID_FIELDS = Arrays.asList("licenseId", "licenseExceptionId");
+	private static final String JSON_REFERENCE_NUMBER_FIELD = "referenceNumber";
+	private static final Pattern HTML_TBODY_PATTERN = Pattern.compile("(?s)(<tbody>)(.*?)(\\s*</tbody>)");
+	private static final Pattern HTML_ROW_PATTERN = Pattern.compile("(?s)\\s*<tr>.*?</tr>");
+	private static final Pattern HTML_ID_PATTERN = Pattern.compile("property=\"spdx:(?:licenseId|licenseExceptionId)\">([^<]*)<");
+	private static final Pattern HTML_REF_NUMBER_PATTERN = Pattern.compile("rel=\"rdf:_\\d+\"");
+	
+	/**
+	 * Base URI for relative URIs in the RDF files - the generator only writes absolute URIs
+	 */
+	private static final String RDF_BASE_URI = "http://spdx.org/licenses/";
+	
+	/**
+	 * Jena languages used to read and write the RDF files by file extension - the same languages the license generator writes
+	 */
+	private static final Map<String, String[]> RDF_LANGUAGES = new TreeMap<String, String[]>();
+	static {
+		RDF_LANGUAGES.put(".rdf", new String[] {"RDF/XML", "RDF/XML-ABBREV"});
+		RDF_LANGUAGES.put(".turtle", new String[] {"TURTLE", "TURTLE"});
+		RDF_LANGUAGES.put(".nt", new String[] {"N-TRIPLE", "N-TRIPLE"});
+	}
+	
+	private final List<LicenseSource> sources;
+	private final LicenseGenLog log;
+	
+	/**
+	 * @param sources all license XML sources of the license list
+	 * @param log
+	 */
+	ShardMerger(List<LicenseSource> sources, LicenseGenLog log) {
+		this.sources = sources;
+		this.log = log;
+	}
+	
+	/**
+	 * Merge the shard output directories
+	 * @param shardDirectories output directories of the shards
+	 * @param target directory for the merged license data
+	 * @throws LicenseGenException if the shard outputs conflict or an aggregate file can not be merged
+	 */
+	void merge(List<File> shardDirectories, Path target) throws LicenseGenException {
+		Map<String, List<Path>> filesByPath = new TreeMap<String, List<Path>>();
+		Set<String> licenseOutputs = new HashSet<String>();
+		for (File shardDirectory:shardDirectories) {
+			if (!shardDirectory.isDirectory()) {
+				throw new LicenseGenException("Shard directory "+shardDirectory.getPath()+" does not exist.");
+			}
+			for (List<String> outputs:IncrementalLicenseGenerator.mapOutputsToSources(shardDirectory, sources).values()) {
+				licenseOutputs.addAll(outputs);
+			}
+			collectFiles(shardDirectory.toPath(), filesByPath);
+		}
+		int numMerged = 0;
+		try {
+			for (Entry<String, List<Path>> entry:filesByPath.entrySet()) {
+				String relativePath = entry.getKey();
+				List<Path> files = entry.getValue();
+				Path targetFile = target.resolve(relativePath);
+				Files.createDirectories(targetFile.getParent());
+				if (files.size() == 1 || allEqual(files)) {
+					Files.copy(files.get(0), targetFile);
+				} else if (licenseOutputs.contains(relativePath)) {
+					throw new LicenseGenException("License output file "+relativePath+" was generated by more than one shard with different content");
+				} else if (relativePath.endsWith(".json")) {
+					Files.write(targetFile, mergeJson(files).getBytes(StandardCharsets.UTF_8));
+					numMerged++;
+				} else if (relativePath.endsWith(".html")) {
+					Files.write(targetFile, mergeHtml(files).getBytes(StandardCharsets.UTF_8));
+					numMerged++;
+				} else if (rdfLanguages(relativePath) != null) {
+					mergeRdf(files, targetFile, rdfLanguages(relativePath));
+					numMerged++;
+				} else {
+					throw new LicenseGenException("Unable to merge the aggregate file "+relativePath+" generated by the shards");
+				}
+			}
+		} catch (IOException e) {
+			throw new LicenseGenException("IO error merging shard outputs: "+e.getMessage(), e);
+		}
+		log.info("Merged "+filesByPath.size()+" files from "+shardDirectories.size()+" shards including "+numMerged+" aggregate index files");
+	}
+	
+	/**
+	 * Add all files in a shard directory to the map of relative path to the files with that path
+	 * @param dir
+	 * @param filesByPath
+	 * @throws LicenseGenException
+	 */
+	private static void collectFiles(final Path dir, final Map<String, List<Path>> filesByPath) throws LicenseGenException {
+		try {
+			Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+					String relativePath = dir.relativize(file).toString().replace(File.separatorChar, '/');
+					List<Path> files = filesByPath.get(relativePath);
+					if (files == null) {
+						files = new ArrayList<Path>();
+						filesByPath.put(relativePath, files);
+					}
+					files.add(file);
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		} catch (IOException e) {
+			throw new LicenseGenException("IO error reading shard directory "+dir.toString()+": "+e.getMessage(), e);
+		}
+	}
+	
+	private static boolean allEqual(List<Path> files) throws IOException {
+		byte[] first = Files.readAllBytes(files.get(0));
+		for (int i = 1; i < files.size(); i++) {
+			if (!Arrays.equals(first, Files.readAllBytes(files.get(i)))) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Merge JSON objects by combining the entries of their array values.  Other values are taken
+	 * from the first file.
+	 * @param files JSON files generated by the shards
+	 * @return the merged JSON
+	 * @throws LicenseGenException
+	 */
+	@SuppressWarnings("unchecked")
+	static String mergeJson(List<Path> files) throws LicenseGenException {
+		List<JSONObject> objects = new ArrayList<JSONObject>();
+		for (Path file:files) {
+			try {
+				Object parsed = new JSONParser().parse(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+				if (!(parsed instanceof JSONObject)) {
+					throw new LicenseGenException("Unable to merge "+file.toString()+" - expected a JSON object");
+				}
+				objects.add((JSONObject)parsed);
+			} catch (IOException e) {
+				throw new LicenseGenException("IO error reading "+file.toString(), e);
+			} catch (ParseException e) {
+				throw new LicenseGenException("Invalid JSON in "+file.toString()+": "+e.toString(), e);
+			}
+		}
+		JSONObject retval = new JSONObject();
+		retval.putAll(objects.get(0));
+		for (Object key:objects.get(0).keySet()) {
+			if (!(objects.get(0).get(key) instanceof JSONArray)) {
+				continue;
+			}
+			JSONArray merged = new JSONArray();
+			for (JSONObject object:objects) {
+				Object value = object.get(key);
+				if (value instanceof JSONArray) {
+					merged.addAll((JSONArray)value);
+				}
+			}
+			Collections.sort(merged, new Comparator<Object>() {
+				@Override
+				public int compare(Object o1, Object o2) {
+					return jsonId(o1).compareTo(jsonId(o2));
+				}
+			});
+			int referenceNumber = 1;
+			for (Object entry:merged) {
+				if (entry instanceof JSONObject && ((JSONObject)entry).containsKey(JSON_REFERENCE_NUMBER_FIELD)) {
+					JSONObject entryObject = (JSONObject)entry;
+					Object oldNumber = entryObject.get(JSON_REFERENCE_NUMBER_FIELD);
+					if (oldNumber instanceof String) {
+						entryObject.put(JSON_REFERENCE_NUMBER_FIELD, String.valueOf(referenceNumber));
+					} else {
+						entryObject.put(JSON_REFERENCE_NUMBER_FIELD, Long.valueOf(referenceNumber));
+					}
+					referenceNumber++;
+				}
+			}
+			retval.put(key, merged);
+		}
+		return retval.toJSONString();
+	}
+	
+	/**
+	 * @param entry
+	 * @return the license or exception ID of a JSON array entry or an empty string if it has none
+	 */
+	private static String jsonId(Object entry) {
+		if (entry instanceof JSONObject) {
+			for (String field:JSON_ID_FIELDS) {
+				Object id = ((JSONObject)entry).get(field);
+				if (id != null) {
+					return id.toString();
+				}
+			}
+		}
+		return "";
+	}
+	
+	/**
+	 * Merge HTML tables of contents by combining the rows of the corresponding tables.  The rest of
+	 * the page is taken from the first file.
+	 * @param files HTML files generated by the shards
+	 * @return the merged HTML
+	 * @throws LicenseGenException if the files do not have the same tables
+	 */
+	static String mergeHtml(List<Path> files) throws LicenseGenException {
+		List<List<List<String>>> rowsByFile = new ArrayList<List<List<String>>>();
+		String first = null;
+		for (Path file:files) {
+			String html;
+			try {
+				html = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+			} catch (IOException e) {
+				throw new LicenseGenException("IO error reading "+file.toString(), e);
+			}
+			if (first == null) {
+				first = html;
+			}
+			List<List<String>> tables = new ArrayList<List<String>>();
+			Matcher tbody = HTML_TBODY_PATTERN.matcher(html);
+			while (tbody.find()) {
+				List<String> rows = new ArrayList<String>();
+				Matcher row = HTML_ROW_PATTERN.matcher(tbody.group(2));
+				while (row.find()) {
+					rows.add(row.group());
+				}
+				tables.add(rows);
+			}
+			if (!rowsByFile.isEmpty() && rowsByFile.get(0).size() != tables.size()) {
+				throw new LicenseGenException("Unable to merge "+file.toString()+" - the shards generated different tables");
+			}
+			rowsByFile.add(tables);
+		}
+		StringBuffer sb = new StringBuffer();
+		Matcher tbody = HTML_TBODY_PATTERN.matcher(first);
+		int table = 0;
+		while (tbody.find()) {
+			List<String> rows = new ArrayList<String>();
+			for (List<List<String>> tables:rowsByFile) {
+				rows.addAll(tables.get(table));
+			}
+			Collections.sort(rows, new Comparator<String>() {
+				@Override
+				public int compare(String o1, String o2) {
+					return htmlId(o1).compareTo(htmlId(o2));
+				}
+			});
+			StringBuilder tableRows = new StringBuilder();
+			for (String row:rows) {
+				tableRows.append(row);
+			}
+			tbody.appendReplacement(sb, Matcher.quoteReplacement(tbody.group(1) + tableRows.toString() + tbody.group(3)));
+			table++;
+		}
+		tbody.appendTail(sb);
+		// Renumber the RDFa bag entries in document order
+		Matcher refNumber = HTML_REF_NUMBER_PATTERN.matcher(sb.toString());
+		StringBuffer retval = new StringBuffer();
+		int referenceNumber = 1;
+		while (refNumber.find()) {
+			refNumber.appendReplacement(retval, "rel=\"rdf:_" + referenceNumber++ + "\"");
+		}
+		refNumber.appendTail(retval);
+		return retval.toString();
+	}
+	
+	/**
+	 * @param relativePath
+	 * @return the Jena languages to read and write the file or null if it is not an RDF file
+	 */
+	private static String[] rdfLanguages(String relativePath) {
+		for (Entry<String, String[]> entry:RDF_LANGUAGES.entrySet()) {
+			if (relativePath.endsWith(entry.getKey())) {
+				return entry.getValue();
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Merge RDF files by combining the statements of their models
+	 * @param files RDF files generated by the shards
+	 * @param target file for the merged RDF
+	 * @param languages Jena languages to read and to write the files
+	 * @throws LicenseGenException if a file is not valid RDF
+	 */
+	static void mergeRdf(List<Path> files, Path target, String[] languages) throws LicenseGenException {
+		Model merged = ModelFactory.createDefaultModel();
+		for (Path file:files) {
+			try {
+				InputStream is = Files.newInputStream(file);
+				try {
+					Model model = ModelFactory.createDefaultModel();
+					model.read(is, RDF_BASE_URI, languages[0]);
+					merged.setNsPrefixes(model.getNsPrefixMap());
+					merged.add(model);
+				} finally {
+					is.close();
+				}
+			} catch (IOException e) {
+				throw new LicenseGenException("IO error reading "+file.toString(), e);
+			} catch (JenaException e) {
+				throw new LicenseGenException("Invalid RDF in "+file.toString()+": "+e.getMessage(), e);
+			}
+		}
+		try {
+			OutputStream os = Files.newOutputStream(target);
+			try {
+				merged.write(os, languages[1]);
+			} finally {
+				os.close();
+			}
+		} catch (IOException e) {
+			throw new LicenseGenException("IO error writing "+target.toString(), e);
+		}
+	}
+	
+	/**
+	 * @param row
+	 * @return the license or exception ID of an HTML table row or an empty string if it has none
+	 */
+	private static String htmlId(String row) {
+		Matcher matcher = HTML_ID_PATTERN.matcher(row);
+		return matcher.find() ? matcher.group(1) : "";
+	}
+}
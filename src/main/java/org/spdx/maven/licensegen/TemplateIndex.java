@@ -0,0 +1,327 @@
+/**
+ * Copyright (c) 2017 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.spdx.maven.licensegen;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.spdx.licenseTemplate.LicenseTemplateRuleException;
+
+/**
+ * Index of the generated license templates used to find the licenses matching arbitrary license texts.
+ * 
+ * Each template is indexed by the normalized tokens of its literal text, all of which must be
+ * present in a matching text.  Every template is filed under its rarest token so that only the
+ * templates filed under a token of the text are considered, and only the candidates containing
+ * all of their required tokens are run through the full template matcher.
+ * 
+ * The tokens are persisted together with the content hash of each template so that templates are
+ * only parsed when they changed or are candidates for a text.  Instances are thread safe.
+ * @author Gary O'Neall
+ *
+ */
+public class TemplateIndex {
+	
+	static final String TEMPLATE_SUFFIX = ".template.txt";
+	static final String INDEX_VERSION_KEY = "#version";
+	static final String INDEX_VERSION = "1";
+	
+	/**
+	 * Indexed template - the template is only parsed when first needed
+	 */
+	private static class IndexEntry {
+		final String licenseId;
+		final Path templatePath;
+		final String templateHash;
+		final Set<String> requiredTokens;
+		private ParsedTemplate template;
+		
+		IndexEntry(String licenseId, Path templatePath, String templateHash, Set<String> requiredTokens, ParsedTemplate template) {
+			this.licenseId = licenseId;
+			this.templatePath = templatePath;
+			this.templateHash = templateHash;
+			this.requiredTokens = requiredTokens;
+			this.template = template;
+		}
+		
+		synchronized ParsedTemplate getTemplate() throws LicenseGenException {
+			if (template == null) {
+				try {
+					template = ParsedTemplate.parse(LicenseTextReader.read(templatePath));
+				} catch (IOException e) {
+					throw new LicenseGenException("IO Error reading template file "+templatePath.toString(),e);
+				} catch (LicenseTemplateRuleException e) {
+					throw new LicenseGenException("Invalid template rule found in "+templatePath.toString()+": "+e.getMessage(),e);
+				}
+			}
+			return template;
+		}
+	}
+	
+	private final Map<String, IndexEntry> entries;
+	private final Map<String, List<IndexEntry>> entriesByToken = new HashMap<String, List<IndexEntry>>();
+	private final List<IndexEntry> unindexedEntries = new ArrayList<IndexEntry>();
+	private final AtomicLong numTextsMatched = new AtomicLong();
+	private final AtomicLong numTemplatesMatched = new AtomicLong();
+	
+	/**
+	 * @param entries index entries sorted by license ID
+	 */
+	private TemplateIndex(Map<String, IndexEntry> entries) {
+		this.entries = entries;
+		Map<String, Integer> templateCounts = new HashMap<String, Integer>();
+		for (IndexEntry entry:entries.values()) {
+			for (String token:entry.requiredTokens) {
+				Integer count = templateCounts.get(token);
+				templateCounts.put(token, count == null ? 1 : count + 1);
+			}
+		}
+		for (IndexEntry entry:entries.values()) {
+			String rarest = null;
+			int rarestCount = Integer.MAX_VALUE;
+			for (String token:entry.requiredTokens) {
+				int count = templateCounts.get(token);
+				if (count < rarestCount || (count == rarestCount && token.compareTo(rarest) < 0)) {
+					rarest = token;
+					rarestCount = count;
+				}
+			}
+			if (rarest == null) {
+				unindexedEntries.add(entry);
+			} else {
+				List<IndexEntry> tokenEntries = entriesByToken.get(rarest);
+				if (tokenEntries == null) {
+					tokenEntries = new ArrayList<IndexEntry>();
+					entriesByToken.put(rarest, tokenEntries);
+				}
+				tokenEntries.add(entry);
+			}
+		}
+	}
+	
+	/**
+	 * Build the index for the templates in a directory.  Templates which are unchanged since the
+	 * index was last stored in indexFile are not parsed.  The updated index is stored in indexFile.
+	 * @param templateDirectory directory containing the generated license templates
+	 * @param indexFile file the index is persisted in - need not exist.  If null, the index is not persisted.
+	 * @return the template index
+	 * @throws LicenseGenException if a template can not be read or parsed
+	 */
+	public static TemplateIndex build(File templateDirectory, File indexFile) throws LicenseGenException {
+		File[] templateFiles = templateDirectory.listFiles();
+		if (templateFiles == null) {
+			throw new LicenseGenException("Template directory "+templateDirectory.getPath()+" does not exist.");
+		}
+		Arrays.sort(templateFiles);
+		Properties previous = new Properties();
+		if (indexFile != null && indexFile.isFile()) {
+			try {
+				InputStream is = new FileInputStream(indexFile);
+				try {
+					previous.load(is);
+				} finally {
+					is.close();
+				}
+			} catch (IOException e) {
+				previous.clear();
+			}
+			if (!INDEX_VERSION.equals(previous.getProperty(INDEX_VERSION_KEY))) {
+				previous.clear();
+			}
+		}
+		Map<String, IndexEntry> entries = new TreeMap<String, IndexEntry>();
+		for (File templateFile:templateFiles) {
+			String name = templateFile.getName();
+			if (!templateFile.isFile() || !name.endsWith(TEMPLATE_SUFFIX)) {
+				continue;
+			}
+			String licenseId = name.substring(0, name.length() - TEMPLATE_SUFFIX.length());
+			entries.put(licenseId, indexTemplate(licenseId, templateFile.toPath(), previous.getProperty(licenseId)));
+		}
+		TemplateIndex retval = new TemplateIndex(entries);
+		if (indexFile != null) {
+			try {
+				retval.store(indexFile);
+			} catch (IOException e) {
+				throw new LicenseGenException("Unable to write template index "+indexFile.getPath()+": "+e.getMessage(),e);
+			}
+		}
+		return retval;
+	}
+	
+	/**
+	 * @param licenseId
+	 * @param templatePath
+	 * @param previousEntry entry for the template in the previously stored index - may be null
+	 * @return the index entry for the template
+	 * @throws LicenseGenException
+	 */
+	private static IndexEntry indexTemplate(String licenseId, Path templatePath, String previousEntry) throws LicenseGenException {
+		byte[] bytes;
+		try {
+			bytes = Files.readAllBytes(templatePath);
+		} catch (IOException e) {
+			throw new LicenseGenException("IO Error reading template file "+templatePath.toString(),e);
+		}
+		String hash = ContentHash.of(bytes);
+		if (previousEntry != null) {
+			String[] parts = previousEntry.split(" ");
+			if (parts[0].equals(hash)) {
+				Set<String> requiredTokens = new TreeSet<String>(Arrays.asList(parts).subList(1, parts.length));
+				return new IndexEntry(licenseId, templatePath, hash, Collections.unmodifiableSet(requiredTokens), null);
+			}
+		}
+		ParsedTemplate template;
+		try {
+			template = ParsedTemplate.parse(LicenseTextReader.decodeNormalized(ByteBuffer.wrap(bytes)));
+		} catch (IOException e) {
+			throw new LicenseGenException("Template file "+templatePath.toString()+" is not valid UTF-8",e);
+		} catch (LicenseTemplateRuleException e) {
+			throw new LicenseGenException("Invalid template rule found in "+templatePath.toString()+": "+e.getMessage(),e);
+		}
+		return new IndexEntry(licenseId, templatePath, hash, template.getRequiredTokens(), template);
+	}
+	
+	/**
+	 * Store the index
+	 * @param indexFile
+	 * @throws IOException
+	 */
+	private void store(File indexFile) throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty(INDEX_VERSION_KEY, INDEX_VERSION);
+		for (IndexEntry entry:entries.values()) {
+			StringBuilder sb = new StringBuilder(entry.templateHash);
+			for (String token:new TreeSet<String>(entry.requiredTokens)) {
+				sb.append(' ');
+				sb.append(token);
+			}
+			properties.setProperty(entry.licenseId, sb.toString());
+		}
+		File parent = indexFile.getParentFile();
+		if (parent != null && !parent.exists() && !parent.mkdirs()) {
+			throw new IOException("Unable to create directory "+parent.getPath());
+		}
+		OutputStream os = new FileOutputStream(indexFile);
+		try {
+			properties.store(os, "Licensegen template index");
+		} finally {
+			os.close();
+		}
+	}
+	
+	/**
+	 * @param text license text
+	 * @return the IDs of the licenses whose templates match the text in license ID order
+	 * @throws LicenseGenException if a template can not be read or parsed
+	 */
+	public List<String> findMatches(String text) throws LicenseGenException {
+		Set<String> textTokens = ParsedTemplate.tokenize(text);
+		Map<String, IndexEntry> candidates = new TreeMap<String, IndexEntry>();
+		for (String token:textTokens) {
+			List<IndexEntry> tokenEntries = entriesByToken.get(token);
+			if (tokenEntries != null) {
+				for (IndexEntry entry:tokenEntries) {
+					if (textTokens.containsAll(entry.requiredTokens)) {
+						candidates.put(entry.licenseId, entry);
+					}
+				}
+			}
+		}
+		for (IndexEntry entry:unindexedEntries) {
+			candidates.put(entry.licenseId, entry);
+		}
+		List<String> retval = new ArrayList<String>();
+		for (IndexEntry entry:candidates.values()) {
+			if (entry.getTemplate().matches(text, textTokens)) {
+				retval.add(entry.licenseId);
+			}
+		}
+		numTextsMatched.incrementAndGet();
+		numTemplatesMatched.addAndGet(candidates.size());
+		return retval;
+	}
+	
+	/**
+	 * Find the matching licenses for a batch of license text files
+	 * @param textFiles license text files
+	 * @param threads number of threads used to match the texts
+	 * @return map of text file to the IDs of the licenses whose templates match the text in the order of textFiles
+	 * @throws LicenseGenException if a text or template can not be read or a template can not be parsed
+	 */
+	public Map<File, List<String>> findMatches(List<File> textFiles, int threads) throws LicenseGenException {
+		List<Callable<List<String>>> tasks = new ArrayList<Callable<List<String>>>(textFiles.size());
+		for (final File textFile:textFiles) {
+			tasks.add(new Callable<List<String>>() {
+				@Override
+				public List<String> call() throws LicenseGenException {
+					try {
+						return findMatches(LicenseTextReader.read(textFile.toPath()));
+					} catch (IOException e) {
+						throw new LicenseGenException("IO Error reading license text file "+textFile.getPath(),e);
+					}
+				}
+			});
+		}
+		List<List<String>> results = WorkerPool.invokeAll(tasks, WorkerPool.resolveThreads(threads));
+		Map<File, List<String>> retval = new LinkedHashMap<File, List<String>>();
+		for (int i = 0; i < textFiles.size(); i++) {
+			retval.put(textFiles.get(i), results.get(i));
+		}
+		return retval;
+	}
+	
+	/**
+	 * @return the IDs of the indexed licenses in license ID order
+	 */
+	public Set<String> getLicenseIds() {
+		return Collections.unmodifiableSet(entries.keySet());
+	}
+	
+	/**
+	 * @return the number of texts matched against the index
+	 */
+	public long getNumTextsMatched() {
+		return numTextsMatched.get();
+	}
+	
+	/**
+	 * @return the number of templates run through the full template matcher
+	 */
+	public long getNumTemplatesMatched() {
+		return numTemplatesMatched.get();
+	}
+}
@@ -16,10 +16,6 @@
 package org.spdx.maven.licensegen;
 
 import java.io.File;
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.util.List;
 
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
@@ -27,10 +23,6 @@ import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
-import org.spdx.compare.CompareTemplateOutputHandler;
-import org.spdx.compare.LicenseCompareHelper;
-import org.spdx.licenseTemplate.LicenseTemplateRuleException;
-import org.spdx.licenseTemplate.SpdxLicenseTemplateHelper;
 
 /**
  * Test goal for licensegen which compares the generated licenses to expected license text
@@ -64,6 +56,118 @@ public class TestLicensegenMojo extends AbstractMojo {
     @Parameter(required = false)
     private File textCompare;
     
+    /**
+     * Number of threads used to compare the license texts.  If less than 1, the number of available processors is used
+     */
+    @Parameter(defaultValue = "0", required = false)
+    private int threads;
+    
+    /**
+     * If true, stop testing at the first error
+     */
+    @Parameter(defaultValue = "false", required = false)
+    private boolean failFast;
+    
+    /**
+     * Maximum number of errors reported before testing is stopped.  If less than 1, all license texts are tested
+     */
+    @Parameter(defaultValue = "0", required = false)
+    private int maxErrors;
+    
+    /**
+     * Zero based index of the shard processed by this execution - see shardCount
+     */
+    @Parameter(defaultValue = "0", property = "licensegen.shardIndex", required = false)
+    private int shardIndex;
+    
+    /**
+     * Number of shards the licenses are split into.  If greater than 1, only the licenses belonging
+     * to the shard shardIndex are tested.  Every execution assigns the same licenses to the same shard.
+     * The shard index is added to the names of the metrics baseline and report directories so shards 
+     * do not share them.
+     */
+    @Parameter(defaultValue = "1", property = "licensegen.shardCount", required = false)
+    private int shardCount;
+    
+    /**
+     * Directory of a content addressed cache of generated license data and validation and test
+     * results shared between builds, for example on a shared or network file system.  Results whose
+     * inputs are unchanged are restored from the cache.  If not set, no build cache is used.
+     */
+    @Parameter(property = "licensegen.buildCache", required = false)
+    private File buildCache;
+    
+    /**
+     * Directory for the timing and I/O metrics reports.  Defaults to target/licensegen-metrics - set
+     * skipMetrics to turn the reports off.
+     */
+    @Parameter(defaultValue = "${project.build.directory}/licensegen-metrics", required = false)
+    private File metricsDirectory;
+    
+    /**
+     * If true, no metrics reports are written and metrics are only collected to check a configured metricsBaseline
+     */
+    @Parameter(defaultValue = "false", property = "licensegen.skipMetrics", required = false)
+    private boolean skipMetrics;
+    
+    /**
+     * Number of slowest licenses listed in the metrics summary
+     */
+    @Parameter(defaultValue = "10", required = false)
+    private int metricsTopN;
+    
+    /**
+     * Directory for the SARIF and JUnit XML reports of the errors and warnings found.  Defaults to target/licensegen-diagnostics.
+     */
+    @Parameter(defaultValue = "${project.build.directory}/licensegen-diagnostics", property = "licensegen.diagnosticsDirectory", required = false)
+    private File diagnosticsDirectory;
+    
+    /**
+     * Maximum number of errors and warnings logged - the remaining findings are only counted in
+     * the summary.  If less than 1, all findings are logged.
+     */
+    @Parameter(defaultValue = "20", property = "licensegen.maxConsoleFindings", required = false)
+    private int maxConsoleFindings;
+    
+    /**
+     * Directory for the token level differences between the test texts and the templates or
+     * generated texts they fail to match.  If not set, the differences are not computed.
+     */
+    @Parameter(property = "licensegen.diffDirectory", required = false)
+    private File diffDirectory;
+    
+    /**
+     * Maximum number of differing tokens aligned when computing a difference - larger differences
+     * are reported as a single replacement.  If less than 1, the number of tokens is not limited.
+     */
+    @Parameter(defaultValue = "20000", property = "licensegen.maxDiffTokens", required = false)
+    private int maxDiffTokens;
+    
+    /**
+     * Maximum time in milliseconds spent computing the difference for one test text.  If less than 1, the time is not limited.
+     */
+    @Parameter(defaultValue = "1000", property = "licensegen.maxDiffMillis", required = false)
+    private long maxDiffMillis;
+    
+    /**
+     * File recording the timing of previous runs.  If set, the time of the goal, each phase and each
+     * license is compared to the median of the recorded runs and the run is added to the baseline.
+     */
+    @Parameter(property = "licensegen.metricsBaseline", required = false)
+    private File metricsBaseline;
+    
+    /**
+     * Ratio of a time to its baseline median above which the time is reported as a slowdown
+     */
+    @Parameter(defaultValue = "1.5", property = "licensegen.maxSlowdown", required = false)
+    private double maxSlowdown;
+    
+    /**
+     * If true, the build fails if the goal or any phase is slower than maxSlowdown times its baseline
+     */
+    @Parameter(defaultValue = "false", property = "licensegen.failOnSlowdown", required = false)
+    private boolean failOnSlowdown;
+    
     /* (non-Javadoc)
 	 * @see org.apache.maven.plugin.Mojo#execute()
 	 */
@@ -82,90 +186,34 @@ public class TestLicensegenMojo extends AbstractMojo {
 		if (!output.exists() || !output.isDirectory()) {
 			throw new MojoExecutionException("Output directory "+output.getName()+" does not exist.");
 		}
-		int numErrors = 0;
-		Path templateDirPath = output.toPath().resolve("template");
-		Path genTextDirPath = output.toPath().resolve("text");
-		File[] textFiles = textCompare.listFiles();
-		if (textFiles != null) {
-			for (File textFile:textFiles) {
-				Path textFilePath = textFile.toPath();
-				String text = null;
-				try {
-					text = readFileToString(textFilePath);
-				} catch (IOException e) {
-					throw new MojoExecutionException("IO Error reading test text file "+textFile.getName(),e);
-				}
-				String fileName = textFilePath.getFileName().toString();
-				if (!fileName.endsWith(".txt")) {
-					fileName = fileName + ".txt";
-				}
-				String templateFileName = fileName.substring(0, fileName.length()-".txt".length()) + ".template.txt";
-				Path templatePath = templateDirPath.resolve(templateFileName);
-				File templateFile = templatePath.toFile();
-				Path genTextPath = genTextDirPath.resolve(fileName);
-				File genTextFile = genTextPath.toFile();
-				if (templateFile.exists() && templateFile.isFile()) {
-					if (!textMatchesTemplate(templatePath, text)) {
-						this.getLog().error("License template does not allow for the match of the test license text "+textFile.getName());;
-						numErrors++;
-					}				
-				} else {
-					this.getLog().error("No template file was found for test file "+fileName);
-					numErrors++;
-				}
-				if (genTextFile.exists() && genTextFile.isFile()) {
-					String genText = null;
-					try {
-						genText = readFileToString(genTextPath);
-					} catch (IOException e) {
-						throw new MojoExecutionException("IO Error reading generated text file "+genTextPath.toString(),e);
-					}
-					if (!LicenseCompareHelper.isLicenseTextEquivalent(text, genText)) {
-						this.getLog().error("Generated license text does not match test license text for "+textFile.getName());;
-						numErrors++;
-					}
+		LicenseGenLog log = MojoAdapter.log(getLog());
+		File metricsDir = skipMetrics ? null : metricsDirectory;
+		BuildMetrics metrics = new BuildMetrics("test", metricsDir != null || metricsBaseline != null);
+		try {
+			Shard shard = Shard.of(shardIndex, shardCount);
+			Diagnostics diagnostics = new Diagnostics("test", log, maxConsoleFindings, shard.directory(diagnosticsDirectory));
+			LicenseGenEngine engine = new LicenseGenEngine();
+			BuildCache sharedCache = BuildCache.open(buildCache, log);
+			engine.setBuildCache(sharedCache);
+			int numErrors;
+			try {
+				numErrors = engine.newTester(output, threads, metrics, ErrorLimit.of(failFast, maxErrors), 
+						DiffReporter.of(diffDirectory, maxDiffTokens, maxDiffMillis)).testAll(textCompare, 
+						shard, diagnostics);
+			} finally {
+				diagnostics.close();
+				if (sharedCache != null) {
+					sharedCache.logSummary();
 				}
 			}
-		}		
-		if (numErrors > 0) {
-			throw new MojoFailureException("Errors found testing generated licenses files against expected license text");
-		}
-	}
-
-	/**
-	 * @param templatePath
-	 * @param text
-	 * @return true if the text is matched by the template stored in the file templatePath
-	 * @throws MojoExecutionException
-	 */
-	private boolean textMatchesTemplate(Path templatePath, String text) throws MojoExecutionException {
-		String template = null;
-		try {
-			template = readFileToString(templatePath);
-		} catch (IOException e) {
-			throw new MojoExecutionException("IO Error reading template file "+templatePath.toString(),e);
-		}
-		
-		CompareTemplateOutputHandler compareTemplateOutputHandler = new CompareTemplateOutputHandler(text);
-		try {
-			SpdxLicenseTemplateHelper.parseTemplate(template, compareTemplateOutputHandler);
-		} catch (LicenseTemplateRuleException e) {
-			throw(new MojoExecutionException("Invalid template rule found during compare: "+e.getMessage(),e));
-		}
-		return compareTemplateOutputHandler.matches();
-	}
-
-	private String readFileToString(Path path) throws IOException {
-		List<String> lines = Files.readAllLines(path);
-		if (lines.size() == 0) {
-			return "";
-		}
-		StringBuilder sb = new StringBuilder(lines.get(0));
-		for (int i = 1; i < lines.size(); i++) {
-			sb.append("\n");
-			sb.append(lines.get(i));
+			metrics.report(shard.directory(metricsDir), metricsTopN, log);
+			MetricsBaseline.check(shard.file(metricsBaseline), metrics, maxSlowdown, failOnSlowdown, getLog());
+			if (numErrors > 0) {
+				throw new MojoFailureException("Errors found testing generated licenses files against expected license text");
+			}
+		} catch (LicenseGenException e) {
+			MojoAdapter.rethrow(e);
 		}
-		return sb.toString();
 	}
 
 }
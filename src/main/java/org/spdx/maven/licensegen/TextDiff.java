@@ -0,0 +1,353 @@
+/**
+ * Copyright (c) 2017 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.spdx.maven.licensegen;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Token level difference between the expected tokens of a license template or text and the
+ * tokens of a license text.
+ * 
+ * The difference is computed with the linear space variant of Myers' algorithm which splits the
+ * tokens at the middle of an optimal edit path and recurses on both halves.  The cost is bounded
+ * by a maximum number of tokens and a maximum time: a part of the texts beyond the budget is
+ * reported as a single replacement, so the first divergence is still located but later
+ * differences may be coarser than necessary.
+ * 
+ * The expected tokens may contain the wildcards VARIABLE and OPTIONAL for the variable and
+ * optional text of a template.  Differences which only replace wildcards are allowed by the
+ * template and are not divergences.
+ * @author Gary O'Neall
+ *
+ */
+class TextDiff {
+	
+	/**
+	 * Expected token for a variable rule of a template
+	 */
+	static final String VARIABLE = "<<var>>";
+	
+	/**
+	 * Expected token for optional text of a template
+	 */
+	static final String OPTIONAL = "<<optional>>";
+	
+	enum Type {EQUAL, DELETE, INSERT};
+	
+	/**
+	 * A run of expected tokens which are equal to, missing from (DELETE) or not expected in
+	 * (INSERT) the text
+	 */
+	static class Edit {
+		final Type type;
+		final int expectedStart;
+		final int textStart;
+		final int length;
+		
+		Edit(Type type, int expectedStart, int textStart, int length) {
+			this.type = type;
+			this.expectedStart = expectedStart;
+			this.textStart = textStart;
+			this.length = length;
+		}
+	}
+	
+	/**
+	 * A run of consecutive changes between equal tokens
+	 */
+	static class Hunk {
+		final int expectedStart;
+		final int expectedEnd;
+		final int textStart;
+		final int textEnd;
+		
+		Hunk(int expectedStart, int expectedEnd, int textStart, int textEnd) {
+			this.expectedStart = expectedStart;
+			this.expectedEnd = expectedEnd;
+			this.textStart = textStart;
+			this.textEnd = textEnd;
+		}
+	}
+	
+	/**
+	 * Thrown to stop the middle snake search once the time budget is used
+	 */
+	@SuppressWarnings("serial")
+	private static class BudgetExceededException extends Exception {
+	}
+	
+	private final String[] expected;
+	private final String[] text;
+	private final int maxTokens;
+	private final long deadlineNanos;
+	private final List<Edit> edits = new ArrayList<Edit>();
+	private boolean truncated = false;
+	
+	/**
+	 * Compute the difference
+	 * @param expected expected tokens - may contain the wildcards VARIABLE and OPTIONAL
+	 * @param text tokens of the text
+	 * @param maxTokens maximum number of differing tokens searched for an optimal alignment - unlimited if less than 1
+	 * @param maxMillis maximum time spent searching for an optimal alignment - unlimited if less than 1
+	 */
+	TextDiff(List<String> expected, List<String> text, int maxTokens, long maxMillis) {
+		this.expected = expected.toArray(new String[expected.size()]);
+		this.text = text.toArray(new String[text.size()]);
+		this.maxTokens = maxTokens;
+		this.deadlineNanos = maxMillis < 1 ? Long.MAX_VALUE : System.nanoTime() + maxMillis * 1000000L;
+		diff(0, this.expected.length, 0, this.text.length);
+	}
+	
+	/**
+	 * @return the edits in token order
+	 */
+	List<Edit> getEdits() {
+		return Collections.unmodifiableList(edits);
+	}
+	
+	/**
+	 * @return true if part of the texts exceeded the budget and was reported as a single replacement
+	 */
+	boolean isTruncated() {
+		return truncated;
+	}
+	
+	/**
+	 * @return expected tokens
+	 */
+	List<String> getExpected() {
+		return Arrays.asList(expected);
+	}
+	
+	/**
+	 * @return tokens of the text
+	 */
+	List<String> getText() {
+		return Arrays.asList(text);
+	}
+	
+	/**
+	 * @return the hunks which are not allowed by the wildcards of the expected tokens in token order
+	 */
+	List<Hunk> getDivergences() {
+		List<Hunk> retval = new ArrayList<Hunk>();
+		int expectedPos = 0;
+		int textPos = 0;
+		int hunkExpected = -1;
+		int hunkText = -1;
+		for (Edit edit:edits) {
+			if (edit.type == Type.EQUAL) {
+				if (hunkExpected >= 0) {
+					addDivergence(retval, new Hunk(hunkExpected, expectedPos, hunkText, textPos));
+					hunkExpected = -1;
+				}
+			} else if (hunkExpected < 0) {
+				hunkExpected = expectedPos;
+				hunkText = textPos;
+			}
+			if (edit.type != Type.INSERT) {
+				expectedPos += edit.length;
+			}
+			if (edit.type != Type.DELETE) {
+				textPos += edit.length;
+			}
+		}
+		if (hunkExpected >= 0) {
+			addDivergence(retval, new Hunk(hunkExpected, expectedPos, hunkText, textPos));
+		}
+		return retval;
+	}
+	
+	private void addDivergence(List<Hunk> divergences, Hunk hunk) {
+		if (hunk.expectedEnd == hunk.expectedStart) {
+			// Text inserted next to a wildcard may be part of the variable or optional text
+			if ((hunk.expectedStart > 0 && isWildcard(expected[hunk.expectedStart - 1])) || 
+					(hunk.expectedStart < expected.length && isWildcard(expected[hunk.expectedStart]))) {
+				return;
+			}
+			divergences.add(hunk);
+			return;
+		}
+		for (int i = hunk.expectedStart; i < hunk.expectedEnd; i++) {
+			// The variable text may end in the middle of the token following the variable
+			if (!isWildcard(expected[i]) && !(i > 0 && VARIABLE.equals(expected[i - 1]))) {
+				divergences.add(hunk);
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * @param token expected token
+	 * @return true if the token is a wildcard for variable or optional text
+	 */
+	static boolean isWildcard(String token) {
+		return VARIABLE.equals(token) || OPTIONAL.equals(token);
+	}
+	
+	/**
+	 * Compute the edits between the expected tokens expectedStart to expectedEnd and the text
+	 * tokens textStart to textEnd
+	 */
+	private void diff(int expectedStart, int expectedEnd, int textStart, int textEnd) {
+		int prefix = 0;
+		while (expectedStart + prefix < expectedEnd && textStart + prefix < textEnd && 
+				expected[expectedStart + prefix].equals(text[textStart + prefix])) {
+			prefix++;
+		}
+		addEdit(Type.EQUAL, expectedStart, textStart, prefix);
+		expectedStart += prefix;
+		textStart += prefix;
+		int suffix = 0;
+		while (expectedEnd - suffix > expectedStart && textEnd - suffix > textStart && 
+				expected[expectedEnd - suffix - 1].equals(text[textEnd - suffix - 1])) {
+			suffix++;
+		}
+		expectedEnd -= suffix;
+		textEnd -= suffix;
+		int expectedLength = expectedEnd - expectedStart;
+		int textLength = textEnd - textStart;
+		if (expectedLength == 0 || textLength == 0) {
+			addEdit(Type.DELETE, expectedStart, textStart, expectedLength);
+			addEdit(Type.INSERT, expectedEnd, textStart, textLength);
+		} else if ((maxTokens > 0 && expectedLength + textLength > maxTokens) || System.nanoTime() > deadlineNanos) {
+			replace(expectedStart, expectedEnd, textStart, textEnd);
+		} else {
+			try {
+				int[] split = middleSnake(expectedStart, expectedEnd, textStart, textEnd);
+				if (split == null) {
+					addEdit(Type.DELETE, expectedStart, textStart, expectedLength);
+					addEdit(Type.INSERT, expectedEnd, textStart, textLength);
+				} else {
+					diff(expectedStart, split[0], textStart, split[1]);
+					diff(split[0], expectedEnd, split[1], textEnd);
+				}
+			} catch (BudgetExceededException e) {
+				replace(expectedStart, expectedEnd, textStart, textEnd);
+			}
+		}
+		addEdit(Type.EQUAL, expectedEnd, textEnd, suffix);
+	}
+	
+	private void replace(int expectedStart, int expectedEnd, int textStart, int textEnd) {
+		truncated = true;
+		addEdit(Type.DELETE, expectedStart, textStart, expectedEnd - expectedStart);
+		addEdit(Type.INSERT, expectedEnd, textStart, textEnd - textStart);
+	}
+	
+	/**
+	 * Search forward from the start and backward from the end for the middle of an optimal edit
+	 * path.  Uses space linear in the number of tokens.
+	 * @return the expected and text token index the path passes through or null if no tokens are equal
+	 * @throws BudgetExceededException if the time budget is used before the paths meet
+	 */
+	private int[] middleSnake(int expectedStart, int expectedEnd, int textStart, int textEnd) throws BudgetExceededException {
+		int n = expectedEnd - expectedStart;
+		int m = textEnd - textStart;
+		int maxD = (n + m + 1) / 2;
+		int offset = maxD;
+		int length = 2 * maxD + 2;
+		int[] forward = new int[length];
+		int[] backward = new int[length];
+		Arrays.fill(forward, -1);
+		Arrays.fill(backward, -1);
+		forward[offset + 1] = 0;
+		backward[offset + 1] = 0;
+		int delta = n - m;
+		boolean front = (delta % 2 != 0);
+		int k1start = 0;
+		int k1end = 0;
+		int k2start = 0;
+		int k2end = 0;
+		for (int d = 0; d < maxD; d++) {
+			if (System.nanoTime() > deadlineNanos) {
+				throw new BudgetExceededException();
+			}
+			for (int k1 = -d + k1start; k1 <= d - k1end; k1 += 2) {
+				int k1Offset = offset + k1;
+				int x1;
+				if (k1 == -d || (k1 != d && forward[k1Offset - 1] < forward[k1Offset + 1])) {
+					x1 = forward[k1Offset + 1];
+				} else {
+					x1 = forward[k1Offset - 1] + 1;
+				}
+				int y1 = x1 - k1;
+				while (x1 < n && y1 < m && expected[expectedStart + x1].equals(text[textStart + y1])) {
+					x1++;
+					y1++;
+				}
+				forward[k1Offset] = x1;
+				if (x1 > n) {
+					k1end += 2;
+				} else if (y1 > m) {
+					k1start += 2;
+				} else if (front) {
+					int k2Offset = offset + delta - k1;
+					if (k2Offset >= 0 && k2Offset < length && backward[k2Offset] != -1 && x1 >= n - backward[k2Offset]) {
+						return new int[] {expectedStart + x1, textStart + y1};
+					}
+				}
+			}
+			for (int k2 = -d + k2start; k2 <= d - k2end; k2 += 2) {
+				int k2Offset = offset + k2;
+				int x2;
+				if (k2 == -d || (k2 != d && backward[k2Offset - 1] < backward[k2Offset + 1])) {
+					x2 = backward[k2Offset + 1];
+				} else {
+					x2 = backward[k2Offset - 1] + 1;
+				}
+				int y2 = x2 - k2;
+				while (x2 < n && y2 < m && expected[expectedEnd - x2 - 1].equals(text[textEnd - y2 - 1])) {
+					x2++;
+					y2++;
+				}
+				backward[k2Offset] = x2;
+				if (x2 > n) {
+					k2end += 2;
+				} else if (y2 > m) {
+					k2start += 2;
+				} else if (!front) {
+					int k1Offset = offset + delta - k2;
+					if (k1Offset >= 0 && k1Offset < length && forward[k1Offset] != -1) {
+						int x1 = forward[k1Offset];
+						int y1 = offset + x1 - k1Offset;
+						if (x1 >= n - x2) {
+							return new int[] {expectedStart + x1, textStart + y1};
+						}
+					}
+				}
+			}
+		}
+		return null;
+	}
+	
+	private void addEdit(Type type, int expectedStart, int textStart, int length) {
+		if (length <= 0) {
+			return;
+		}
+		if (!edits.isEmpty()) {
+			Edit last = edits.get(edits.size() - 1);
+			if (last.type == type) {
+				edits.set(edits.size() - 1, new Edit(type, last.expectedStart, last.textStart, last.length + length));
+				return;
+			}
+		}
+		edits.add(new Edit(type, expectedStart, textStart, length));
+	}
+}
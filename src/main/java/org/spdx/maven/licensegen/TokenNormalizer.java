@@ -0,0 +1,86 @@
+/**
+ * Copyright (c) 2017 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.spdx.maven.licensegen;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.spdx.compare.LicenseCompareHelper;
+
+/**
+ * Token normalization matching the license compare helper.  Subclassed for access to the
+ * skippable and equivalent tokens.
+ * @author Gary O'Neall
+ *
+ */
+class TokenNormalizer extends LicenseCompareHelper {
+	
+	static final String DASHES_REGEX = "[\\u2012\\u2013\\u2014\\u2015]";
+	private static final Pattern PER_CENT = Pattern.compile("(?i)per\\scent");
+	private static final Pattern COPYRIGHT_HOLDER = Pattern.compile("(?i)copyright\\sholder");
+	private static final Pattern COPYRIGHT_OWNER = Pattern.compile("(?i)copyright\\sowner");
+	
+	private TokenNormalizer() {
+		// Static helper only
+	}
+	
+	/**
+	 * @param token
+	 * @return the normalized token or null if the token may be skipped or matched by a different token
+	 */
+	static String requiredToken(String token) {
+		String normalized = normalize(token);
+		if (normalized.isEmpty() || SKIPPABLE_TOKENS.contains(normalized) || EQUIV_TOKENS.containsKey(normalized)) {
+			return null;
+		}
+		return normalized;
+	}
+	
+	/**
+	 * @param token
+	 * @return the token trimmed, in lower case and with all dashes replaced by '-'
+	 */
+	static String normalize(String token) {
+		return token.trim().toLowerCase().replaceAll(DASHES_REGEX, "-");
+	}
+	
+	/**
+	 * Tokenize a license text the way the license compare helper does, dropping skippable tokens
+	 * and replacing each pair of equivalent tokens with a single token.  Texts the compare helper
+	 * considers equivalent have the same canonical tokens.
+	 * @param text license text
+	 * @return the canonical tokens of the text in text order
+	 */
+	static List<String> canonicalTokens(String text) {
+		text = PER_CENT.matcher(text).replaceAll("percent");
+		text = COPYRIGHT_HOLDER.matcher(text).replaceAll("copyright-holder");
+		text = COPYRIGHT_OWNER.matcher(text).replaceAll("copyright-owner");
+		List<String> retval = new ArrayList<String>();
+		for (String token:text.split("\\s")) {
+			String normalized = normalize(token);
+			if (normalized.isEmpty() || SKIPPABLE_TOKENS.contains(normalized)) {
+				continue;
+			}
+			String equivalent = EQUIV_TOKENS.get(normalized);
+			if (equivalent != null && equivalent.compareTo(normalized) < 0) {
+				normalized = equivalent;
+			}
+			retval.add(normalized);
+		}
+		return retval;
+	}
+}
@@ -21,20 +21,9 @@ import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
-import org.xml.sax.SAXException;
-import org.xml.sax.SAXParseException;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-
-import javax.xml.XMLConstants;
-import javax.xml.transform.Source;
-import javax.xml.transform.stream.StreamSource;
-import javax.xml.validation.Schema;
-import javax.xml.validation.SchemaFactory;
-import javax.xml.validation.Validator;
 
 /**
  * Goal to validate the XML files against a schema
@@ -65,6 +54,105 @@ public class ValidateLicensesMojo
     @Parameter(required = false)
     private File textCompare;
     
+    /**
+     * Number of threads used to validate the license XML files.  If less than 1, the number of available processors is used
+     */
+    @Parameter(defaultValue = "0", required = false)
+    private int threads;
+    
+    /**
+     * File used to cache the content hashes of previously validated license XML files.  Files
+     * whose content and schema are unchanged since they were last found valid are not revalidated.
+     */
+    @Parameter(defaultValue = "${project.build.directory}/licensegen/validation-cache.properties", required = false)
+    private File validationCache;
+    
+    /**
+     * If true, stop validating at the first invalid license XML file
+     */
+    @Parameter(defaultValue = "false", required = false)
+    private boolean failFast;
+    
+    /**
+     * Maximum number of invalid license XML files reported before validation is stopped.  If less than 1, all files are validated
+     */
+    @Parameter(defaultValue = "0", required = false)
+    private int maxErrors;
+    
+    /**
+     * Zero based index of the shard processed by this execution - see shardCount
+     */
+    @Parameter(defaultValue = "0", property = "licensegen.shardIndex", required = false)
+    private int shardIndex;
+    
+    /**
+     * Number of shards the licenses are split into.  If greater than 1, only the licenses belonging
+     * to the shard shardIndex are validated.  Every execution assigns the same licenses to the same shard.
+     * The shard index is added to the names of the validation cache, metrics baseline and report 
+     * directories so shards do not share them.
+     */
+    @Parameter(defaultValue = "1", property = "licensegen.shardCount", required = false)
+    private int shardCount;
+    
+    /**
+     * Directory of a content addressed cache of generated license data and validation and test
+     * results shared between builds, for example on a shared or network file system.  Results whose
+     * inputs are unchanged are restored from the cache.  If not set, no build cache is used.
+     */
+    @Parameter(property = "licensegen.buildCache", required = false)
+    private File buildCache;
+    
+    /**
+     * Directory for the timing and I/O metrics reports.  Defaults to target/licensegen-metrics - set
+     * skipMetrics to turn the reports off.
+     */
+    @Parameter(defaultValue = "${project.build.directory}/licensegen-metrics", required = false)
+    private File metricsDirectory;
+    
+    /**
+     * If true, no metrics reports are written and metrics are only collected to check a configured metricsBaseline
+     */
+    @Parameter(defaultValue = "false", property = "licensegen.skipMetrics", required = false)
+    private boolean skipMetrics;
+    
+    /**
+     * Number of slowest licenses listed in the metrics summary
+     */
+    @Parameter(defaultValue = "10", required = false)
+    private int metricsTopN;
+    
+    /**
+     * Directory for the SARIF and JUnit XML reports of the errors and warnings found.  Defaults to target/licensegen-diagnostics.
+     */
+    @Parameter(defaultValue = "${project.build.directory}/licensegen-diagnostics", property = "licensegen.diagnosticsDirectory", required = false)
+    private File diagnosticsDirectory;
+    
+    /**
+     * Maximum number of errors and warnings logged - the remaining findings are only counted in
+     * the summary.  If less than 1, all findings are logged.
+     */
+    @Parameter(defaultValue = "20", property = "licensegen.maxConsoleFindings", required = false)
+    private int maxConsoleFindings;
+    
+    /**
+     * File recording the timing of previous runs.  If set, the time of the goal, each phase and each
+     * license is compared to the median of the recorded runs and the run is added to the baseline.
+     */
+    @Parameter(property = "licensegen.metricsBaseline", required = false)
+    private File metricsBaseline;
+    
+    /**
+     * Ratio of a time to its baseline median above which the time is reported as a slowdown
+     */
+    @Parameter(defaultValue = "1.5", property = "licensegen.maxSlowdown", required = false)
+    private double maxSlowdown;
+    
+    /**
+     * If true, the build fails if the goal or any phase is slower than maxSlowdown times its baseline
+     */
+    @Parameter(defaultValue = "false", property = "licensegen.failOnSlowdown", required = false)
+    private boolean failOnSlowdown;
+    
 	/* (non-Javadoc)
 	 * @see org.apache.maven.plugin.Mojo#execute()
 	 */
@@ -86,78 +174,70 @@ public class ValidateLicensesMojo
 		if (!src.exists() || !src.isDirectory()) {
 			throw new MojoExecutionException("Source directory "+src.getName()+" does not exist.");
 		}
-		InputStream schemaIs = null;
+		LicenseGenLog log = MojoAdapter.log(getLog());
+		File metricsDir = skipMetrics ? null : metricsDirectory;
+		BuildMetrics metrics = new BuildMetrics("validate", metricsDir != null || metricsBaseline != null);
 		try {
-			schemaIs = new FileInputStream(sf);
-			
-			Source schemaSource = new StreamSource(schemaIs);
-			SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
-			Schema schema = schemaFactory.newSchema(schemaSource);
-			Validator validator = schema.newValidator();
-			if (!validateDirectory(src, validator)) {
-				throw new MojoFailureException("Source directory contains one or more invalid license XML files");
+			Shard shard = Shard.of(shardIndex, shardCount);
+			File cacheFile = shard.file(validationCache);
+			LicenseGenEngine engine = new LicenseGenEngine(sf, metrics);
+			BuildCache sharedCache = BuildCache.open(buildCache, log);
+			engine.setBuildCache(sharedCache);
+			if (!shard.isAll()) {
+				this.getLog().info("Validating the license XML files in "+shard);
 			}
-		} catch (IOException e) {
-			this.getLog().error("IO error reading schema file "+sf.getName(),e);
-			throw(new MojoExecutionException("IO error reading schema file "+sf.getName(),e));
-		} catch (SAXException e) {
-			this.getLog().error("Error parsing schema file "+sf.getName(),e);
-			throw(new MojoExecutionException("Error parsing reading schema file "+sf.getName(),e));
-		} finally {
-			if (schemaIs != null) {
+			ValidationCache cache = loadValidationCache(cacheFile, sf);
+			LicenseValidator validator = engine.newValidator(cache, metrics);
+			ErrorLimit limit = ErrorLimit.of(failFast, maxErrors);
+			Diagnostics diagnostics = new Diagnostics("validate", log, maxConsoleFindings, shard.directory(diagnosticsDirectory));
+			int numErrors;
+			try {
+				numErrors = validator.validateTree(src, shard, WorkerPool.resolveThreads(threads), limit, diagnostics);
+			} finally {
+				diagnostics.close();
+				if (sharedCache != null) {
+					sharedCache.logSummary();
+				}
+			}
+			if (validator.getNumSkipped() > 0) {
+				this.getLog().info("Skipped "+validator.getNumSkipped()+" unchanged license XML files which were previously validated");
+			}
+			if (limit.isReached()) {
+				this.getLog().error("Stopped after reaching the limit of "+limit.getMaxErrors()+" errors: checked "+
+						validator.getNumChecked()+" license XML files");
+			}
+			metrics.report(shard.directory(metricsDir), metricsTopN, log);
+			MetricsBaseline.check(shard.file(metricsBaseline), metrics, maxSlowdown, failOnSlowdown, getLog());
+			if (cache != null) {
 				try {
-					schemaIs.close();
+					cache.store();
 				} catch (IOException e) {
-					this.getLog().warn("IO Exception closing schema file: "+e.getMessage());
+					this.getLog().warn("Unable to write validation cache "+cacheFile.getName()+": "+e.getMessage());
 				}
 			}
-		}
-	}
-	/**
-	 * Validate all files in the directory and subdirectories that end in ".xml"
-	 * @param dir
-	 * @param validator
-	 * @return true if all files are valid
-	 * @throws MojoExecutionException 
-	 */
-	private boolean validateDirectory(File dir, Validator validator) throws MojoExecutionException {
-		boolean retval = true;
-		if (!dir.isDirectory()) {
-			throw new MojoExecutionException(dir.getName()+" is not a directory");
-		}
-		File[] children = dir.listFiles();
-		if (children != null) {
-			for (File child:children) {
-				if (child.isFile() && child.getName().toLowerCase().endsWith(".xml")) {
-					retval = validateFile(child,validator) & retval;
-				} else if (child.isDirectory()) {
-					retval = validateDirectory(child, validator) & retval;
-				}
+			if (numErrors > 0) {
+				throw new MojoFailureException("Source directory contains one or more invalid license XML files");
 			}
+		} catch (LicenseGenException e) {
+			this.getLog().error(e.getMessage(),e.getCause());
+			throw(new MojoExecutionException(e.getMessage(),e.getCause()));
 		}
-		return retval;
 	}
 	
 	/**
-	 * Validate a license XML file against the validator
-	 * @param file
-	 * @param validator
-	 * @return true if valid
+	 * @param cacheFile validation cache file - may be null
+	 * @param sf schema file
+	 * @return the validation cache or null if no cache is configured or it can not be read
 	 */
-	private boolean validateFile(File file, Validator validator) {
-		Source xmlSource = new StreamSource(file);
+	private ValidationCache loadValidationCache(File cacheFile, File sf) {
+		if (cacheFile == null) {
+			return null;
+		}
 		try {
-			validator.validate(xmlSource);
-		} catch (SAXParseException e) {
-			this.getLog().error("Parsing error in XML file "+file.getName()+ " at line "+e.getLineNumber()+", column "+e.getColumnNumber()+":"+e.getMessage());
-			return false;
-		} catch (SAXException e) {
-			this.getLog().error("File "+file.getName()+" contains the following XML parsing error: "+e.getMessage(),e);
-			return false;
+			return new ValidationCache(cacheFile, ContentHash.of(sf));
 		} catch (IOException e) {
-			this.getLog().error("IO Error validating "+file.getName()+": "+e.getMessage(),e);
-			return false;
+			this.getLog().warn("Unable to read validation cache "+cacheFile.getName()+" - all files will be validated: "+e.getMessage());
+			return null;
 		}
-		return true;
 	}
 }
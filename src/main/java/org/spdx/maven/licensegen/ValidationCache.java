@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) 2017 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.spdx.maven.licensegen;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/**
+ * Persistent record of license XML files which have previously passed schema validation.
+ * 
+ * Entries are keyed by the path of the file relative to the source directory and store the
+ * content hash of the file at the time it was validated.  The whole cache is discarded if the
+ * hash of the schema file changes.
+ * @author Gary O'Neall
+ *
+ */
+class ValidationCache {
+	
+	static final String SCHEMA_HASH_KEY = "#schema";
+	
+	private final File cacheFile;
+	private final String schemaHash;
+	private final Properties previous = new Properties();
+	private final Properties current = new Properties();
+	
+	/**
+	 * Load the validation cache
+	 * @param cacheFile file the cache is persisted in - need not exist
+	 * @param schemaHash content hash of the schema the files are validated against
+	 * @throws IOException
+	 */
+	ValidationCache(File cacheFile, String schemaHash) throws IOException {
+		this.cacheFile = cacheFile;
+		this.schemaHash = schemaHash;
+		if (cacheFile.isFile()) {
+			InputStream is = new FileInputStream(cacheFile);
+			try {
+				previous.load(is);
+			} finally {
+				is.close();
+			}
+			if (!schemaHash.equals(previous.getProperty(SCHEMA_HASH_KEY))) {
+				previous.clear();
+			}
+		}
+		current.setProperty(SCHEMA_HASH_KEY, schemaHash);
+	}
+	
+	/**
+	 * @param relativePath path of the file relative to the source directory
+	 * @param contentHash current content hash of the file
+	 * @return true if the file was valid the last time it was validated with identical content and schema
+	 */
+	synchronized boolean isKnownValid(String relativePath, String contentHash) {
+		return contentHash.equals(previous.getProperty(relativePath));
+	}
+	
+	/**
+	 * Record a file as valid
+	 * @param relativePath path of the file relative to the source directory
+	 * @param contentHash content hash of the validated file
+	 */
+	synchronized void markValid(String relativePath, String contentHash) {
+		current.setProperty(relativePath, contentHash);
+	}
+	
+	/**
+	 * @return the content hash of the schema for this cache
+	 */
+	String getSchemaHash() {
+		return schemaHash;
+	}
+	
+	/**
+	 * Write the cache - only files marked valid during this run are retained
+	 * @throws IOException
+	 */
+	synchronized void store() throws IOException {
+		File parent = cacheFile.getParentFile();
+		if (parent != null && !parent.exists() && !parent.mkdirs()) {
+			throw new IOException("Unable to create directory "+parent.getPath());
+		}
+		OutputStream os = new FileOutputStream(cacheFile);
+		try {
+			current.store(os, "Licensegen validation cache");
+		} finally {
+			os.close();
+		}
+	}
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) 2017 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.spdx.maven.licensegen;
+
+import java.io.File;
+
+/**
+ * License list version generated into an output directory.  Each version has its own output
+ * directory and its own generation and output manifests so the versions are regenerated and
+ * written independently.
+ * @author Gary O'Neall
+ *
+ */
+final class VersionTarget {
+	
+	private final String version;
+	private final File outputDirectory;
+	private final File generationManifest;
+	private final File outputManifest;
+	
+	/**
+	 * @param version license list version
+	 * @param outputDirectory output directory for the version
+	 * @param generationManifest manifest used for incremental generation - may be null
+	 * @param outputManifest manifest of the output file hashes - may be null
+	 */
+	VersionTarget(String version, File outputDirectory, File generationManifest, File outputManifest) {
+		this.version = version;
+		this.outputDirectory = outputDirectory;
+		this.generationManifest = generationManifest;
+		this.outputManifest = outputManifest;
+	}
+	
+	/**
+	 * Create the target for an additional version whose manifests are stored next to the manifests
+	 * of the primary version with the version appended to the file name
+	 * @param version license list version
+	 * @param outputDirectory output directory for the version
+	 * @param generationManifest generation manifest of the primary version - may be null
+	 * @param outputManifest output manifest of the primary version - may be null
+	 * @return the target
+	 */
+	static VersionTarget additional(String version, File outputDirectory, File generationManifest, File outputManifest) {
+		return new VersionTarget(version, outputDirectory, versionFile(generationManifest, version), 
+				versionFile(outputManifest, version));
+	}
+	
+	/**
+	 * @param file
+	 * @param version
+	 * @return file in the same directory with the version inserted before the extension - null if file is null
+	 */
+	static File versionFile(File file, String version) {
+		if (file == null) {
+			return null;
+		}
+		String name = file.getName();
+		String suffix = "-" + version.replaceAll("[^A-Za-z0-9._-]", "_");
+		int dot = name.lastIndexOf('.');
+		String versionName = dot > 0 ? name.substring(0, dot) + suffix + name.substring(dot) : name + suffix;
+		return new File(file.getAbsoluteFile().getParentFile(), versionName);
+	}
+	
+	String getVersion() {
+		return version;
+	}
+	
+	File getOutputDirectory() {
+		return outputDirectory;
+	}
+	
+	File getGenerationManifest() {
+		return generationManifest;
+	}
+	
+	File getOutputManifest() {
+		return outputManifest;
+	}
+	
+	@Override
+	public String toString() {
+		return "version " + version;
+	}
+}
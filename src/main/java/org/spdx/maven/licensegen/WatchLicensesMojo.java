@@ -0,0 +1,392 @@
+/**
+ * Copyright (c) 2017 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.spdx.maven.licensegen;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Goal which watches the license XML files and the expected license texts and revalidates,
+ * regenerates and retests the affected licenses whenever a file changes.
+ * 
+ * The compiled schema and the JVM stay warm between changes.  Changed license XML files are
+ * validated individually, the license data is regenerated incrementally and only the licenses
+ * defined by the changed files or whose expected texts changed are retested.  Bursts of changes,
+ * such as an editor saving several files, are collected until no change has been seen for
+ * debounceMillis before they are processed.  The goal runs until it is interrupted.
+ * @author Gary O'Neall
+ *
+ */
+@Mojo( name = "watch" )
+public class WatchLicensesMojo extends AbstractMojo {
+	
+    /**
+     * License XML schema file
+     */	
+    @Parameter( defaultValue = "${project.build.sourceDirectory}"+"schema/ListedLicense.xsd", required = true )
+    private File schemaFile;
+    
+    /**
+     * Directory containing the license list XML files
+     */
+    @Parameter( defaultValue = "${project.build.sourceDirectory}", required = true )
+    private File sourceDirectory;
+    
+    /**
+     * Output directory
+     */
+    @Parameter( defaultValue = "${project.build.outputDirectory}", required = true )
+    private File outputDirectory;
+    
+    @Parameter(defaultValue = "${project.version}", required = false)
+    private String licenseListVersion;
+    
+    /**
+     * Directory containing the expected license texts.  If not set, the generated data is not tested.
+     */
+    @Parameter(required = false)
+    private File textCompare;
+    
+    /**
+     * File recording the inputs and outputs of the last generation - used to regenerate only the changed licenses
+     */
+    @Parameter(defaultValue = "${project.build.directory}/licensegen/generate-manifest.properties", required = true)
+    private File generationManifest;
+    
+    /**
+     * File recording the content hashes of the generated output files.  Output files are only
+     * written if their content changed and previously generated files which are no longer generated
+     * are deleted.
+     */
+    @Parameter(defaultValue = "${project.build.directory}/licensegen/output-manifest.properties", required = false)
+    private File outputManifest;
+    
+    /**
+     * Directory of a content addressed cache of generated license data and validation and test
+     * results shared between builds, for example on a shared or network file system.  Results whose
+     * inputs are unchanged are restored from the cache.  If not set, no build cache is used.
+     */
+    @Parameter(property = "licensegen.buildCache", required = false)
+    private File buildCache;
+    
+    /**
+     * Time in milliseconds without any further changes before a burst of changes is processed
+     */
+    @Parameter(defaultValue = "300", required = false)
+    private long debounceMillis;
+    
+    private Path sourcePath;
+    private Path textComparePath;
+    private LicenseGenEngine engine;
+    private LicenseValidator validator;
+    private List<VersionTarget> targets;
+    private String releaseDate;
+    private BuildMetrics metrics;
+    private LicenseTextTester tester;
+    
+    /**
+     * Relative path to validation error for the currently invalid license XML files
+     */
+    private final Map<String, String> invalidFiles = new TreeMap<String, String>();
+    
+    /**
+     * Number of batches of changes processed including the initial pass
+     */
+    private volatile int numBatches = 0;
+    
+	/* (non-Javadoc)
+	 * @see org.apache.maven.plugin.Mojo#execute()
+	 */
+	public void execute() throws MojoExecutionException, MojoFailureException {
+		File sf = schemaFile;
+		if (sf == null) {
+			throw new MojoExecutionException("No Schema file was provided in the configuration.  Add a configuration paramater 'schema' to the plugin configuration with a value of the license XML schema file path.");
+		}
+		if (!sf.exists()) {
+			throw new MojoExecutionException("Schema file "+sf.getName()+" does not exist.");
+		}
+		File src = sourceDirectory;
+		if (src == null) {
+			throw new MojoExecutionException("No source directory was provided in the configuration.  Add a configuration paramater 'sourceDir' to the plugin configuration with a value of the directory path for the license XML files.");
+		}
+		if (!src.exists() || !src.isDirectory()) {
+			throw new MojoExecutionException("Source directory "+src.getName()+" does not exist.");
+		}
+		File output = outputDirectory;
+		if (outputDirectory == null) {
+			throw new MojoExecutionException("No output directory was provided in the configuration.  Add a configuration paramater 'outputDir' to the plugin configuration with a value of the directory path for the license XML files.");
+		}
+		if (!output.exists() || !output.isDirectory()) {
+			throw new MojoExecutionException("Output directory "+output.getName()+" does not exist.");
+		}
+		if (generationManifest == null) {
+			throw new MojoExecutionException("No generation manifest was provided in the configuration.  Add a configuration parameter 'generationManifest' with the path of the file used to track the generated license data.");
+		}
+		String version;
+		if (licenseListVersion == null || licenseListVersion.trim().isEmpty()) {
+			version = "UNKNOWN";
+		} else {
+			version = licenseListVersion;
+		}
+		releaseDate = new SimpleDateFormat("dd-MM-yyyy").format(new Date());
+		metrics = new BuildMetrics("watch", false);
+		try {
+			engine = new LicenseGenEngine(sf, metrics);
+		} catch (LicenseGenException e) {
+			this.getLog().error(e.getMessage(),e.getCause());
+			throw(new MojoExecutionException(e.getMessage(),e.getCause()));
+		}
+		sourcePath = src.toPath();
+		textComparePath = textCompare != null && textCompare.isDirectory() ? textCompare.toPath() : null;
+		BuildCache sharedCache = BuildCache.open(buildCache, MojoAdapter.log(getLog()));
+		engine.setBuildCache(sharedCache);
+		validator = engine.newValidator(null, metrics);
+		targets = Collections.singletonList(new VersionTarget(version, output, generationManifest, outputManifest));
+		tester = engine.newTester(output, 1, metrics, ErrorLimit.NONE);
+		
+		WatchService watcher;
+		try {
+			watcher = FileSystems.getDefault().newWatchService();
+		} catch (IOException e) {
+			throw new MojoExecutionException("Unable to create a file watch service",e);
+		}
+		try {
+			Set<Path> changed = new TreeSet<Path>();
+			register(watcher, sourcePath, changed);
+			if (textComparePath != null) {
+				register(watcher, textComparePath, null);
+			}
+			processChanges(changed);
+			this.getLog().info("Watching "+src.getName()+(textComparePath != null ? " and "+textCompare.getName() : "")+
+					" for changes - interrupt the build to stop");
+			while (!Thread.currentThread().isInterrupted()) {
+				changed = waitForChanges(watcher);
+				long startNanos = System.nanoTime();
+				processChanges(changed);
+				this.getLog().info("Processed "+changed.size()+" changed files in "+BuildMetrics.millis(System.nanoTime() - startNanos)+"ms");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (IOException e) {
+			throw new MojoExecutionException("Error watching for file changes: "+e.getMessage(),e);
+		} finally {
+			try {
+				watcher.close();
+			} catch (IOException e) {
+				this.getLog().warn("Error closing file watch service: "+e.getMessage());
+			}
+			if (sharedCache != null) {
+				sharedCache.logSummary();
+			}
+		}
+		this.getLog().info("Stopped watching for changes");
+	}
+	
+	/**
+	 * @return number of batches of changes processed including the initial pass
+	 */
+	int getNumBatches() {
+		return numBatches;
+	}
+	
+	/**
+	 * Register a directory and all of its subdirectories with the watch service
+	 * @param watcher
+	 * @param dir
+	 * @param files if not null, all regular files found are added
+	 * @throws IOException
+	 */
+	private void register(final WatchService watcher, Path dir, final Set<Path> files) throws IOException {
+		Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path d, BasicFileAttributes attrs) throws IOException {
+				d.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, 
+						StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+				return FileVisitResult.CONTINUE;
+			}
+			
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+				if (files != null) {
+					files.add(file);
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+	
+	/**
+	 * Wait for a change and collect all further changes until none have been seen for debounceMillis
+	 * @param watcher
+	 * @return paths of the changed files and directories
+	 * @throws InterruptedException
+	 * @throws IOException
+	 */
+	private Set<Path> waitForChanges(WatchService watcher) throws InterruptedException, IOException {
+		Set<Path> changed = new TreeSet<Path>();
+		WatchKey key = watcher.take();
+		while (key != null) {
+			Path dir = (Path)key.watchable();
+			for (WatchEvent<?> event:key.pollEvents()) {
+				if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+					// Events were lost - treat every file in the directory as changed
+					if (Files.isDirectory(dir)) {
+						register(watcher, dir, changed);
+					}
+					continue;
+				}
+				Path path = dir.resolve((Path)event.context());
+				changed.add(path);
+				if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+					register(watcher, path, changed);
+				}
+			}
+			key.reset();
+			key = watcher.poll(Math.max(debounceMillis, 1), TimeUnit.MILLISECONDS);
+		}
+		return changed;
+	}
+	
+	/**
+	 * Revalidate the changed license XML files, regenerate the license data and retest the affected licenses.
+	 * Errors are logged rather than thrown so that watching continues after the files are fixed.
+	 * @param changed changed files and directories
+	 */
+	private void processChanges(Set<Path> changed) {
+		Set<String> affectedLicenses = new TreeSet<String>();
+		boolean sourcesChanged = false;
+		for (Path path:changed) {
+			if (path.startsWith(sourcePath)) {
+				sourcesChanged = true;
+				validateChange(path, affectedLicenses);
+			} else if (textComparePath != null && path.startsWith(textComparePath)) {
+				Path relativePath = textComparePath.relativize(path);
+				if (relativePath.getNameCount() > 0) {
+					String licenseName = relativePath.getName(0).toString();
+					if (licenseName.endsWith(".txt")) {
+						licenseName = licenseName.substring(0, licenseName.length()-".txt".length());
+					}
+					affectedLicenses.add(licenseName);
+				}
+			}
+		}
+		try {
+			if (sourcesChanged) {
+				if (!invalidFiles.isEmpty()) {
+					this.getLog().warn("License data was not regenerated - "+invalidFiles.size()+" license XML files are invalid");
+					return;
+				}
+				engine.generate(sourcePath.toFile(), targets, Shard.ALL, true, OutputFormats.ALL, releaseDate, metrics, MojoAdapter.log(getLog()));
+			}
+			testLicenses(affectedLicenses);
+		} catch (LicenseGenException e) {
+			this.getLog().error(e.getMessage(), e.getCause());
+		} finally {
+			numBatches++;
+		}
+	}
+	
+	/**
+	 * Validate a changed file in the source directory
+	 * @param path changed file or directory
+	 * @param affectedLicenses license IDs defined by the file are added if the file is valid
+	 */
+	private void validateChange(Path path, Set<String> affectedLicenses) {
+		String relativePath = sourcePath.relativize(path).toString().replace(File.separatorChar, '/');
+		File file = path.toFile();
+		if (!file.exists()) {
+			Iterator<String> iter = invalidFiles.keySet().iterator();
+			while (iter.hasNext()) {
+				String invalidPath = iter.next();
+				if (invalidPath.equals(relativePath) || invalidPath.startsWith(relativePath + "/")) {
+					iter.remove();
+				}
+			}
+			return;
+		}
+		if (!file.isFile() || !file.getName().toLowerCase().endsWith(".xml")) {
+			return;
+		}
+		String error;
+		try {
+			byte[] content = Files.readAllBytes(path);
+			error = validator.validate(sourcePath.toFile(), file, content);
+			if (error == null) {
+				affectedLicenses.addAll(LicenseSource.read(sourcePath.toFile(), file, content).getLicenseIds());
+			}
+		} catch (IOException e) {
+			error = "IO Error reading "+file.getName()+": "+e.getMessage();
+		}
+		if (error != null) {
+			this.getLog().error(error);
+			invalidFiles.put(relativePath, error);
+		} else {
+			invalidFiles.remove(relativePath);
+		}
+	}
+	
+	/**
+	 * Test the generated license data for the licenses against the expected license texts
+	 * @param licenseNames
+	 * @throws LicenseGenException
+	 */
+	private void testLicenses(Set<String> licenseNames) throws LicenseGenException {
+		if (textComparePath == null || licenseNames.isEmpty()) {
+			return;
+		}
+		Map<String, List<File>> textFilesByLicense = LicenseTextTester.collectTextFiles(textComparePath.toFile());
+		int numTested = 0;
+		int numErrors = 0;
+		for (String licenseName:licenseNames) {
+			List<File> textFiles = textFilesByLicense.get(licenseName);
+			if (textFiles == null || textFiles.isEmpty()) {
+				continue;
+			}
+			numTested++;
+			for (String error:tester.testLicense(licenseName, textFiles)) {
+				this.getLog().error(error);
+				numErrors++;
+			}
+		}
+		this.getLog().info("Tested "+numTested+" licenses: "+numErrors+" errors");
+	}
+}
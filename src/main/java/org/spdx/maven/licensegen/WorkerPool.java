@@ -0,0 +1,121 @@
+/**
+ * Copyright (c) 2017 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.spdx.maven.licensegen;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs independent per-file tasks on a fixed size thread pool and returns the
+ * results in the order the tasks were submitted
+ * @author Gary O'Neall
+ *
+ */
+final class WorkerPool {
+	
+	private WorkerPool() {
+		// Static helper only
+	}
+	
+	/**
+	 * @param configuredThreads number of threads from the plugin configuration
+	 * @return the number of threads to use - the number of available processors if configuredThreads is less than 1
+	 */
+	static int resolveThreads(int configuredThreads) {
+		if (configuredThreads < 1) {
+			return Runtime.getRuntime().availableProcessors();
+		}
+		return configuredThreads;
+	}
+
+	/**
+	 * Run all tasks and collect the results
+	 * @param tasks tasks to run
+	 * @param threads number of worker threads
+	 * @return results in the same order as the tasks
+	 * @throws LicenseGenException if any task throws an exception or the run is interrupted
+	 */
+	static <T> List<T> invokeAll(List<Callable<T>> tasks, int threads) throws LicenseGenException {
+		return invokeAll(tasks, threads, ErrorLimit.NONE);
+	}
+	
+	/**
+	 * Run the tasks until all tasks complete or the error limit is reached.  The tasks record
+	 * their errors in the error limit.  Once the limit is reached, tasks which have not started
+	 * are skipped and running tasks are cancelled and interrupted.
+	 * @param tasks tasks to run
+	 * @param threads number of worker threads
+	 * @param limit error limit shared with the tasks
+	 * @return results of the tasks which completed in the same order as the tasks
+	 * @throws LicenseGenException if any task throws an exception or the run is interrupted
+	 */
+	static <T> List<T> invokeAll(List<Callable<T>> tasks, int threads, ErrorLimit limit) throws LicenseGenException {
+		List<T> retval = new ArrayList<T>(tasks.size());
+		if (threads <= 1 || tasks.size() <= 1) {
+			for (Callable<T> task:tasks) {
+				if (limit.isReached()) {
+					break;
+				}
+				try {
+					retval.add(task.call());
+				} catch (LicenseGenException e) {
+					throw e;
+				} catch (Exception e) {
+					throw new LicenseGenException("Unexpected error: "+e.getMessage(),e);
+				}
+			}
+			return retval;
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, tasks.size()));
+		CompletionService<T> completionService = new ExecutorCompletionService<T>(executor);
+		List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+		try {
+			for (Callable<T> task:tasks) {
+				futures.add(completionService.submit(task));
+			}
+			for (int i = 0; i < futures.size() && !limit.isReached(); i++) {
+				completionService.take().get();
+			}
+			for (Future<T> future:futures) {
+				future.cancel(true);
+			}
+			for (Future<T> future:futures) {
+				if (future.isDone() && !future.isCancelled()) {
+					retval.add(future.get());
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new LicenseGenException("Interrupted waiting for worker threads",e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof LicenseGenException) {
+				throw (LicenseGenException)cause;
+			}
+			throw new LicenseGenException("Unexpected error in worker thread: "+cause.getMessage(),cause);
+		} finally {
+			executor.shutdownNow();
+		}
+		return retval;
+	}
+}
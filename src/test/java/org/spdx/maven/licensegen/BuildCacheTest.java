@@ -0,0 +1,218 @@
+/**
+ * Copyright (c) 2017 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.spdx.maven.licensegen;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.plugin.testing.AbstractMojoTestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Gary O'Neall
+ *
+ */
+public class BuildCacheTest extends AbstractMojoTestCase {
+	
+	private static final String UNIT_TEST_SRC_VALID = "src/test/resources/unit/valid-licenses-project/src";
+	private static final String UNIT_TEST_SCHEMA_VALID = "src/test/resources/unit/valid-licenses-project/schema/ListedLicense.xsd";
+	
+	private final LicenseGenLog log = MojoAdapter.log(new SystemStreamLog());
+
+	/* (non-Javadoc)
+	 * @see org.apache.maven.plugin.testing.AbstractMojoTestCase#setUp()
+	 */
+	@Before
+	protected void setUp() throws Exception {
+		super.setUp();
+	}
+
+	/* (non-Javadoc)
+	 * @see org.codehaus.plexus.PlexusTestCase#tearDown()
+	 */
+	@After
+	protected void tearDown() throws Exception {
+		super.tearDown();
+	}
+	
+	@Test
+	public void testFingerprint() throws Exception {
+		// the unpackaged plugin is identified by the content of its class directory
+		assertTrue(BuildCache.fingerprint(), BuildCache.fingerprint().matches("classes@[0-9a-f]+/.*"));
+		assertEquals(BuildCache.key("a", "b"), BuildCache.key("a", "b"));
+		assertFalse(BuildCache.key("a", "b").equals(BuildCache.key("ab")));
+	}
+
+	@Test
+	public void testVerdicts() throws Exception {
+		File cacheDir = emptyDirectory("target/unit-build-cache-verdicts");
+		File src = getTestFile( UNIT_TEST_SRC_VALID );
+		File schema = getTestFile( UNIT_TEST_SCHEMA_VALID );
+		Diagnostics diagnostics = new Diagnostics("unit", log, 0, null);
+		// verdicts published by one build are used by the next
+		LicenseGenEngine engine = new LicenseGenEngine(schema);
+		BuildCache cache = new BuildCache(cacheDir, log);
+		engine.setBuildCache(cache);
+		LicenseValidator validator = engine.newValidator(null, new BuildMetrics("validate", false));
+		assertEquals(0, validator.validateTree(src, Shard.ALL, 2, ErrorLimit.NONE, diagnostics));
+		assertEquals(0, validator.getNumSkipped());
+		assertEquals(5, cache.getNumPublished());
+		engine = new LicenseGenEngine(schema);
+		engine.setBuildCache(new BuildCache(cacheDir, log));
+		validator = engine.newValidator(null, new BuildMetrics("validate", false));
+		assertEquals(0, validator.validateTree(src, Shard.ALL, 2, ErrorLimit.NONE, diagnostics));
+		assertEquals(5, validator.getNumSkipped());
+	}
+	
+	@Test
+	public void testConcurrentPublish() throws Exception {
+		File cacheDir = emptyDirectory("target/unit-build-cache-publish");
+		final File stage = new File(cacheDir, "stage");
+		Files.createDirectories(new File(stage, "json").toPath());
+		Files.write(new File(stage, "json/0BSD.json").toPath(), "{}".getBytes("UTF-8"));
+		final String key = BuildCache.key("unit");
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (int i = 0; i < 8; i++) {
+			final BuildCache builder = new BuildCache(cacheDir, log);
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					builder.publish(key, stage.toPath(), Arrays.asList("json/0BSD.json"));
+					builder.putVerdict(key);
+					return null;
+				}
+			});
+		}
+		WorkerPool.invokeAll(tasks, 8);
+		BuildCache cache = new BuildCache(cacheDir, log);
+		assertTrue(new File(cache.entry(BuildCache.OUTPUTS, key), "json/0BSD.json").isFile());
+		assertTrue(cache.entry(BuildCache.VERDICTS, key).isFile());
+		assertEquals(0, new File(cacheDir, "tmp").list().length);
+	}
+	
+	@Test
+	public void testRestore() throws Exception {
+		File cacheDir = emptyDirectory("target/unit-build-cache-restore");
+		File src = getTestFile( UNIT_TEST_SRC_VALID );
+		BuildCache cache = new BuildCache(cacheDir, log);
+		List<File> xmlFiles = new ArrayList<File>();
+		LicenseSource.collectXmlFiles(src, xmlFiles);
+		List<LicenseSource> sources = new ArrayList<LicenseSource>();
+		for (File xmlFile:xmlFiles) {
+			LicenseSource source = LicenseSource.read(src, xmlFile);
+			sources.add(source);
+			File licenseStage = new File(cacheDir, "stage-" + source.getLicenseIds().get(0));
+			Files.createDirectories(new File(licenseStage, "text").toPath());
+			String textFile = "text/" + source.getLicenseIds().get(0) + ".txt";
+			Files.write(new File(licenseStage, textFile).toPath(), source.getContentHash().getBytes("UTF-8"));
+			cache.publish(BuildCache.licenseKey(source, "3.0"), licenseStage.toPath(), Arrays.asList(textFile));
+		}
+		File stage = new File(cacheDir, "stage");
+		Files.createDirectories(stage.toPath());
+		Files.write(new File(stage, "licenses.json").toPath(), "{}".getBytes("UTF-8"));
+		cache.publish(BuildCache.aggregateKey(sources, "3.0", "01-01-2018"), stage.toPath(), Arrays.asList("licenses.json"));
+		// only the aggregate files depend on the release date
+		assertFalse(BuildCache.aggregateKey(sources, "3.0", "01-01-2018").equals(BuildCache.aggregateKey(sources, "3.0", "02-01-2018")));
+		
+		// a fresh output directory is restored without running the generator
+		File output = new File(cacheDir, "output");
+		Files.createDirectories(output.toPath());
+		BuildCache restoring = new BuildCache(cacheDir, log);
+		restoring.generate(sources, output, "3.0", "01-01-2018", log);
+		assertTrue(new File(output, "licenses.json").isFile());
+		assertTrue(new File(output, "text/0BSD.txt").isFile());
+		assertTrue(new File(output, "text/Autoconf-exception-2.0.txt").isFile());
+		assertEquals(6, restoring.getNumHits());
+		assertEquals(0, restoring.getNumMisses());
+	}
+	
+	@Test
+	public void testRestoreUnchangedLicenses() throws Exception {
+		File cacheDir = emptyDirectory("target/unit-build-cache-changed");
+		File src = new File(cacheDir, "src");
+		Files.createDirectories(src.toPath());
+		for (String name:new String[] {"0BSD.xml", "AAL.xml", "Abstyles.xml"}) {
+			Files.copy(getTestFile( UNIT_TEST_SRC_VALID + "/" + name ).toPath(), new File(src, name).toPath());
+		}
+		File output = new File(cacheDir, "output");
+		new BuildCache(cacheDir, log).generate(readSources(src), output, "3.0", "01-01-2018", log);
+		
+		// only the changed license is generated - the other licenses and, since the metadata is
+		// unchanged, the aggregate index files are restored
+		File changed = new File(src, "AAL.xml");
+		Files.write(changed.toPath(), (new String(Files.readAllBytes(changed.toPath()), "UTF-8") + "\n<!-- changed -->\n").getBytes("UTF-8"));
+		File restoredOutput = new File(cacheDir, "restored-output");
+		BuildCache restoring = new BuildCache(cacheDir, log);
+		restoring.generate(readSources(src), restoredOutput, "3.0", "01-01-2018", log);
+		assertEquals(3, restoring.getNumHits());
+		assertEquals(1, restoring.getNumMisses());
+		assertEquals(2, restoring.getNumPublished());
+		assertTrue(new File(restoredOutput, "text/0BSD.txt").isFile());
+		assertTrue(new File(restoredOutput, "text/AAL.txt").isFile());
+		assertTrue(new File(restoredOutput, "text/Abstyles.txt").isFile());
+		String toc = new String(Files.readAllBytes(new File(restoredOutput, "licenses.json").toPath()), "UTF-8");
+		assertTrue(toc.contains("\"0BSD\""));
+		assertTrue(toc.contains("\"AAL\""));
+		assertTrue(toc.contains("\"Abstyles\""));
+	}
+	
+	@Test
+	public void testRestoreNewReleaseDate() throws Exception {
+		File cacheDir = emptyDirectory("target/unit-build-cache-release-date");
+		File src = getTestFile( UNIT_TEST_SRC_VALID );
+		List<LicenseSource> sources = readSources(src);
+		new BuildCache(cacheDir, log).generate(sources, new File(cacheDir, "output"), "3.0", "01-01-2018", log);
+		
+		// all licenses are restored and the aggregate index files are merged from the cached index
+		// files with the first license generated again for the new release date
+		File output = new File(cacheDir, "next-output");
+		BuildCache restoring = new BuildCache(cacheDir, log);
+		restoring.generate(sources, output, "3.0", "02-01-2018", log);
+		assertEquals(sources.size() + sources.size() - 1, restoring.getNumHits());
+		assertEquals(1, restoring.getNumMisses());
+		assertEquals(1, restoring.getNumPublished());
+		assertTrue(new File(output, "text/0BSD.txt").isFile());
+		assertTrue(new File(output, "text/Autoconf-exception-2.0.txt").isFile());
+		String toc = new String(Files.readAllBytes(new File(output, "licenses.json").toPath()), "UTF-8");
+		assertTrue(toc.contains("02-01-2018"));
+		assertFalse(toc.contains("01-01-2018"));
+		assertTrue(toc.contains("\"Abstyles\""));
+	}
+	
+	private static List<LicenseSource> readSources(File src) throws Exception {
+		return IncrementalLicenseGenerator.readSources(src, new BuildMetrics("generate", false));
+	}
+	
+	/**
+	 * @param path path of the directory relative to the project
+	 * @return the directory with any previous content removed
+	 * @throws Exception
+	 */
+	private File emptyDirectory(String path) throws Exception {
+		File dir = getTestFile( path );
+		if (dir.exists()) {
+			IncrementalLicenseGenerator.deleteRecursively(dir.toPath());
+		}
+		return dir;
+	}
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) 2017 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.spdx.maven.licensegen;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.testing.AbstractMojoTestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Gary O'Neall
+ *
+ */
+public class BuildLicensesMojoTest extends AbstractMojoTestCase {
+
+	private static final String UNIT_TEST_TARGET_VALID = "src/test/resources/unit/valid-licenses-project/target";
+	private static final String UNIT_TEST_POM_FILE_VALID = "src/test/resources/unit/valid-licenses-project/pom.xml";
+	private static final String UNIT_TEST_POM_FILE_FAILTEST = "src/test/resources/unit/failtest-licenses-project/pom.xml";
+	
+	/* (non-Javadoc)
+	 * @see org.apache.maven.plugin.testing.AbstractMojoTestCase#setUp()
+	 */
+	@Before
+	protected void setUp() throws Exception {
+		super.setUp();
+		deleteDirectoryContents(new File(UNIT_TEST_TARGET_VALID));
+	}
+
+	/* (non-Javadoc)
+	 * @see org.codehaus.plexus.PlexusTestCase#tearDown()
+	 */
+	@After
+	protected void tearDown() throws Exception {
+		super.tearDown();
+		deleteDirectoryContents(new File(UNIT_TEST_TARGET_VALID));
+	}
+	
+	/**
+	 * Delete the contents of a directory - leaving the top level directory intack
+	 * @param dir
+	 */
+	private void deleteDirectoryContents(File dir) throws IOException {
+		if (!dir.exists()) {
+			throw new FileNotFoundException(dir.getName()+"does not exist");
+		}
+		File[] content = dir.listFiles();
+		for (File child:content) {
+			if (child.isDirectory()) {
+				deleteDirectoryContents(child);
+			}
+			if (!child.delete()) {
+				throw(new IOException("Unable to delete "+child.getName()));
+			}
+		}
+	}
+
+	@Test
+	public void testBuild() throws Exception {
+		File pom = getTestFile( UNIT_TEST_POM_FILE_VALID );
+        BuildLicensesMojo myMojo = (BuildLicensesMojo) lookupMojo( "build", pom );
+        assertNotNull( myMojo );
+        myMojo.execute();
+        assertTrue(new File(UNIT_TEST_TARGET_VALID, "json").exists());
+	}
+
+	@Test
+	public void testBuildExpectedErrors() throws Exception {
+		File pom = getTestFile( UNIT_TEST_POM_FILE_FAILTEST );
+        BuildLicensesMojo myMojo = (BuildLicensesMojo) lookupMojo( "build", pom );
+        try {
+        	myMojo.execute();
+        	fail("The build mojo didn't fail when it was supposed to!");
+        } catch(MojoFailureException ex) {
+        	// Expected
+        }
+	}
+
+	@Test
+	public void testBuildInvalidXml() throws Exception {
+        File pom = getTestFile( "src/test/resources/unit/invalid-licenses-project/pom.xml" );
+        BuildLicensesMojo myMojo = (BuildLicensesMojo) lookupMojo( "build", pom );
+        assertNotNull( myMojo );
+        try {
+        	myMojo.execute();
+        	fail("Invalid XML was not detected");
+        } catch (MojoFailureException ex) {
+        	//Expected
+        }
+	}
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright (c) 2017 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.spdx.maven.licensegen;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.plugin.testing.AbstractMojoTestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Gary O'Neall
+ *
+ */
+public class DiagnosticsTest extends AbstractMojoTestCase {
+
+	/* (non-Javadoc)
+	 * @see org.apache.maven.plugin.testing.AbstractMojoTestCase#setUp()
+	 */
+	@Before
+	protected void setUp() throws Exception {
+		super.setUp();
+	}
+
+	/* (non-Javadoc)
+	 * @see org.codehaus.plexus.PlexusTestCase#tearDown()
+	 */
+	@After
+	protected void tearDown() throws Exception {
+		super.tearDown();
+	}
+
+	@Test
+	public void testReports() throws Exception {
+		File pom = getTestFile( "src/test/resources/unit/invalid-licenses-project/pom.xml" );
+		File reportDir = getTestFile( "target/unit-diagnostics" );
+		ValidateLicensesMojo myMojo = (ValidateLicensesMojo) lookupMojo( "validate", pom );
+		setVariableValueToObject( myMojo, "diagnosticsDirectory", reportDir );
+		setVariableValueToObject( myMojo, "maxConsoleFindings", 1 );
+		try {
+			myMojo.execute();
+			fail("Invalid XML did not fail");
+		} catch (MojoFailureException ex) {
+			// expected
+		}
+		String sarif = new String(Files.readAllBytes(new File(reportDir, "validate-diagnostics.sarif").toPath()), "UTF-8");
+		assertTrue(sarif.contains("\"version\": \"2.1.0\""));
+		assertTrue(sarif.contains("\"licenseId\": \"Bison-exception-2.2\""));
+		assertTrue(sarif.contains("exceptions/Bison-exception-2.2.xml"));
+		assertTrue(sarif.contains("\"startLine\": "));
+		String junit = new String(Files.readAllBytes(new File(reportDir, "TEST-licensegen-validate.xml").toPath()), "UTF-8");
+		assertTrue(junit.contains("failures=\"1\""));
+		assertTrue(junit.contains("name=\"Bison-exception-2.2:"));
+	}
+	
+	@Test
+	public void testRepeatedFindings() throws Exception {
+		Diagnostics diagnostics = new Diagnostics("unit", MojoAdapter.log(new SystemStreamLog()), 1, null);
+		diagnostics.error("validate", "a.xml", 3, 4, "a", "bad");
+		diagnostics.error("validate", "a.xml", 3, 4, "a", "bad");
+		diagnostics.asLog("generate").warn("odd");
+		diagnostics.close();
+		assertEquals(1, diagnostics.getNumErrors());
+		assertEquals(1, diagnostics.getNumWarnings());
+		assertEquals(1, diagnostics.getNumDuplicates());
+	}
+	
+	@Test
+	public void testXmlString() throws Exception {
+		assertEquals("a &lt;b&gt; &amp; &quot;c&quot;", Diagnostics.xmlString("a <b> & \"c\""));
+	}
+}
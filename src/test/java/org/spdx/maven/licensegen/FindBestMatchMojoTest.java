@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) 2017 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.spdx.maven.licensegen;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.apache.maven.plugin.testing.AbstractMojoTestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Gary O'Neall
+ *
+ */
+public class FindBestMatchMojoTest extends AbstractMojoTestCase {
+
+	private static final String UNIT_TEST_POM_FILE_VALID = "src/test/resources/unit/valid-licenses-project/pom.xml";
+
+	/* (non-Javadoc)
+	 * @see org.apache.maven.plugin.testing.AbstractMojoTestCase#setUp()
+	 */
+	@Before
+	protected void setUp() throws Exception {
+		super.setUp();
+	}
+
+	/* (non-Javadoc)
+	 * @see org.codehaus.plexus.PlexusTestCase#tearDown()
+	 */
+	@After
+	protected void tearDown() throws Exception {
+		super.tearDown();
+	}
+
+	@Test
+	public void testFindBestMatch() throws Exception {
+		File matchDir = getTestFile( "target/unit-match" );
+		if (matchDir.exists()) {
+			IncrementalLicenseGenerator.deleteRecursively(matchDir.toPath());
+		}
+		File templateDir = new File(matchDir, "output/template");
+		assertTrue(templateDir.mkdirs());
+		Files.write(new File(templateDir, "Free.template.txt").toPath(), 
+				"Permission is granted<<beginOptional>> free of charge<<endOptional>> to use this software.".getBytes("UTF-8"));
+		Files.write(new File(templateDir, "Free-doc.template.txt").toPath(), 
+				"Permission is granted to use this documentation.".getBytes("UTF-8"));
+		Files.write(new File(templateDir, "Any.template.txt").toPath(), 
+				"<<var;name=\"text\";original=\"Anything\";match=\".+\">>".getBytes("UTF-8"));
+		File indexFile = new File(matchDir, "template-index.properties");
+		TemplateIndex index = TemplateIndex.build(templateDir, indexFile);
+		assertTrue(indexFile.exists());
+		assertEquals(Arrays.asList("Free"), index.findMatches("Permission is granted free of charge to use this Software."));
+		assertEquals(Arrays.asList("Free-doc"), index.findMatches("Permission is granted to use this documentation."));
+		assertTrue(index.findMatches("Permission is granted to use this library.").isEmpty());
+		// only the template without literal text and the candidates containing all required tokens are fully matched
+		assertEquals(5, index.getNumTemplatesMatched());
+		TemplateIndex reloaded = TemplateIndex.build(templateDir, indexFile);
+		assertEquals(index.getLicenseIds(), reloaded.getLicenseIds());
+		assertEquals(Arrays.asList("Free-doc"), reloaded.findMatches("Permission is granted to use this documentation."));
+		try {
+			TemplateIndex.build(new File(matchDir, "missing"), null);
+			fail("Missing template directory was not detected");
+		} catch (LicenseGenException ex) {
+			assertTrue(ex.getMessage().contains("missing"));
+		}
+		
+		File textDir = new File(matchDir, "texts");
+		assertTrue(textDir.mkdirs());
+		Files.write(new File(textDir, "a.txt").toPath(), "Permission is granted to use this documentation.".getBytes("UTF-8"));
+		File pom = getTestFile( UNIT_TEST_POM_FILE_VALID );
+		FindBestMatchMojo myMojo = (FindBestMatchMojo) lookupMojo( "find-best-match", pom );
+		assertNotNull( myMojo );
+		setVariableValueToObject( myMojo, "outputDirectory", new File(matchDir, "output") );
+		setVariableValueToObject( myMojo, "matchDirectory", textDir );
+		setVariableValueToObject( myMojo, "templateIndex", indexFile );
+		File report = new File(matchDir, "matches.json");
+		setVariableValueToObject( myMojo, "matchReport", report );
+		myMojo.execute();
+		assertTrue(new String(Files.readAllBytes(report.toPath()), "UTF-8").contains("\"a.txt\": [\"Free-doc\"]"));
+	}
+}
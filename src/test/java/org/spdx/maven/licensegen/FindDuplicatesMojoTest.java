@@ -0,0 +1,88 @@
+/**
+ * Copyright (c) 2017 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.spdx.maven.licensegen;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.testing.AbstractMojoTestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Gary O'Neall
+ *
+ */
+public class FindDuplicatesMojoTest extends AbstractMojoTestCase {
+
+	/* (non-Javadoc)
+	 * @see org.apache.maven.plugin.testing.AbstractMojoTestCase#setUp()
+	 */
+	@Before
+	protected void setUp() throws Exception {
+		super.setUp();
+	}
+
+	/* (non-Javadoc)
+	 * @see org.codehaus.plexus.PlexusTestCase#tearDown()
+	 */
+	@After
+	protected void tearDown() throws Exception {
+		super.tearDown();
+	}
+
+	@Test
+	public void testDuplicates() throws Exception {
+        File pom = getTestFile( "src/test/resources/unit/valid-licenses-project/pom.xml" );
+        File srcDir = getTestFile( "target/unit-duplicates" );
+        if (srcDir.exists()) {
+        	IncrementalLicenseGenerator.deleteRecursively(srcDir.toPath());
+        }
+        assertTrue(srcDir.mkdirs());
+        File validSrc = getTestFile( "src/test/resources/unit/valid-licenses-project/src" );
+        String license = new String(Files.readAllBytes(new File(validSrc, "0BSD.xml").toPath()), "UTF-8");
+        Files.write(new File(srcDir, "0BSD.xml").toPath(), license.getBytes("UTF-8"));
+        Files.write(new File(srcDir, "AAL.xml").toPath(), Files.readAllBytes(new File(validSrc, "AAL.xml").toPath()));
+        Files.write(new File(srcDir, "0BSD-copy.xml").toPath(), 
+        		license.replace("licenseId=\"0BSD\"", "licenseId=\"0BSD-copy\"").replace("<p>", "<p> ").getBytes("UTF-8"));
+        Files.write(new File(srcDir, "0BSD-near.xml").toPath(), 
+        		license.replace("licenseId=\"0BSD\"", "licenseId=\"0BSD-near\"").replace("modify", "alter").getBytes("UTF-8"));
+        File report = getTestFile( "target/unit-duplicates-report/duplicates.json" );
+        FindDuplicatesMojo myMojo = (FindDuplicatesMojo) lookupMojo( "duplicates", pom );
+        setVariableValueToObject( myMojo, "sourceDirectory", srcDir );
+        setVariableValueToObject( myMojo, "similarityThreshold", 0.8 );
+        setVariableValueToObject( myMojo, "duplicatesReport", report );
+        try {
+        	myMojo.execute();
+        	fail("Duplicate license was not detected");
+        } catch (MojoFailureException ex) {
+        	//Expected
+        }
+        myMojo = (FindDuplicatesMojo) lookupMojo( "duplicates", pom );
+        setVariableValueToObject( myMojo, "sourceDirectory", srcDir );
+        setVariableValueToObject( myMojo, "similarityThreshold", 0.8 );
+        setVariableValueToObject( myMojo, "duplicatesReport", report );
+        setVariableValueToObject( myMojo, "allowedDuplicates", new String[] {"0BSD-copy"} );
+        myMojo.execute();
+        String json = new String(Files.readAllBytes(report.toPath()), "UTF-8");
+        assertTrue(json.contains("\"licenseIds\": [\"0BSD\", \"0BSD-copy\"]"));
+        String near = json.substring(json.indexOf("nearDuplicates"));
+        assertTrue(near.contains("\"0BSD-near\""));
+        assertFalse(near.contains("\"AAL\""));
+	}
+}
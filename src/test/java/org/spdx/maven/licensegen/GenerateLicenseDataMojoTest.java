@@ -18,6 +18,7 @@ package org.spdx.maven.licensegen;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -97,6 +98,91 @@ public class GenerateLicenseDataMojoTest extends AbstractMojoTestCase {
         }
 	}
 
+	@Test
+	public void testIncremental() throws Exception {
+		File pom = getTestFile( UNIT_TEST_POM_FILE_VALID );
+		File manifestFile = new File(UNIT_TEST_TARGET_VALID + "/licensegen/generate-manifest.properties");
+		
+		GenerateLicenseDataMojo myMojo = (GenerateLicenseDataMojo) lookupMojo( "generate", pom );
+		setVariableValueToObject( myMojo, "incremental", true );
+		setVariableValueToObject( myMojo, "generationManifest", manifestFile );
+		myMojo.execute();
+		assertTrue(manifestFile.exists());
+		File licenseHtml = new File(UNIT_TEST_TARGET_VALID + "/html/0BSD.html");
+		assertTrue(licenseHtml.exists());
+		long lastModified = licenseHtml.lastModified();
+		
+		// Nothing changed - nothing is regenerated
+		myMojo = (GenerateLicenseDataMojo) lookupMojo( "generate", pom );
+		setVariableValueToObject( myMojo, "incremental", true );
+		setVariableValueToObject( myMojo, "generationManifest", manifestFile );
+		myMojo.execute();
+		assertEquals(lastModified, licenseHtml.lastModified());
+		
+		// Missing output is regenerated
+		assertTrue(licenseHtml.delete());
+		myMojo = (GenerateLicenseDataMojo) lookupMojo( "generate", pom );
+		setVariableValueToObject( myMojo, "incremental", true );
+		setVariableValueToObject( myMojo, "generationManifest", manifestFile );
+		myMojo.execute();
+		assertTrue(licenseHtml.exists());
+	}
+
+	@Test
+	public void testUnchangedOutputsNotWritten() throws Exception {
+		File pom = getTestFile( UNIT_TEST_POM_FILE_VALID );
+		File manifestFile = new File(UNIT_TEST_TARGET_VALID + "/licensegen/output-manifest.properties");
+		
+		GenerateLicenseDataMojo myMojo = (GenerateLicenseDataMojo) lookupMojo( "generate", pom );
+		setVariableValueToObject( myMojo, "outputManifest", manifestFile );
+		myMojo.execute();
+		assertTrue(manifestFile.exists());
+		File licenseHtml = new File(UNIT_TEST_TARGET_VALID + "/html/0BSD.html");
+		assertTrue(licenseHtml.exists());
+		long lastModified = licenseHtml.lastModified();
+		Thread.sleep(1000);
+		
+		myMojo = (GenerateLicenseDataMojo) lookupMojo( "generate", pom );
+		setVariableValueToObject( myMojo, "outputManifest", manifestFile );
+		myMojo.execute();
+		assertEquals(lastModified, licenseHtml.lastModified());
+		String changes = new String(Files.readAllBytes(
+				new File(UNIT_TEST_TARGET_VALID + "/licensegen/output-manifest-changes.json").toPath()), "UTF-8");
+		assertTrue(changes.contains("\"added\": []"));
+		assertTrue(changes.contains("\"deleted\": []"));
+	}
+
+	@Test
+	public void testGenerateAdditionalVersions() throws Exception {
+		File pom = getTestFile( UNIT_TEST_POM_FILE_VALID );
+		File generationManifest = new File(UNIT_TEST_TARGET_VALID + "/licensegen/generate-manifest.properties");
+		File outputManifest = new File(UNIT_TEST_TARGET_VALID + "/licensegen/output-manifest.properties");
+		File previousOutput = new File(UNIT_TEST_TARGET_VALID + "/previous");
+		assertTrue(previousOutput.mkdirs());
+		
+		GenerateLicenseDataMojo myMojo = (GenerateLicenseDataMojo) lookupMojo( "generate", pom );
+		setVariableValueToObject( myMojo, "licenseListVersion", "3.0" );
+		setVariableValueToObject( myMojo, "incremental", true );
+		setVariableValueToObject( myMojo, "generationManifest", generationManifest );
+		setVariableValueToObject( myMojo, "outputManifest", outputManifest );
+		setVariableValueToObject( myMojo, "additionalVersions", new String[] {"2.6"} );
+		setVariableValueToObject( myMojo, "additionalOutputDirectories", new File[] {previousOutput} );
+		myMojo.execute();
+		
+		// each version is generated into its own output directory with its own manifests
+		String current = new String(Files.readAllBytes(new File(UNIT_TEST_TARGET_VALID + "/licenses.json").toPath()), "UTF-8");
+		assertTrue(current.contains("\"3.0\""));
+		String previous = new String(Files.readAllBytes(new File(previousOutput, "licenses.json").toPath()), "UTF-8");
+		assertTrue(previous.contains("\"2.6\""));
+		assertTrue(new File(previousOutput, "html/0BSD.html").exists());
+		assertTrue(generationManifest.exists());
+		assertTrue(outputManifest.exists());
+		assertTrue(new File(UNIT_TEST_TARGET_VALID + "/licensegen/generate-manifest-2.6.properties").exists());
+		assertTrue(new File(UNIT_TEST_TARGET_VALID + "/licensegen/output-manifest-2.6.properties").exists());
+		assertTrue(new File(UNIT_TEST_TARGET_VALID + "/licensegen/output-manifest-2.6-changes.json").exists());
+		assertFalse(new String(Files.readAllBytes(outputManifest.toPath()), "UTF-8").contains("previous/"));
+	}
+
 	private List<String> collectSourceXmls() {
 		ArrayList<String> retval = new ArrayList<String>();
 		collectSourceXmls(new File(UNIT_TEST_SRC_VALID), retval);
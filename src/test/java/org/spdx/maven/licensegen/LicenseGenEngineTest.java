@@ -0,0 +1,143 @@
+/**
+ * Copyright (c) 2017 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.spdx.maven.licensegen;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.maven.plugin.testing.AbstractMojoTestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Gary O'Neall
+ *
+ */
+public class LicenseGenEngineTest extends AbstractMojoTestCase {
+	
+	private static final String SCHEMA_FILE = "src/test/resources/unit/valid-licenses-project/schema/ListedLicense.xsd";
+	private static final String VALID_SRC_DIR = "src/test/resources/unit/valid-licenses-project/src";
+
+	/* (non-Javadoc)
+	 * @see org.apache.maven.plugin.testing.AbstractMojoTestCase#setUp()
+	 */
+	@Before
+	protected void setUp() throws Exception {
+		super.setUp();
+	}
+
+	/* (non-Javadoc)
+	 * @see org.codehaus.plexus.PlexusTestCase#tearDown()
+	 */
+	@After
+	protected void tearDown() throws Exception {
+		super.tearDown();
+	}
+
+	@Test
+	public void testEngine() throws Exception {
+		LicenseGenEngine engine = new LicenseGenEngine(getTestFile( SCHEMA_FILE ));
+		byte[] valid = Files.readAllBytes(getTestFile( VALID_SRC_DIR + "/0BSD.xml" ).toPath());
+		byte[] invalid = Files.readAllBytes(getTestFile( "src/test/resources/unit/invalid-licenses-project/src/exceptions/Bison-exception-2.2.xml" ).toPath());
+		assertTrue(engine.validate("0BSD.xml", valid).isEmpty());
+		assertEquals(1, engine.validate("Bison-exception-2.2.xml", invalid).size());
+		String template = "<<beginOptional>>The<<endOptional>> license text";
+		assertTrue(engine.compare("Test", template, "The license text", "The license text").isEmpty());
+		assertTrue(engine.compare("Test", template, null, "license text").isEmpty());
+		assertEquals(2, engine.compare("Test", template, "The license text", "Another text").size());
+		assertSame(engine.parseTemplate(template), engine.parseTemplate(template));
+		try {
+			new LicenseGenEngine().validate("0BSD.xml", valid);
+			fail("Validated without a schema");
+		} catch (LicenseGenException ex) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testRender() throws Exception {
+		LicenseGenEngine engine = new LicenseGenEngine();
+		byte[] content = Files.readAllBytes(getTestFile( VALID_SRC_DIR + "/0BSD.xml" ).toPath());
+		GeneratedLicense license = engine.render("0BSD.xml", content, "3.0", "01-01-2017");
+		assertNotNull(license.getFile("text/0BSD.txt"));
+		assertNotNull(license.getFile("template/0BSD.template.txt"));
+		String text = new String(license.getFile("text/0BSD.txt"), "UTF-8");
+		String template = new String(license.getFile("template/0BSD.template.txt"), "UTF-8");
+		// the rendered template and text are consistent with each other
+		assertTrue(engine.compare("0BSD", template, text, text).isEmpty());
+		assertNull(license.getFile("text/AAL.txt"));
+		// the render does not depend on the file name
+		assertEquals(license.getFiles().keySet(), engine.render("other.xml", content, "3.0", "01-01-2017").getFiles().keySet());
+		try {
+			engine.render("invalid.xml", "<SPDXLicenseCollection>".getBytes("UTF-8"), "3.0", "01-01-2017");
+			fail("Invalid license XML was rendered");
+		} catch (LicenseGenException ex) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testConcurrentUse() throws Exception {
+		final LicenseGenEngine engine = new LicenseGenEngine(getTestFile( SCHEMA_FILE ));
+		final List<String> names = Arrays.asList("0BSD", "AAL", "Abstyles");
+		final List<byte[]> contents = new ArrayList<byte[]>();
+		final List<String> expectedTexts = new ArrayList<String>();
+		for (String name:names) {
+			byte[] content = Files.readAllBytes(getTestFile( VALID_SRC_DIR + "/" + name + ".xml" ).toPath());
+			contents.add(content);
+			expectedTexts.add(new String(engine.render(name + ".xml", content, "3.0", "01-01-2017").getFile("text/" + name + ".txt"), "UTF-8"));
+		}
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (int i = 0; i < 24; i++) {
+			final int index = i % names.size();
+			final boolean render = i % 2 == 0;
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					String name = names.get(index);
+					assertTrue(engine.validate(name + ".xml", contents.get(index)).isEmpty());
+					String text = expectedTexts.get(index);
+					if (render) {
+						GeneratedLicense license = engine.render(name + ".xml", contents.get(index), "3.0", "01-01-2017");
+						assertEquals(text, new String(license.getFile("text/" + name + ".txt"), "UTF-8"));
+						String template = new String(license.getFile("template/" + name + ".template.txt"), "UTF-8");
+						assertTrue(engine.compare(name, template, text, text).isEmpty());
+					} else {
+						assertTrue(engine.compare(name, null, text, text).isEmpty());
+						assertEquals(1, engine.compare(name, null, text, "Not the " + name + " license").size());
+					}
+					return null;
+				}
+			});
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			for (Future<Void> future:executor.invokeAll(tasks)) {
+				future.get();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
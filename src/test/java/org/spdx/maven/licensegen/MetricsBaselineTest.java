@@ -0,0 +1,94 @@
+/**
+ * Copyright (c) 2017 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.spdx.maven.licensegen;
+
+import java.io.File;
+
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.plugin.testing.AbstractMojoTestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Gary O'Neall
+ *
+ */
+public class MetricsBaselineTest extends AbstractMojoTestCase {
+
+	/* (non-Javadoc)
+	 * @see org.apache.maven.plugin.testing.AbstractMojoTestCase#setUp()
+	 */
+	@Before
+	protected void setUp() throws Exception {
+		super.setUp();
+	}
+
+	/* (non-Javadoc)
+	 * @see org.codehaus.plexus.PlexusTestCase#tearDown()
+	 */
+	@After
+	protected void tearDown() throws Exception {
+		super.tearDown();
+	}
+
+	@Test
+	public void testMetricsBaseline() throws Exception {
+        File baselineFile = getTestFile( "target/unit-metrics-baseline/metrics-baseline.properties" );
+        if (baselineFile.exists()) {
+        	assertTrue(baselineFile.delete());
+        }
+        Log log = new SystemStreamLog();
+        for (long millis:new long[] {500, 400, 450}) {
+        	MetricsBaseline.check(baselineFile, baselineRun(millis), 1.5, true, log);
+        }
+        MetricsBaseline baseline = new MetricsBaseline(baselineFile);
+        assertEquals(3, baseline.getRuns("validate.phase.validate").size());
+        assertEquals(450.0, MetricsBaseline.median(baseline.getRuns("validate.phase.validate")), 1.0);
+        // a single fast run does not move the median enough to fail a normal run
+        MetricsBaseline.check(baselineFile, baselineRun(100), 1.5, true, log);
+        MetricsBaseline.check(baselineFile, baselineRun(600), 1.5, true, log);
+        try {
+        	MetricsBaseline.check(baselineFile, baselineRun(1200), 1.5, true, log);
+        	fail("Slowdown was not detected");
+        } catch (MojoFailureException ex) {
+        	assertTrue(ex.getMessage().contains("validate.phase.validate"));
+        }
+        // failed runs are not recorded
+        assertEquals(5, new MetricsBaseline(baselineFile).getRuns("validate.phase.validate").size());
+        assertEquals(600.0, new MetricsBaseline(baselineFile).getRuns("validate.phase.validate").get(4), 1.0);
+        MetricsBaseline.check(baselineFile, baselineRun(1200), 1.5, false, log);
+        
+        File pom = getTestFile( "src/test/resources/unit/valid-licenses-project/pom.xml" );
+        File mojoBaseline = getTestFile( "target/unit-metrics-baseline/mojo-baseline.properties" );
+        if (mojoBaseline.exists()) {
+        	assertTrue(mojoBaseline.delete());
+        }
+        ValidateLicensesMojo myMojo = (ValidateLicensesMojo) lookupMojo( "validate", pom );
+        setVariableValueToObject( myMojo, "metricsBaseline", mojoBaseline );
+        setVariableValueToObject( myMojo, "maxSlowdown", 1.5 );
+        myMojo.execute();
+        assertEquals(1, new MetricsBaseline(mojoBaseline).getRuns("validate.total").size());
+	}
+
+	private static BuildMetrics baselineRun(long millis) {
+		BuildMetrics metrics = new BuildMetrics("validate", true);
+		metrics.record("validate", "0BSD.xml", System.nanoTime() - millis * 1000000L);
+		return metrics;
+	}
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright (c) 2017 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.spdx.maven.licensegen;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.plugin.testing.AbstractMojoTestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Gary O'Neall
+ *
+ */
+public class OutputBundlerTest extends AbstractMojoTestCase {
+
+	/* (non-Javadoc)
+	 * @see org.apache.maven.plugin.testing.AbstractMojoTestCase#setUp()
+	 */
+	@Before
+	protected void setUp() throws Exception {
+		super.setUp();
+	}
+
+	/* (non-Javadoc)
+	 * @see org.codehaus.plexus.PlexusTestCase#tearDown()
+	 */
+	@After
+	protected void tearDown() throws Exception {
+		super.tearDown();
+	}
+
+	@Test
+	public void testOutputBundle() throws Exception {
+		File bundleDir = getTestFile( "target/unit-bundle" );
+		if (bundleDir.exists()) {
+			IncrementalLicenseGenerator.deleteRecursively(bundleDir.toPath());
+		}
+		File outputDir = new File(bundleDir, "output");
+		assertTrue(new File(outputDir, "text").mkdirs());
+		assertTrue(new File(outputDir, "html").mkdirs());
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 200; i++) {
+			sb.append("Permission is granted to use this software. ");
+		}
+		byte[] text = sb.toString().getBytes("UTF-8");
+		Files.write(new File(outputDir, "text/MIT.txt").toPath(), text);
+		Files.write(new File(outputDir, "html/MIT.html").toPath(), ("<html>"+sb.toString()+"</html>").getBytes("UTF-8"));
+		Files.write(new File(outputDir, "licenses.png").toPath(), new byte[] {1, 2, 3});
+		BuildMetrics metrics = new BuildMetrics("test", false);
+		OutputBundler bundler = new OutputBundler(outputDir, metrics, MojoAdapter.log(new SystemStreamLog()));
+		assertEquals(2, bundler.precompress(2));
+		GZIPInputStream gz = new GZIPInputStream(Files.newInputStream(new File(outputDir, "text/MIT.txt.gz").toPath()));
+		try {
+			ByteArrayOutputStream uncompressed = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int len;
+			while ((len = gz.read(buffer)) > 0) {
+				uncompressed.write(buffer, 0, len);
+			}
+			assertTrue(Arrays.equals(text, uncompressed.toByteArray()));
+		} finally {
+			gz.close();
+		}
+		assertFalse(new File(outputDir, "licenses.png.gz").exists());
+		assertEquals(0, bundler.precompress(2));
+		
+		File archive = new File(bundleDir, "license-data.zip");
+		assertEquals(3, bundler.writeArchive(archive));
+		List<String> lines = Files.readAllLines(OutputBundler.indexFile(archive).toPath(), StandardCharsets.UTF_8);
+		assertEquals(OutputBundler.INDEX_HEADER, lines.get(0));
+		assertEquals(4, lines.size());
+		RandomAccessFile raf = new RandomAccessFile(archive, "r");
+		try {
+			for (String line:lines.subList(1, lines.size())) {
+				String[] fields = line.split("\t");
+				byte[] compressed = new byte[Integer.parseInt(fields[2])];
+				raf.seek(Long.parseLong(fields[1]));
+				raf.readFully(compressed);
+				Inflater inflater = new Inflater(true);
+				inflater.setInput(compressed);
+				byte[] content = new byte[Integer.parseInt(fields[3])];
+				assertEquals(content.length, inflater.inflate(content));
+				inflater.end();
+				assertTrue(Arrays.equals(Files.readAllBytes(new File(outputDir, fields[0]).toPath()), content));
+			}
+		} finally {
+			raf.close();
+		}
+		
+		assertTrue(new File(outputDir, "text/MIT.txt").delete());
+		bundler.precompress(2);
+		assertFalse(new File(outputDir, "text/MIT.txt.gz").exists());
+		assertTrue(new File(outputDir, "html/MIT.html.gz").exists());
+	}
+}
@@ -0,0 +1,112 @@
+/**
+ * Copyright (c) 2017 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.spdx.maven.licensegen;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.plugin.testing.AbstractMojoTestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Gary O'Neall
+ *
+ */
+public class OutputWriterTest extends AbstractMojoTestCase {
+
+	/* (non-Javadoc)
+	 * @see org.apache.maven.plugin.testing.AbstractMojoTestCase#setUp()
+	 */
+	@Before
+	protected void setUp() throws Exception {
+		super.setUp();
+	}
+
+	/* (non-Javadoc)
+	 * @see org.codehaus.plexus.PlexusTestCase#tearDown()
+	 */
+	@After
+	protected void tearDown() throws Exception {
+		super.tearDown();
+	}
+
+	@Test
+	public void testOutputFormats() throws Exception {
+		File formatsDir = getTestFile( "target/unit-formats" );
+		if (formatsDir.exists()) {
+			IncrementalLicenseGenerator.deleteRecursively(formatsDir.toPath());
+		}
+		Path staging = new File(formatsDir, "staging").toPath();
+		String[] files = new String[] {"json/MIT.json", "json/details/MIT.json", "text/MIT.txt", "html/MIT.html", 
+				"licenses.json", "index.html", "notes.txt"};
+		for (String file:files) {
+			Path path = staging.resolve(file);
+			Files.createDirectories(path.getParent());
+			Files.write(path, ("content of "+file).getBytes("UTF-8"));
+		}
+		LicenseGenLog log = MojoAdapter.log(new SystemStreamLog());
+		BuildMetrics metrics = new BuildMetrics("test", false);
+		File serial = new File(formatsDir, "serial");
+		File parallel = new File(formatsDir, "parallel");
+		File selected = new File(formatsDir, "selected");
+		OutputWriter writer = new OutputWriter(serial, new File(formatsDir, "serial.properties"), log, metrics, OutputFormats.ALL, 1);
+		writer.publish(staging);
+		writer.finish();
+		writer = new OutputWriter(parallel, new File(formatsDir, "parallel.properties"), log, metrics, OutputFormats.ALL, 4);
+		writer.publish(staging);
+		writer.finish();
+		writer = new OutputWriter(selected, new File(formatsDir, "selected.properties"), log, metrics, OutputFormats.of("json, text"), 4);
+		writer.publish(staging);
+		writer.finish();
+		for (String file:files) {
+			assertTrue(Arrays.equals(Files.readAllBytes(new File(serial, file).toPath()), Files.readAllBytes(new File(parallel, file).toPath())));
+		}
+		assertEquals(Files.readAllLines(new File(formatsDir, "serial.properties").toPath()).size(), 
+				Files.readAllLines(new File(formatsDir, "parallel.properties").toPath()).size());
+		assertTrue(new File(selected, "json/details/MIT.json").exists());
+		assertTrue(new File(selected, "text/MIT.txt").exists());
+		assertTrue(new File(selected, "licenses.json").exists());
+		assertTrue(new File(selected, "notes.txt").exists());
+		assertFalse(new File(selected, "html").exists());
+		assertFalse(new File(selected, "index.html").exists());
+		// each manifest has its own change report
+		assertTrue(new File(formatsDir, "serial-changes.json").isFile());
+		assertTrue(new File(formatsDir, "parallel-changes.json").isFile());
+		assertTrue(new File(formatsDir, "selected-changes.json").isFile());
+		
+		// deselected formats which were previously written are deleted
+		writer = new OutputWriter(serial, new File(formatsDir, "serial.properties"), log, metrics, OutputFormats.of("json"), 4);
+		writer.publish(staging);
+		writer.finish();
+		assertFalse(new File(serial, "html/MIT.html").exists());
+		assertFalse(new File(serial, "text/MIT.txt").exists());
+		assertTrue(new File(serial, "json/MIT.json").exists());
+		assertEquals(4, writer.getNumUnchanged());
+		assertEquals(3, writer.getDeleted().size());
+		try {
+			OutputFormats.of("json,pdf");
+			fail("Unknown format was accepted");
+		} catch (LicenseGenException ex) {
+			assertTrue(ex.getMessage().contains("pdf"));
+		}
+		assertTrue(OutputFormats.of(" ").isAll());
+	}
+}
@@ -0,0 +1,160 @@
+/**
+ * Copyright (c) 2017 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.spdx.maven.licensegen;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.testing.AbstractMojoTestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Gary O'Neall
+ *
+ */
+public class ShardTest extends AbstractMojoTestCase {
+
+	private static final String UNIT_TEST_TARGET_VALID = "src/test/resources/unit/valid-licenses-project/target";
+	private static final String UNIT_TEST_POM_FILE_VALID = "src/test/resources/unit/valid-licenses-project/pom.xml";
+	private static final String UNIT_TEST_SRC_VALID = "src/test/resources/unit/valid-licenses-project/src";
+	
+	/* (non-Javadoc)
+	 * @see org.apache.maven.plugin.testing.AbstractMojoTestCase#setUp()
+	 */
+	@Before
+	protected void setUp() throws Exception {
+		super.setUp();
+		deleteDirectoryContents(new File(UNIT_TEST_TARGET_VALID));
+	}
+
+	/* (non-Javadoc)
+	 * @see org.codehaus.plexus.PlexusTestCase#tearDown()
+	 */
+	@After
+	protected void tearDown() throws Exception {
+		super.tearDown();
+		deleteDirectoryContents(new File(UNIT_TEST_TARGET_VALID));
+	}
+	
+	/**
+	 * Delete the contents of a directory - leaving the top level directory intack
+	 * @param dir
+	 */
+	private void deleteDirectoryContents(File dir) throws IOException {
+		if (!dir.exists()) {
+			throw new FileNotFoundException(dir.getName()+"does not exist");
+		}
+		File[] content = dir.listFiles();
+		for (File child:content) {
+			if (child.isDirectory()) {
+				deleteDirectoryContents(child);
+			}
+			if (!child.delete()) {
+				throw(new IOException("Unable to delete "+child.getName()));
+			}
+		}
+	}
+
+	@Test
+	public void testShards() throws Exception {
+        File pom = getTestFile( "src/test/resources/unit/invalid-licenses-project/pom.xml" );
+        File cacheFile = getTestFile( "target/unit-shards/validation-cache.properties" );
+        File reportDir = getTestFile( "target/unit-shards/diagnostics" );
+        int numFailed = 0;
+        for (int shardIndex = 0; shardIndex < 2; shardIndex++) {
+        	ValidateLicensesMojo myMojo = (ValidateLicensesMojo) lookupMojo( "validate", pom );
+        	setVariableValueToObject( myMojo, "shardIndex", shardIndex );
+        	setVariableValueToObject( myMojo, "shardCount", 2 );
+        	setVariableValueToObject( myMojo, "validationCache", cacheFile );
+        	setVariableValueToObject( myMojo, "diagnosticsDirectory", reportDir );
+        	try {
+        		myMojo.execute();
+        	} catch (MojoFailureException ex) {
+        		numFailed++;
+        	}
+        }
+        // The single invalid file belongs to exactly one shard
+        assertEquals(1, numFailed);
+        // each shard keeps its own validation cache and reports
+        for (int shardIndex = 0; shardIndex < 2; shardIndex++) {
+        	assertTrue(getTestFile( "target/unit-shards/validation-cache-shard" + shardIndex + ".properties" ).isFile());
+        	assertTrue(new File(getTestFile( "target/unit-shards/diagnostics-shard" + shardIndex ), "validate-diagnostics.sarif").isFile());
+        }
+        assertFalse(cacheFile.exists());
+	}
+
+	@Test
+	public void testShardsMerged() throws Exception {
+		File pom = getTestFile( UNIT_TEST_POM_FILE_VALID );
+		File shardsDir = new File(UNIT_TEST_TARGET_VALID + "/licensegen/shards");
+		File[] shardDirs = new File[] {new File(shardsDir, "0"), new File(shardsDir, "1")};
+		for (int i = 0; i < shardDirs.length; i++) {
+			assertTrue(shardDirs[i].mkdirs());
+			GenerateLicenseDataMojo myMojo = (GenerateLicenseDataMojo) lookupMojo( "generate", pom );
+			setVariableValueToObject( myMojo, "outputDirectory", shardDirs[i] );
+			setVariableValueToObject( myMojo, "shardIndex", i );
+			setVariableValueToObject( myMojo, "shardCount", shardDirs.length );
+			myMojo.execute();
+		}
+		MergeLicenseDataMojo mergeMojo = (MergeLicenseDataMojo) lookupEmptyMojo( "merge", pom );
+		setVariableValueToObject( mergeMojo, "sourceDirectory", getTestFile( UNIT_TEST_SRC_VALID ) );
+		setVariableValueToObject( mergeMojo, "outputDirectory", getTestFile( UNIT_TEST_TARGET_VALID ) );
+		setVariableValueToObject( mergeMojo, "shardDirectories", shardDirs );
+		mergeMojo.execute();
+		List<File> xmlFiles = new ArrayList<File>();
+		LicenseSource.collectXmlFiles(getTestFile( UNIT_TEST_SRC_VALID ), xmlFiles);
+		String licenses = new String(Files.readAllBytes(
+				new File(UNIT_TEST_TARGET_VALID + "/json/licenses.json").toPath()), "UTF-8");
+		String exceptions = new String(Files.readAllBytes(
+				new File(UNIT_TEST_TARGET_VALID + "/json/exceptions.json").toPath()), "UTF-8");
+		String rdf = new String(Files.readAllBytes(
+				new File(UNIT_TEST_TARGET_VALID + "/rdfxml/licenses.rdf").toPath()), "UTF-8");
+		for (File xmlFile:xmlFiles) {
+			String sourceFileName = Shard.licenseName(xmlFile);
+			assertTrue(new File(UNIT_TEST_TARGET_VALID + "/html/" + sourceFileName + ".html").exists());
+			assertTrue(licenses.contains("\"" + sourceFileName + "\"") || exceptions.contains("\"" + sourceFileName + "\""));
+			if (licenses.contains("\"" + sourceFileName + "\"")) {
+				assertTrue(rdf.contains(sourceFileName));
+			}
+		}
+	}
+
+	@Test
+	public void testMergeRdf() throws Exception {
+		File shardsDir = new File(UNIT_TEST_TARGET_VALID + "/rdf-shards");
+		assertTrue(shardsDir.mkdirs());
+		List<Path> files = new ArrayList<Path>();
+		for (String licenseId:new String[] {"0BSD", "AAL"}) {
+			Path file = new File(shardsDir, licenseId + ".nt").toPath();
+			Files.write(file, ("<http://spdx.org/licenses/" + licenseId + "> <http://spdx.org/rdf/terms#licenseId> \"" + 
+					licenseId + "\" .\n").getBytes("UTF-8"));
+			files.add(file);
+		}
+		Path merged = new File(shardsDir, "licenses.rdf").toPath();
+		ShardMerger.mergeRdf(files, merged, new String[] {"N-TRIPLE", "RDF/XML-ABBREV"});
+		String rdf = new String(Files.readAllBytes(merged), "UTF-8");
+		assertTrue(rdf.contains("http://spdx.org/licenses/0BSD"));
+		assertTrue(rdf.contains("http://spdx.org/licenses/AAL"));
+	}
+}
@@ -18,8 +18,12 @@ package org.spdx.maven.licensegen;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
 
+import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
 import org.apache.maven.plugin.testing.AbstractMojoTestCase;
 import org.junit.After;
 import org.junit.Before;
@@ -110,4 +114,142 @@ public class TestLicensgenMojoTest extends AbstractMojoTestCase {
         }
 	}
 
+	@Test
+	public void testExpectedErrorsSingleThread() throws Exception {
+		
+		File pom = getTestFile( UNIT_TEST_POM_FILE_FAILTEST );
+        GenerateLicenseDataMojo myMojo = (GenerateLicenseDataMojo) lookupMojo( "generate", pom );
+        myMojo.execute();
+        
+        TestLicensegenMojo testMojo = (TestLicensegenMojo) lookupMojo( "test", pom );
+        setVariableValueToObject( testMojo, "threads", 1 );
+        try {
+        	testMojo.execute();
+        	fail("The test mojo didn't fail when it was supposed to!");
+        } catch(MojoFailureException ex) {
+        	// Expected
+        }
+	}
+
+	@Test
+	public void testTemplatePrefilter() throws Exception {
+		ParsedTemplate template = ParsedTemplate.parse("Permission is granted<<beginOptional>> free of charge<<endOptional>> to use this software.");
+		String text = "Permission is granted free of charge to use this Software.";
+		assertTrue(template.mayMatch(text));
+		assertTrue(template.matches(text));
+		assertTrue(template.mayMatch("Permission is granted to use this software."));
+		String missingToken = "Permission is granted free of charge to use this library.";
+		assertFalse(template.mayMatch(missingToken));
+		assertFalse(template.matches(missingToken));
+		// the first token after a variable rule may be partially matched by the variable
+		assertTrue(ParsedTemplate.parse("<<var;name=\"prefix\";original=\"My\";match=\"[A-Z][a-z]\">>Software is free").mayMatch("MySoftware is free"));
+	}
+
+	@Test
+	public void testTextDiff() throws Exception {
+		// the classic Myers example has an edit distance of 5
+		TextDiff diff = new TextDiff(Arrays.asList("a", "b", "c", "a", "b", "b", "a"), Arrays.asList("c", "b", "a", "b", "a", "c"), 0, 0);
+		int numEdited = 0;
+		for (TextDiff.Edit edit:diff.getEdits()) {
+			if (edit.type != TextDiff.Type.EQUAL) {
+				numEdited += edit.length;
+			}
+		}
+		assertEquals(5, numEdited);
+		assertFalse(diff.isTruncated());
+		
+		ParsedTemplate template = ParsedTemplate.parse("Permission is granted<<beginOptional>> free of charge<<endOptional>> to use this software.");
+		diff = new TextDiff(template.canonicalTokens(), TokenNormalizer.canonicalTokens("Permission is granted free of charge to use this library."), 0, 0);
+		assertEquals(1, diff.getDivergences().size());
+		assertEquals(9, diff.getDivergences().get(0).textStart);
+		
+		// beyond the budget the difference is a single replacement but the first divergence is still found
+		String[] expected = new String[5000];
+		String[] text = new String[5000];
+		for (int i = 0; i < expected.length; i++) {
+			expected[i] = "t" + i;
+			text[i] = i % 7 == 0 && i > 100 ? "x" + i : "t" + i;
+		}
+		diff = new TextDiff(Arrays.asList(expected), Arrays.asList(text), 100, 0);
+		assertTrue(diff.isTruncated());
+		assertEquals(1, diff.getDivergences().size());
+		assertEquals(105, diff.getDivergences().get(0).textStart);
+		assertEquals(Arrays.asList(text).size(), new TextDiff(Arrays.asList(expected), Arrays.asList(text), 0, 0).getText().size());
+		
+		File diffDir = getTestFile( "target/unit-diff" );
+		File output = new File(diffDir, "output");
+		File textCompare = new File(diffDir, "compare");
+		File reports = new File(diffDir, "reports");
+		Files.createDirectories(new File(output, "template").toPath());
+		Files.createDirectories(new File(output, "text").toPath());
+		Files.createDirectories(textCompare.toPath());
+		Files.write(new File(output, "template/Test-1.0.template.txt").toPath(), 
+				"Permission is granted<<beginOptional>> free of charge<<endOptional>> to use this software.".getBytes("UTF-8"));
+		Files.write(new File(output, "text/Test-1.0.txt").toPath(), "Permission is granted to use this software.".getBytes("UTF-8"));
+		Files.write(new File(textCompare, "Test-1.0.txt").toPath(), "Permission is granted free of charge to use this library.".getBytes("UTF-8"));
+		Diagnostics diagnostics = new Diagnostics("unit", MojoAdapter.log(new SystemStreamLog()), 0, null);
+		LicenseTextTester tester = new LicenseGenEngine().newTester(output, 1, new BuildMetrics("test", false), ErrorLimit.NONE, 
+				new DiffReporter(reports, 0, 0));
+		assertEquals(2, tester.testAll(textCompare, diagnostics));
+		diagnostics.close();
+		String templateDiff = new String(Files.readAllBytes(new File(reports, "Test-1.0/Test-1.0.txt.template.diff").toPath()), "UTF-8");
+		assertTrue(templateDiff.contains("# 1 differences"));
+		assertTrue(templateDiff.contains("- software."));
+		assertTrue(templateDiff.contains("+ library."));
+		String textDiff = new String(Files.readAllBytes(new File(reports, "Test-1.0/Test-1.0.txt.text.diff").toPath()), "UTF-8");
+		assertTrue(textDiff.contains("# 2 differences"));
+		assertTrue(textDiff.contains("+ free of charge"));
+		// reports are removed once the text matches
+		Files.write(new File(textCompare, "Test-1.0.txt").toPath(), "Permission is granted to use this software.".getBytes("UTF-8"));
+		assertEquals(0, tester.testAll(textCompare, new Diagnostics("unit", MojoAdapter.log(new SystemStreamLog()), 0, null)));
+		assertFalse(new File(reports, "Test-1.0/Test-1.0.txt.template.diff").exists());
+		assertFalse(new File(reports, "Test-1.0/Test-1.0.txt.text.diff").exists());
+	}
+
+	@Test
+	public void testCachedVerdicts() throws Exception {
+		File testDir = getTestFile( "target/unit-cached-verdicts" );
+		if (testDir.exists()) {
+			deleteDirectoryContents(testDir);
+		}
+		File output = new File(testDir, "output");
+		File textCompare = new File(testDir, "compare");
+		Files.createDirectories(new File(output, "template").toPath());
+		Files.createDirectories(new File(output, "text").toPath());
+		Files.createDirectories(textCompare.toPath());
+		Files.write(new File(output, "template/Test-1.0.template.txt").toPath(), 
+				"Permission is granted<<beginOptional>> free of charge<<endOptional>> to use this software.".getBytes("UTF-8"));
+		Files.write(new File(output, "text/Test-1.0.txt").toPath(), "Permission is granted to use this software.".getBytes("UTF-8"));
+		Files.write(new File(textCompare, "Test-1.0.txt").toPath(), "Permission is granted to use this software.".getBytes("UTF-8"));
+		LicenseGenLog log = MojoAdapter.log(new SystemStreamLog());
+		for (int run = 0; run < 2; run++) {
+			LicenseGenEngine engine = new LicenseGenEngine();
+			engine.setBuildCache(new BuildCache(new File(testDir, "cache"), log));
+			BuildMetrics metrics = new BuildMetrics("test", true);
+			assertEquals(0, engine.newTester(output, 1, metrics, ErrorLimit.NONE, null).testAll(textCompare, new Diagnostics("unit", log, 0, null)));
+			// the template is only parsed when a text has no cached verdict
+			assertEquals(run == 0, metrics.phaseTotals().containsKey("template-parse"));
+		}
+	}
+
+	@Test
+	public void testAdditionalVersions() throws Exception {
+		File manifest = new File("target/licensegen/output-manifest.properties");
+		assertEquals(new File(manifest.getAbsoluteFile().getParentFile(), "output-manifest-3.0.properties"), 
+				VersionTarget.versionFile(manifest, "3.0"));
+		assertEquals("license-data-3.0_rc1.zip", VersionTarget.versionFile(new File("license-data.zip"), "3.0/rc1").getName());
+		assertNull(VersionTarget.versionFile(null, "3.0"));
+		assertEquals("output-manifest-3.0-changes.json", 
+				OutputWriter.changesFile(VersionTarget.versionFile(manifest, "3.0")).getName());
+		File pom = getTestFile( UNIT_TEST_POM_FILE_VALID );
+		GenerateLicenseDataMojo myMojo = (GenerateLicenseDataMojo) lookupMojo( "generate", pom );
+		setVariableValueToObject( myMojo, "additionalVersions", new String[] {"2.6", "3.0"} );
+		setVariableValueToObject( myMojo, "additionalOutputDirectories", new File[] {getTestFile( "target" )} );
+		try {
+			myMojo.execute();
+			fail("Missing output directory for an additional version was not detected");
+		} catch (MojoExecutionException ex) {
+			assertTrue(ex.getMessage().contains("additionalOutputDirectories"));
+		}
+	}
 }
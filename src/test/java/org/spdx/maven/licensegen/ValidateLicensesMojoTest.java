@@ -16,8 +16,15 @@
 package org.spdx.maven.licensegen;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
 
 import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
 import org.apache.maven.plugin.testing.AbstractMojoTestCase;
 import org.junit.After;
 import org.junit.Before;
@@ -73,4 +80,230 @@ public class ValidateLicensesMojoTest extends AbstractMojoTestCase {
         
 	}
 
+	@Test
+	public void testInvalidXmlParallel() throws Exception {
+        File pom = getTestFile( "src/test/resources/unit/invalid-licenses-project/pom.xml" );
+        assertNotNull( pom );
+        assertTrue( pom.exists() );
+
+        ValidateLicensesMojo myMojo = (ValidateLicensesMojo) lookupMojo( "validate", pom );
+        assertNotNull( myMojo );
+        setVariableValueToObject( myMojo, "threads", 4 );
+        try {
+        	myMojo.execute();
+        	fail("Invalid XML was not detected");
+        } catch (MojoFailureException ex) {
+        	//Expected
+        }
+	}
+
+	@Test
+	public void testValidationCache() throws Exception {
+        File pom = getTestFile( "src/test/resources/unit/valid-licenses-project/pom.xml" );
+        File cacheFile = getTestFile( "target/unit-validation-cache/validation-cache.properties" );
+        if (cacheFile.exists()) {
+        	assertTrue(cacheFile.delete());
+        }
+        ValidateLicensesMojo myMojo = (ValidateLicensesMojo) lookupMojo( "validate", pom );
+        setVariableValueToObject( myMojo, "validationCache", cacheFile );
+        myMojo.execute();
+        assertTrue(cacheFile.exists());
+        Properties cached = new Properties();
+        InputStream is = new FileInputStream(cacheFile);
+        try {
+        	cached.load(is);
+        } finally {
+        	is.close();
+        }
+        assertTrue(cached.containsKey("0BSD.xml"));
+        assertTrue(cached.containsKey("exceptions/Autoconf-exception-2.0.xml"));
+        // Second run uses the cache
+        myMojo = (ValidateLicensesMojo) lookupMojo( "validate", pom );
+        setVariableValueToObject( myMojo, "validationCache", cacheFile );
+        myMojo.execute();
+        
+        // Invalid files are never cached
+        pom = getTestFile( "src/test/resources/unit/invalid-licenses-project/pom.xml" );
+        for (int i = 0; i < 2; i++) {
+        	myMojo = (ValidateLicensesMojo) lookupMojo( "validate", pom );
+        	setVariableValueToObject( myMojo, "validationCache", cacheFile );
+        	try {
+        		myMojo.execute();
+        		fail("Invalid XML was not detected");
+        	} catch (MojoFailureException ex) {
+        		//Expected
+        	}
+        }
+	}
+
+	@Test
+	public void testMetrics() throws Exception {
+        File pom = getTestFile( "src/test/resources/unit/valid-licenses-project/pom.xml" );
+        File metricsDir = getTestFile( "target/unit-metrics" );
+        SchemaCache.clear();
+        ValidateLicensesMojo myMojo = (ValidateLicensesMojo) lookupMojo( "validate", pom );
+        setVariableValueToObject( myMojo, "metricsDirectory", metricsDir );
+        setVariableValueToObject( myMojo, "metricsTopN", 3 );
+        myMojo.execute();
+        File json = new File(metricsDir, "validate-metrics.json");
+        File csv = new File(metricsDir, "validate-metrics.csv");
+        assertTrue(json.exists());
+        assertTrue(csv.exists());
+        String csvContent = new String(java.nio.file.Files.readAllBytes(csv.toPath()), "UTF-8");
+        assertTrue(csvContent.contains("schema-compile,ListedLicense.xsd,"));
+        assertTrue(csvContent.contains("validate,0BSD.xml,"));
+	}
+
+	@Test
+	public void testFailFast() throws Exception {
+        File pom = getTestFile( "src/test/resources/unit/invalid-licenses-project/pom.xml" );
+        for (int threads = 1; threads <= 4; threads += 3) {
+        	ValidateLicensesMojo myMojo = (ValidateLicensesMojo) lookupMojo( "validate", pom );
+        	setVariableValueToObject( myMojo, "threads", threads );
+        	setVariableValueToObject( myMojo, "failFast", true );
+        	try {
+        		myMojo.execute();
+        		fail("Invalid XML was not detected");
+        	} catch (MojoFailureException ex) {
+        		//Expected
+        	}
+        }
+        ValidateLicensesMojo myMojo = (ValidateLicensesMojo) lookupMojo( "validate", pom );
+        setVariableValueToObject( myMojo, "maxErrors", 100 );
+        try {
+        	myMojo.execute();
+        	fail("Invalid XML was not detected");
+        } catch (MojoFailureException ex) {
+        	//Expected
+        }
+	}
+
+	@Test
+	public void testSchemaCache() throws Exception {
+        File pom = getTestFile( "src/test/resources/unit/valid-licenses-project/pom.xml" );
+        File metricsDir = getTestFile( "target/unit-schema-cache-metrics" );
+        File schemaFile = getTestFile( "target/unit-schema-cache/ListedLicense.xsd" );
+        schemaFile.getParentFile().mkdirs();
+        byte[] schema = java.nio.file.Files.readAllBytes(getTestFile( "src/test/resources/unit/valid-licenses-project/schema/ListedLicense.xsd" ).toPath());
+        java.nio.file.Files.write(schemaFile.toPath(), schema);
+        SchemaCache.clear();
+        assertEquals("schema-compile", validateSchemaPhase(pom, schemaFile, metricsDir));
+        assertEquals("schema-cached", validateSchemaPhase(pom, schemaFile, metricsDir));
+        java.nio.file.Files.write(schemaFile.toPath(), (new String(schema, "UTF-8") + "\n<!-- changed -->\n").getBytes("UTF-8"));
+        assertEquals("schema-compile", validateSchemaPhase(pom, schemaFile, metricsDir));
+	}
+	
+	/**
+	 * Validate using the schema file and return the metrics phase recorded for the schema
+	 */
+	private String validateSchemaPhase(File pom, File schemaFile, File metricsDir) throws Exception {
+        ValidateLicensesMojo myMojo = (ValidateLicensesMojo) lookupMojo( "validate", pom );
+        setVariableValueToObject( myMojo, "schemaFile", schemaFile );
+        setVariableValueToObject( myMojo, "metricsDirectory", metricsDir );
+        myMojo.execute();
+        File csv = new File(metricsDir, "validate-metrics.csv");
+        for (String line:java.nio.file.Files.readAllLines(csv.toPath(), java.nio.charset.Charset.forName("UTF-8"))) {
+        	if (line.contains(",ListedLicense.xsd,")) {
+        		return line.substring(0, line.indexOf(','));
+        	}
+        }
+        return null;
+	}
+
+	@Test
+	public void testLargeNestedTree() throws Exception {
+        File pom = getTestFile( "src/test/resources/unit/valid-licenses-project/pom.xml" );
+        File srcDir = getTestFile( "target/unit-large-tree" );
+        if (srcDir.exists()) {
+        	IncrementalLicenseGenerator.deleteRecursively(srcDir.toPath());
+        }
+        byte[] license = java.nio.file.Files.readAllBytes(getTestFile( "src/test/resources/unit/valid-licenses-project/src/0BSD.xml" ).toPath());
+        File dir = srcDir;
+        int numFiles = 0;
+        // more files than fit in the validation queue, nested deeper than the number of threads
+        for (int depth = 0; depth < 20; depth++) {
+        	dir = new File(dir, "d" + depth);
+        	assertTrue(dir.mkdirs());
+        	for (int i = 0; i < 10; i++) {
+        		java.nio.file.Files.write(new File(dir, "L" + depth + "-" + i + ".xml").toPath(), license);
+        		numFiles++;
+        	}
+        }
+        ValidateLicensesMojo myMojo = (ValidateLicensesMojo) lookupMojo( "validate", pom );
+        setVariableValueToObject( myMojo, "sourceDirectory", srcDir );
+        setVariableValueToObject( myMojo, "threads", 2 );
+        myMojo.execute();
+        java.util.List<File> xmlFiles = new java.util.ArrayList<File>();
+        LicenseSource.collectXmlFiles(srcDir, xmlFiles);
+        assertEquals(numFiles, xmlFiles.size());
+        assertTrue(xmlFiles.get(0).getName().equals("L0-0.xml"));
+        java.nio.file.Files.copy(getTestFile( "src/test/resources/unit/invalid-licenses-project/src/exceptions/Bison-exception-2.2.xml" ).toPath(), 
+        		new File(dir, "Bison-exception-2.2.xml").toPath());
+        for (int threads = 1; threads <= 2; threads++) {
+        	myMojo = (ValidateLicensesMojo) lookupMojo( "validate", pom );
+        	setVariableValueToObject( myMojo, "sourceDirectory", srcDir );
+        	setVariableValueToObject( myMojo, "threads", threads );
+        	try {
+        		myMojo.execute();
+        		fail("Invalid XML was not detected");
+        	} catch (MojoFailureException ex) {
+        		//Expected
+        	}
+        }
+	}
+
+	@Test
+	public void testFindingOrder() throws Exception {
+        File srcDir = getTestFile( "target/unit-finding-order" );
+        if (srcDir.exists()) {
+        	IncrementalLicenseGenerator.deleteRecursively(srcDir.toPath());
+        }
+        byte[] invalid = Files.readAllBytes(getTestFile( "src/test/resources/unit/invalid-licenses-project/src/exceptions/Bison-exception-2.2.xml" ).toPath());
+        byte[] valid = Files.readAllBytes(getTestFile( "src/test/resources/unit/valid-licenses-project/src/0BSD.xml" ).toPath());
+        List<String> expected = new ArrayList<String>();
+        for (String dirName:new String[] {"c", "a", "b"}) {
+        	File dir = new File(srcDir, dirName);
+        	assertTrue(dir.mkdirs());
+        	for (int i = 9; i >= 0; i--) {
+        		Files.write(new File(dir, "V" + i + ".xml").toPath(), valid);
+        		Files.write(new File(dir, "E" + i + ".xml").toPath(), invalid);
+        	}
+        }
+        for (String dirName:new String[] {"a", "b", "c"}) {
+        	for (int i = 0; i <= 9; i++) {
+        		expected.add(dirName + "/E" + i + ".xml");
+        	}
+        }
+        // a link back to the tree is skipped while a dangling link is reported in walk order
+        Files.createSymbolicLink(new File(srcDir, "b/loop").toPath(), srcDir.toPath());
+        Files.createSymbolicLink(new File(srcDir, "b/dangling.xml").toPath(), new File(srcDir, "missing").toPath());
+        expected.add(20, "b/dangling.xml");
+        File schema = getTestFile( "src/test/resources/unit/valid-licenses-project/schema/ListedLicense.xsd" );
+        for (int threads = 1; threads <= 4; threads++) {
+        	final List<String> logged = new ArrayList<String>();
+        	Diagnostics diagnostics = new Diagnostics("unit", MojoAdapter.log(new SystemStreamLog() {
+        		@Override
+        		public void error(CharSequence content) {
+        			logged.add(content.toString());
+        		}
+        	}), 0, null);
+        	LicenseValidator validator = new LicenseGenEngine(schema).newValidator(null, new BuildMetrics("validate", false));
+        	assertEquals(expected.size(), validator.validateTree(srcDir, Shard.ALL, threads, ErrorLimit.NONE, diagnostics));
+        	assertEquals(expected.size(), logged.size());
+        	for (int i = 0; i < expected.size(); i++) {
+        		String name = expected.get(i).substring(2);
+        		assertTrue(logged.get(i), logged.get(i).contains(" " + name));
+        	}
+        	// the error limit stops at the same finding for any number of threads
+        	logged.clear();
+        	validator.validateTree(srcDir, Shard.ALL, threads, ErrorLimit.of(false, 3), new Diagnostics("unit", MojoAdapter.log(new SystemStreamLog() {
+        		@Override
+        		public void error(CharSequence content) {
+        			logged.add(content.toString());
+        		}
+        	}), 0, null));
+        	assertEquals(3, logged.size());
+        	assertTrue(logged.get(2).contains(" E2.xml"));
+        }
+	}
 }
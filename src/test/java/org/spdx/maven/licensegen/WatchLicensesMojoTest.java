@@ -0,0 +1,136 @@
+/**
+ * Copyright (c) 2017 Source Auditor Inc.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.spdx.maven.licensegen;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import org.apache.maven.plugin.testing.AbstractMojoTestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Gary O'Neall
+ *
+ */
+public class WatchLicensesMojoTest extends AbstractMojoTestCase {
+
+	private static final String UNIT_TEST_TARGET_VALID = "src/test/resources/unit/valid-licenses-project/target";
+	private static final String UNIT_TEST_POM_FILE_VALID = "src/test/resources/unit/valid-licenses-project/pom.xml";
+	
+	/* (non-Javadoc)
+	 * @see org.apache.maven.plugin.testing.AbstractMojoTestCase#setUp()
+	 */
+	@Before
+	protected void setUp() throws Exception {
+		super.setUp();
+		deleteDirectoryContents(new File(UNIT_TEST_TARGET_VALID));
+	}
+
+	/* (non-Javadoc)
+	 * @see org.codehaus.plexus.PlexusTestCase#tearDown()
+	 */
+	@After
+	protected void tearDown() throws Exception {
+		super.tearDown();
+		deleteDirectoryContents(new File(UNIT_TEST_TARGET_VALID));
+	}
+	
+	/**
+	 * Delete the contents of a directory - leaving the top level directory intack
+	 * @param dir
+	 */
+	private void deleteDirectoryContents(File dir) throws IOException {
+		if (!dir.exists()) {
+			throw new FileNotFoundException(dir.getName()+"does not exist");
+		}
+		File[] content = dir.listFiles();
+		for (File child:content) {
+			if (child.isDirectory()) {
+				deleteDirectoryContents(child);
+			}
+			if (!child.delete()) {
+				throw(new IOException("Unable to delete "+child.getName()));
+			}
+		}
+	}
+
+	@Test
+	public void testWatch() throws Exception {
+		File pom = getTestFile( UNIT_TEST_POM_FILE_VALID );
+		File watchDir = getTestFile( "target/unit-watch" );
+		if (watchDir.exists()) {
+			deleteDirectoryContents(watchDir);
+		}
+		final File srcDir = new File(watchDir, "src");
+		final Path validSrc = getTestFile( "src/test/resources/unit/valid-licenses-project/src" ).toPath();
+		Files.walkFileTree(validSrc, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+				Files.createDirectories(srcDir.toPath().resolve(validSrc.relativize(dir).toString()));
+				return FileVisitResult.CONTINUE;
+			}
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				Files.copy(file, srcDir.toPath().resolve(validSrc.relativize(file).toString()));
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		final WatchLicensesMojo myMojo = (WatchLicensesMojo) lookupMojo( "watch", pom );
+		setVariableValueToObject( myMojo, "sourceDirectory", srcDir );
+		setVariableValueToObject( myMojo, "generationManifest", new File(watchDir, "generate-manifest.properties") );
+		setVariableValueToObject( myMojo, "debounceMillis", 100L );
+		final Exception[] failure = new Exception[1];
+		Thread watchThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					myMojo.execute();
+				} catch (Exception e) {
+					failure[0] = e;
+				}
+			}
+		});
+		watchThread.start();
+		try {
+			waitForBatches(myMojo, 1);
+			File licenseFile = new File(srcDir, "0BSD.xml");
+			Files.write(licenseFile.toPath(), Files.readAllBytes(licenseFile.toPath()));
+			waitForBatches(myMojo, 2);
+		} finally {
+			watchThread.interrupt();
+			watchThread.join(60000);
+		}
+		assertFalse(watchThread.isAlive());
+		assertNull(failure[0]);
+		assertTrue(new File(UNIT_TEST_TARGET_VALID, "json").exists());
+	}
+	
+	private void waitForBatches(WatchLicensesMojo mojo, int numBatches) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 120000;
+		while (mojo.getNumBatches() < numBatches) {
+			assertTrue("Timed out waiting for the watch goal", System.currentTimeMillis() < deadline);
+			Thread.sleep(50);
+		}
+	}
+}